@@ -39,6 +39,7 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.util.Arrays;
+import javax.annotation.Nullable;
 import org.apache.avro.Protocol;
 import org.apache.avro.Schema;
 import org.apache.avro.compiler.specific.SpecificCompiler;
@@ -65,15 +66,36 @@ import org.spf4j.io.SetFilesReadOnlyVisitor;
  * GenericRecordBenchmark.testAvroGenericRecordNewSetGet thrpt 10 36274035.575 ± 476132.764 ops/s
  * GenericRecordBenchmark.testSpf4jGenericRecordNewSetGet thrpt 10 40111265.012 ± 600216.931 ops/s
  *
+ * Classes can be generated from java sources (SpecificCompiler + janino, the default) or directly as bytecode
+ * ({@link Generator#BYTECODE}), which has a lot lower first use cost, see GenericRecordBuilderStartupBenchmark.
+ *
  * @author zoly
  */
 @Beta
 public final class GenericRecordBuilder implements Closeable {
 
+  /**
+   * The way the record classes are generated.
+   */
+  public enum Generator {
+    /**
+     * java sources are generated with the avro SpecificCompiler into a temp folder, and compiled by janino on
+     * first use.
+     */
+    SOURCE,
+    /**
+     * classes are generated in memory as bytecode by {@link SpecificClassGenerator},
+     * the string type is ignored, string fields are CharSequence.
+     */
+    BYTECODE
+  }
+
+  @Nullable
   private final File tmpDir;
 
   private final GenericData.StringType stringType;
 
+  @Nullable
   private final AbstractJavaSourceClassLoader source;
 
   public GenericRecordBuilder(final Schema... schemas) {
@@ -81,8 +103,18 @@ public final class GenericRecordBuilder implements Closeable {
   }
 
   public GenericRecordBuilder(final GenericData.StringType stringType, final Schema... schemas) {
-    tmpDir = com.google.common.io.Files.createTempDir();
+    this(Generator.SOURCE, stringType, schemas);
+  }
+
+  public GenericRecordBuilder(final Generator generator, final GenericData.StringType stringType,
+          final Schema... schemas) {
     this.stringType = stringType;
+    if (generator == Generator.BYTECODE) {
+      this.tmpDir = null;
+      this.source = null;
+      return;
+    }
+    tmpDir = com.google.common.io.Files.createTempDir();
     generateClasses(stringType, schemas);
     try {
       AbstractJavaSourceClassLoader src = CompilerFactoryFactory.getDefaultCompilerFactory()
@@ -127,6 +159,9 @@ public final class GenericRecordBuilder implements Closeable {
 
   public Class<? extends SpecificRecordBase> getRecordClass(final Schema schema) {
     Preconditions.checkArgument(SchemaUtils.hasGeneratedJavaClass(schema), "schema %s has no java class", schema);
+    if (source == null) {
+      return SpecificClassGenerator.getRecordClass(schema);
+    }
     try {
       return (Class<? extends SpecificRecordBase>) source.loadClass(SchemaUtils.getJavaClassName(schema));
     } catch (ClassNotFoundException ex) {
@@ -136,6 +171,9 @@ public final class GenericRecordBuilder implements Closeable {
 
   public Class<? extends GenericEnumSymbol> getEnumClass(final Schema schema) {
     Preconditions.checkArgument(SchemaUtils.hasGeneratedJavaClass(schema), "schema %s has no java class", schema);
+    if (source == null) {
+      return SpecificClassGenerator.getEnumClass(schema);
+    }
     try {
       return (Class<? extends GenericEnumSymbol>) source.loadClass(SchemaUtils.getJavaClassName(schema));
     } catch (ClassNotFoundException ex) {
@@ -145,6 +183,9 @@ public final class GenericRecordBuilder implements Closeable {
 
   public Class<? extends GenericFixed> getFixedClass(final Schema schema) {
     Preconditions.checkArgument(SchemaUtils.hasGeneratedJavaClass(schema), "schema %s has no java class", schema);
+    if (source == null) {
+      return SpecificClassGenerator.getFixedClass(schema);
+    }
     try {
       return (Class<? extends GenericFixed>) source.loadClass(SchemaUtils.getJavaClassName(schema));
     } catch (ClassNotFoundException ex) {
@@ -154,6 +195,9 @@ public final class GenericRecordBuilder implements Closeable {
 
   @Override
   public void close() {
+    if (tmpDir == null) {
+      return;
+    }
     try {
       Files.walkFileTree(tmpDir.toPath(), new DeletingVisitor());
     } catch (IOException ex) {
@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.avro;
+
+import com.google.common.annotations.Beta;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificExceptionBase;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.spf4j.avro.schema.SchemaUtils;
+
+/**
+ * Generates avro specific classes (records, enums and fixed) directly as bytecode in memory.
+ *
+ * This is a lot faster than generating java sources with the SpecificCompiler and compiling them,
+ * and requires no disk IO. Every generated class is defined in its own class loader, and is cached by
+ * the fingerprint of the schema (as long as the class is reachable). Lookups are cached by schema instance as well,
+ * so that the schema fingerprint is computed only once per schema instance.
+ *
+ * Generated records have public fields, primitive for boolean, int, long, float and double schemas,
+ * CharSequence for strings, ByteBuffer for bytes, List for arrays, Map for maps and Object for everything else.
+ * Typed getters/setters and builders are not generated, use the GenericRecord interface.
+ *
+ * Generated classes are not visible to avro class lookup ({@link SpecificData#getClass(Schema)} resolves classes by
+ * name from the class path), as such when a generated record is deserialized with a SpecificDatumReader, nested
+ * records are instantiated as {@link org.apache.avro.generic.GenericData.Record}, nested enums as
+ * {@link org.apache.avro.generic.GenericData.EnumSymbol} and nested fixed as
+ * {@link org.apache.avro.generic.GenericData.Fixed}.
+ *
+ * @author Zoltan Farkas
+ */
+@Beta
+@ParametersAreNonnullByDefault
+public final class SpecificClassGenerator {
+
+  private static final Cache<Long, Class<?>> CLASS_CACHE = CacheBuilder.newBuilder().weakValues().build();
+
+  /** identity (weakKeys) cache in front of the fingerprint cache. */
+  private static final Cache<Schema, Class<?>> SCHEMA_CLASS_CACHE
+          = CacheBuilder.newBuilder().weakKeys().weakValues().build();
+
+  private static final String SCHEMA_DESC = Type.getDescriptor(Schema.class);
+
+  private static final String THIS_NAME = Type.getInternalName(SpecificClassGenerator.class);
+
+  private SpecificClassGenerator() { }
+
+  public static Class<? extends SpecificRecordBase> getRecordClass(final Schema schema) {
+    if (schema.getType() != Schema.Type.RECORD || schema.isError()) {
+      throw new IllegalArgumentException("Schema must be a record (use getErrorClass for errors) " + schema);
+    }
+    return (Class<? extends SpecificRecordBase>) getGeneratedClass(schema);
+  }
+
+  public static Class<? extends SpecificExceptionBase> getErrorClass(final Schema schema) {
+    if (schema.getType() != Schema.Type.RECORD || !schema.isError()) {
+      throw new IllegalArgumentException("Schema must be a error " + schema);
+    }
+    return (Class<? extends SpecificExceptionBase>) getGeneratedClass(schema);
+  }
+
+  public static Class<? extends GenericEnumSymbol> getEnumClass(final Schema schema) {
+    if (schema.getType() != Schema.Type.ENUM) {
+      throw new IllegalArgumentException("Schema must be a enum " + schema);
+    }
+    return (Class<? extends GenericEnumSymbol>) getGeneratedClass(schema);
+  }
+
+  public static Class<? extends GenericFixed> getFixedClass(final Schema schema) {
+    if (schema.getType() != Schema.Type.FIXED) {
+      throw new IllegalArgumentException("Schema must be a fixed " + schema);
+    }
+    return (Class<? extends GenericFixed>) getGeneratedClass(schema);
+  }
+
+  /**
+   * @param schema a record, error, enum or fixed schema.
+   * @return the generated class for the schema.
+   */
+  public static Class<?> getGeneratedClass(final Schema schema) {
+    if (!SchemaUtils.hasGeneratedJavaClass(schema)) {
+      throw new IllegalArgumentException("schema " + schema + " has no java class");
+    }
+    Class<?> result = SCHEMA_CLASS_CACHE.getIfPresent(schema);
+    if (result != null) {
+      return result;
+    }
+    long fingerprint = SchemaNormalization.fingerprint64(schema.toString().getBytes(StandardCharsets.UTF_8));
+    try {
+      result = CLASS_CACHE.get(fingerprint, () -> defineClass(schema));
+      SCHEMA_CLASS_CACHE.put(schema, result);
+      return result;
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      throw new IllegalStateException("Cannot generate class for " + schema, ex.getCause());
+    }
+  }
+
+  /**
+   * Used by the generated classes to initialize SCHEMA$, applications should not call.
+   */
+  public static Schema getGeneratedClassSchema(final Class<?> clasz) {
+    ClassLoader loader = clasz.getClassLoader();
+    if (loader instanceof GeneratedClassLoader) {
+      return ((GeneratedClassLoader) loader).schema;
+    }
+    throw new IllegalArgumentException("Not a generated class: " + clasz);
+  }
+
+  /**
+   * Used by the generated classes, applications should not call.
+   */
+  public static void writeExternal(final GenericContainer object, final ObjectOutput out) throws IOException {
+    new SpecificDatumWriter<>(object.getSchema()).write(object, SpecificData.getEncoder(out));
+  }
+
+  /**
+   * Used by the generated classes, applications should not call.
+   */
+  public static void readExternal(final GenericContainer object, final ObjectInput in) throws IOException {
+    new SpecificDatumReader<>(object.getSchema()).read(object, SpecificData.getDecoder(in));
+  }
+
+  private static Class<?> defineClass(final Schema schema) {
+    String className = SchemaUtils.getJavaClassName(schema);
+    byte[] byteCode;
+    switch (schema.getType()) {
+      case RECORD:
+        byteCode = generateRecord(schema, className.replace('.', '/'));
+        break;
+      case ENUM:
+        byteCode = generateEnum(schema, className.replace('.', '/'));
+        break;
+      case FIXED:
+        byteCode = generateFixed(className.replace('.', '/'));
+        break;
+      default:
+        throw new IllegalArgumentException("schema " + schema + " has no java class");
+    }
+    return new GeneratedClassLoader(schema).define(className, byteCode);
+  }
+
+  private static final class GeneratedClassLoader extends ClassLoader {
+
+    private final Schema schema;
+
+    GeneratedClassLoader(final Schema schema) {
+      super(SpecificClassGenerator.class.getClassLoader());
+      this.schema = schema;
+    }
+
+    Class<?> define(final String name, final byte[] byteCode) {
+      return defineClass(name, byteCode, 0, byteCode.length);
+    }
+
+  }
+
+  /**
+   * Frame computation needs common super classes, which is Object for all our merges.
+   */
+  private static final class FrameClassWriter extends ClassWriter {
+
+    FrameClassWriter() {
+      super(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+    }
+
+    @Override
+    protected String getCommonSuperClass(final String type1, final String type2) {
+      return "java/lang/Object";
+    }
+  }
+
+  private static void generateSchemaMembers(final ClassWriter cw, final String name,
+          final MethodVisitor clinit) {
+    cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "SCHEMA$", SCHEMA_DESC, null, null)
+            .visitEnd();
+    clinit.visitLdcInsn(Type.getObjectType(name));
+    clinit.visitMethodInsn(Opcodes.INVOKESTATIC, THIS_NAME, "getGeneratedClassSchema",
+            "(Ljava/lang/Class;)" + SCHEMA_DESC, false);
+    clinit.visitFieldInsn(Opcodes.PUTSTATIC, name, "SCHEMA$", SCHEMA_DESC);
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "getClassSchema",
+            "()" + SCHEMA_DESC, null, null);
+    mv.visitCode();
+    mv.visitFieldInsn(Opcodes.GETSTATIC, name, "SCHEMA$", SCHEMA_DESC);
+    mv.visitInsn(Opcodes.ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+    mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "getSchema", "()" + SCHEMA_DESC, null, null);
+    mv.visitCode();
+    mv.visitFieldInsn(Opcodes.GETSTATIC, name, "SCHEMA$", SCHEMA_DESC);
+    mv.visitInsn(Opcodes.ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private static void generateExternalizable(final ClassWriter cw) {
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "writeExternal", "(Ljava/io/ObjectOutput;)V",
+            null, new String[] {"java/io/IOException"});
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitMethodInsn(Opcodes.INVOKESTATIC, THIS_NAME, "writeExternal",
+            "(Lorg/apache/avro/generic/GenericContainer;Ljava/io/ObjectOutput;)V", false);
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+    mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "readExternal", "(Ljava/io/ObjectInput;)V",
+            null, new String[] {"java/io/IOException"});
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitMethodInsn(Opcodes.INVOKESTATIC, THIS_NAME, "readExternal",
+            "(Lorg/apache/avro/generic/GenericContainer;Ljava/io/ObjectInput;)V", false);
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private static MethodVisitor startClinit(final ClassWriter cw) {
+    MethodVisitor clinit = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+    clinit.visitCode();
+    return clinit;
+  }
+
+  private static void endMethod(final MethodVisitor mv) {
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private static void generateConstructor(final ClassWriter cw, final String superName, final String desc) {
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", desc, null, null);
+    mv.visitCode();
+    Type[] args = Type.getArgumentTypes(desc);
+    for (int i = 0; i <= args.length; i++) {
+      mv.visitVarInsn(Opcodes.ALOAD, i);
+    }
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", desc, false);
+    endMethod(mv);
+  }
+
+  private static Type fieldType(final Schema schema) {
+    switch (schema.getType()) {
+      case BOOLEAN:
+        return Type.BOOLEAN_TYPE;
+      case INT:
+        return Type.INT_TYPE;
+      case LONG:
+        return Type.LONG_TYPE;
+      case FLOAT:
+        return Type.FLOAT_TYPE;
+      case DOUBLE:
+        return Type.DOUBLE_TYPE;
+      case STRING:
+        return Type.getType(CharSequence.class);
+      case BYTES:
+        return Type.getType(java.nio.ByteBuffer.class);
+      case ARRAY:
+        return Type.getType(List.class);
+      case MAP:
+        return Type.getType(java.util.Map.class);
+      default:
+        return Type.getType(Object.class);
+    }
+  }
+
+  private static Type boxedType(final Type type) {
+    switch (type.getSort()) {
+      case Type.BOOLEAN:
+        return Type.getType(Boolean.class);
+      case Type.INT:
+        return Type.getType(Integer.class);
+      case Type.LONG:
+        return Type.getType(Long.class);
+      case Type.FLOAT:
+        return Type.getType(Float.class);
+      case Type.DOUBLE:
+        return Type.getType(Double.class);
+      default:
+        return type;
+    }
+  }
+
+  private static void throwBadIndex(final MethodVisitor mv) {
+    String exName = Type.getInternalName(AvroRuntimeException.class);
+    mv.visitTypeInsn(Opcodes.NEW, exName);
+    mv.visitInsn(Opcodes.DUP);
+    mv.visitLdcInsn("Bad index");
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, exName, "<init>", "(Ljava/lang/String;)V", false);
+    mv.visitInsn(Opcodes.ATHROW);
+  }
+
+  /**
+   * switch on the field index (first argument).
+   */
+  private static void switchOnIndex(final MethodVisitor mv, final Label dflt, final Label[] labels) {
+    if (labels.length > 0) {
+      mv.visitVarInsn(Opcodes.ILOAD, 1);
+      mv.visitTableSwitchInsn(0, labels.length - 1, dflt, labels);
+    }
+  }
+
+  static byte[] generateRecord(final Schema schema, final String name) {
+    boolean isError = schema.isError();
+    String superName = isError ? "org/apache/avro/specific/SpecificExceptionBase"
+            : "org/apache/avro/specific/SpecificRecordBase";
+    ClassWriter cw = new FrameClassWriter();
+    cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName,
+            new String[] {"org/apache/avro/specific/SpecificRecord"});
+    MethodVisitor clinit = startClinit(cw);
+    generateSchemaMembers(cw, name, clinit);
+    endMethod(clinit);
+    List<Schema.Field> fields = schema.getFields();
+    Type[] types = new Type[fields.size()];
+    String[] names = new String[types.length];
+    for (int i = 0; i < types.length; i++) {
+      Schema.Field field = fields.get(i);
+      types[i] = fieldType(field.schema());
+      names[i] = field.name();
+      cw.visitField(Opcodes.ACC_PUBLIC, names[i], types[i].getDescriptor(), null, null).visitEnd();
+    }
+    generateConstructor(cw, superName, "()V");
+    if (isError) {
+      generateConstructor(cw, superName, "(Ljava/lang/Object;)V");
+      generateConstructor(cw, superName, "(Ljava/lang/Throwable;)V");
+      generateConstructor(cw, superName, "(Ljava/lang/Object;Ljava/lang/Throwable;)V");
+      generateExternalizable(cw);
+    }
+    Label[] labels = new Label[types.length];
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = new Label();
+    }
+    // Object get(int field$)
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "get", "(I)Ljava/lang/Object;", null, null);
+    mv.visitCode();
+    Label dflt = new Label();
+    switchOnIndex(mv, dflt, labels);
+    for (int i = 0; i < labels.length; i++) {
+      mv.visitLabel(labels[i]);
+      mv.visitVarInsn(Opcodes.ALOAD, 0);
+      Type type = types[i];
+      mv.visitFieldInsn(Opcodes.GETFIELD, name, names[i], type.getDescriptor());
+      Type boxed = boxedType(type);
+      if (boxed != type) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, boxed.getInternalName(), "valueOf",
+                Type.getMethodDescriptor(boxed, type), false);
+      }
+      mv.visitInsn(Opcodes.ARETURN);
+    }
+    mv.visitLabel(dflt);
+    throwBadIndex(mv);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+    // void put(int field$, Object value$)
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = new Label();
+    }
+    mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "put", "(ILjava/lang/Object;)V", null, null);
+    mv.visitCode();
+    dflt = new Label();
+    switchOnIndex(mv, dflt, labels);
+    for (int i = 0; i < labels.length; i++) {
+      mv.visitLabel(labels[i]);
+      mv.visitVarInsn(Opcodes.ALOAD, 0);
+      mv.visitVarInsn(Opcodes.ALOAD, 2);
+      Type type = types[i];
+      Type boxed = boxedType(type);
+      String boxedName = boxed.getInternalName();
+      if (boxed != type) {
+        mv.visitTypeInsn(Opcodes.CHECKCAST, boxedName);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, boxedName, type.getClassName() + "Value",
+                Type.getMethodDescriptor(type), false);
+      } else if (!"java/lang/Object".equals(boxedName)) {
+        mv.visitTypeInsn(Opcodes.CHECKCAST, boxedName);
+      }
+      mv.visitFieldInsn(Opcodes.PUTFIELD, name, names[i], type.getDescriptor());
+      mv.visitInsn(Opcodes.RETURN);
+    }
+    mv.visitLabel(dflt);
+    throwBadIndex(mv);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  static byte[] generateEnum(final Schema schema, final String name) {
+    String desc = 'L' + name + ';';
+    ClassWriter cw = new FrameClassWriter();
+    cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_ENUM,
+            name, "Ljava/lang/Enum<" + desc + ">;Lorg/apache/avro/generic/GenericEnumSymbol;",
+            "java/lang/Enum", new String[] {"org/apache/avro/generic/GenericEnumSymbol"});
+    List<String> symbols = schema.getEnumSymbols();
+    for (String symbol : symbols) {
+      cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_ENUM,
+              symbol, desc, null, null).visitEnd();
+    }
+    cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC,
+            "$VALUES", '[' + desc, null, null).visitEnd();
+    MethodVisitor clinit = startClinit(cw);
+    for (int i = 0, l = symbols.size(); i < l; i++) {
+      String symbol = symbols.get(i);
+      clinit.visitTypeInsn(Opcodes.NEW, name);
+      clinit.visitInsn(Opcodes.DUP);
+      clinit.visitLdcInsn(symbol);
+      clinit.visitLdcInsn(i);
+      clinit.visitMethodInsn(Opcodes.INVOKESPECIAL, name, "<init>", "(Ljava/lang/String;I)V", false);
+      clinit.visitFieldInsn(Opcodes.PUTSTATIC, name, symbol, desc);
+    }
+    clinit.visitLdcInsn(symbols.size());
+    clinit.visitTypeInsn(Opcodes.ANEWARRAY, name);
+    for (int i = 0, l = symbols.size(); i < l; i++) {
+      clinit.visitInsn(Opcodes.DUP);
+      clinit.visitLdcInsn(i);
+      clinit.visitFieldInsn(Opcodes.GETSTATIC, name, symbols.get(i), desc);
+      clinit.visitInsn(Opcodes.AASTORE);
+    }
+    clinit.visitFieldInsn(Opcodes.PUTSTATIC, name, "$VALUES", '[' + desc);
+    generateSchemaMembers(cw, name, clinit);
+    endMethod(clinit);
+    // private constructor.
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PRIVATE, "<init>", "(Ljava/lang/String;I)V", null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitVarInsn(Opcodes.ILOAD, 2);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Enum", "<init>", "(Ljava/lang/String;I)V", false);
+    endMethod(mv);
+    // values()
+    mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "values", "()[" + desc, null, null);
+    mv.visitCode();
+    mv.visitFieldInsn(Opcodes.GETSTATIC, name, "$VALUES", '[' + desc);
+    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, '[' + desc, "clone", "()Ljava/lang/Object;", false);
+    mv.visitTypeInsn(Opcodes.CHECKCAST, '[' + desc);
+    mv.visitInsn(Opcodes.ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+    // valueOf(String)
+    mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "valueOf", "(Ljava/lang/String;)" + desc,
+            null, null);
+    mv.visitCode();
+    mv.visitLdcInsn(Type.getObjectType(name));
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Enum", "valueOf",
+            "(Ljava/lang/Class;Ljava/lang/String;)Ljava/lang/Enum;", false);
+    mv.visitTypeInsn(Opcodes.CHECKCAST, name);
+    mv.visitInsn(Opcodes.ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  static byte[] generateFixed(final String name) {
+    String superName = "org/apache/avro/specific/SpecificFixed";
+    ClassWriter cw = new FrameClassWriter();
+    cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+    MethodVisitor clinit = startClinit(cw);
+    generateSchemaMembers(cw, name, clinit);
+    endMethod(clinit);
+    generateConstructor(cw, superName, "()V");
+    generateConstructor(cw, superName, "([B)V");
+    generateExternalizable(cw);
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+}
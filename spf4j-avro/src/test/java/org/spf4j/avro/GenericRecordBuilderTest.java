@@ -38,6 +38,7 @@ import java.io.IOException;
 import org.junit.Assert;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericEnumSymbol;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.specific.SpecificRecordBase;
@@ -106,4 +107,27 @@ public class GenericRecordBuilderTest {
     }
   }
 
+  @Test
+  public void testBytecodeGenericRecordCreation() throws InstantiationException, IllegalAccessException {
+    Schema reuse = SchemaBuilder.builder().record("Reuse").fields().requiredString("field").endRecord();
+    Schema record = SchemaBuilder.builder().record("TestRecord").fields()
+            .requiredInt("number")
+            .name("record").type(reuse).noDefault()
+            .endRecord();
+    Schema enumSchema = SchemaBuilder.enumeration("MyEnum").namespace("test").symbols("A", "B", "C");
+    try (GenericRecordBuilder builder = new GenericRecordBuilder(GenericRecordBuilder.Generator.BYTECODE,
+            GenericData.StringType.String, record, enumSchema)) {
+      Class<? extends SpecificRecordBase> clasz = builder.getRecordClass(record);
+      Assert.assertSame(clasz, builder.getRecordClass(record));
+      SpecificRecordBase myRecord = clasz.newInstance();
+      myRecord.put("number", 35);
+      Assert.assertEquals(35, (int) myRecord.get("number"));
+      SpecificRecordBase nested = builder.getRecordClass(reuse).newInstance();
+      nested.put("field", "value");
+      myRecord.put("record", nested);
+      Assert.assertEquals(nested, myRecord.get("record"));
+      Assert.assertEquals("test.MyEnum", builder.getEnumClass(enumSchema).getName());
+    }
+  }
+
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.avro;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificExceptionBase;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class SpecificClassGeneratorTest {
+
+  @Test
+  @SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+  public void testRecordGeneration() throws Exception {
+    Schema schema = SchemaBuilder.builder().record("TestRecord").namespace("org.spf4j.gen").fields()
+            .requiredInt("number")
+            .requiredLong("lnumber")
+            .requiredDouble("dnumber")
+            .requiredBoolean("flag")
+            .requiredString("text")
+            .name("list").type().array().items().intType().noDefault()
+            .optionalString("optText")
+            .endRecord();
+    Class<? extends SpecificRecordBase> clasz = SpecificClassGenerator.getRecordClass(schema);
+    Assert.assertEquals("org.spf4j.gen.TestRecord", clasz.getName());
+    Assert.assertSame(clasz, SpecificClassGenerator.getRecordClass(schema));
+    Assert.assertSame(schema, clasz.getField("SCHEMA$").get(null));
+    Assert.assertEquals(int.class, clasz.getField("number").getType());
+    SpecificRecordBase record = clasz.newInstance();
+    Assert.assertSame(schema, record.getSchema());
+    record.put("number", 35);
+    record.put("lnumber", 36L);
+    record.put("dnumber", 3.5);
+    record.put("flag", Boolean.TRUE);
+    record.put("text", "bla");
+    record.put("list", Arrays.asList(1, 2, 3));
+    Assert.assertEquals(35, record.get("number"));
+    Assert.assertEquals(36L, record.get(1));
+    Assert.assertEquals(3.5, (double) record.get("dnumber"), 0.0001);
+    Assert.assertEquals(Boolean.TRUE, record.get("flag"));
+    Assert.assertNull(record.get("optText"));
+    try {
+      record.get(7);
+      Assert.fail();
+    } catch (AvroRuntimeException ex) {
+      Assert.assertEquals("Bad index", ex.getMessage());
+    }
+    // avro serialization round trip.
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bos, null);
+    new SpecificDatumWriter<>(schema).write(record, encoder);
+    encoder.flush();
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bos.toByteArray(), null);
+    SpecificRecordBase read = new SpecificDatumReader<SpecificRecordBase>(schema).read(clasz.newInstance(), decoder);
+    Assert.assertEquals("bla", read.get("text").toString());
+    Assert.assertEquals(record.get("list"), read.get("list"));
+    Assert.assertEquals(36L, read.get("lnumber"));
+    // equivalent to the generic record.
+    GenericData.Record grecord = new GenericData.Record(schema);
+    for (Schema.Field field : schema.getFields()) {
+      grecord.put(field.pos(), read.get(field.pos()));
+    }
+    Assert.assertEquals(grecord.toString(), read.toString());
+  }
+
+  @Test
+  public void testRecordSchemaChangeGeneratesNewClass() {
+    Schema schema = SchemaBuilder.builder().record("ChangingRecord").fields()
+            .requiredInt("number").endRecord();
+    Schema schema2 = SchemaBuilder.builder().record("ChangingRecord").fields()
+            .requiredInt("number").requiredInt("number2").endRecord();
+    Class<? extends SpecificRecordBase> c1 = SpecificClassGenerator.getRecordClass(schema);
+    Class<? extends SpecificRecordBase> c2 = SpecificClassGenerator.getRecordClass(schema2);
+    Assert.assertNotSame(c1, c2);
+    Assert.assertEquals(c1.getName(), c2.getName());
+  }
+
+  @Test
+  @SuppressFBWarnings("CLI_CONSTANT_LIST_INDEX")
+  public void testEnumGeneration() throws ReflectiveOperationException {
+    Schema enumSchema = SchemaBuilder.enumeration("MyGenEnum").namespace("test").symbols("A", "B", "C");
+    Class<? extends GenericEnumSymbol> enumClass = SpecificClassGenerator.getEnumClass(enumSchema);
+    Assert.assertEquals("test.MyGenEnum", enumClass.getName());
+    Assert.assertTrue(enumClass.isEnum());
+    GenericEnumSymbol[] constants = enumClass.getEnumConstants();
+    Assert.assertEquals(3, constants.length);
+    Assert.assertEquals("B", constants[1].toString());
+    Assert.assertSame(enumSchema, constants[1].getSchema());
+    Assert.assertSame(constants[2], Enum.valueOf((Class) enumClass, "C"));
+    Assert.assertSame(enumSchema, enumClass.getMethod("getClassSchema").invoke(null));
+  }
+
+  @Test
+  public void testFixedGeneration() throws Exception {
+    Schema fixedSchema = SchemaBuilder.fixed("MyGenFixed").namespace("test").size(4);
+    Class<? extends GenericFixed> fixedClass = SpecificClassGenerator.getFixedClass(fixedSchema);
+    GenericFixed fixed = fixedClass.getConstructor(byte[].class).newInstance(new byte[] {1, 2, 3, 4});
+    Assert.assertArrayEquals(new byte[] {1, 2, 3, 4}, fixed.bytes());
+    Assert.assertEquals(4, fixedClass.newInstance().bytes().length);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+      oos.writeObject(fixed);
+    }
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray())) {
+      @Override
+      protected Class<?> resolveClass(final java.io.ObjectStreamClass desc)
+              throws IOException, ClassNotFoundException {
+        return desc.getName().equals(fixedClass.getName()) ? fixedClass : super.resolveClass(desc);
+      }
+    }) {
+      Assert.assertEquals(fixed, ois.readObject());
+    }
+  }
+
+  @Test
+  public void testComplexSchema() throws Exception {
+    String schemaStr = Resources.toString(Resources.getResource("SchemaBuilder.avsc"), Charsets.US_ASCII);
+    Schema schema = new Schema.Parser().parse(schemaStr);
+    SpecificRecordBase record = SpecificClassGenerator.getRecordClass(schema).newInstance();
+    record.put("requiredBoolean", Boolean.TRUE);
+    Schema fieldSchema = schema.getField("optionalRecord").schema().getTypes().get(1);
+    SpecificRecordBase nr = SpecificClassGenerator.getRecordClass(fieldSchema).newInstance();
+    nr.put("nestedRequiredBoolean", Boolean.TRUE);
+    record.put("optionalRecord", nr);
+    Assert.assertEquals(nr, record.get("optionalRecord"));
+  }
+
+  @Test
+  public void testErrorGeneration() throws Exception {
+    Schema schema = SchemaBuilder.builder().record("TestGenError").namespace("org.spf4j.gen").fields()
+            .requiredString("reason").endRecord();
+    Schema errorSchema = Schema.createRecord(schema.getName(), null, schema.getNamespace(), true,
+            Arrays.asList(new Schema.Field("reason", Schema.create(Schema.Type.STRING), null, (Object) null)));
+    Class<? extends SpecificExceptionBase> clasz = SpecificClassGenerator.getErrorClass(errorSchema);
+    Assert.assertSame(clasz, SpecificClassGenerator.getErrorClass(errorSchema));
+    SpecificExceptionBase error = clasz.getConstructor(Throwable.class).newInstance(new RuntimeException("cause"));
+    error.put(0, "bad");
+    Assert.assertEquals("bad", error.get(0));
+    Assert.assertEquals("cause", error.getCause().getMessage());
+    Assert.assertSame(errorSchema, error.getSchema());
+  }
+
+  @Test
+  public void testNestedRecordsDeserializeAsGeneric() throws Exception {
+    Schema nested = SchemaBuilder.builder().record("GenNested").namespace("org.spf4j.gen").fields()
+            .requiredInt("value").endRecord();
+    Schema schema = SchemaBuilder.builder().record("GenOuter").namespace("org.spf4j.gen").fields()
+            .name("nested").type(nested).noDefault().endRecord();
+    Class<? extends SpecificRecordBase> clasz = SpecificClassGenerator.getRecordClass(schema);
+    SpecificRecordBase record = clasz.newInstance();
+    SpecificRecordBase nestedRecord = SpecificClassGenerator.getRecordClass(nested).newInstance();
+    nestedRecord.put(0, 3);
+    record.put(0, nestedRecord);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bos, null);
+    new SpecificDatumWriter<>(schema).write(record, encoder);
+    encoder.flush();
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bos.toByteArray(), null);
+    SpecificRecordBase read = new SpecificDatumReader<SpecificRecordBase>(schema).read(clasz.newInstance(), decoder);
+    Assert.assertEquals(GenericData.Record.class, read.get(0).getClass());
+    Assert.assertEquals(3, ((GenericData.Record) read.get(0)).get("value"));
+  }
+
+}
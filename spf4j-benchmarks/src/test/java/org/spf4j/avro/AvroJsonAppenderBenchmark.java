@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.avro;
+
+import com.google.common.base.Charsets;
+import java.io.IOException;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.io.JsonEncoder;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.spf4j.base.avro.Converters;
+import org.spf4j.base.avro.JThrowable;
+import org.spf4j.io.AppendableOutputStream;
+import org.spf4j.io.appenders.GenericRecordAppender;
+import org.spf4j.io.appenders.SpecificRecordAppender;
+
+/**
+ * Compares the schema compiled avro json appenders with the avro writer + JsonEncoder per call approach.
+ * @author Zoltan Farkas
+ */
+@State(Scope.Benchmark)
+@Fork(2)
+@Threads(value = 8)
+public class AvroJsonAppenderBenchmark {
+
+  private static final JThrowable SPECIFIC = Converters.convert(
+          new RuntimeException("test", new IllegalStateException("cause")));
+
+  private static final GenericRecord GENERIC = (GenericRecord) GenericData.get()
+          .deepCopy(SPECIFIC.getSchema(), SPECIFIC);
+
+  private static final SpecificRecordAppender SPECIFIC_APPENDER = new SpecificRecordAppender();
+
+  private static final GenericRecordAppender GENERIC_APPENDER = new GenericRecordAppender();
+
+  private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(256);
+    }
+  };
+
+  @Benchmark
+  public StringBuilder testSpecificAppender() throws IOException {
+    StringBuilder sb = BUFFER.get();
+    sb.setLength(0);
+    SPECIFIC_APPENDER.append(SPECIFIC, sb);
+    return sb;
+  }
+
+  @Benchmark
+  public StringBuilder testSpecificAvroEncoder() throws IOException {
+    StringBuilder sb = BUFFER.get();
+    sb.setLength(0);
+    try (AppendableOutputStream bos = new AppendableOutputStream(sb, Charsets.UTF_8)) {
+      SpecificDatumWriter<JThrowable> writer = new SpecificDatumWriter<>(SPECIFIC.getSchema());
+      JsonEncoder jsonEncoder = EncoderFactory.get().jsonEncoder(SPECIFIC.getSchema(), bos);
+      writer.write(SPECIFIC, jsonEncoder);
+      jsonEncoder.flush();
+    }
+    return sb;
+  }
+
+  @Benchmark
+  public StringBuilder testGenericAppender() throws IOException {
+    StringBuilder sb = BUFFER.get();
+    sb.setLength(0);
+    GENERIC_APPENDER.append(GENERIC, sb);
+    return sb;
+  }
+
+  @Benchmark
+  public StringBuilder testGenericAvroEncoder() throws IOException {
+    StringBuilder sb = BUFFER.get();
+    sb.setLength(0);
+    try (AppendableOutputStream bos = new AppendableOutputStream(sb, Charsets.UTF_8)) {
+      GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(GENERIC.getSchema());
+      JsonEncoder jsonEncoder = EncoderFactory.get().jsonEncoder(GENERIC.getSchema(), bos);
+      writer.write(GENERIC, jsonEncoder);
+      jsonEncoder.flush();
+    }
+    return sb;
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.avro;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the first use cost of a new schema (class generation + instantiation) for the source (SpecificCompiler +
+ * janino) and the bytecode (ASM) record class generators. Every invocation uses a new schema.
+ *
+ * @author Zoltan Farkas
+ */
+@State(Scope.Benchmark)
+@Fork(2)
+@Threads(value = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GenericRecordBuilderStartupBenchmark {
+
+  private static final AtomicInteger SCHEMA_IDX = new AtomicInteger();
+
+  private static Schema newSchema() {
+    return SchemaBuilder.builder().record("StartupRecord").namespace("bench.s" + SCHEMA_IDX.getAndIncrement())
+            .fields()
+            .requiredInt("number")
+            .requiredLong("lnumber")
+            .requiredDouble("dnumber")
+            .requiredBoolean("flag")
+            .requiredString("text")
+            .optionalString("optText")
+            .name("list").type().array().items().intType().noDefault()
+            .endRecord();
+  }
+
+  private static GenericRecord firstUse(final GenericRecordBuilder.Generator generator)
+          throws InstantiationException, IllegalAccessException {
+    Schema schema = newSchema();
+    try (GenericRecordBuilder builder = new GenericRecordBuilder(generator, GenericData.StringType.String, schema)) {
+      GenericRecord record = builder.getRecordClass(schema).newInstance();
+      record.put("number", 1);
+      return record;
+    }
+  }
+
+  @Benchmark
+  public GenericRecord testSourceFirstUse() throws InstantiationException, IllegalAccessException {
+    return firstUse(GenericRecordBuilder.Generator.SOURCE);
+  }
+
+  @Benchmark
+  public GenericRecord testBytecodeFirstUse() throws InstantiationException, IllegalAccessException {
+    return firstUse(GenericRecordBuilder.Generator.BYTECODE);
+  }
+
+}
@@ -32,6 +32,7 @@
 package org.spf4j.io;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
@@ -55,6 +56,18 @@ public class CrcBenchmark {
           + "dkjhfkjsdhfkdskgfskjdhfjkdfghsdkjhfglskdfhjgkldfhgksjdfhgklhsdfkghklsfdhgkdfhlkfghfslkdjhgklsdhkghs")
           .getBytes(Charset.defaultCharset());
 
+  private static final byte[] LARGE_DATA = new byte[1024 * 1024];
+
+  private static final ByteBuffer LARGE_DIRECT_DATA = ByteBuffer.allocateDirect(LARGE_DATA.length);
+
+  static {
+    for (int i = 0; i < LARGE_DATA.length; i++) {
+      LARGE_DATA[i] = TEST_DATA[i % TEST_DATA.length];
+    }
+    LARGE_DIRECT_DATA.put(LARGE_DATA);
+    LARGE_DIRECT_DATA.flip();
+  }
+
   @Benchmark
   public long testJavaCrc32() throws IOException {
     CRC32 crc = new CRC32();
@@ -69,6 +82,34 @@ public class CrcBenchmark {
     return crc.getValue();
   }
 
+  @Benchmark
+  public long testBestCrc32C() throws IOException {
+    Checksum crc = Crc32C.newChecksum();
+    testCrc(TEST_DATA, crc);
+    return crc.getValue();
+  }
+
+  @Benchmark
+  public long testCrc32CLarge() throws IOException {
+    Checksum crc = Crc32C.newChecksum();
+    crc.update(LARGE_DATA, 0, LARGE_DATA.length);
+    return crc.getValue();
+  }
+
+  @Benchmark
+  public long testCrc32CDirectBuffer() throws IOException {
+    Checksum crc = Crc32C.newChecksum();
+    Crc32C.update(crc, LARGE_DIRECT_DATA.duplicate());
+    return crc.getValue();
+  }
+
+  @Benchmark
+  public long testJavaCrc32Large() throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(LARGE_DATA, 0, LARGE_DATA.length);
+    return crc.getValue();
+  }
+
   private void testCrc(final byte[] data, final Checksum csum) throws IOException {
     csum.update(data, 0, data.length);
     int half = data.length / 2;
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.spf4j.base.Strings;
+
+/**
+ * Compares the scratch output buffers: SegmentedByteArrayBuilder, ByteArrayBuilder and ByteArrayOutputStream.
+ * @author Zoltan Farkas
+ */
+@State(Scope.Thread)
+@Fork(2)
+@Threads(value = 1)
+public class OutputBufferBenchmark {
+
+  private static final byte[] CHUNK = Strings.toUtf8("asfsdfhjgsdjhfgsjhdgfjhsdgfjhgsdjhfgjsdhgkjfsdkhf34hfHGHDG"
+          + "SFDGHJJIU&^%ERSDFGVNHKJU&^%!#@#$%^&*()OJHGCXFDGHJUYTRWERTGFHHJYREWRDFGHJUYTredscxvbbhuytdsdfbvnmjhgfd");
+
+  @Param({"10", "1000"})
+  private int nrChunks;
+
+  private static void writeContent(final OutputStream os, final int nrChunks) throws IOException {
+    for (int i = 0; i < nrChunks; i++) {
+      os.write(CHUNK);
+      os.write(i);
+    }
+  }
+
+  @Benchmark
+  public long segmentedByteArrayBuilder() throws IOException {
+    try (SegmentedByteArrayBuilder bab = new SegmentedByteArrayBuilder()) {
+      writeContent(bab, nrChunks);
+      return bab.toByteBuffers().length + bab.size();
+    }
+  }
+
+  @Benchmark
+  public long byteArrayBuilder() throws IOException {
+    try (ByteArrayBuilder bab = new ByteArrayBuilder()) {
+      writeContent(bab, nrChunks);
+      return bab.getBuffer().length + bab.size();
+    }
+  }
+
+  @Benchmark
+  public long byteArrayOutputStream() throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+    writeContent(bos, nrChunks);
+    return bos.toByteArray().length + bos.size();
+  }
+
+}
@@ -67,6 +67,75 @@ public class PipedStreamsBenchmark {
     testJdk(TEST_STR, 64);
   }
 
+  @Benchmark
+  public void testSpf4SpscPipe() throws IOException {
+    testSpsc(TEST_STR, 64);
+  }
+
+  @Benchmark
+  public long testSpf4PipeThroughput() throws IOException {
+    return transfer(new PipedOutputStream(8192), 16 * 1024 * 1024);
+  }
+
+  @Benchmark
+  public long testSpf4SpscPipeThroughput() throws IOException {
+    return transfer(new SpscPipedOutputStream(8192), 16 * 1024 * 1024);
+  }
+
+  private static long transfer(final OutputStream pos, final int nrBytes) throws IOException {
+    final InputStream pis = pos instanceof PipedOutputStream ? ((PipedOutputStream) pos).getInputStream()
+            : ((SpscPipedOutputStream) pos).getInputStream();
+    DefaultExecutor.INSTANCE.execute(new AbstractRunnable() {
+
+      @Override
+      public void doRun() throws Exception {
+        try (OutputStream os = pos) {
+          final byte[] chunk = new byte[4096];
+          for (int i = 0; i < nrBytes; i += chunk.length) {
+            os.write(chunk);
+          }
+        }
+      }
+    });
+    long total = 0;
+    try (InputStream is = pis) {
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = is.read(buffer)) >= 0) {
+        total += read;
+      }
+    }
+    Assert.assertEquals(nrBytes, total);
+    return total;
+  }
+
+  private void testSpsc(final String testStr, final int buffSize) throws IOException {
+    final SpscPipedOutputStream pos = new SpscPipedOutputStream(buffSize);
+    final InputStream pis = pos.getInputStream();
+    DefaultExecutor.INSTANCE.execute(new AbstractRunnable() {
+
+      @Override
+      public void doRun() throws Exception {
+        try (OutputStream os = pos) {
+          final byte[] utf8 = Strings.toUtf8(testStr);
+          os.write(utf8[0]);
+          os.write(utf8, 1, 10);
+          os.write(utf8, 11, 10);
+          os.write(utf8, 21, utf8.length - 21);
+        }
+      }
+    });
+    StringBuilder sb = new StringBuilder();
+    try (InputStream is = pis) {
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = is.read(buffer)) > 0) {
+        sb.append(Strings.fromUtf8(buffer, 0, read));
+      }
+    }
+    Assert.assertEquals(testStr, sb.toString());
+  }
+
   private void testSpf(final String testStr, final int buffSize) throws IOException {
     final PipedOutputStream pos = new PipedOutputStream(buffSize);
     final InputStream pis = pos.getInputStream();
@@ -51,6 +51,7 @@ import org.openjdk.jmh.annotations.Threads;
 import org.spf4j.concurrent.DefaultExecutor;
 import org.spf4j.zel.vm.CompileException;
 import org.spf4j.zel.vm.Program;
+import org.spf4j.zel.vm.ProgramOptimizer;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
@@ -65,6 +66,8 @@ import org.springframework.expression.spel.standard.SpelExpressionParser;
 public class ZelBenchmark {
 
     private static final Program ZEL_PROG;
+    private static final Program ZEL_COMPILED_PROG;
+    private static final Program ZEL_CONST_PROG;
     private static final ThreadLocal<Script> GROOVY_PROG;
     private static final Class GROOVY_PROG_CLASZ;
     private static final Serializable MVEL_PROG;
@@ -78,6 +81,10 @@ public class ZelBenchmark {
      * 2) Zel uses reflection to do java method invocations, which is slower than byte code generation
      * that mvel and groovy uses.
      * 3) Spring expression language is slow like hell, and there is no excuse for it :-)
+     * 4) testZel starts interpreted, and is translated to byte code after spf4j.zel.jitThreshold executions,
+     * testZelCompiled is translated to byte code at compile time.
+     * 5) testZelConstants exercises the compile time optimizations (constant folding, common deterministic calls),
+     * the program is optimized explicitly via ProgramOptimizer.
      *
      */
 
@@ -85,6 +92,10 @@ public class ZelBenchmark {
         final String testScript = "a-b+1+c.length() - d.toString().substring(0, 1).length()";
         try {
             ZEL_PROG = Program.compile(testScript, "a", "b", "c", "d");
+            ZEL_COMPILED_PROG = Program.compile(testScript, Program.ExecutionType.COMPILED, "a", "b", "c", "d");
+            ZEL_CONST_PROG = ProgramOptimizer.INSTANCE.apply(
+                    Program.compile("h = a * a + b * b; sqrt(h) * (2 * 3.5 - max(1, 2)) + sqrt(h) / log(10)",
+                    "a", "b"));
         } catch (CompileException ex) {
             throw new RuntimeException(ex);
         }
@@ -118,6 +129,18 @@ public class ZelBenchmark {
         return ZEL_PROG.execute(3, 2, " ", "bla");
     }
 
+    @Benchmark
+    public Object testZelCompiled()
+            throws ExecutionException, InterruptedException {
+        return ZEL_COMPILED_PROG.execute(3, 2, " ", "bla");
+    }
+
+    @Benchmark
+    public Object testZelConstants()
+            throws ExecutionException, InterruptedException {
+        return ZEL_CONST_PROG.execute(3, 4);
+    }
+
     @Benchmark
     public Object testGroovy() {
         Binding binding = new Binding();
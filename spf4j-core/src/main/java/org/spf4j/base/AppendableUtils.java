@@ -33,6 +33,7 @@ package org.spf4j.base;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.CharBuffer;
 import javax.annotation.Nonnull;
 
@@ -226,6 +227,39 @@ public final class AppendableUtils {
     sb.append(buf, charPos, 32 - charPos);
   }
 
+  /**
+   * Append the decimal representation of a long, without creating a intermediary String.
+   * @param to the appendable to write to.
+   * @param nr the number to write.
+   */
+  public static void appendLong(final Appendable to, final long nr) throws IOException {
+    if (to instanceof StringBuilder) {
+      ((StringBuilder) to).append(nr);
+      return;
+    }
+    if (nr == Long.MIN_VALUE) {
+      to.append("-9223372036854775808");
+      return;
+    }
+    char[] buf = BUFF.get();
+    int charPos = 20;
+    long i = nr < 0 ? -nr : nr;
+    do {
+      buf[--charPos] = DIGITS[(int) (i % 10)];
+      i /= 10;
+    } while (i != 0);
+    if (nr < 0) {
+      buf[--charPos] = '-';
+    }
+    if (to instanceof Writer) {
+      ((Writer) to).write(buf, charPos, 20 - charPos);
+    } else {
+      for (int j = charPos; j < 20; j++) {
+        to.append(buf[j]);
+      }
+    }
+  }
+
   public static void appendSpaces(final Appendable to, final int nrSpaces) throws IOException {
     for (int i = 0; i < nrSpaces; i++) {
       to.append(' ');
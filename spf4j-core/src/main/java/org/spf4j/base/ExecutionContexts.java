@@ -73,14 +73,17 @@ public final class ExecutionContexts {
         throw new ExceptionInInitializerError(ex);
       }
     }
-    String factoryWrapperClass = System.getProperty("spf4j.execContentFactoryWrapperClass");
-    if (factoryWrapperClass != null) {
-      try {
-        factory = (ExecutionContextFactory<ExecutionContext>) Class.forName(factoryWrapperClass)
-                .getConstructor(ExecutionContextFactory.class).newInstance(factory);
-      } catch (ClassNotFoundException | InstantiationException | IllegalAccessException
-              | NoSuchMethodException | InvocationTargetException ex) {
-        throw new ExceptionInInitializerError(ex);
+    // a comma separated list of wrappers, applied in order.
+    String factoryWrapperClasses = System.getProperty("spf4j.execContentFactoryWrapperClass");
+    if (factoryWrapperClasses != null) {
+      for (String factoryWrapperClass : factoryWrapperClasses.split(",")) {
+        try {
+          factory = (ExecutionContextFactory<ExecutionContext>) Class.forName(factoryWrapperClass.trim())
+                  .getConstructor(ExecutionContextFactory.class).newInstance(factory);
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException
+                | NoSuchMethodException | InvocationTargetException ex) {
+          throw new ExceptionInInitializerError(ex);
+        }
       }
     }
     return factory;
@@ -36,6 +36,7 @@ import gnu.trove.set.hash.THashSet;
 import java.io.IOException;
 import java.util.Set;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.spf4j.io.ObjectAppenderSupplier;
 
 /**
@@ -142,7 +143,8 @@ public final class Slf4jMessageFormatter {
   }
 
   /**
-   * Slf4j message formatter.
+   * Slf4j message formatter. If the pattern has been compiled via {@link Slf4jMessageTemplate#of(String)},
+   * the cached template is used, otherwise the pattern is interpreted and not cached.
    *
    * @param safe - if true recoverable exHandle will be caught when writing arguments, and a error will be appended
  instead.
@@ -158,6 +160,10 @@ public final class Slf4jMessageFormatter {
           @Nonnull final Appendable to, @Nonnull final String messagePattern,
           @Nonnull final ObjectAppenderSupplier appSupplier, final Object... argArray)
           throws IOException {
+    Slf4jMessageTemplate template = Slf4jMessageTemplate.getIfCached(messagePattern);
+    if (template != null) {
+      return template.format(exHandler, firstArgIdx, to, appSupplier, argArray);
+    }
     int i = 0;
     final int len = argArray.length;
     int k = firstArgIdx;
@@ -178,13 +184,13 @@ public final class Slf4jMessageFormatter {
             // itself escaped: "abc x:\\{}"
             // we have to consume one backward slash
             to.append(messagePattern, i, j - 1);
-            deeplyAppendParameter(exHandler, to, argArray[k], new THashSet<>(), appSupplier);
+            deeplyAppendParameter(exHandler, to, argArray[k], null, appSupplier);
             i = j + 2;
           }
         } else {
           // normal case
           to.append(messagePattern, i, j);
-          deeplyAppendParameter(exHandler, to, argArray[k], new THashSet<>(), appSupplier);
+          deeplyAppendParameter(exHandler, to, argArray[k], null, appSupplier);
           i = j + 2;
         }
       }
@@ -207,8 +213,8 @@ public final class Slf4jMessageFormatter {
 
   // special treatment of array values was suggested by 'lizongbo'
   @SuppressFBWarnings("ITC_INHERITANCE_TYPE_CHECKING")
-  private static void deeplyAppendParameter(final ErrorHandler exHandler, final Appendable sbuf, final Object o,
-          final Set<Object[]> seen, final ObjectAppenderSupplier appSupplier) throws IOException {
+  static void deeplyAppendParameter(final ErrorHandler exHandler, final Appendable sbuf, final Object o,
+          @Nullable final Set<Object[]> seen, final ObjectAppenderSupplier appSupplier) throws IOException {
     if (o == null) {
       sbuf.append("null");
       return;
@@ -253,9 +259,10 @@ public final class Slf4jMessageFormatter {
 
   @SuppressFBWarnings("ABC_ARRAY_BASED_COLLECTIONS")
   private static void objectArrayAppend(final ErrorHandler exHandler, final Appendable sbuf,
-          final Object[] a, final Set<Object[]> seen,
+          final Object[] a, @Nullable final Set<Object[]> pseen,
           final ObjectAppenderSupplier appSupplier) throws IOException {
     sbuf.append('[');
+    Set<Object[]> seen = pseen == null ? new THashSet<>() : pseen;
     if (seen.add(a)) {
       final int len = a.length;
       if (len > 0) {
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.base;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import org.spf4j.io.ConfigurableAppenderSupplier;
+import org.spf4j.io.ObjectAppender;
+import org.spf4j.io.ObjectAppenderSupplier;
+
+/**
+ * A slf4j message pattern (see {@link Slf4jMessageFormatter}) parsed once into a plan of literal char ranges and
+ * argument slots. Every argument slot caches the last ObjectAppender resolved from a ConfigurableAppenderSupplier
+ * (invalidated when the supplier registrations change), so formatting the same argument types
+ * will not go to the type map lookup for every invocation.
+ *
+ * Compiled templates obtained via {@link #of(String)} are cached in a bounded map, the size of which can be configured
+ * via spf4j.slf4jMessageTemplate.cacheSize (default 2048). {@link Slf4jMessageFormatter} uses a template only if it
+ * is already cached, patterns are never added to the cache implicitly, so one-off or dynamically built patterns
+ * will not churn it. Obtain frequently used templates via {@link #of(String)} to have them compiled.
+ *
+ * @author Zoltan Farkas
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+@SuppressFBWarnings("PL_PARALLEL_LISTS") // flat arrays on purpose, this is the formatting hot path.
+public final class Slf4jMessageTemplate {
+
+  private static final LoadingCache<String, Slf4jMessageTemplate> CACHE = CacheBuilder.newBuilder()
+          .maximumSize(Integer.getInteger("spf4j.slf4jMessageTemplate.cacheSize", 2048))
+          .concurrencyLevel(8)
+          .build(CacheLoader.from(Slf4jMessageTemplate::compile));
+
+  private static final String DELIM_STR = "{}";
+  private static final char DELIM_START = '{';
+  private static final char ESCAPE_CHAR = '\\';
+
+  private final String pattern;
+
+  /** segment i: pattern[literalStarts[i], literalEnds[i]) followed by a argument or a escaped '{'. */
+  private final int[] literalStarts;
+  private final int[] literalEnds;
+  /** where the literal continues after segment i. */
+  private final int[] nexts;
+  /** the appender cache for argument segments, null for escaped delimiter segments. */
+  private final AppenderCache[] argSlots;
+
+  private Slf4jMessageTemplate(final String pattern, final int[] literalStarts, final int[] literalEnds,
+          final int[] nexts, final AppenderCache[] argSlots) {
+    this.pattern = pattern;
+    this.literalStarts = literalStarts;
+    this.literalEnds = literalEnds;
+    this.nexts = nexts;
+    this.argSlots = argSlots;
+  }
+
+  /**
+   * @return the compiled template from the template cache.
+   */
+  public static Slf4jMessageTemplate of(final String pattern) {
+    return CACHE.getUnchecked(pattern);
+  }
+
+  /**
+   * @return the compiled template if the pattern is in the template cache, null otherwise.
+   */
+  @Nullable
+  public static Slf4jMessageTemplate getIfCached(final String pattern) {
+    return CACHE.getIfPresent(pattern);
+  }
+
+  /**
+   * @return a new compiled template (not cached).
+   */
+  public static Slf4jMessageTemplate compile(final String pattern) {
+    int nrSegments = 0;
+    int i = 0;
+    int j = pattern.indexOf(DELIM_STR, i);
+    while (j >= 0) {
+      nrSegments++;
+      j = pattern.indexOf(DELIM_STR, j + 1);
+    }
+    int[] literalStarts = new int[nrSegments];
+    int[] literalEnds = new int[nrSegments];
+    int[] nexts = new int[nrSegments];
+    AppenderCache[] argSlots = new AppenderCache[nrSegments];
+    int s = 0;
+    i = 0;
+    while (true) {
+      j = pattern.indexOf(DELIM_STR, i);
+      if (j < 0) {
+        break;
+      }
+      literalStarts[s] = i;
+      if (j > 0 && pattern.charAt(j - 1) == ESCAPE_CHAR) {
+        literalEnds[s] = j - 1;
+        if (j >= 2 && pattern.charAt(j - 2) == ESCAPE_CHAR) {
+          // double escaped, consume one backslash, and the argument.
+          nexts[s] = j + 2;
+          argSlots[s] = new AppenderCache();
+        } else {
+          nexts[s] = j + 1;
+        }
+      } else {
+        literalEnds[s] = j;
+        nexts[s] = j + 2;
+        argSlots[s] = new AppenderCache();
+      }
+      i = nexts[s];
+      s++;
+    }
+    if (s < nrSegments) {
+      literalStarts = Arrays.copyOf(literalStarts, s);
+      literalEnds = Arrays.copyOf(literalEnds, s);
+      nexts = Arrays.copyOf(nexts, s);
+      argSlots = Arrays.copyOf(argSlots, s);
+    }
+    return new Slf4jMessageTemplate(pattern, literalStarts, literalEnds, nexts, argSlots);
+  }
+
+  public String getPattern() {
+    return pattern;
+  }
+
+  /**
+   * Format the arguments with this template, equivalent to
+   * {@link Slf4jMessageFormatter#format(org.spf4j.base.Slf4jMessageFormatter.ErrorHandler, int, java.lang.Appendable,
+   * java.lang.String, org.spf4j.io.ObjectAppenderSupplier, java.lang.Object...)}.
+   *
+   * @return the index of the last arguments used in the message + 1.
+   */
+  public int format(final Slf4jMessageFormatter.ErrorHandler exHandler, final int firstArgIdx,
+          @Nonnull final Appendable to, @Nonnull final ObjectAppenderSupplier appSupplier, final Object... argArray)
+          throws IOException {
+    final int len = argArray.length;
+    int k = firstArgIdx;
+    int i = 0;
+    for (int s = 0; s < argSlots.length && k < len; s++) {
+      to.append(pattern, literalStarts[s], literalEnds[s]);
+      AppenderCache slot = argSlots[s];
+      if (slot == null) {
+        to.append(DELIM_START);
+      } else {
+        slot.append(exHandler, to, argArray[k++], appSupplier);
+      }
+      i = nexts[s];
+    }
+    to.append(pattern, i, pattern.length());
+    return k;
+  }
+
+  public int format(final Appendable to, final ObjectAppenderSupplier appSupplier, final Object... argArray)
+          throws IOException {
+    return format(Slf4jMessageFormatter::exHandle, 0, to, appSupplier, argArray);
+  }
+
+  @Override
+  public String toString() {
+    return "Slf4jMessageTemplate{" + "pattern=" + pattern + '}';
+  }
+
+  /**
+   * Monomorphic appender cache, the state is published via a immutable object.
+   */
+  private static final class AppenderCache {
+
+    private volatile CachedAppender cached;
+
+    @SuppressWarnings("unchecked")
+    void append(final Slf4jMessageFormatter.ErrorHandler exHandler, final Appendable to, final Object obj,
+            final ObjectAppenderSupplier appSupplier) throws IOException {
+      if (obj == null) {
+        to.append("null");
+        return;
+      }
+      Class<?> clasz = obj.getClass();
+      if (clasz.isArray()) {
+        Slf4jMessageFormatter.deeplyAppendParameter(exHandler, to, obj, null, appSupplier);
+        return;
+      }
+      try {
+        getAppender(clasz, appSupplier).append(obj, to);
+      } catch (IOException | RuntimeException | StackOverflowError t) {
+        exHandler.accept(obj, to, t);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ObjectAppender getAppender(final Class<?> clasz, final ObjectAppenderSupplier appSupplier) {
+      if (appSupplier instanceof ConfigurableAppenderSupplier) {
+        int version = ((ConfigurableAppenderSupplier) appSupplier).getVersion();
+        CachedAppender c = cached;
+        if (c != null && c.clasz == clasz && c.supplier == appSupplier && c.version == version) {
+          return c.appender;
+        } else {
+          ObjectAppender appender = appSupplier.get((Class) clasz);
+          cached = new CachedAppender(clasz, appSupplier, version, appender);
+          return appender;
+        }
+      } else {
+        return appSupplier.get((Class) clasz);
+      }
+    }
+  }
+
+  private static final class CachedAppender {
+
+    private final Class<?> clasz;
+    private final ObjectAppenderSupplier supplier;
+    private final int version;
+    private final ObjectAppender appender;
+
+    CachedAppender(final Class<?> clasz, final ObjectAppenderSupplier supplier, final int version,
+            final ObjectAppender appender) {
+      this.clasz = clasz;
+      this.supplier = supplier;
+      this.version = version;
+      this.appender = appender;
+    }
+  }
+
+}
@@ -38,6 +38,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.Iterator;
 import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import javax.activation.MimeType;
@@ -59,6 +60,11 @@ public final class ConfigurableAppenderSupplier implements ObjectAppenderSupplie
 
   private final CachingTypeMapWrapper<ObjectAppender> appenderMap;
 
+  /**
+   * incremented on every registration change, allows users to cache the looked up appenders.
+   */
+  private final AtomicInteger version = new AtomicInteger();
+
   public ConfigurableAppenderSupplier() {
     this(true, (t) -> false);
   }
@@ -122,6 +128,7 @@ public final class ConfigurableAppenderSupplier implements ObjectAppenderSupplie
   public <T> void replace(final Class<T> type,
           final Function<ObjectAppender<? super T>, ObjectAppender<? super T>> replace) {
     appenderMap.replace(type, (Function) replace);
+    version.incrementAndGet();
   }
 
   public <T> void register(final Class<T> type, final ObjectAppender<? super T> appender) {
@@ -132,7 +139,11 @@ public final class ConfigurableAppenderSupplier implements ObjectAppenderSupplie
 
   @CheckReturnValue
   public <T> boolean tryRegister(final Class<T> type, final ObjectAppender<? super T> appender) {
-    return appenderMap.putIfNotPresent(type, appender);
+    if (appenderMap.putIfNotPresent(type, appender)) {
+      version.incrementAndGet();
+      return true;
+    }
+    return false;
   }
 
   public <T> void register(final Class<T> type, final MimeType contentType,
@@ -145,12 +156,28 @@ public final class ConfigurableAppenderSupplier implements ObjectAppenderSupplie
   @CheckReturnValue
   public <T> boolean tryRegister(final Class<T> type, final MimeType contentType,
           final ObjectAppender<? super T> appender) {
-    return appenderMap.putIfNotPresent(type, new ObjectAppenderContentTypeAdapter(appender, contentType));
+    if (appenderMap.putIfNotPresent(type, new ObjectAppenderContentTypeAdapter(appender, contentType))) {
+      version.incrementAndGet();
+      return true;
+    }
+    return false;
   }
 
 
   public boolean unregister(final Class<?> type) {
-    return appenderMap.remove(type);
+    if (appenderMap.remove(type)) {
+      version.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the registration version, the appender returned by get for a type will not change
+   * while the version stays the same.
+   */
+  public int getVersion() {
+    return version.get();
   }
 
   @Override
@@ -31,20 +31,84 @@
  */
 package org.spf4j.io;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 import java.util.zip.Checksum;
+import org.spf4j.base.Throwables;
+import org.spf4j.recyclable.impl.ArraySuppliers;
 
 /**
  * A pure-java implementation of the CRC32 checksum that uses the CRC32-C polynomial, the same polynomial used by iSCSI
  * and implemented on many Intel chipsets supporting SSE4.2.
+ *
+ * On Java 9+ the JDK java.util.zip.CRC32C is intrinsified; use {@link #newChecksum()} to get the fastest
+ * implementation available on the running JVM, and {@link #update(java.util.zip.Checksum, java.nio.ByteBuffer)}
+ * for ByteBuffer (including direct) updates. Partial checksums computed in parallel can be merged with
+ * {@link #combine(long, long, long)}.
  */
 // this code was taken from Apache Hadoop
 // THis implementatioin is about 15% slower than the JDK implementation.
 // see JMH benchmark project for detail.
+@SuppressFBWarnings("FII_USE_METHOD_REFERENCE") // the JDK CRC32C factory lambda needs to handle Throwable.
 public final class Crc32C
         implements Checksum {
 
   private static final int MASK_DELTA = 0xa282ead8;
 
+  /** reversed CRC32-C polynomial. */
+  private static final long POLY = 0x82F63B78L;
+
+  private static final int CHUNK_SIZE = 8192;
+
+  private static final Supplier<Checksum> FACTORY;
+
+  /** the JDK 9+ Checksum.update(ByteBuffer) method, null when not available. */
+  private static final MethodHandle BB_UPDATE;
+
+  static {
+    MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+    Supplier<Checksum> factory;
+    try {
+      MethodHandle ctor = lookup.findConstructor(Class.forName("java.util.zip.CRC32C"),
+              MethodType.methodType(void.class)).asType(MethodType.methodType(Checksum.class));
+      factory = () -> {
+        try {
+          return (Checksum) ctor.invokeExact();
+        } catch (RuntimeException | Error ex) {
+          throw ex;
+        } catch (Throwable ex) {
+          throw new IllegalStateException(ex);
+        }
+      };
+    } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException ex) {
+      factory = Crc32C::new;
+    }
+    FACTORY = factory;
+    MethodHandle bbUpdate;
+    try {
+      bbUpdate = lookup.findVirtual(Checksum.class, "update",
+              MethodType.methodType(void.class, ByteBuffer.class));
+    } catch (NoSuchMethodException | IllegalAccessException ex) {
+      bbUpdate = null;
+    }
+    BB_UPDATE = bbUpdate;
+  }
+
 
   // CRC polynomial tables generated by:
   // java -cp build/test/classes/:build/classes/ \
@@ -589,7 +653,17 @@ public final class Crc32C
   }
 
   public static int maskedCrc32c(final byte[] data, final int offset, final int length) {
-    return mask(~Crc32C.update(0xffffffff, data, offset, length));
+    Checksum checksum = newChecksum();
+    checksum.update(data, offset, length);
+    return mask((int) checksum.getValue());
+  }
+
+  /**
+   * @return a new CRC32-C checksum, the intrinsified JDK implementation when available (Java 9+),
+   * otherwise a pure java slicing by 8 implementation (this class).
+   */
+  public static Checksum newChecksum() {
+    return FACTORY.get();
   }
 
   /**
@@ -671,6 +745,225 @@ public final class Crc32C
     crc = (crc >>> 8) ^ T8_0[(crc ^ b) & 0xff];
   }
 
+  /**
+   * Update this checksum with the remaining content of the buffer. the buffer position will be advanced to its limit.
+   * @param buffer the data.
+   */
+  public void update(final ByteBuffer buffer) {
+    crc = update(crc, buffer);
+  }
+
+  public static int update(final int pcrc, final ByteBuffer buffer) {
+    int pos = buffer.position();
+    int limit = buffer.limit();
+    if (buffer.hasArray()) {
+      int result = update(pcrc, buffer.array(), buffer.arrayOffset() + pos, limit - pos);
+      buffer.position(limit);
+      return result;
+    }
+    ByteBuffer lb = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int localCrc = pcrc;
+    int i = pos;
+    int limit8 = limit - 7;
+    while (i < limit8) {
+      long l = lb.getLong(i);
+      int lo = ((int) l) ^ localCrc;
+      int hi = (int) (l >>> 32);
+      localCrc = (T8_7[lo & 0xff] ^ T8_6[(lo >>> 8) & 0xff])
+              ^ (T8_5[(lo >>> 16) & 0xff] ^ T8_4[lo >>> 24])
+              ^ (T8_3[hi & 0xff] ^ T8_2[(hi >>> 8) & 0xff])
+              ^ (T8_1[(hi >>> 16) & 0xff] ^ T8_0[hi >>> 24]);
+      i += 8;
+    }
+    while (i < limit) {
+      localCrc = (localCrc >>> 8) ^ T8_0[(localCrc ^ lb.get(i)) & 0xff];
+      i++;
+    }
+    buffer.position(limit);
+    return localCrc;
+  }
+
+  /**
+   * Update a checksum with the remaining content of a ByteBuffer. Uses the Checksum's ByteBuffer update method
+   * when available (Java 9+) or the direct implementation in this class, otherwise the content is copied
+   * in chunks.
+   * @param checksum the checksum to update.
+   * @param buffer the data, the buffer position will be advanced to its limit.
+   */
+  public static void update(final Checksum checksum, final ByteBuffer buffer) {
+    if (checksum instanceof Crc32C) {
+      ((Crc32C) checksum).update(buffer);
+    } else if (BB_UPDATE != null) {
+      try {
+        BB_UPDATE.invokeExact(checksum, buffer);
+      } catch (RuntimeException | Error ex) {
+        throw ex;
+      } catch (Throwable ex) {
+        throw new IllegalStateException(ex);
+      }
+    } else if (buffer.hasArray()) {
+      int pos = buffer.position();
+      checksum.update(buffer.array(), buffer.arrayOffset() + pos, buffer.remaining());
+      buffer.position(buffer.limit());
+    } else {
+      byte[] chunk = new byte[Math.min(CHUNK_SIZE, buffer.remaining())];
+      while (buffer.hasRemaining()) {
+        int n = Math.min(chunk.length, buffer.remaining());
+        buffer.get(chunk, 0, n);
+        checksum.update(chunk, 0, n);
+      }
+    }
+  }
+
+  /**
+   * Combine two CRC32-C values, crc1 of data1 and crc2 of data2 into the crc of data1 + data2.
+   * (based on the zlib crc32_combine algorithm)
+   * @param crc1 the checksum value (as returned by getValue) of the first block.
+   * @param crc2 the checksum value of the second block.
+   * @param len2 the length of the second block.
+   * @return the checksum of the concatenated blocks.
+   */
+  public static long combine(final long crc1, final long crc2, final long len2) {
+    if (len2 <= 0) {
+      return crc1;
+    }
+    long[] even = new long[32];
+    long[] odd = new long[32];
+    // operator for one zero bit in odd
+    odd[0] = POLY;
+    long row = 1;
+    for (int n = 1; n < 32; n++) {
+      odd[n] = row;
+      row <<= 1;
+    }
+    // operator for two zero bits in even
+    gf2MatrixSquare(even, odd);
+    // operator for four zero bits in odd
+    gf2MatrixSquare(odd, even);
+    long result = crc1;
+    long len = len2;
+    do {
+      // apply zeros operator for this bit of len2
+      gf2MatrixSquare(even, odd);
+      if ((len & 1) != 0) {
+        result = gf2MatrixTimes(even, result);
+      }
+      len >>= 1;
+      if (len == 0) {
+        break;
+      }
+      gf2MatrixSquare(odd, even);
+      if ((len & 1) != 0) {
+        result = gf2MatrixTimes(odd, result);
+      }
+      len >>= 1;
+    } while (len != 0);
+    return result ^ crc2;
+  }
+
+  private static long gf2MatrixTimes(final long[] mat, final long pvec) {
+    long sum = 0;
+    long vec = pvec;
+    int i = 0;
+    while (vec != 0) {
+      if ((vec & 1) != 0) {
+        sum ^= mat[i];
+      }
+      vec >>>= 1;
+      i++;
+    }
+    return sum;
+  }
+
+  private static void gf2MatrixSquare(final long[] square, final long[] mat) {
+    for (int n = 0; n < 32; n++) {
+      square[n] = gf2MatrixTimes(mat, mat[n]);
+    }
+  }
+
+  /**
+   * Compute the CRC32-C of a file region.
+   * @param ch the file channel.
+   * @param from the region start.
+   * @param length the region length.
+   * @return the checksum value.
+   */
+  public static long checksum(final FileChannel ch, final long from, final long length) throws IOException {
+    Checksum checksum = newChecksum();
+    byte[] array = ArraySuppliers.Bytes.TL_SUPPLIER.get((int) Math.min(length, 65536));
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(array);
+      long pos = from;
+      long end = from + length;
+      while (pos < end) {
+        buffer.clear();
+        buffer.limit((int) Math.min(array.length, end - pos));
+        int read = ch.read(buffer, pos);
+        if (read < 0) {
+          throw new IOException("Unexpected end of file at " + pos + ", expected " + end);
+        }
+        checksum.update(array, 0, read);
+        pos += read;
+      }
+    } finally {
+      ArraySuppliers.Bytes.TL_SUPPLIER.recycle(array);
+    }
+    return checksum.getValue();
+  }
+
+  /**
+   * Compute the CRC32-C of a file, by checksumming chunks in parallel (in the common ForkJoinPool)
+   * and combining the partial checksums.
+   * @param file the file.
+   * @param chunkSize the chunk size.
+   * @return the checksum value.
+   */
+  public static long checksum(final Path file, final long chunkSize) throws IOException {
+    return checksum(file, chunkSize, ForkJoinPool.commonPool());
+  }
+
+  public static long checksum(final Path file, final long chunkSize, final Executor exec) throws IOException {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+    }
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      final long size = ch.size();
+      if (size <= chunkSize) {
+        return checksum(ch, 0, size);
+      }
+      List<CompletableFuture<Long>> parts = new ArrayList<>((int) (size / chunkSize) + 1);
+      for (long from = 0; from < size; from += chunkSize) {
+        final long start = from;
+        final long len = Math.min(chunkSize, size - from);
+        parts.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return checksum(ch, start, len);
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        }, exec));
+      }
+      long result = 0;
+      long remaining = size;
+      for (CompletableFuture<Long> part : parts) {
+        long len = Math.min(chunkSize, remaining);
+        long partCrc;
+        try {
+          partCrc = part.join();
+        } catch (RuntimeException ex) {
+          IOException ioEx = Throwables.first(ex, IOException.class);
+          if (ioEx != null) {
+            throw ioEx;
+          }
+          throw ex;
+        }
+        result = combine(result, partCrc, len);
+        remaining -= len;
+      }
+      return result;
+    }
+  }
+
   @Override
   public String toString() {
     return "Crc32C{" + "crc=" + crc + '}';
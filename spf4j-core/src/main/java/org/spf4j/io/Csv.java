@@ -38,12 +38,16 @@ import java.io.Reader;
 import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.ParametersAreNonnullByDefault;
 import org.spf4j.base.CharSequences;
 import org.spf4j.io.csv.CharSeparatedValues;
+import org.spf4j.io.csv.CsvBlockReader;
 import org.spf4j.io.csv.CsvParseException;
 import org.spf4j.io.csv.CsvReader;
 
@@ -56,7 +60,9 @@ import org.spf4j.io.csv.CsvReader;
  * @author zoly
  */
 @ParametersAreNonnullByDefault
-@SuppressFBWarnings("NP_LOAD_OF_KNOWN_NULL_VALUE") // FB gets it wrong here
+@SuppressFBWarnings(value = {"NP_LOAD_OF_KNOWN_NULL_VALUE", "FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY"},
+        justification = "FB gets NP wrong here; the cycle Csv -> CharSeparatedValues -> Pair -> Csv is benign,"
+                + " Pair only uses Csv to write itself")
 public final class Csv {
 
   public static final CharSeparatedValues CSV = new CharSeparatedValues(',');
@@ -166,6 +172,21 @@ public final class Csv {
     return CSV.readerNoBOM(reader);
   }
 
+  public static CsvBlockReader blockReader(final Reader reader) {
+    return CSV.blockReader(reader);
+  }
+
+  public static <T> T readBlocks(final Reader reader, final org.spf4j.io.csv.CsvHandler<T> handler)
+          throws IOException, CsvParseException {
+    return CSV.readBlocks(reader, handler);
+  }
+
+  public static <T> List<T> readParallel(final Path file, final Charset charset, final int chunkSize,
+          final IntFunction<? extends org.spf4j.io.csv.CsvHandler<T>> handlerFactory)
+          throws IOException, CsvParseException {
+    return CSV.readParallel(file, charset, chunkSize, handlerFactory, ForkJoinPool.commonPool());
+  }
+
   public static void writeCsvElement(final CharSequence elem, final Appendable writer) throws IOException {
     if (CharSequences.containsAnyChar(elem, TO_ESCAPE)) {
       writeQuotedCsvElement(elem, writer);
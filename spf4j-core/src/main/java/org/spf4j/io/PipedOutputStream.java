@@ -59,6 +59,7 @@ import org.spf4j.recyclable.impl.ArraySuppliers;
  * Data is available to readers only after it is flushed. (happens automatically when buffer is full)
  *
  * This implementation should be slightly faster than the JDK implementation.
+ * For a single writer and a single reader {@link SpscPipedOutputStream} is a lock free, faster alternative.
  *
  * @author zoly
  */
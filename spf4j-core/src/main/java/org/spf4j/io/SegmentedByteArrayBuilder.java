@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io;
+
+import edu.umd.cs.findbugs.annotations.CleanupObligation;
+import edu.umd.cs.findbugs.annotations.DischargesObligation;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.spf4j.recyclable.SizedRecyclingSupplier;
+import org.spf4j.recyclable.impl.ArraySuppliers;
+
+/**
+ * Unsynchronized output buffer, made of a list of byte array segments borrowed from a recycling supplier.
+ * Unlike {@link ByteArrayBuilder} growth does not copy the already written content, a new segment is added
+ * instead (segment sizes double up to a max segment size).
+ * The content can be written to a channel with a gathering write, or exposed as ByteBuffer views
+ * without copying.
+ *
+ * This class is not thread safe, and is meant to be used as a scratch buffer by a single writer.
+ *
+ * @author Zoltan Farkas
+ */
+@NotThreadSafe
+@CleanupObligation
+public final class SegmentedByteArrayBuilder extends OutputStream {
+
+  private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 << 20;
+
+  private final SizedRecyclingSupplier<byte[]> arraySupplier;
+
+  private final int maxSegmentSize;
+
+  /**
+   * all segments except the last one are full.
+   */
+  private byte[][] segments;
+
+  private int nrSegments;
+
+  private byte[] current;
+
+  /**
+   * the position in the current (last) segment.
+   */
+  private int pos;
+
+  /**
+   * the number of bytes in all segments except the last one.
+   */
+  private long fullSegmentsSize;
+
+  public SegmentedByteArrayBuilder() {
+    this(256);
+  }
+
+  public SegmentedByteArrayBuilder(final int initialSize) {
+    this(initialSize, DEFAULT_MAX_SEGMENT_SIZE, ArraySuppliers.Bytes.GL_SUPPLIER);
+  }
+
+  /**
+   * @param initialSize the size of the first segment.
+   * @param maxSegmentSize the max size of a segment.
+   * @param arraySupplier the supplier the segments are borrowed from and returned to on reset and close.
+   */
+  public SegmentedByteArrayBuilder(final int initialSize, final int maxSegmentSize,
+          final SizedRecyclingSupplier<byte[]> arraySupplier) {
+    if (initialSize <= 0 || maxSegmentSize <= 0) {
+      throw new IllegalArgumentException("Invalid sizes " + initialSize + ", " + maxSegmentSize);
+    }
+    this.arraySupplier = arraySupplier;
+    this.maxSegmentSize = maxSegmentSize;
+    this.segments = new byte[8][];
+    this.current = arraySupplier.get(Math.min(initialSize, maxSegmentSize));
+    this.segments[0] = current;
+    this.nrSegments = 1;
+    this.pos = 0;
+    this.fullSegmentsSize = 0;
+  }
+
+  private void nextSegment() {
+    fullSegmentsSize += current.length;
+    int newSize = (int) Math.min((long) current.length << 1, maxSegmentSize);
+    current = arraySupplier.get(newSize);
+    if (nrSegments == segments.length) {
+      segments = Arrays.copyOf(segments, nrSegments << 1);
+    }
+    segments[nrSegments++] = current;
+    pos = 0;
+  }
+
+  @Override
+  public void write(final int b) {
+    if (pos == current.length) {
+      nextSegment();
+    }
+    current[pos++] = (byte) b;
+  }
+
+  @Override
+  public void write(final byte[] b) {
+    write(b, 0, b.length);
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len) {
+    if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) - b.length > 0)) {
+      throw new IndexOutOfBoundsException("Invalid write " + off + ", " + len + " in array of " + b.length);
+    }
+    int o = off;
+    int l = len;
+    while (l > 0) {
+      int avail = current.length - pos;
+      if (avail == 0) {
+        nextSegment();
+        avail = current.length;
+      }
+      int n = Math.min(avail, l);
+      System.arraycopy(b, o, current, pos, n);
+      pos += n;
+      o += n;
+      l -= n;
+    }
+  }
+
+  /**
+   * Write a ByteBuffer's remaining content to this buffer.
+   * @param src the source buffer, its position will be advanced to its limit.
+   */
+  public void write(final ByteBuffer src) {
+    while (src.hasRemaining()) {
+      int avail = current.length - pos;
+      if (avail == 0) {
+        nextSegment();
+        avail = current.length;
+      }
+      int n = Math.min(avail, src.remaining());
+      src.get(current, pos, n);
+      pos += n;
+    }
+  }
+
+  /**
+   * @return the number of bytes written to this buffer.
+   */
+  public long size() {
+    return fullSegmentsSize + pos;
+  }
+
+  /**
+   * @return the number of segments used.
+   */
+  public int getNrSegments() {
+    return nrSegments;
+  }
+
+  /**
+   * @return ByteBuffer views of the written content. The views are valid until the next reset or close.
+   */
+  public ByteBuffer[] toByteBuffers() {
+    final int last = nrSegments - 1;
+    ByteBuffer[] result = new ByteBuffer[nrSegments];
+    for (int i = 0; i < last; i++) {
+      byte[] segment = segments[i];
+      result[i] = ByteBuffer.wrap(segment, 0, segment.length);
+    }
+    result[last] = ByteBuffer.wrap(current, 0, pos);
+    return result;
+  }
+
+  /**
+   * Write the content of this buffer to a channel. a gathering write is used when the channel supports it.
+   * The channel must be in blocking mode, all content is written before this method returns.
+   * @param channel the channel to write to.
+   * @return the number of bytes written.
+   * @throws IOException
+   * @throws IllegalArgumentException if the channel is a selectable channel in non-blocking mode.
+   */
+  public long writeTo(final WritableByteChannel channel) throws IOException {
+    if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+      throw new IllegalArgumentException("Channel must be in blocking mode " + channel);
+    }
+    ByteBuffer[] buffers = toByteBuffers();
+    long total = size();
+    long written = 0;
+    if (channel instanceof GatheringByteChannel) {
+      GatheringByteChannel gc = (GatheringByteChannel) channel;
+      int from = 0;
+      while (written < total) {
+        written += gc.write(buffers, from, buffers.length - from);
+        while (from < buffers.length && !buffers[from].hasRemaining()) {
+          from++;
+        }
+      }
+    } else {
+      for (ByteBuffer buffer : buffers) {
+        while (buffer.hasRemaining()) {
+          written += channel.write(buffer);
+        }
+      }
+    }
+    return written;
+  }
+
+  /**
+   * Write the content of this buffer to a OutputStream.
+   * @param out the stream to write to.
+   * @throws IOException
+   */
+  public void writeTo(final OutputStream out) throws IOException {
+    final int last = nrSegments - 1;
+    for (int i = 0; i < last; i++) {
+      byte[] segment = segments[i];
+      out.write(segment, 0, segment.length);
+    }
+    out.write(current, 0, pos);
+  }
+
+  /**
+   * @return a copy of the content.
+   * @throws OutOfMemoryError if the content is larger than the maximum array size. (like ByteArrayOutputStream)
+   */
+  public byte[] toByteArray() {
+    long size = size();
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new OutOfMemoryError("Content to large for a byte array " + size);
+    }
+    byte[] result = new byte[(int) size];
+    int at = 0;
+    final int last = nrSegments - 1;
+    for (int i = 0; i < last; i++) {
+      byte[] segment = segments[i];
+      System.arraycopy(segment, 0, result, at, segment.length);
+      at += segment.length;
+    }
+    System.arraycopy(current, 0, result, at, pos);
+    return result;
+  }
+
+  public String toString(final Charset charset) {
+    if (nrSegments == 1) {
+      return new String(current, 0, pos, charset);
+    }
+    return new String(toByteArray(), charset);
+  }
+
+  /**
+   * Discard the content. The first segment is kept, the others are returned to the supplier.
+   */
+  public void reset() {
+    byte[] first = segments[0];
+    for (int i = 1; i < nrSegments; i++) {
+      arraySupplier.recycle(segments[i]);
+      segments[i] = null;
+    }
+    nrSegments = 1;
+    current = first;
+    pos = 0;
+    fullSegmentsSize = 0;
+  }
+
+  /**
+   * Returns all segments to the supplier, this buffer must not be used after close.
+   */
+  @DischargesObligation
+  @Override
+  public void close() {
+    if (current == null) {
+      return;
+    }
+    for (int i = 0; i < nrSegments; i++) {
+      arraySupplier.recycle(segments[i]);
+      segments[i] = null;
+    }
+    nrSegments = 0;
+    current = null;
+  }
+
+  @Override
+  public String toString() {
+    return "SegmentedByteArrayBuilder{" + "size=" + (current == null ? 0 : size())
+            + ", nrSegments=" + nrSegments + '}';
+  }
+
+}
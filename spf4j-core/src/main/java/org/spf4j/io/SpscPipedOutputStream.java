@@ -0,0 +1,677 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io;
+
+import edu.umd.cs.findbugs.annotations.CleanupObligation;
+import edu.umd.cs.findbugs.annotations.DischargesObligation;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nullable;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.base.TimeSource;
+import org.spf4j.recyclable.SizedRecyclingSupplier;
+import org.spf4j.recyclable.impl.ArraySuppliers;
+
+/**
+ * Single producer, single consumer piped output stream, a ring buffer based alternative to
+ * {@link PipedOutputStream}, for the (most common) case where one thread writes and one thread reads.
+ *
+ * No locks are used: the reader and writer sequences are kept in padded slots, written data is published to the
+ * reader in batches (on flush, when the unpublished data exceeds a quarter of the buffer, or when the buffer is full),
+ * and waiting is done by spinning, then yielding, then parking.
+ * Timeouts have the same semantics as in {@link PipedOutputStream} (ExecutionContext deadline or global deadline).
+ *
+ * The buffer can optionally be a direct ByteBuffer, in which case transfers from/to channels
+ * ({@link #transferFrom(java.nio.channels.ReadableByteChannel)},
+ * {@link SpscPipedInputStream#transferTo(java.nio.channels.WritableByteChannel)}) avoid intermediate copies.
+ *
+ * All write methods, flush and close must be invoked by the producer thread. close(Exception) can be
+ * invoked by the consumer to make the producer fail.
+ *
+ * @author Zoltan Farkas
+ */
+@CleanupObligation
+public final class SpscPipedOutputStream extends OutputStream {
+
+  /** 128 bytes between the sequences to avoid false sharing. */
+  private static final int PAD = 16;
+
+  private static final int HEAD = PAD;
+
+  private static final int TAIL = 2 * PAD;
+
+  private static final int SPIN_TRIES = Integer.getInteger("spf4j.spscPipe.spinTries", 1024);
+
+  private static final int YIELD_TRIES = Integer.getInteger("spf4j.spscPipe.yieldTries", 64);
+
+  private static final long MAX_PARK_NANOS = Long.getLong("spf4j.spscPipe.maxParkNanos", 10_000_000L);
+
+  private static final int WRITER_CLOSED = 1;
+
+  private static final int WRITER_RELEASED = 2;
+
+  private static final int READER_CLOSED = 4;
+
+  private final AtomicLongArray seqs = new AtomicLongArray(3 * PAD);
+
+  private final AtomicInteger state = new AtomicInteger();
+
+  private final AtomicBoolean readerCreated = new AtomicBoolean();
+
+  /** heap buffer, null when the ring is direct. */
+  @Nullable
+  private final byte[] array;
+
+  private final ByteBuffer writerView;
+
+  private final ByteBuffer ring;
+
+  private final int capacity;
+
+  private final int mask;
+
+  private final int publishThreshold;
+
+  @Nullable
+  private final SizedRecyclingSupplier<byte[]> bufferProvider;
+
+  @Nullable
+  private final Long globalDeadlineNanos;
+
+  private volatile Thread parkedReader;
+
+  private volatile Thread parkedWriter;
+
+  private volatile Exception closedException;
+
+  /** producer owned. */
+  private long writeSeq;
+
+  /** producer owned. */
+  private long publishedSeq;
+
+  /** producer owned. */
+  private long cachedHead;
+
+  public SpscPipedOutputStream() {
+    this(8192);
+  }
+
+  public SpscPipedOutputStream(final int bufferSize) {
+    this(null, bufferSize, ArraySuppliers.Bytes.JAVA_NEW);
+  }
+
+  /**
+   * Create a pipe backed by a heap buffer.
+   * @param globalDeadlineNanos the deadline relative to System.nanoTime(), null to use the ExecutionContext deadline.
+   * @param bufferSize the buffer size in bytes, rounded up to a power of 2.
+   * @param bufferProvider a buffer provider. (to allow more efficient recycling)
+   */
+  public SpscPipedOutputStream(@Nullable final Long globalDeadlineNanos, final int bufferSize,
+          final SizedRecyclingSupplier<byte[]> bufferProvider) {
+    this.capacity = ringSize(bufferSize);
+    this.bufferProvider = bufferProvider;
+    this.array = bufferProvider.get(capacity);
+    this.ring = ByteBuffer.wrap(array, 0, capacity);
+    this.writerView = ring.duplicate();
+    this.mask = capacity - 1;
+    this.publishThreshold = Math.max(1, capacity >>> 2);
+    this.globalDeadlineNanos = globalDeadlineNanos;
+  }
+
+  /**
+   * Create a pipe backed by a direct buffer.
+   * @param globalDeadlineNanos the deadline relative to System.nanoTime(), null to use the ExecutionContext deadline.
+   * @param bufferSize the buffer size in bytes, rounded up to a power of 2.
+   * @param direct if true a direct buffer will be used, otherwise a heap buffer.
+   */
+  public SpscPipedOutputStream(@Nullable final Long globalDeadlineNanos, final int bufferSize, final boolean direct) {
+    this.capacity = ringSize(bufferSize);
+    this.bufferProvider = null;
+    if (direct) {
+      this.array = null;
+      this.ring = ByteBuffer.allocateDirect(capacity);
+    } else {
+      this.array = new byte[capacity];
+      this.ring = ByteBuffer.wrap(array);
+    }
+    this.writerView = ring.duplicate();
+    this.mask = capacity - 1;
+    this.publishThreshold = Math.max(1, capacity >>> 2);
+    this.globalDeadlineNanos = globalDeadlineNanos;
+  }
+
+  private static int ringSize(final int bufferSize) {
+    if (bufferSize < 2 || bufferSize > (1 << 30)) {
+      throw new IllegalArgumentException("Illegal buffer size " + bufferSize);
+    }
+    return Integer.highestOneBit(bufferSize - 1) << 1;
+  }
+
+  public long getNanoDeadline() {
+    if (globalDeadlineNanos == null) {
+      return ExecutionContexts.getContextDeadlineNanos();
+    } else {
+      return globalDeadlineNanos;
+    }
+  }
+
+  public boolean isDirect() {
+    return array == null;
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    if (writeSeq - cachedHead >= capacity) {
+      awaitFree(getNanoDeadline());
+    } else {
+      checkWritable();
+    }
+    int idx = (int) writeSeq & mask;
+    if (array != null) {
+      array[idx] = (byte) b;
+    } else {
+      ring.put(idx, (byte) b);
+    }
+    writeSeq++;
+    if (writeSeq - publishedSeq >= publishThreshold) {
+      publish();
+    }
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len) throws IOException {
+    writeUntil(b, off, len, getNanoDeadline());
+  }
+
+  public void writeUntil(final byte[] b, final int off, final int len, final long deadline) throws IOException {
+    if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) - b.length > 0)) {
+      throw new IndexOutOfBoundsException("Invalid write " + off + ", " + len + " in array of " + b.length);
+    }
+    checkWritable();
+    int o = off;
+    int l = len;
+    while (l > 0) {
+      int n = Math.min(awaitFree(deadline), l);
+      int idx = (int) writeSeq & mask;
+      int toEnd = Math.min(n, capacity - idx);
+      copyIn(b, o, idx, toEnd);
+      if (n > toEnd) {
+        copyIn(b, o + toEnd, 0, n - toEnd);
+      }
+      writeSeq += n;
+      o += n;
+      l -= n;
+      if (writeSeq - publishedSeq >= publishThreshold) {
+        publish();
+      }
+    }
+  }
+
+  /**
+   * Write the remaining content of a ByteBuffer to this pipe.
+   * @param src the source buffer.
+   */
+  public void write(final ByteBuffer src) throws IOException {
+    checkWritable();
+    long deadline = getNanoDeadline();
+    while (src.hasRemaining()) {
+      int n = Math.min(awaitFree(deadline), src.remaining());
+      int idx = (int) writeSeq & mask;
+      int toEnd = Math.min(n, capacity - idx);
+      copyIn(src, idx, toEnd);
+      if (n > toEnd) {
+        copyIn(src, 0, n - toEnd);
+      }
+      writeSeq += n;
+      if (writeSeq - publishedSeq >= publishThreshold) {
+        publish();
+      }
+    }
+  }
+
+  /**
+   * Read all content from a channel into this pipe. (until the channel reaches EOF)
+   * @param channel the channel to read from, must be in blocking mode.
+   * @return the number of bytes transferred.
+   * @throws IllegalArgumentException if the channel is a selectable channel in non-blocking mode.
+   */
+  public long transferFrom(final ReadableByteChannel channel) throws IOException {
+    checkBlocking(channel);
+    checkWritable();
+    long deadline = getNanoDeadline();
+    ByteBuffer view = writerView;
+    long total = 0;
+    while (true) {
+      int n = awaitFree(deadline);
+      int idx = (int) writeSeq & mask;
+      view.limit(idx + Math.min(n, capacity - idx));
+      view.position(idx);
+      int read = channel.read(view);
+      if (read < 0) {
+        return total;
+      }
+      writeSeq += read;
+      total += read;
+      if (writeSeq - publishedSeq >= publishThreshold) {
+        publish();
+      }
+    }
+  }
+
+  private static void checkBlocking(final Channel channel) {
+    if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+      throw new IllegalArgumentException("Channel must be in blocking mode " + channel);
+    }
+  }
+
+  private void copyIn(final byte[] b, final int off, final int idx, final int len) {
+    if (array != null) {
+      System.arraycopy(b, off, array, idx, len);
+    } else {
+      ByteBuffer view = writerView;
+      view.limit(idx + len);
+      view.position(idx);
+      view.put(b, off, len);
+    }
+  }
+
+  private void copyIn(final ByteBuffer src, final int idx, final int len) {
+    int srcLimit = src.limit();
+    src.limit(src.position() + len);
+    if (array != null) {
+      src.get(array, idx, len);
+    } else {
+      ByteBuffer view = writerView;
+      view.limit(idx + len);
+      view.position(idx);
+      view.put(src);
+    }
+    src.limit(srcLimit);
+  }
+
+  private void checkWritable() throws IOException {
+    int st = state.get();
+    if ((st & WRITER_CLOSED) != 0) {
+      throw new IOException("Cannot write, stream closed " + this, closedException);
+    }
+    if ((st & READER_CLOSED) != 0) {
+      throw new IOException("Cannot write, reader closed " + this, closedException);
+    }
+  }
+
+  /**
+   * @return the number of bytes that can be written without blocking. (at least 1)
+   */
+  @SuppressFBWarnings("MDM_THREAD_YIELD") // spin, yield, then park back-off.
+  private int awaitFree(final long deadline) throws IOException {
+    int free = capacity - (int) (writeSeq - cachedHead);
+    if (free > 0) {
+      return free;
+    }
+    cachedHead = seqs.get(HEAD);
+    free = capacity - (int) (writeSeq - cachedHead);
+    if (free > 0) {
+      return free;
+    }
+    // buffer full, make everything available to the reader.
+    publish();
+    int tries = 0;
+    while (true) {
+      checkWritable();
+      cachedHead = seqs.get(HEAD);
+      free = capacity - (int) (writeSeq - cachedHead);
+      if (free > 0) {
+        return free;
+      }
+      if (tries < SPIN_TRIES) {
+        tries++;
+      } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+        tries++;
+        Thread.yield();
+      } else {
+        long timeToWait = deadline - TimeSource.nanoTime();
+        if (timeToWait <= 0) {
+          throw new IOTimeoutException(deadline, -timeToWait);
+        }
+        parkedWriter = Thread.currentThread();
+        try {
+          if (seqs.get(HEAD) == cachedHead && (state.get() & (WRITER_CLOSED | READER_CLOSED)) == 0) {
+            LockSupport.parkNanos(this, Math.min(timeToWait, MAX_PARK_NANOS));
+          }
+        } finally {
+          parkedWriter = null;
+        }
+        if (Thread.interrupted()) {
+          throw new IOException("Interrupted while writing to " + this);
+        }
+      }
+    }
+  }
+
+  private void publish() {
+    if (writeSeq != publishedSeq) {
+      publishedSeq = writeSeq;
+      seqs.set(TAIL, writeSeq);
+      Thread reader = parkedReader;
+      if (reader != null) {
+        LockSupport.unpark(reader);
+      }
+    }
+  }
+
+  /**
+   * Make all written data available to the reader.
+   */
+  @Override
+  public void flush() {
+    publish();
+  }
+
+  @Override
+  @DischargesObligation
+  public void close() {
+    publish();
+    closeState(WRITER_CLOSED | WRITER_RELEASED);
+  }
+
+  /**
+   * Close this piped output stream, and provide a exception reason.
+   * Designed to be invoked by the consumer to propagate exception details to the producer.
+   * The reader will not see a normal EOF either, after the already written data is consumed
+   * reads will fail with a IOException caused by ex.
+   * @param ex the exception to use as root cause for subsequent write and read failures.
+   */
+  public void close(final Exception ex) {
+    Exception prev = closedException;
+    if (prev != null) {
+      ex.addSuppressed(prev);
+    }
+    closedException = ex;
+    closeState(WRITER_CLOSED);
+  }
+
+  private void closeState(final int bits) {
+    int prev;
+    int next;
+    do {
+      prev = state.get();
+      next = prev | bits;
+    } while (prev != next && !state.compareAndSet(prev, next));
+    if (prev != next && next == (WRITER_CLOSED | WRITER_RELEASED | READER_CLOSED)
+            && bufferProvider != null && array != null) {
+      bufferProvider.recycle(array);
+    }
+    Thread t = parkedReader;
+    if (t != null) {
+      LockSupport.unpark(t);
+    }
+    t = parkedWriter;
+    if (t != null) {
+      LockSupport.unpark(t);
+    }
+  }
+
+  /**
+   * @return the input stream of this pipe. Only one input stream can be created for this pipe.
+   */
+  public InputStream getInputStream() {
+    if (!readerCreated.compareAndSet(false, true)) {
+      throw new IllegalStateException("Single consumer pipe, input stream already created for " + this);
+    }
+    return new SpscPipedInputStream();
+  }
+
+  @Override
+  public String toString() {
+    return "SpscPipedOutputStream{capacity=" + capacity + ", direct=" + (array == null)
+            + ", head=" + seqs.get(HEAD) + ", tail=" + seqs.get(TAIL) + ", state=" + state.get() + '}';
+  }
+
+  public final class SpscPipedInputStream extends InputStream {
+
+    private final ByteBuffer readerView = ring.duplicate();
+
+    private boolean closed = false;
+
+    private long readSeq;
+
+    private long cachedTail;
+
+    private SpscPipedInputStream() {
+    }
+
+    public SpscPipedOutputStream getOutputStream() {
+      return SpscPipedOutputStream.this;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return readUntil(getNanoDeadline());
+    }
+
+    public int readUntil(final long deadline) throws IOException {
+      if (awaitAvailable(deadline) < 0) {
+        return -1;
+      }
+      int idx = (int) readSeq & mask;
+      int result = array != null ? array[idx] & 0xFF : ring.get(idx) & 0xFF;
+      readSeq++;
+      release();
+      return result;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      return readUntil(len, b, off, getNanoDeadline());
+    }
+
+    public int readUntil(final int len, final byte[] b, final int off, final long deadline) throws IOException {
+      if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) - b.length > 0)) {
+        throw new IndexOutOfBoundsException("Invalid read " + off + ", " + len + " in array of " + b.length);
+      }
+      if (len == 0) {
+        return 0;
+      }
+      int avail = awaitAvailable(deadline);
+      if (avail < 0) {
+        return -1;
+      }
+      int n = Math.min(avail, len);
+      int idx = (int) readSeq & mask;
+      int toEnd = Math.min(n, capacity - idx);
+      copyOut(idx, b, off, toEnd);
+      if (n > toEnd) {
+        copyOut(0, b, off + toEnd, n - toEnd);
+      }
+      readSeq += n;
+      release();
+      return n;
+    }
+
+    /**
+     * Read available data into a ByteBuffer, waiting for data if none is available.
+     * @param dst the destination.
+     * @return the number of bytes read, or -1 on EOF.
+     */
+    public int read(final ByteBuffer dst) throws IOException {
+      if (!dst.hasRemaining()) {
+        return 0;
+      }
+      int avail = awaitAvailable(getNanoDeadline());
+      if (avail < 0) {
+        return -1;
+      }
+      int n = Math.min(avail, dst.remaining());
+      int idx = (int) readSeq & mask;
+      int toEnd = Math.min(n, capacity - idx);
+      dst.put(region(idx, toEnd));
+      if (n > toEnd) {
+        dst.put(region(0, n - toEnd));
+      }
+      readSeq += n;
+      release();
+      return n;
+    }
+
+    /**
+     * Write all data from this pipe (until the writer closes) to a channel.
+     * @param channel the destination channel, must be in blocking mode.
+     * @return the number of bytes transferred.
+     * @throws IllegalArgumentException if the channel is a selectable channel in non-blocking mode.
+     */
+    public long transferTo(final WritableByteChannel channel) throws IOException {
+      checkBlocking(channel);
+      long deadline = getNanoDeadline();
+      long total = 0;
+      while (true) {
+        int avail = awaitAvailable(deadline);
+        if (avail < 0) {
+          return total;
+        }
+        int idx = (int) readSeq & mask;
+        ByteBuffer src = region(idx, Math.min(avail, capacity - idx));
+        int written = channel.write(src);
+        readSeq += written;
+        total += written;
+        release();
+      }
+    }
+
+    private ByteBuffer region(final int idx, final int len) {
+      ByteBuffer view = readerView;
+      view.limit(idx + len);
+      view.position(idx);
+      return view;
+    }
+
+    private void copyOut(final int idx, final byte[] b, final int off, final int len) {
+      if (array != null) {
+        System.arraycopy(array, idx, b, off, len);
+      } else {
+        region(idx, len).get(b, off, len);
+      }
+    }
+
+    private void release() {
+      seqs.set(HEAD, readSeq);
+      Thread writer = parkedWriter;
+      if (writer != null) {
+        LockSupport.unpark(writer);
+      }
+    }
+
+    /**
+     * @return the number of bytes available to read, -1 if EOF.
+     */
+    @SuppressFBWarnings("MDM_THREAD_YIELD")
+    private int awaitAvailable(final long deadline) throws IOException {
+      if (closed) {
+        throw new IOException("Reader is closed for " + SpscPipedOutputStream.this);
+      }
+      if (cachedTail > readSeq) {
+        return (int) (cachedTail - readSeq);
+      }
+      int tries = 0;
+      while (true) {
+        cachedTail = seqs.get(TAIL);
+        if (cachedTail > readSeq) {
+          return (int) (cachedTail - readSeq);
+        }
+        int st = state.get();
+        if ((st & READER_CLOSED) != 0) {
+          throw new IOException("Reader is closed for " + SpscPipedOutputStream.this);
+        }
+        if ((st & WRITER_CLOSED) != 0) {
+          cachedTail = seqs.get(TAIL);
+          if (cachedTail > readSeq) {
+            return (int) (cachedTail - readSeq);
+          }
+          Exception ex = closedException;
+          if (ex != null) {
+            throw new IOException("Pipe closed with exception " + SpscPipedOutputStream.this, ex);
+          }
+          return -1;
+        }
+        if (tries < SPIN_TRIES) {
+          tries++;
+        } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+          tries++;
+          Thread.yield();
+        } else {
+          long timeToWait = deadline - TimeSource.nanoTime();
+          if (timeToWait <= 0) {
+            throw new IOTimeoutException(deadline, -timeToWait);
+          }
+          parkedReader = Thread.currentThread();
+          try {
+            if (seqs.get(TAIL) == cachedTail && (state.get() & (WRITER_CLOSED | READER_CLOSED)) == 0) {
+              LockSupport.parkNanos(this, Math.min(timeToWait, MAX_PARK_NANOS));
+            }
+          } finally {
+            parkedReader = null;
+          }
+          if (Thread.interrupted()) {
+            throw new IOException("Interrupted while reading from " + SpscPipedOutputStream.this);
+          }
+        }
+      }
+    }
+
+    @Override
+    public int available() throws IOException {
+      if ((state.get() & READER_CLOSED) != 0) {
+        throw new IOException("Reader is closed for " + SpscPipedOutputStream.this);
+      }
+      return (int) (seqs.get(TAIL) - readSeq);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      closeState(READER_CLOSED);
+    }
+
+  }
+
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.appenders;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.util.Utf8;
+import org.spf4j.base.AppendableUtils;
+
+/**
+ * Schema compiled avro JSON writers. The output is equivalent to what the avro JsonEncoder produces,
+ * but chars are written straight to a Appendable, and the schema is walked only once, when the writer
+ * is compiled. Compiled writers are cached per schema instance, schemas are weakly referenced by the cache,
+ * so the writers of schemas that are not used anymore (dynamically created or from unloaded classes) are collected.
+ *
+ * @author Zoltan Farkas
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+final class AvroJsonWriters {
+
+  /**
+   * A writer compiled for a particular schema.
+   */
+  @FunctionalInterface
+  interface DatumWriter {
+    void write(Object datum, Appendable to) throws IOException;
+  }
+
+  private static final LoadingCache<Schema, DatumWriter> SPECIFIC_WRITERS = CacheBuilder.newBuilder()
+          .weakKeys().concurrencyLevel(16).build(new CacheLoader<Schema, DatumWriter>() {
+            @Override
+            public DatumWriter load(final Schema schema) {
+              return compile(schema, SpecificData.get(), new IdentityHashMap<>());
+            }
+          });
+
+  private static final LoadingCache<Schema, DatumWriter> GENERIC_WRITERS = CacheBuilder.newBuilder()
+          .weakKeys().concurrencyLevel(16).build(new CacheLoader<Schema, DatumWriter>() {
+            @Override
+            public DatumWriter load(final Schema schema) {
+              return compile(schema, GenericData.get(), new IdentityHashMap<>());
+            }
+          });
+
+  private AvroJsonWriters() { }
+
+  static DatumWriter getSpecificWriter(final Schema schema) {
+    return SPECIFIC_WRITERS.getUnchecked(schema);
+  }
+
+  static DatumWriter getGenericWriter(final Schema schema) {
+    return GENERIC_WRITERS.getUnchecked(schema);
+  }
+
+  private static DatumWriter compile(final Schema schema, final GenericData model,
+          final Map<Schema, DatumWriter> inProgress) {
+    DatumWriter existing = inProgress.get(schema);
+    if (existing != null) {
+      return existing;
+    }
+    switch (schema.getType()) {
+      case NULL:
+        return (datum, to) -> to.append("null");
+      case BOOLEAN:
+        return (datum, to) -> to.append(((Boolean) datum) ? "true" : "false");
+      case INT:
+      case LONG:
+        return (datum, to) -> AppendableUtils.appendLong(to, ((Number) datum).longValue());
+      case FLOAT:
+        return (datum, to) -> writeFloatingPoint(((Number) datum).floatValue(), to);
+      case DOUBLE:
+        return (datum, to) -> writeFloatingPoint(((Number) datum).doubleValue(), to);
+      case STRING:
+        return AvroJsonWriters::writeString;
+      case ENUM:
+        return (datum, to) -> writeString(datum.toString(), to);
+      case BYTES:
+        return (datum, to) -> writeBytes((ByteBuffer) datum, to);
+      case FIXED:
+        return (datum, to) -> writeBytes(((GenericFixed) datum).bytes(), to);
+      case ARRAY:
+        return new ArrayWriter(compile(schema.getElementType(), model, inProgress));
+      case MAP:
+        return new MapWriter(compile(schema.getValueType(), model, inProgress));
+      case UNION:
+        return new UnionWriter(schema, model, inProgress);
+      case RECORD:
+        return new RecordWriter(schema, model, inProgress);
+      default:
+        throw new IllegalArgumentException("Unsupported schema " + schema);
+    }
+  }
+
+  private static void writeFloatingPoint(final double value, final Appendable to) throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      to.append('"').append(Double.toString(value)).append('"');
+    } else {
+      to.append(Double.toString(value));
+    }
+  }
+
+  private static void writeFloatingPoint(final float value, final Appendable to) throws IOException {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      to.append('"').append(Float.toString(value)).append('"');
+    } else {
+      to.append(Float.toString(value));
+    }
+  }
+
+  private static void writeString(final Object datum, final Appendable to) throws IOException {
+    CharSequence str;
+    if (datum instanceof Utf8) {
+      str = datum.toString();
+    } else {
+      str = (CharSequence) datum;
+    }
+    to.append('"');
+    AppendableUtils.escapeJsonString(str, to);
+    to.append('"');
+  }
+
+  /**
+   * bytes are written as a ISO-8859-1 string, like the avro JsonEncoder does.
+   */
+  private static void writeBytes(final ByteBuffer bytes, final Appendable to) throws IOException {
+    to.append('"');
+    for (int i = bytes.position(), l = bytes.limit(); i < l; i++) {
+      AppendableUtils.appendJsonStringEscapedChar((char) (bytes.get(i) & 0xFF), to);
+    }
+    to.append('"');
+  }
+
+  private static void writeBytes(final byte[] bytes, final Appendable to) throws IOException {
+    to.append('"');
+    for (byte b : bytes) {
+      AppendableUtils.appendJsonStringEscapedChar((char) (b & 0xFF), to);
+    }
+    to.append('"');
+  }
+
+  private static String jsonQuoted(final String str) {
+    StringBuilder sb = new StringBuilder(str.length() + 2);
+    sb.append('"');
+    AppendableUtils.escapeJsonString(str, sb);
+    sb.append('"');
+    return sb.toString();
+  }
+
+  private static final class ArrayWriter implements DatumWriter {
+
+    private final DatumWriter elementWriter;
+
+    ArrayWriter(final DatumWriter elementWriter) {
+      this.elementWriter = elementWriter;
+    }
+
+    @Override
+    public void write(final Object datum, final Appendable to) throws IOException {
+      to.append('[');
+      boolean first = true;
+      for (Object elem : (Collection<?>) datum) {
+        if (first) {
+          first = false;
+        } else {
+          to.append(',');
+        }
+        elementWriter.write(elem, to);
+      }
+      to.append(']');
+    }
+  }
+
+  private static final class MapWriter implements DatumWriter {
+
+    private final DatumWriter valueWriter;
+
+    MapWriter(final DatumWriter valueWriter) {
+      this.valueWriter = valueWriter;
+    }
+
+    @Override
+    public void write(final Object datum, final Appendable to) throws IOException {
+      to.append('{');
+      boolean first = true;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) datum).entrySet()) {
+        if (first) {
+          first = false;
+        } else {
+          to.append(',');
+        }
+        writeString(entry.getKey().toString(), to);
+        to.append(':');
+        valueWriter.write(entry.getValue(), to);
+      }
+      to.append('}');
+    }
+  }
+
+  private static final class UnionWriter implements DatumWriter {
+
+    private final Schema schema;
+    private final GenericData model;
+    /** the branch prefix: {"branchName": , null for the null branch. */
+    private final String[] prefixes;
+    private final DatumWriter[] writers;
+
+    UnionWriter(final Schema schema, final GenericData model, final Map<Schema, DatumWriter> inProgress) {
+      this.schema = schema;
+      this.model = model;
+      List<Schema> types = schema.getTypes();
+      int nrTypes = types.size();
+      this.prefixes = new String[nrTypes];
+      this.writers = new DatumWriter[nrTypes];
+      for (int i = 0; i < nrTypes; i++) {
+        Schema type = types.get(i);
+        if (type.getType() != Schema.Type.NULL) {
+          prefixes[i] = '{' + jsonQuoted(type.getFullName()) + ':';
+          writers[i] = compile(type, model, inProgress);
+        }
+      }
+    }
+
+    @Override
+    public void write(final Object datum, final Appendable to) throws IOException {
+      int idx = model.resolveUnion(schema, datum);
+      String prefix = prefixes[idx];
+      if (prefix == null) {
+        to.append("null");
+      } else {
+        to.append(prefix);
+        writers[idx].write(datum, to);
+        to.append('}');
+      }
+    }
+  }
+
+  @SuppressFBWarnings({"PL_PARALLEL_LISTS", "DLC_DUBIOUS_LIST_COLLECTION"})
+  private static final class RecordWriter implements DatumWriter {
+
+    private final GenericData model;
+    /** field name prefixes: {"name": for the first field, ,"name": for the rest. */
+    private final String[] prefixes;
+    private final String[] names;
+    private final int[] positions;
+    private final DatumWriter[] writers;
+
+    RecordWriter(final Schema schema, final GenericData model, final Map<Schema, DatumWriter> inProgress) {
+      this.model = model;
+      inProgress.put(schema, this);
+      List<Schema.Field> fields = schema.getFields();
+      int nrFields = fields.size();
+      this.prefixes = new String[nrFields];
+      this.names = new String[nrFields];
+      this.positions = new int[nrFields];
+      this.writers = new DatumWriter[nrFields];
+      for (int i = 0; i < nrFields; i++) {
+        Schema.Field field = fields.get(i);
+        names[i] = field.name();
+        prefixes[i] = (i == 0 ? "{" : ",") + jsonQuoted(field.name()) + ':';
+        positions[i] = field.pos();
+        writers[i] = compile(field.schema(), model, inProgress);
+      }
+    }
+
+    @Override
+    public void write(final Object datum, final Appendable to) throws IOException {
+      if (prefixes.length == 0) {
+        to.append("{}");
+        return;
+      }
+      for (int i = 0; i < prefixes.length; i++) {
+        to.append(prefixes[i]);
+        writers[i].write(model.getField(datum, names[i], positions[i]), to);
+      }
+      to.append('}');
+    }
+  }
+
+}
@@ -31,14 +31,9 @@
  */
 package org.spf4j.io.appenders;
 
-import com.google.common.base.Charsets;
 import java.io.IOException;
 import javax.activation.MimeType;
-import org.apache.avro.Schema;
-import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.io.JsonEncoder;
-import org.spf4j.io.AppendableOutputStream;
 import org.spf4j.io.MimeTypes;
 import org.spf4j.io.ObjectAppender;
 import static org.spf4j.io.appenders.SpecificRecordAppender.TMP;
@@ -59,12 +54,8 @@ public final class GenericRecordAppender implements ObjectAppender<GenericRecord
   public void append(final GenericRecord object, final Appendable appendTo) throws IOException {
     StringBuilder sb = TMP.get();
     sb.setLength(0);
-    try (AppendableOutputStream bos = new AppendableOutputStream(appendTo, Charsets.UTF_8)) {
-      final Schema schema = object.getSchema();
-      GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(schema);
-      JsonEncoder jsonEncoder = SpecificRecordAppender.EF.jsonEncoder(schema, bos);
-      writer.write(object, jsonEncoder);
-      jsonEncoder.flush();
+    try {
+      AvroJsonWriters.getGenericWriter(object.getSchema()).write(object, sb);
     } catch (IOException | RuntimeException ex) {
       writeSerializationError(object, sb, ex);
     }
@@ -80,12 +80,8 @@ public final class SpecificRecordAppender implements ObjectAppender<SpecificReco
   public void append(final SpecificRecord object, final Appendable appendTo) throws IOException {
     StringBuilder sb = TMP.get();
     sb.setLength(0);
-    try (AppendableOutputStream bos = new AppendableOutputStream(sb, Charsets.UTF_8)) {
-      final Schema schema = object.getSchema();
-      SpecificDatumWriter<SpecificRecord> writer = new SpecificDatumWriter<>(schema);
-      JsonEncoder jsonEncoder = EF.jsonEncoder(schema, bos);
-      writer.write(object, jsonEncoder);
-      jsonEncoder.flush();
+    try {
+      AvroJsonWriters.getSpecificWriter(object.getSchema()).write(object, sb);
     } catch (IOException | RuntimeException ex) {
       writeSerializationError(object, sb, ex);
     }
@@ -106,10 +102,11 @@ public final class SpecificRecordAppender implements ObjectAppender<SpecificReco
     }
     sb.setLength(0);
     sb.append("{\"SerializationError\":\n");
+    // errors are rare, written pretty printed with the avro encoder.
     try (AppendableOutputStream bos = new AppendableOutputStream(sb, Charsets.UTF_8)) {
       JThrowable at = Converters.convert(ex);
       Schema schema = at.getSchema();
-      SpecificDatumWriter<SpecificRecord> writer = new SpecificDatumWriter<>(schema);
+      SpecificDatumWriter<JThrowable> writer = new SpecificDatumWriter<>(schema);
       JsonEncoder jsonEncoder = EF.jsonEncoder(schema, bos, true);
       writer.write(at, jsonEncoder);
       jsonEncoder.flush();
@@ -34,11 +34,16 @@ package org.spf4j.io.compress;
 import com.google.common.annotations.Beta;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
@@ -47,16 +52,37 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import org.spf4j.io.BufferedInputStream;
+import org.spf4j.io.SegmentedByteArrayBuilder;
 import org.spf4j.io.Streams;
 import org.spf4j.recyclable.impl.ArraySuppliers;
 
@@ -68,6 +94,25 @@ import org.spf4j.recyclable.impl.ArraySuppliers;
 @ParametersAreNonnullByDefault
 public final class Compress {
 
+  /**
+   * File extensions of already compressed content, these are STORED by the parallel zip.
+   */
+  private static final Set<String> STORED_EXTENSIONS = new HashSet<>(Arrays.asList(
+          System.getProperty("spf4j.compress.storedExtensions",
+                  "zip,gz,tgz,bz2,xz,7z,jar,war,ear,snappy,sz,lz4,zst,png,jpg,jpeg,gif,mp3,mp4").split(",")));
+
+  /**
+   * Entries with a larger size are compressed into a temporary file instead of memory by the parallel zip.
+   */
+  private static final int MAX_BUFFERED_ENTRY_SIZE =
+          Integer.getInteger("spf4j.compress.maxBufferedEntrySize", 8 * 1024 * 1024);
+
+  private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+
+  private static final int ZIP32_MAX_ENTRIES = 0xFFFF;
+
+  private static final int UTF8_NAMES_FLAG = 0x0800;
+
   private Compress() {
   }
 
@@ -135,6 +180,376 @@ public final class Compress {
     }
   }
 
+  /**
+   * Zip a file or folder, compressing entries in parallel.
+   * Entries are deflated concurrently into temporary buffers and the archive is assembled in walk order.
+   * Already compressed files (by extension) and files that do not compress are STORED.
+   * Archives that would need ZIP64 extensions are created with the sequential {@link #zip(Path, Path)}.
+   *
+   * @param fileOrFolderToCompress file or folder to compress.
+   * @param destFile the destination zip file.
+   * @param exec the executor to compress entries with.
+   * @param parallelism the max number of entries compressed concurrently.
+   * @throws IOException
+   */
+  public static void zip(final Path fileOrFolderToCompress, final Path destFile,
+          final Executor exec, final int parallelism) throws IOException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+    }
+    Path parent = destFile.getParent();
+    if (parent == null) {
+      throw new IllegalArgumentException("Parent is null for: " + fileOrFolderToCompress);
+    }
+    Path relativePath;
+    if (Files.isDirectory(fileOrFolderToCompress)) {
+      relativePath = fileOrFolderToCompress;
+    } else {
+      relativePath = fileOrFolderToCompress.getParent();
+    }
+    List<Path> files;
+    try (Stream<Path> ws = Files.walk(fileOrFolderToCompress)) {
+      files = ws.filter((path) -> !Files.isDirectory(path)).collect(Collectors.toList());
+    }
+    long maxArchiveSize = 22;
+    for (Path file : files) {
+      maxArchiveSize += Files.size(file) + 76 + 6L * file.toString().length();
+    }
+    if (maxArchiveSize > ZIP32_LIMIT || files.size() > ZIP32_MAX_ENTRIES) {
+      zip(fileOrFolderToCompress, destFile);
+      return;
+    }
+    Path tmpFile = Files.createTempFile(parent, ".", "tmp");
+    try {
+      try (FileChannel out = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+        ArrayDeque<CompletableFuture<ZipEntrySource>> pending = new ArrayDeque<>(parallelism + 1);
+        List<ZipEntrySource> written = new ArrayList<>(files.size());
+        try {
+          for (Path path : files) {
+            String fileName = relativePath.relativize(path).toString().replace(File.separatorChar, '/');
+            pending.add(CompletableFuture.supplyAsync(() -> {
+              try {
+                return compressEntry(path, fileName, parent);
+              } catch (IOException ex) {
+                throw new UncheckedIOException("Error compressing " + path, ex);
+              }
+            }, exec));
+            if (pending.size() >= parallelism) {
+              writeEntry(await(pending.poll()), out, written);
+            }
+          }
+          while (!pending.isEmpty()) {
+            writeEntry(await(pending.poll()), out, written);
+          }
+          writeCentralDirectory(written, out);
+        } catch (IOException | RuntimeException ex) {
+          for (CompletableFuture<ZipEntrySource> future : pending) {
+            try {
+              future.join().close();
+            } catch (IOException | RuntimeException ex2) {
+              ex.addSuppressed(ex2);
+            }
+          }
+          throw ex;
+        }
+        out.force(true);
+      }
+      Files.move(tmpFile, destFile,
+              StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmpFile);
+    }
+  }
+
+  @Nullable
+  @SuppressFBWarnings({"ITC_INHERITANCE_TYPE_CHECKING", "LEST_LOST_EXCEPTION_STACK_TRACE"})
+  private static <T> T await(final CompletableFuture<T> future) throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ex;
+    }
+  }
+
+  private static boolean isStored(final String fileName) {
+    int dotIdx = fileName.lastIndexOf('.');
+    if (dotIdx < 0) {
+      return false;
+    }
+    return STORED_EXTENSIONS.contains(fileName.substring(dotIdx + 1).toLowerCase(Locale.US));
+  }
+
+  private static ZipEntrySource compressEntry(final Path path, final String fileName, final Path tmpFolder)
+          throws IOException {
+    long size = Files.size(path);
+    long time = Files.getLastModifiedTime(path).toMillis();
+    if (isStored(fileName)) {
+      // the crc is computed while copying the file into the archive, so that the file is read only once.
+      return new ZipEntrySource(fileName, ZipEntry.STORED, ZipEntrySource.CRC_ON_WRITE, size, size, time, path,
+              false, null);
+    }
+    CRC32 crc = new CRC32();
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      if (size <= MAX_BUFFERED_ENTRY_SIZE) {
+        SegmentedByteArrayBuilder buffer = new SegmentedByteArrayBuilder((int) Math.max(size / 4, 256));
+        try {
+          deflate(path, crc, deflater, buffer);
+        } catch (IOException | RuntimeException ex) {
+          buffer.close();
+          throw ex;
+        }
+        long compressedSize = buffer.size();
+        if (compressedSize < size) {
+          return new ZipEntrySource(fileName, ZipEntry.DEFLATED, crc.getValue(), size, compressedSize, time,
+                  null, false, buffer);
+        }
+        buffer.close();
+      } else {
+        Path tmpFile = Files.createTempFile(tmpFolder, ".", ".zent");
+        try {
+          try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
+            deflate(path, crc, deflater, os);
+          }
+        } catch (IOException | RuntimeException ex) {
+          Files.deleteIfExists(tmpFile);
+          throw ex;
+        }
+        long compressedSize = Files.size(tmpFile);
+        if (compressedSize < size) {
+          return new ZipEntrySource(fileName, ZipEntry.DEFLATED, crc.getValue(), size, compressedSize, time,
+                  tmpFile, true, null);
+        }
+        Files.delete(tmpFile);
+      }
+    } finally {
+      deflater.end();
+    }
+    // not compressible, store the original.
+    return new ZipEntrySource(fileName, ZipEntry.STORED, crc.getValue(), size, size, time, path, false, null);
+  }
+
+  /**
+   * read a file, compute its CRC and deflate it to the provided output stream.
+   */
+  private static void deflate(final Path path, final CRC32 crc, final Deflater deflater,
+          final OutputStream os) throws IOException {
+    byte[] buffer = ArraySuppliers.Bytes.TL_SUPPLIER.get(8192);
+    try (InputStream in = Files.newInputStream(path)) {
+      DeflaterOutputStream dos = new DeflaterOutputStream(os, deflater, 8192);
+      int nr;
+      while ((nr = in.read(buffer)) >= 0) {
+        crc.update(buffer, 0, nr);
+        dos.write(buffer, 0, nr);
+      }
+      dos.finish();
+    } finally {
+      ArraySuppliers.Bytes.TL_SUPPLIER.recycle(buffer);
+    }
+  }
+
+  private static void writeFully(final ByteBuffer buffer, final FileChannel out) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+  private static void writeEntry(final ZipEntrySource entry, final FileChannel out,
+          final List<ZipEntrySource> written) throws IOException {
+    try (ZipEntrySource e = entry) {
+      e.localHeaderOffset = out.position();
+      ByteBuffer header = ByteBuffer.allocate(30 + e.name.length).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(0x04034b50);
+      header.putShort((short) e.versionNeeded());
+      header.putShort((short) UTF8_NAMES_FLAG);
+      header.putShort((short) e.method);
+      header.putInt(e.dosTime);
+      header.putInt((int) e.crc);
+      header.putInt((int) e.compressedSize);
+      header.putInt((int) e.size);
+      header.putShort((short) e.name.length);
+      header.putShort((short) 0);
+      header.put(e.name);
+      writeFully(header, out);
+      if (e.transferTo(out)) {
+        // patch the crc computed during the transfer into the local header.
+        ByteBuffer crc = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        crc.putInt((int) e.crc);
+        crc.flip();
+        long crcPos = e.localHeaderOffset + 14;
+        while (crc.hasRemaining()) {
+          crcPos += out.write(crc, crcPos);
+        }
+      }
+    }
+    written.add(entry);
+  }
+
+  private static void writeCentralDirectory(final List<ZipEntrySource> entries, final FileChannel out)
+          throws IOException {
+    long cdStart = out.position();
+    for (ZipEntrySource e : entries) {
+      ByteBuffer header = ByteBuffer.allocate(46 + e.name.length).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(0x02014b50);
+      header.putShort((short) 20);
+      header.putShort((short) e.versionNeeded());
+      header.putShort((short) UTF8_NAMES_FLAG);
+      header.putShort((short) e.method);
+      header.putInt(e.dosTime);
+      header.putInt((int) e.crc);
+      header.putInt((int) e.compressedSize);
+      header.putInt((int) e.size);
+      header.putShort((short) e.name.length);
+      header.putShort((short) 0); // extra
+      header.putShort((short) 0); // comment
+      header.putShort((short) 0); // disk
+      header.putShort((short) 0); // internal attributes
+      header.putInt(0); // external attributes
+      header.putInt((int) e.localHeaderOffset);
+      header.put(e.name);
+      writeFully(header, out);
+    }
+    long cdSize = out.position() - cdStart;
+    ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+    end.putInt(0x06054b50);
+    end.putShort((short) 0);
+    end.putShort((short) 0);
+    end.putShort((short) entries.size());
+    end.putShort((short) entries.size());
+    end.putInt((int) cdSize);
+    end.putInt((int) cdStart);
+    end.putShort((short) 0);
+    writeFully(end, out);
+  }
+
+  /**
+   * @return the MS-DOS date (high 16 bits) and time (low 16 bits) for the provided epoch millis.
+   */
+  static int toDosTime(final long millis) {
+    LocalDateTime dt = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    int year = dt.getYear();
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (year - 1980) << 25 | dt.getMonthValue() << 21 | dt.getDayOfMonth() << 16
+            | dt.getHour() << 11 | dt.getMinute() << 5 | dt.getSecond() >> 1;
+  }
+
+  /**
+   * A compressed zip entry ready to be written to the archive.
+   * The entry data is either in memory, in a temporary file, or the original file (STORED).
+   */
+  private static final class ZipEntrySource implements Closeable {
+
+    /** crc value placeholder, for entries where the crc is computed while written to the archive. */
+    static final long CRC_ON_WRITE = -1L;
+
+    private final byte[] name;
+    private final int method;
+    private long crc;
+    private final long size;
+    private final long compressedSize;
+    private final int dosTime;
+    @Nullable
+    private final Path source;
+    private final boolean deleteSource;
+    @Nullable
+    private final SegmentedByteArrayBuilder buffer;
+    private long localHeaderOffset;
+
+    ZipEntrySource(final String name, final int method, final long crc, final long size,
+            final long compressedSize, final long time, @Nullable final Path source, final boolean deleteSource,
+            @Nullable final SegmentedByteArrayBuilder buffer) {
+      this.name = name.getBytes(StandardCharsets.UTF_8);
+      this.method = method;
+      this.crc = crc;
+      this.size = size;
+      this.compressedSize = compressedSize;
+      this.dosTime = toDosTime(time);
+      this.source = source;
+      this.deleteSource = deleteSource;
+      this.buffer = buffer;
+    }
+
+    int versionNeeded() {
+      return method == ZipEntry.STORED ? 10 : 20;
+    }
+
+    /**
+     * Write the entry data to out.
+     * @return true if the crc was computed during the transfer (and must be patched in the local header).
+     */
+    boolean transferTo(final FileChannel out) throws IOException {
+      if (buffer != null) {
+        buffer.writeTo(out);
+        return false;
+      }
+      if (crc == CRC_ON_WRITE) {
+        crc = copyWithCrc(out);
+        return true;
+      }
+      try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+        long pos = 0;
+        while (pos < compressedSize) {
+          long nr = in.transferTo(pos, compressedSize - pos, out);
+          if (nr <= 0) {
+            throw new IOException("File " + source + " changed while being zipped");
+          }
+          pos += nr;
+        }
+      }
+      return false;
+    }
+
+    private long copyWithCrc(final FileChannel out) throws IOException {
+      CRC32 crc32 = new CRC32();
+      byte[] buff = ArraySuppliers.Bytes.TL_SUPPLIER.get(65536);
+      try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+        ByteBuffer bb = ByteBuffer.wrap(buff);
+        long pos = 0;
+        while (pos < compressedSize) {
+          bb.clear();
+          if (bb.remaining() > compressedSize - pos) {
+            bb.limit((int) (compressedSize - pos));
+          }
+          int nr = in.read(bb);
+          if (nr < 0) {
+            throw new IOException("File " + source + " changed while being zipped");
+          }
+          crc32.update(buff, 0, nr);
+          bb.flip();
+          while (bb.hasRemaining()) {
+            out.write(bb);
+          }
+          pos += nr;
+        }
+      } finally {
+        ArraySuppliers.Bytes.TL_SUPPLIER.recycle(buff);
+      }
+      return crc32.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (buffer != null) {
+        buffer.close();
+      }
+      if (deleteSource) {
+        Files.deleteIfExists(source);
+      }
+    }
+
+  }
+
   /**
    * Copy file atomic.
    * file will be written to a tmp file in the destination folder, and atomically renamed (if file system supports)
@@ -147,11 +562,17 @@ public final class Compress {
     if (parent == null) {
       throw new IllegalArgumentException("Destination " + destinationFile + " is not a file");
     }
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(source),
+              8192, ArraySuppliers.Bytes.TL_SUPPLIER)) {
+      copyAtomic(in, parent, destinationFile);
+    }
+  }
+
+  private static void copyAtomic(final InputStream in, final Path parent, final Path destinationFile)
+          throws IOException {
     Path tmpFile = Files.createTempFile(parent, ".", null);
     try {
-      try (InputStream in = new BufferedInputStream(Files.newInputStream(source),
-              8192, ArraySuppliers.Bytes.TL_SUPPLIER);
-              OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
+      try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
         Streams.copy(in, os);
       }
       Files.move(tmpFile, destinationFile,
@@ -230,4 +651,89 @@ public final class Compress {
     return response;
   }
 
+  /**
+   * Unzip a zip file to a destination folder, extracting entries in parallel.
+   * @param zipFile the zip file.
+   * @param destinationDirectory the destination folder.
+   * @param exec the executor to extract entries with.
+   * @param parallelism the max number of entries extracted concurrently.
+   * @return the list of files that were extracted, in archive order.
+   * @throws IOException in case extraction fails for whatever reason, the already extracted files are deleted.
+   */
+  @Nonnull
+  public static List<Path> unzip(final Path zipFile, final Path destinationDirectory,
+          final Executor exec, final int parallelism) throws IOException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+    }
+    if (!Files.exists(destinationDirectory)) {
+      Files.createDirectories(destinationDirectory);
+    }
+    if (!Files.isDirectory(destinationDirectory)) {
+      throw new IllegalArgumentException("Destination " + destinationDirectory + " must be a directory");
+    }
+    final Path destDir = destinationDirectory.toAbsolutePath().normalize();
+    final List<Path> response = new ArrayList<>();
+    ArrayDeque<CompletableFuture<Path>> pending = new ArrayDeque<>(parallelism + 1);
+    try (ZipFile zf = new ZipFile(zipFile.toFile(), StandardCharsets.UTF_8)) {
+      try {
+        Enumeration<? extends ZipEntry> entries = zf.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          String entryName = entry.getName();
+          Path destination = destDir.resolve(entryName).normalize();
+          if (!destination.startsWith(destDir)) {
+            throw new IOException("Invalid zip entry " + entryName + " in " + zipFile);
+          }
+          if (entry.isDirectory()) {
+            Files.createDirectories(destination);
+            continue;
+          }
+          Path parent = destination.getParent();
+          if (parent == null) {
+            throw new IOException("Invalid zip entry " + entryName + " in " + zipFile);
+          }
+          Files.createDirectories(parent);
+          pending.add(CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = zf.getInputStream(entry)) {
+              copyAtomic(in, parent, destination);
+              long time = entry.getTime();
+              if (time >= 0) {
+                Files.setLastModifiedTime(destination, FileTime.fromMillis(time));
+              }
+            } catch (IOException ex) {
+              throw new UncheckedIOException("Error extracting " + entry.getName() + " from " + zipFile, ex);
+            }
+            return destination;
+          }, exec));
+          if (pending.size() >= parallelism) {
+            response.add(await(pending.poll()));
+          }
+        }
+        while (!pending.isEmpty()) {
+          response.add(await(pending.poll()));
+        }
+      } catch (IOException | RuntimeException ex) {
+        for (CompletableFuture<Path> future : pending) {
+          try {
+            response.add(future.join());
+          } catch (RuntimeException ex2) {
+            ex.addSuppressed(ex2);
+          }
+        }
+        throw ex;
+      }
+    } catch (IOException | RuntimeException ex) {
+      for (Path path : response) {
+        try {
+          Files.delete(path);
+        } catch (IOException | RuntimeException ex2) {
+          ex.addSuppressed(ex2);
+        }
+      }
+      throw ex;
+    }
+    return response;
+  }
+
 }
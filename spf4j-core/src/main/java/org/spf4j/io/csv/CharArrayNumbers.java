@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.csv;
+
+/**
+ * Number parsing straight from char arrays, without creating intermediary Strings.
+ *
+ * @author Zoltan Farkas
+ */
+final class CharArrayNumbers {
+
+  /**
+   * powers of 10 exactly representable as doubles.
+   */
+  private static final double[] POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  private CharArrayNumbers() { }
+
+  /**
+   * Equivalent of Long.parseLong(new String(chars, from, length)).
+   */
+  static long parseLong(final char[] chars, final int from, final int length) {
+    if (length <= 0) {
+      throw new NumberFormatException("Empty input at " + from);
+    }
+    int i = from;
+    final int end = from + length;
+    boolean negative = false;
+    long limit = -Long.MAX_VALUE;
+    char first = chars[i];
+    if (first < '0') {
+      if (first == '-') {
+        negative = true;
+        limit = Long.MIN_VALUE;
+      } else if (first != '+') {
+        throw numberFormatException(chars, from, length);
+      }
+      if (length == 1) {
+        throw numberFormatException(chars, from, length);
+      }
+      i++;
+    }
+    final long multmin = limit / 10;
+    long result = 0;
+    while (i < end) {
+      int digit = chars[i++] - '0';
+      if (digit < 0 || digit > 9 || result < multmin) {
+        throw numberFormatException(chars, from, length);
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        throw numberFormatException(chars, from, length);
+      }
+      result -= digit;
+    }
+    return negative ? result : -result;
+  }
+
+  /**
+   * Equivalent of Double.parseDouble(new String(chars, from, length)).
+   * Plain decimals with at most 18 significant digits and a small exponent are converted exactly with a
+   * single multiplication or division (the result is correctly rounded since both operands are exact),
+   * everything else is delegated to Double.parseDouble.
+   */
+  static double parseDouble(final char[] chars, final int from, final int length) {
+    int i = from;
+    final int end = from + length;
+    if (i >= end) {
+      throw new NumberFormatException("Empty input at " + from);
+    }
+    boolean negative = false;
+    char c = chars[i];
+    if (c == '-' || c == '+') {
+      negative = c == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int nrSignificant = 0;
+    int exp10 = 0;
+    boolean hasDigits = false;
+    while (i < end) {
+      int digit = chars[i] - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      if (mantissa != 0 || digit != 0) {
+        if (++nrSignificant > 18) {
+          return slowParseDouble(chars, from, length);
+        }
+        mantissa = mantissa * 10 + digit;
+      }
+      hasDigits = true;
+      i++;
+    }
+    if (i < end && chars[i] == '.') {
+      i++;
+      while (i < end) {
+        int digit = chars[i] - '0';
+        if (digit < 0 || digit > 9) {
+          break;
+        }
+        if (mantissa != 0 || digit != 0) {
+          if (++nrSignificant > 18) {
+            return slowParseDouble(chars, from, length);
+          }
+          mantissa = mantissa * 10 + digit;
+        }
+        exp10--;
+        hasDigits = true;
+        i++;
+      }
+    }
+    if (!hasDigits) {
+      return slowParseDouble(chars, from, length);
+    }
+    if (i < end && (chars[i] == 'e' || chars[i] == 'E')) {
+      i++;
+      boolean negExp = false;
+      if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+        negExp = chars[i] == '-';
+        i++;
+      }
+      if (i >= end) {
+        throw numberFormatException(chars, from, length);
+      }
+      int exp = 0;
+      while (i < end) {
+        int digit = chars[i] - '0';
+        if (digit < 0 || digit > 9 || exp > 10000) {
+          return slowParseDouble(chars, from, length);
+        }
+        exp = exp * 10 + digit;
+        i++;
+      }
+      exp10 += negExp ? -exp : exp;
+    }
+    if (i != end || mantissa >= MAX_EXACT_MANTISSA || exp10 < -22 || exp10 > 22) {
+      return slowParseDouble(chars, from, length);
+    }
+    double result = exp10 >= 0 ? mantissa * POW10[exp10] : mantissa / POW10[-exp10];
+    return negative ? -result : result;
+  }
+
+  private static double slowParseDouble(final char[] chars, final int from, final int length) {
+    return Double.parseDouble(new String(chars, from, length));
+  }
+
+  private static NumberFormatException numberFormatException(final char[] chars, final int from, final int length) {
+    return new NumberFormatException("For input char sequence: \"" + new String(chars, from, length) + '"');
+  }
+
+}
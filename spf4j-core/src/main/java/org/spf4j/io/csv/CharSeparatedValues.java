@@ -38,18 +38,32 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.ParametersAreNonnullByDefault;
+import org.spf4j.base.AppendableUtils;
 import org.spf4j.base.CharSequences;
+import org.spf4j.base.Pair;
 import org.spf4j.io.PushbackReader;
 
 /**
@@ -70,6 +84,8 @@ public final class CharSeparatedValues {
    */
   public static final int UTF_BOM = '\uFEFF';
 
+  private static final int BLOCK_SIZE = Integer.getInteger("spf4j.csv.blockSize", 65536);
+
   private final char separator;
   private final char[] toEscape;
 
@@ -120,10 +136,10 @@ public final class CharSeparatedValues {
   public void writeCsvRowNoEOL(final long[] elems, final Appendable writer) throws IOException {
     if (elems.length > 0) {
       int i = 0;
-      writer.append(Long.toString(elems[i++]));
+      AppendableUtils.appendLong(writer, elems[i++]);
       while (i < elems.length) {
         writer.append(separator);
-        writer.append(Long.toString(elems[i++]));
+        AppendableUtils.appendLong(writer, elems[i++]);
       }
     }
   }
@@ -252,6 +268,139 @@ public final class CharSeparatedValues {
     return handler.eof();
   }
 
+  /**
+   * Create a block oriented reader (see {@link CsvBlockReader}), a leading BOM is skipped.
+   */
+  public CsvBlockReader blockReader(final Reader reader) {
+    return new CsvBlockReader(reader, separator, BLOCK_SIZE);
+  }
+
+  /**
+   * read CSV format until EOF of reader using the block oriented parser (see {@link CsvBlockReader}).
+   */
+  public <T> T readBlocks(final Reader reader, final CsvHandler<T> handler) throws IOException, CsvParseException {
+    return blockReader(reader).read(handler);
+  }
+
+  /**
+   * Create a reader that decodes rows into primitive column batches, see {@link TypedCsvReader}.
+   */
+  public TypedCsvReader typedReader(final Reader reader, final CsvColumnSchema schema, final boolean hasHeader)
+          throws IOException, CsvParseException {
+    return new TypedCsvReader(blockReader(reader), schema, hasHeader);
+  }
+
+  /**
+   * Parse a file in parallel. The file is split in chunks of approximately chunkSize bytes at record boundaries,
+   * and every chunk is parsed by a handler created with handlerFactory for the chunk index. Only the first chunk
+   * handler will see the header row, and row numbers are relative to the chunk start.
+   * If the charset does not allow safe splitting, the file will be parsed as a single chunk.
+   * A byte order mark is skipped only at the beginning of the file (first chunk).
+   *
+   * @return the handler results in chunk order.
+   */
+  public <T> List<T> readParallel(final Path file, final Charset charset, final int chunkSize,
+          final IntFunction<? extends CsvHandler<T>> handlerFactory, final ExecutorService pool)
+          throws IOException, CsvParseException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long[] boundaries = chunkBoundaries(channel, charset, chunkSize, pool);
+      int nrChunks = boundaries.length - 1;
+      List<Future<T>> futures = new ArrayList<>(nrChunks);
+      for (int i = 0; i < nrChunks; i++) {
+        futures.add(pool.submit(chunkParser(channel, boundaries, i, charset, handlerFactory)));
+      }
+      List<T> result = new ArrayList<>(nrChunks);
+      try {
+        for (Future<T> future : futures) {
+          result.add(getChunkResult(future));
+        }
+      } finally {
+        if (result.size() < nrChunks) {
+          CsvFileChunks.cancel(futures);
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Parse a file in parallel like {@link #readParallel(Path, Charset, int, IntFunction, ExecutorService)},
+   * the chunk results are delivered, in the calling thread, to resultConsumer as soon as they become available.
+   */
+  public <T> void readParallel(final Path file, final Charset charset, final int chunkSize,
+          final IntFunction<? extends CsvHandler<T>> handlerFactory, final ObjIntConsumer<? super T> resultConsumer,
+          final ExecutorService pool)
+          throws IOException, CsvParseException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long[] boundaries = chunkBoundaries(channel, charset, chunkSize, pool);
+      int nrChunks = boundaries.length - 1;
+      CompletionService<Pair<Integer, T>> completionService = new ExecutorCompletionService<>(pool);
+      List<Future<Pair<Integer, T>>> futures = new ArrayList<>(nrChunks);
+      for (int i = 0; i < nrChunks; i++) {
+        final int chunkIdx = i;
+        final Callable<T> parser = chunkParser(channel, boundaries, i, charset, handlerFactory);
+        futures.add(completionService.submit(() -> Pair.of(chunkIdx, parser.call())));
+      }
+      int nrDone = 0;
+      try {
+        for (; nrDone < nrChunks; nrDone++) {
+          Future<Pair<Integer, T>> future;
+          try {
+            future = completionService.take();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException iex = new InterruptedIOException("Interrupted while parsing " + file);
+            iex.initCause(ex);
+            throw iex;
+          }
+          Pair<Integer, T> chunkResult = getChunkResult(future);
+          resultConsumer.accept(chunkResult.getSecond(), chunkResult.getFirst());
+        }
+      } finally {
+        if (nrDone < nrChunks) {
+          CsvFileChunks.cancel(futures);
+        }
+      }
+    }
+  }
+
+  private long[] chunkBoundaries(final FileChannel channel, final Charset charset, final int chunkSize,
+          final ExecutorService pool) throws IOException {
+    long size = channel.size();
+    if (CsvFileChunks.isSplittable(charset, separator)) {
+      return CsvFileChunks.split(channel, size, chunkSize, separator, pool);
+    } else {
+      return new long[] {0, size};
+    }
+  }
+
+  private <T> Callable<T> chunkParser(final FileChannel channel, final long[] boundaries, final int chunkIdx,
+          final Charset charset, final IntFunction<? extends CsvHandler<T>> handlerFactory) {
+    return () -> {
+      CharBuffer chars = CsvFileChunks.decode(channel, boundaries[chunkIdx], boundaries[chunkIdx + 1], charset);
+      CsvBlockReader reader = new CsvBlockReader(chars.array(), chars.arrayOffset() + chars.position(),
+              chars.arrayOffset() + chars.limit(), separator, chunkIdx == 0);
+      try {
+        return reader.read(handlerFactory.apply(chunkIdx));
+      } catch (CsvParseException ex) {
+        throw new UncheckedCsvParseException("Cannot parse chunk " + chunkIdx + " starting at byte "
+                + boundaries[chunkIdx], ex);
+      }
+    };
+  }
+
+  private static <T> T getChunkResult(final Future<T> future) throws IOException, CsvParseException {
+    try {
+      return CsvFileChunks.get(future);
+    } catch (UncheckedCsvParseException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof CsvParseException) {
+        throw new CsvParseException(ex.getMessage(), cause);
+      }
+      throw ex;
+    }
+  }
+
   /**
    * read a CSV stream, as a Iterable over rows.
    * the List<String> instance is reused during iteration, you will need to copy content into
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.csv;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.spf4j.base.CharSequences;
+
+/**
+ * A reusable CharSequence view over a region of a char array.
+ * Instances are reused by the parsers, the content is only valid until the next parser invocation.
+ *
+ * @author Zoltan Farkas
+ */
+@NotThreadSafe
+@SuppressFBWarnings({"EI_EXPOSE_REP", "EI_EXPOSE_REP2"}) // zero copy is the point.
+public final class CharSlice implements CharSequence {
+
+  private static final char[] EMPTY = new char[0];
+
+  private char[] array;
+  private int offset;
+  private int length;
+
+  public CharSlice() {
+    this.array = EMPTY;
+    this.offset = 0;
+    this.length = 0;
+  }
+
+  void set(final char[] parray, final int poffset, final int plength) {
+    this.array = parray;
+    this.offset = poffset;
+    this.length = plength;
+  }
+
+  /**
+   * @return the underlying array, content is located between getOffset() and getOffset() + length().
+   */
+  public char[] getArray() {
+    return array;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(final int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("Invalid index " + index + ", length = " + length);
+    }
+    return array[offset + index];
+  }
+
+  @Override
+  public CharSequence subSequence(final int start, final int end) {
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException("Invalid range " + start + ", " + end + ", length = " + length);
+    }
+    return new String(array, offset + start, end - start);
+  }
+
+  @Override
+  public int hashCode() {
+    return CharSequences.hashcode(this);
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj instanceof CharSlice) {
+      return CharSequences.equals(this, (CharSlice) obj);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return new String(array, offset, length);
+  }
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.csv;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Block oriented char separated values parser.
+ * Characters are read in blocks into a char array, separators, quotes and line ends are found with
+ * tight loops over the array, and elements are returned as zero copy slices (see {@link CharSlice}) into the block.
+ * Quoted elements are unescaped in place.
+ *
+ * Unlike the PushbackReader based reader, a line terminator at the end of the input will not produce an extra
+ * empty row, and the last row is always terminated with a END_ROW token.
+ *
+ * @author Zoltan Farkas
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public final class CsvBlockReader implements CsvReader {
+
+  private static final int EOF = -1;
+
+  private final char separator;
+  @Nullable
+  private final Reader reader;
+  private final CharSlice element;
+  private char[] buf;
+  private int limit;
+  /** the start of the element currently parsed, content before it is not needed anymore. */
+  private int elemStart;
+  /** current parse position. */
+  private int scan;
+  /** write position for unescaping quoted elements. */
+  private int wpos;
+  private boolean eof;
+  private boolean skipLf;
+  private boolean atRowStart;
+  private boolean checkBom;
+  private TokenType pendingToken;
+  private int rowNr;
+
+  /**
+   * Create a parser that will read its input from a Reader.
+   */
+  public CsvBlockReader(final Reader reader, final char separator, final int bufferSize) {
+    if (bufferSize < 16) {
+      throw new IllegalArgumentException("Buffer size must be at least 16, not " + bufferSize);
+    }
+    this.separator = separator;
+    this.reader = reader;
+    this.buf = new char[bufferSize];
+    this.limit = 0;
+    this.eof = false;
+    this.element = new CharSlice();
+    this.atRowStart = true;
+    this.checkBom = true;
+  }
+
+  /**
+   * Create a parser for a in memory block of chars. The array content will be modified while parsing
+   * (quoted elements are unescaped in place).
+   */
+  public CsvBlockReader(final char[] data, final int from, final int to, final char separator) {
+    this(data, from, to, separator, true);
+  }
+
+  /**
+   * Create a parser for a in memory block of chars. The array content will be modified while parsing
+   * (quoted elements are unescaped in place).
+   * @param checkBom if true a byte order mark at from is skipped, should be false for blocks that are not at the
+   * beginning of the input.
+   */
+  @SuppressFBWarnings("EI_EXPOSE_REP2") // parses in place, by design.
+  public CsvBlockReader(final char[] data, final int from, final int to, final char separator,
+          final boolean checkBom) {
+    this.separator = separator;
+    this.reader = null;
+    this.buf = data;
+    this.scan = from;
+    this.elemStart = from;
+    this.limit = to;
+    this.eof = true;
+    this.element = new CharSlice();
+    this.atRowStart = true;
+    this.checkBom = checkBom;
+  }
+
+  /**
+   * @return the number of rows fully parsed so far.
+   */
+  public int getRowNr() {
+    return rowNr;
+  }
+
+  @Override
+  public TokenType next() throws IOException, CsvParseException {
+    if (pendingToken != null) {
+      TokenType result = pendingToken;
+      if (result != TokenType.END_DOCUMENT) {
+        pendingToken = null;
+      }
+      return result;
+    }
+    if (atRowStart) {
+      if (!hasMoreRows()) {
+        pendingToken = TokenType.END_DOCUMENT;
+        return TokenType.END_DOCUMENT;
+      }
+      atRowStart = false;
+    }
+    int term = parseElement();
+    if (term != separator) {
+      atRowStart = true;
+      pendingToken = TokenType.END_ROW;
+    }
+    return TokenType.ELEMENT;
+  }
+
+  /**
+   * @return the current element. The instance is reused, and content is valid only until the next invocation
+   * of next().
+   */
+  @Override
+  public CharSlice getElement() {
+    return element;
+  }
+
+  /**
+   * Parse the all rows, notifying handler.
+   */
+  public <T> T read(final CsvHandler<T> handler) throws IOException, CsvParseException {
+    try {
+      while (hasMoreRows()) {
+        handler.startRow(rowNr);
+        int term;
+        do {
+          term = parseElement();
+          handler.element(element);
+        } while (term == separator);
+        handler.endRow();
+      }
+    } catch (IOException ex) {
+      throw new IOException("IO issue at row " + rowNr, ex);
+    } catch (RuntimeException ex) {
+      throw new CsvRuntimeException("Exception at row " + rowNr, ex);
+    }
+    return handler.eof();
+  }
+
+  /**
+   * Positions the parser at the beginning of the next row.
+   * @return true if there is another row available.
+   */
+  private boolean hasMoreRows() throws IOException {
+    elemStart = scan;
+    if (scan >= limit && fill() < 0) {
+      return false;
+    }
+    if (skipLf) {
+      skipLf = false;
+      if (buf[scan] == '\n') {
+        scan++;
+        elemStart = scan;
+        if (scan >= limit && fill() < 0) {
+          return false;
+        }
+      }
+    }
+    if (checkBom) {
+      checkBom = false;
+      if (buf[scan] == CharSeparatedValues.UTF_BOM) {
+        scan++;
+        elemStart = scan;
+        return scan < limit || fill() > 0;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads more data into the buffer, preserving the content starting with elemStart.
+   * @return number of chars read, or -1 if end of input.
+   */
+  private int fill() throws IOException {
+    if (eof) {
+      return EOF;
+    }
+    if (elemStart > 0) {
+      int keep = limit - elemStart;
+      System.arraycopy(buf, elemStart, buf, 0, keep);
+      scan -= elemStart;
+      wpos -= elemStart;
+      limit = keep;
+      elemStart = 0;
+    }
+    if (limit == buf.length) {
+      buf = Arrays.copyOf(buf, buf.length * 2);
+    }
+    int nr = reader.read(buf, limit, buf.length - limit);
+    if (nr < 0) {
+      eof = true;
+      return EOF;
+    }
+    limit += nr;
+    return nr;
+  }
+
+  /**
+   * Parse the next element.
+   * @return the separator, '\n' for line end, or -1 for end of input.
+   */
+  private int parseElement() throws IOException, CsvParseException {
+    elemStart = scan;
+    if (scan >= limit && fill() < 0) {
+      element.set(buf, elemStart, 0);
+      return EOF;
+    }
+    if (buf[scan] == '"') {
+      return parseQuotedElement();
+    }
+    final char sep = separator;
+    while (true) {
+      final char[] b = buf;
+      final int l = limit;
+      int i = scan;
+      while (i < l) {
+        char c = b[i];
+        if (c == sep || c == '\n' || c == '\r') {
+          element.set(b, elemStart, i - elemStart);
+          scan = i + 1;
+          return terminator(c);
+        }
+        i++;
+      }
+      scan = i;
+      if (fill() < 0) {
+        element.set(buf, elemStart, scan - elemStart);
+        return EOF;
+      }
+    }
+  }
+
+  private int parseQuotedElement() throws IOException, CsvParseException {
+    scan++;
+    elemStart = scan;
+    wpos = scan;
+    while (true) {
+      final char[] b = buf;
+      final int l = limit;
+      int i = scan;
+      while (i < l && b[i] != '"') {
+        i++;
+      }
+      int len = i - scan;
+      if (wpos != scan) {
+        System.arraycopy(b, scan, b, wpos, len);
+      }
+      wpos += len;
+      scan = i;
+      if (i >= l) {
+        if (fill() < 0) {
+          throw new CsvParseException("Escaped CSV element " + new String(buf, elemStart, wpos - elemStart)
+                  + " not terminated correctly at row " + rowNr);
+        }
+        continue;
+      }
+      if (scan + 1 >= limit && fill() < 0) {
+        element.set(buf, elemStart, wpos - elemStart);
+        scan = limit;
+        return EOF;
+      }
+      char next = buf[scan + 1];
+      if (next == '"') {
+        buf[wpos++] = '"';
+        scan += 2;
+      } else {
+        element.set(buf, elemStart, wpos - elemStart);
+        scan += 2;
+        if (next == separator || next == '\n' || next == '\r') {
+          return terminator(next);
+        } else {
+          throw new CsvParseException("Unexpected character " + next + " after quoted element at row " + rowNr);
+        }
+      }
+    }
+  }
+
+  private int terminator(final char c) {
+    if (c == separator) {
+      return c;
+    }
+    rowNr++;
+    if (c == '\r') {
+      skipLf = true;
+    }
+    return '\n';
+  }
+
+  @Override
+  public String toString() {
+    return "CsvBlockReader{" + "separator=" + separator + ", rowNr=" + rowNr + '}';
+  }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.csv;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A reusable batch of rows, stored in primitive column arrays.
+ * Only the first size() elements of the column arrays are valid.
+ *
+ * @author Zoltan Farkas
+ */
+@NotThreadSafe
+@SuppressFBWarnings("EI_EXPOSE_REP") // column arrays are exposed for zero copy access.
+public final class CsvColumnBatch {
+
+  private final CsvColumnSchema schema;
+  private final int capacity;
+  private final Object[] columns;
+  private final boolean[][] nulls;
+  private final StringDictionary[] dictionaries;
+  private int size;
+
+  @SuppressFBWarnings("UCC_UNRELATED_COLLECTION_CONTENTS") // one primitive array per column type.
+  public CsvColumnBatch(final CsvColumnSchema schema, final int capacity) {
+    this.schema = schema;
+    this.capacity = capacity;
+    int nrCols = schema.size();
+    this.columns = new Object[nrCols];
+    this.nulls = new boolean[nrCols][];
+    this.dictionaries = new StringDictionary[nrCols];
+    for (int i = 0; i < nrCols; i++) {
+      nulls[i] = new boolean[capacity];
+      switch (schema.getType(i)) {
+        case LONG:
+          columns[i] = new long[capacity];
+          break;
+        case DOUBLE:
+          columns[i] = new double[capacity];
+          break;
+        case BOOLEAN:
+          columns[i] = new boolean[capacity];
+          break;
+        case STRING:
+          columns[i] = new String[capacity];
+          break;
+        case ENUM:
+          columns[i] = new int[capacity];
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported column type " + schema.getType(i));
+      }
+    }
+    this.size = 0;
+  }
+
+  public CsvColumnSchema getSchema() {
+    return schema;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public long[] getLongs(final int column) {
+    return (long[]) columns[column];
+  }
+
+  public double[] getDoubles(final int column) {
+    return (double[]) columns[column];
+  }
+
+  public boolean[] getBooleans(final int column) {
+    return (boolean[]) columns[column];
+  }
+
+  public String[] getStrings(final int column) {
+    return (String[]) columns[column];
+  }
+
+  /**
+   * @return the dictionary codes of a ENUM column, the values can be retrieved from getDictionary(column).
+   */
+  public int[] getCodes(final int column) {
+    return (int[]) columns[column];
+  }
+
+  @Nullable
+  public StringDictionary getDictionary(final int column) {
+    return dictionaries[column];
+  }
+
+  /**
+   * @return true if the cell is empty or missing.
+   */
+  public boolean isNull(final int column, final int row) {
+    return nulls[column][row];
+  }
+
+  void clear() {
+    if (size > 0) {
+      for (boolean[] n : nulls) {
+        Arrays.fill(n, 0, size, false);
+      }
+      for (int i = 0; i < columns.length; i++) {
+        if (schema.getType(i) == CsvColumnType.STRING) {
+          Arrays.fill((String[]) columns[i], 0, size, null);
+        }
+      }
+      size = 0;
+    }
+  }
+
+  void setDictionary(final int column, final StringDictionary dictionary) {
+    dictionaries[column] = dictionary;
+  }
+
+  void setNull(final int column, final int row) {
+    nulls[column][row] = true;
+  }
+
+  void setSize(final int psize) {
+    this.size = psize;
+  }
+
+  @Override
+  public String toString() {
+    return "CsvColumnBatch{" + "schema=" + schema + ", capacity=" + capacity + ", size=" + size + '}';
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.csv;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The column names and types for {@link TypedCsvReader}.
+ *
+ * @author Zoltan Farkas
+ */
+@Immutable
+@SuppressFBWarnings("DLC_DUBIOUS_LIST_COLLECTION") // a handful of columns, lists are fine.
+public final class CsvColumnSchema {
+
+  private final String[] names;
+  private final CsvColumnType[] types;
+
+  private CsvColumnSchema(final String[] names, final CsvColumnType[] types) {
+    this.names = names;
+    this.types = types;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int size() {
+    return names.length;
+  }
+
+  public String getName(final int column) {
+    return names[column];
+  }
+
+  public CsvColumnType getType(final int column) {
+    return types[column];
+  }
+
+  /**
+   * @return the index of the column, or -1 if there is no such column.
+   */
+  public int indexOf(final CharSequence name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].contentEquals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    return "CsvColumnSchema{" + "names=" + Arrays.toString(names) + ", types=" + Arrays.toString(types) + '}';
+  }
+
+  @SuppressFBWarnings("DLC_DUBIOUS_LIST_COLLECTION")
+  public static final class Builder {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<CsvColumnType> types = new ArrayList<>();
+
+    private Builder() { }
+
+    public Builder add(final String name, final CsvColumnType type) {
+      if (names.contains(name)) {
+        throw new IllegalArgumentException("Duplicate column " + name);
+      }
+      names.add(name);
+      types.add(type);
+      return this;
+    }
+
+    public CsvColumnSchema build() {
+      return new CsvColumnSchema(names.toArray(new String[names.size()]),
+              types.toArray(new CsvColumnType[types.size()]));
+    }
+  }
+
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.csv;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Splits a char separated values file into chunks at safe record boundaries.
+ *
+ * Split points are line feeds that are outside of a quoted element. Whether a line feed is inside a quoted element
+ * depends on the parser state at the beginning of the chunk, which is known only after the previous chunks are
+ * scanned. The parser state is modeled as a small state machine (see the S_* constants), so every nominal chunk is
+ * scanned in parallel for all possible start states, computing the end state and the first record terminating
+ * line feed for each of them. The split points are then resolved with a sequential pass over the per chunk results.
+ * Like the parser, only a quote at the beginning of a element starts a quoted element, quotes in the middle of
+ * a unquoted element are literal.
+ * This works only for charsets where '"', '\n', '\r' and the separator cannot be part of a multi byte sequence.
+ *
+ * File content is read with positional reads into heap buffers (no memory mapping, so there are no mapped
+ * buffers left for the garbage collector to unmap, and the file can be deleted/truncated right after parsing).
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class CsvFileChunks {
+
+  /** at the beginning of a element. */
+  private static final int S_ELEM_START = 0;
+  /** inside a unquoted element. */
+  private static final int S_UNQUOTED = 1;
+  /** inside a quoted element. */
+  private static final int S_QUOTED = 2;
+  /** right after a quote inside a quoted element, (end of the element or first char of a escaped quote). */
+  private static final int S_QUOTE_IN_QUOTED = 3;
+
+  private static final int NR_STATES = 4;
+
+  private static final int READ_BLOCK_SIZE = 65536;
+
+  private CsvFileChunks() { }
+
+  static boolean isSplittable(final Charset charset, final char separator) {
+    return separator < 128 && (StandardCharsets.UTF_8.equals(charset) || StandardCharsets.US_ASCII.equals(charset)
+            || StandardCharsets.ISO_8859_1.equals(charset));
+  }
+
+  /**
+   * @return chunk boundaries, [0, b1, ..., size].
+   */
+  static long[] split(final FileChannel channel, final long size, final int chunkSize, final char separator,
+          final ExecutorService pool) throws IOException {
+    int nrChunks = (int) ((size + chunkSize - 1) / chunkSize);
+    if (nrChunks <= 1) {
+      return new long[] {0, size};
+    }
+    List<Future<ChunkScan>> scans = new ArrayList<>(nrChunks);
+    for (int i = 0; i < nrChunks; i++) {
+      long start = (long) i * chunkSize;
+      long end = Math.min(size, start + chunkSize);
+      scans.add(pool.submit(() -> scan(channel, start, end, (byte) separator)));
+    }
+    long[] result = new long[nrChunks + 1];
+    int nrBoundaries = 1;
+    boolean success = false;
+    try {
+      int state = get(scans.get(0)).endStates[S_ELEM_START];
+      for (int i = 1; i < nrChunks; i++) {
+        ChunkScan scan = get(scans.get(i));
+        long nlPos = scan.firstLfs[state];
+        if (nlPos >= 0 && nlPos + 1 < size) {
+          result[nrBoundaries++] = nlPos + 1;
+        }
+        state = scan.endStates[state];
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        cancel(scans);
+      }
+    }
+    result[nrBoundaries++] = size;
+    return java.util.Arrays.copyOf(result, nrBoundaries);
+  }
+
+  /**
+   * cancel all futures, used to stop the remaining chunk work once a chunk failed.
+   */
+  static void cancel(final List<? extends Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  static CharBuffer decode(final FileChannel channel, final long start, final long end, final Charset charset)
+          throws IOException {
+    CharsetDecoder decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    long len = end - start;
+    CharBuffer out = CharBuffer.allocate((int) Math.ceil(len * (double) decoder.maxCharsPerByte()));
+    ByteBuffer in = ByteBuffer.allocate((int) Math.min(READ_BLOCK_SIZE, len));
+    long pos = start;
+    while (pos < end) {
+      if (in.remaining() > end - pos) {
+        in.limit(in.position() + (int) (end - pos));
+      }
+      int nr = channel.read(in, pos);
+      if (nr < 0) {
+        throw new EOFException("Unexpected end of file at " + pos + ", expected size " + end);
+      }
+      pos += nr;
+      in.flip();
+      check(decoder.decode(in, out, pos >= end));
+      in.compact();
+    }
+    in.flip();
+    check(decoder.decode(in, out, true));
+    check(decoder.flush(out));
+    out.flip();
+    return out;
+  }
+
+  private static void check(final CoderResult cr) throws CharacterCodingException {
+    if (cr.isError()) {
+      cr.throwException();
+    } else if (cr.isOverflow()) {
+      throw new IllegalStateException("Char buffer overflow, " + cr);
+    }
+  }
+
+  private static ChunkScan scan(final FileChannel channel, final long start, final long end, final byte separator) {
+    int[] states = new int[NR_STATES];
+    long[] firstLfs = new long[NR_STATES];
+    for (int s = 0; s < NR_STATES; s++) {
+      states[s] = s;
+      firstLfs[s] = -1;
+    }
+    ByteBuffer bb = ByteBuffer.allocate((int) Math.min(READ_BLOCK_SIZE, end - start));
+    long pos = start;
+    try {
+      while (pos < end) {
+        bb.clear();
+        if (bb.remaining() > end - pos) {
+          bb.limit((int) (end - pos));
+        }
+        int nr = channel.read(bb, pos);
+        if (nr < 0) {
+          throw new EOFException("Unexpected end of file at " + pos + ", expected size " + end);
+        }
+        byte[] b = bb.array();
+        // the parser skips a byte order mark at the beginning of the file.
+        int from = pos == 0 && nr >= 3 && b[0] == (byte) 0xEF && b[1] == (byte) 0xBB && b[2] == (byte) 0xBF ? 3 : 0;
+        for (int s = 0; s < NR_STATES; s++) {
+          int state = states[s];
+          long firstLf = firstLfs[s];
+          for (int i = from; i < nr; i++) {
+            byte c = b[i];
+            if (c == '"') {
+              state = quote(state);
+            } else if (c == separator || c == '\r') {
+              state = state == S_QUOTED ? S_QUOTED : S_ELEM_START;
+            } else if (c == '\n') {
+              if (state == S_QUOTED) {
+                continue;
+              }
+              if (firstLf < 0) {
+                firstLf = pos + i;
+              }
+              state = S_ELEM_START;
+            } else if (state != S_QUOTED) {
+              state = S_UNQUOTED;
+            }
+          }
+          states[s] = state;
+          firstLfs[s] = firstLf;
+        }
+        pos += nr;
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return new ChunkScan(states, firstLfs);
+  }
+
+  private static int quote(final int state) {
+    switch (state) {
+      case S_ELEM_START:
+      case S_QUOTE_IN_QUOTED:
+        return S_QUOTED;
+      case S_QUOTED:
+        return S_QUOTE_IN_QUOTED;
+      default:
+        return S_UNQUOTED;
+    }
+  }
+
+  @SuppressFBWarnings({"ITC_INHERITANCE_TYPE_CHECKING", "LEST_LOST_EXCEPTION_STACK_TRACE"})
+  static <T> T get(final Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException iex = new InterruptedIOException("Interrupted while waiting for " + future);
+      iex.initCause(ex);
+      throw iex;
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new IOException(cause);
+      }
+    }
+  }
+
+  private static final class ChunkScan {
+
+    /** end state for every start state. */
+    private final int[] endStates;
+    /** position of the first record terminating line feed for every start state, -1 if none. */
+    private final long[] firstLfs;
+
+    ChunkScan(final int[] endStates, final long[] firstLfs) {
+      this.endStates = endStates;
+      this.firstLfs = firstLfs;
+    }
+
+  }
+
+}
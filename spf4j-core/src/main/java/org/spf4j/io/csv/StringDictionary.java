@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.csv;
+
+import java.util.Arrays;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Dictionary for low cardinality string columns. Maps char array regions to int codes, without creating
+ * a String for values that are already in the dictionary.
+ *
+ * @author Zoltan Farkas
+ */
+@NotThreadSafe
+public final class StringDictionary {
+
+  private String[] values;
+  private int[] hashes;
+  /** open addressing hash table containing code + 1, 0 for empty slots. */
+  private int[] table;
+  private int size;
+
+  public StringDictionary() {
+    values = new String[16];
+    hashes = new int[16];
+    table = new int[32];
+    size = 0;
+  }
+
+  /**
+   * @return the code of the value, the value will be added to the dictionary if not present.
+   */
+  public int code(final char[] chars, final int from, final int length) {
+    int h = hash(chars, from, length);
+    int mask = table.length - 1;
+    int idx = h & mask;
+    while (true) {
+      int c = table[idx] - 1;
+      if (c < 0) {
+        return add(new String(chars, from, length), h, idx);
+      }
+      if (hashes[c] == h && regionEquals(values[c], chars, from, length)) {
+        return c;
+      }
+      idx = (idx + 1) & mask;
+    }
+  }
+
+  public int code(final CharSlice slice) {
+    return code(slice.getArray(), slice.getOffset(), slice.length());
+  }
+
+  public String get(final int code) {
+    if (code >= size) {
+      throw new IndexOutOfBoundsException("No value for " + code + " in " + this);
+    }
+    return values[code];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private int add(final String value, final int hash, final int idx) {
+    int code = size++;
+    if (code >= values.length) {
+      values = Arrays.copyOf(values, values.length * 2);
+      hashes = Arrays.copyOf(hashes, hashes.length * 2);
+    }
+    values[code] = value;
+    hashes[code] = hash;
+    table[idx] = code + 1;
+    if (size * 2 > table.length) {
+      rehash();
+    }
+    return code;
+  }
+
+  private void rehash() {
+    int[] newTable = new int[table.length * 2];
+    int mask = newTable.length - 1;
+    for (int c = 0; c < size; c++) {
+      int idx = hashes[c] & mask;
+      while (newTable[idx] != 0) {
+        idx = (idx + 1) & mask;
+      }
+      newTable[idx] = c + 1;
+    }
+    table = newTable;
+  }
+
+  private static int hash(final char[] chars, final int from, final int length) {
+    int h = 0;
+    for (int i = from, l = from + length; i < l; i++) {
+      h = 31 * h + chars[i];
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean regionEquals(final String value, final char[] chars, final int from, final int length) {
+    if (value.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (value.charAt(i) != chars[from + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "StringDictionary{" + "size=" + size + '}';
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.csv;
+
+import java.io.IOException;
+import java.util.Arrays;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.spf4j.io.csv.CsvReader.TokenType;
+
+/**
+ * Reads char separated values into reusable primitive column batches (see {@link CsvColumnBatch}).
+ * Numbers are parsed straight from the parser buffer, and ENUM columns are dictionary encoded,
+ * so after warm-up no objects are created per cell, except for the values of STRING columns.
+ *
+ * @author Zoltan Farkas
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public final class TypedCsvReader {
+
+  private final CsvBlockReader reader;
+  private final CsvColumnSchema schema;
+  private final StringDictionary[] dictionaries;
+  /** csv column index -> schema column index or -1 if column is ignored. */
+  private final int[] columnMap;
+
+  /**
+   * @param reader the underlying parser.
+   * @param schema the columns to decode.
+   * @param hasHeader if true, the first row is a header, and schema columns are matched by name, columns not in
+   * schema are ignored. Otherwise schema columns are matched by position.
+   */
+  public TypedCsvReader(final CsvBlockReader reader, final CsvColumnSchema schema, final boolean hasHeader)
+          throws IOException, CsvParseException {
+    this.reader = reader;
+    this.schema = schema;
+    int nrCols = schema.size();
+    this.dictionaries = new StringDictionary[nrCols];
+    for (int i = 0; i < nrCols; i++) {
+      if (schema.getType(i) == CsvColumnType.ENUM) {
+        dictionaries[i] = new StringDictionary();
+      }
+    }
+    if (hasHeader) {
+      this.columnMap = readHeader();
+    } else {
+      this.columnMap = new int[nrCols];
+      for (int i = 0; i < nrCols; i++) {
+        columnMap[i] = i;
+      }
+    }
+  }
+
+  private int[] readHeader() throws IOException, CsvParseException {
+    int nrCols = schema.size();
+    int[] result = new int[nrCols];
+    boolean[] found = new boolean[nrCols];
+    int csvCol = 0;
+    TokenType token = reader.next();
+    while (token == TokenType.ELEMENT) {
+      int col = schema.indexOf(reader.getElement());
+      if (csvCol >= result.length) {
+        result = Arrays.copyOf(result, Math.max(4, result.length * 2));
+      }
+      result[csvCol++] = col;
+      if (col >= 0) {
+        found[col] = true;
+      }
+      token = reader.next();
+    }
+    for (int i = 0; i < found.length; i++) {
+      if (!found[i]) {
+        throw new CsvParseException("Column " + schema.getName(i) + " not found in header");
+      }
+    }
+    return Arrays.copyOf(result, csvCol);
+  }
+
+  public CsvColumnSchema getSchema() {
+    return schema;
+  }
+
+  public StringDictionary getDictionary(final int column) {
+    return dictionaries[column];
+  }
+
+  /**
+   * Read the next rows into batch, overwriting its current content.
+   * @return the number of rows read, 0 if the end of input has been reached.
+   */
+  public int read(final CsvColumnBatch batch) throws IOException, CsvParseException {
+    batch.clear();
+    for (int i = 0; i < dictionaries.length; i++) {
+      batch.setDictionary(i, dictionaries[i]);
+    }
+    int capacity = batch.capacity();
+    int row = 0;
+    while (row < capacity) {
+      TokenType token = reader.next();
+      if (token == TokenType.END_DOCUMENT) {
+        break;
+      }
+      int csvCol = 0;
+      while (token == TokenType.ELEMENT) {
+        if (csvCol < columnMap.length) {
+          int col = columnMap[csvCol];
+          if (col >= 0) {
+            decode(reader.getElement(), col, row, batch);
+          }
+        }
+        csvCol++;
+        token = reader.next();
+      }
+      for (; csvCol < columnMap.length; csvCol++) {
+        int col = columnMap[csvCol];
+        if (col >= 0) {
+          batch.setNull(col, row);
+        }
+      }
+      row++;
+    }
+    batch.setSize(row);
+    return row;
+  }
+
+  private void decode(final CharSlice elem, final int col, final int row, final CsvColumnBatch batch)
+          throws CsvParseException {
+    final char[] chars = elem.getArray();
+    final int from = elem.getOffset();
+    final int length = elem.length();
+    CsvColumnType type = schema.getType(col);
+    if (length == 0 && type != CsvColumnType.STRING && type != CsvColumnType.ENUM) {
+      batch.setNull(col, row);
+      return;
+    }
+    try {
+      switch (type) {
+        case LONG:
+          batch.getLongs(col)[row] = CharArrayNumbers.parseLong(chars, from, length);
+          break;
+        case DOUBLE:
+          batch.getDoubles(col)[row] = CharArrayNumbers.parseDouble(chars, from, length);
+          break;
+        case BOOLEAN:
+          batch.getBooleans(col)[row] = parseBoolean(chars, from, length);
+          break;
+        case STRING:
+          batch.getStrings(col)[row] = elem.toString();
+          break;
+        case ENUM:
+          batch.getCodes(col)[row] = dictionaries[col].code(chars, from, length);
+          break;
+        default:
+          throw new IllegalStateException("Unsupported column type " + type);
+      }
+    } catch (NumberFormatException ex) {
+      throw new CsvParseException("Invalid " + type + " value for column " + schema.getName(col)
+              + " at row " + reader.getRowNr(), ex);
+    }
+  }
+
+  private static boolean parseBoolean(final char[] chars, final int from, final int length) {
+    if (length == 1) {
+      char c = chars[from];
+      if (c == '1') {
+        return true;
+      } else if (c == '0') {
+        return false;
+      }
+    } else if (length == 4 && regionEqualsIgnoreCase("true", chars, from)) {
+      return true;
+    } else if (length == 5 && regionEqualsIgnoreCase("false", chars, from)) {
+      return false;
+    }
+    throw new NumberFormatException("Invalid boolean: " + new String(chars, from, length));
+  }
+
+  private static boolean regionEqualsIgnoreCase(final String what, final char[] chars, final int from) {
+    for (int i = 0, l = what.length(); i < l; i++) {
+      if (Character.toLowerCase(chars[from + i]) != what.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "TypedCsvReader{" + "reader=" + reader + ", schema=" + schema + '}';
+  }
+
+}
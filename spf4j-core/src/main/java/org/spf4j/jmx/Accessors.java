@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jmx;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.spf4j.base.Reflections;
+
+/**
+ * Utility to generate the accessors of exported attributes and operations once, at export time.
+ *
+ * Public methods of public classes visible to this class loader are accessed via LambdaMetafactory generated
+ * lambdas (as fast as a direct call), everything else via bound method handles.
+ * Exceptions thrown by the accessed methods are propagated as is (checked exceptions included).
+ *
+ * @author Zoltan Farkas
+ */
+final class Accessors {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private Accessors() { }
+
+  @SuppressFBWarnings("FII_USE_METHOD_REFERENCE") // invokeExact needs the try/catch.
+  static Supplier<Object> getter(final Method method, @Nullable final Object object) {
+    MethodHandle mh = unreflect(method);
+    boolean isStatic = Modifier.isStatic(method.getModifiers());
+    if (isLambdaAccessible(method)) {
+      try {
+        CallSite cs = LambdaMetafactory.metafactory(LOOKUP, "get",
+                isStatic ? MethodType.methodType(Supplier.class)
+                        : MethodType.methodType(Supplier.class, method.getDeclaringClass()),
+                MethodType.methodType(Object.class), mh,
+                MethodType.methodType(Reflections.primitiveToWrapper(method.getReturnType())));
+        return (Supplier<Object>) (isStatic ? cs.getTarget().invoke() : cs.getTarget().invoke(object));
+      } catch (LambdaConversionException ex) {
+        // fallback to method handle
+      } catch (Throwable ex) {
+        throw new IllegalStateException("Cannot create getter for " + method, ex);
+      }
+    }
+    final MethodHandle bmh = (isStatic ? mh : mh.bindTo(object)).asType(MethodType.methodType(Object.class));
+    return () -> {
+      try {
+        return bmh.invokeExact();
+      } catch (Throwable ex) {
+        throw Accessors.<RuntimeException>sneakyThrow(ex);
+      }
+    };
+  }
+
+  static Consumer<Object> setter(final Method method, @Nullable final Object object) {
+    MethodHandle mh = unreflect(method);
+    boolean isStatic = Modifier.isStatic(method.getModifiers());
+    if (isLambdaAccessible(method)) {
+      try {
+        CallSite cs = LambdaMetafactory.metafactory(LOOKUP, "accept",
+                isStatic ? MethodType.methodType(Consumer.class)
+                        : MethodType.methodType(Consumer.class, method.getDeclaringClass()),
+                MethodType.methodType(void.class, Object.class), mh,
+                MethodType.methodType(void.class, Reflections.primitiveToWrapper(method.getParameterTypes()[0])));
+        return (Consumer<Object>) (isStatic ? cs.getTarget().invoke() : cs.getTarget().invoke(object));
+      } catch (LambdaConversionException ex) {
+        // fallback to method handle
+      } catch (Throwable ex) {
+        throw new IllegalStateException("Cannot create setter for " + method, ex);
+      }
+    }
+    final MethodHandle bmh = (isStatic ? mh : mh.bindTo(object))
+            .asType(MethodType.methodType(void.class, Object.class));
+    return (value) -> {
+      try {
+        bmh.invokeExact(value);
+      } catch (Throwable ex) {
+        throw Accessors.<RuntimeException>sneakyThrow(ex);
+      }
+    };
+  }
+
+  static Function<Object[], Object> invoker(final Method method, @Nullable final Object object) {
+    MethodHandle mh = unreflect(method).asFixedArity();
+    if (!Modifier.isStatic(method.getModifiers())) {
+      mh = mh.bindTo(object);
+    }
+    final MethodHandle smh = mh.asSpreader(Object[].class, method.getParameterCount())
+            .asType(MethodType.methodType(Object.class, Object[].class));
+    return (args) -> {
+      try {
+        return smh.invokeExact(args);
+      } catch (Throwable ex) {
+        throw Accessors.<RuntimeException>sneakyThrow(ex);
+      }
+    };
+  }
+
+  private static MethodHandle unreflect(final Method method) {
+    try {
+      return LOOKUP.unreflect(method);
+    } catch (IllegalAccessException ex) {
+      throw new IllegalArgumentException("Cannot access " + method, ex);
+    }
+  }
+
+  /**
+   * The generated lambda class links against the method directly, so the method and the types in its signature
+   * need to be accessible and visible from this class.
+   */
+  private static boolean isLambdaAccessible(final Method method) {
+    if (!Modifier.isPublic(method.getModifiers())) {
+      return false;
+    }
+    if (!isVisible(method.getDeclaringClass()) || !isVisible(method.getReturnType())) {
+      return false;
+    }
+    for (Class<?> pType : method.getParameterTypes()) {
+      if (!isVisible(pType)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isVisible(final Class<?> clasz) {
+    Class<?> c = clasz;
+    while (c.isArray()) {
+      c = c.getComponentType();
+    }
+    if (c.isPrimitive()) {
+      return true;
+    }
+    for (Class<?> e = c; e != null; e = e.getEnclosingClass()) {
+      if (!Modifier.isPublic(e.getModifiers())) {
+        return false;
+      }
+    }
+    try {
+      return Class.forName(c.getName(), false, Accessors.class.getClassLoader()) == c;
+    } catch (ClassNotFoundException ex) {
+      return false;
+    }
+  }
+
+  private static <E extends Throwable> E sneakyThrow(final Throwable t) throws E {
+    throw (E) t;
+  }
+
+}
@@ -33,9 +33,10 @@ package org.spf4j.jmx;
 
 import java.io.InvalidObjectException;
 import java.io.NotSerializableException;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.management.InvalidAttributeValueException;
@@ -52,6 +53,8 @@ class BeanExportedValue implements ExportedValue<Object> {
   private final String description;
   private final Method getMethod;
   private final Method setMethod;
+  private final Supplier<Object> getter;
+  private final Consumer<Object> setter;
   private final Object object;
   private final Type valueClass;
   private final JMXBeanMapping converter;
@@ -63,6 +66,8 @@ class BeanExportedValue implements ExportedValue<Object> {
     this.description = description;
     this.getMethod = getMethod;
     this.setMethod = setMethod;
+    this.getter = getMethod == null ? null : Accessors.getter(getMethod, object);
+    this.setter = setMethod == null ? null : Accessors.setter(setMethod, object);
     this.object = object;
     this.valueClass = valueClass;
     if (mapOpenType) {
@@ -104,32 +109,35 @@ class BeanExportedValue implements ExportedValue<Object> {
 
   @Override
   public Object get() throws OpenDataException {
-
+    Object value;
     try {
-      if (converter != null) {
-        return converter.toOpenValue(getMethod.invoke(object));
-      } else {
-        return getMethod.invoke(object);
-      }
-    } catch (IllegalAccessException | InvocationTargetException ex) {
+      value = getter.get();
+    } catch (Exception ex) {
       OpenDataException thr = new OpenDataException("Cannot get " + getMethod);
       thr.addSuppressed(ex);
       throw thr;
     }
+    if (converter != null) {
+      return converter.toOpenValue(value);
+    } else {
+      return value;
+    }
   }
 
   @Override
   public void set(final Object value) throws InvalidAttributeValueException, InvalidObjectException {
-    if (setMethod == null) {
+    if (setter == null) {
       throw new InvalidAttributeValueException(name + " is a read only attribute ");
     }
+    Object jValue;
+    if (converter != null) {
+      jValue = converter.fromOpenValue(value);
+    } else {
+      jValue = value;
+    }
     try {
-      if (converter != null) {
-        setMethod.invoke(object, converter.fromOpenValue(value));
-      } else {
-        setMethod.invoke(object, value);
-      }
-    } catch (IllegalAccessException | InvocationTargetException ex) {
+      setter.accept(jValue);
+    } catch (Exception ex) {
       InvalidObjectException iox = new InvalidObjectException("Cannot set " + value);
       iox.addSuppressed(ex);
       throw iox;
@@ -34,10 +34,10 @@ package org.spf4j.jmx;
 import java.io.InvalidObjectException;
 import java.io.NotSerializableException;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.Arrays;
+import java.util.function.Function;
 import javax.annotation.Nullable;
 import javax.management.MBeanParameterInfo;
 
@@ -57,6 +57,8 @@ final class ExportedOperationImpl implements ExportedOperation {
 
   private final Method method;
 
+  private final Function<Object[], Object> invoker;
+
   private final Object object;
 
   private final MBeanParameterInfo[] paramInfos;
@@ -70,6 +72,7 @@ final class ExportedOperationImpl implements ExportedOperation {
     this.name = name;
     this.description = description;
     this.method = method;
+    this.invoker = Accessors.invoker(method, object);
     this.object = object;
     Type[] parameterTypes = method.getGenericParameterTypes();
     Type returnType = method.getGenericReturnType();
@@ -139,25 +142,26 @@ final class ExportedOperationImpl implements ExportedOperation {
 
   @Override
   public Object invoke(final Object[] parameters) throws OpenDataException, InvalidObjectException {
-    try {
-      for (int i = 0; i < parameters.length; i++) {
-        JMXBeanMapping argConverter = argConverters[i];
-        if (argConverter != null) {
-          parameters[i] = argConverter.fromOpenValue(parameters[i]);
-        }
-      }
-      Object rVal = method.invoke(object, parameters);
-      if (resultConverter != null) {
-        return resultConverter.toOpenValue(rVal);
-      } else {
-        return rVal;
+    for (int i = 0; i < parameters.length; i++) {
+      JMXBeanMapping argConverter = argConverters[i];
+      if (argConverter != null) {
+        parameters[i] = argConverter.fromOpenValue(parameters[i]);
       }
-    } catch (IllegalAccessException | InvocationTargetException ex) {
+    }
+    Object rVal;
+    try {
+      rVal = invoker.apply(parameters);
+    } catch (Exception ex) {
       OpenDataException x
               = new OpenDataException("Cannot invoke " + method + " with " + Arrays.toString(parameters));
       x.addSuppressed(ex);
       throw x;
     }
+    if (resultConverter != null) {
+      return resultConverter.toOpenValue(rVal);
+    } else {
+      return rVal;
+    }
   }
 
   @Override
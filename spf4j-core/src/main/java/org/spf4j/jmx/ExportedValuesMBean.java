@@ -69,6 +69,12 @@ final class ExportedValuesMBean implements DynamicMBean {
 
   private final Map<String, ExportedOperation> exportedOperations;
 
+  /** attribute names in bean info order, used to detect a "get all attributes" request. */
+  private final String[] attributeNames;
+
+  /** attributes in bean info order. */
+  private final ExportedValue<?>[] attributes;
+
   private final ObjectName objectName;
 
   private final MBeanInfo beanInfo;
@@ -80,6 +86,8 @@ final class ExportedValuesMBean implements DynamicMBean {
     this.exportedValues = exportedValues;
     this.objectName = objectName;
     this.beanInfo = createBeanInfo();
+    this.attributes = this.exportedValues.values().toArray(new ExportedValue<?>[this.exportedValues.size()]);
+    this.attributeNames = attributeNames(this.attributes);
   }
 
   ExportedValuesMBean(final ObjectName objectName,
@@ -98,6 +106,8 @@ final class ExportedValuesMBean implements DynamicMBean {
     }
     this.objectName = objectName;
     this.beanInfo = createBeanInfo();
+    this.attributes = this.exportedValues.values().toArray(new ExportedValue<?>[this.exportedValues.size()]);
+    this.attributeNames = attributeNames(this.attributes);
   }
 
   ExportedValuesMBean(final ExportedValuesMBean extend,
@@ -118,6 +128,16 @@ final class ExportedValuesMBean implements DynamicMBean {
     }
     this.objectName = extend.getObjectName();
     this.beanInfo = extend.beanInfo;
+    this.attributes = this.exportedValues.values().toArray(new ExportedValue<?>[this.exportedValues.size()]);
+    this.attributeNames = attributeNames(this.attributes);
+  }
+
+  private static String[] attributeNames(final ExportedValue<?>[] attributes) {
+    String[] result = new String[attributes.length];
+    for (int i = 0; i < attributes.length; i++) {
+      result[i] = attributes[i].getName();
+    }
+    return result;
   }
 
   ExportedValuesMBean(final ExportedValuesMBean extend,
@@ -129,6 +149,8 @@ final class ExportedValuesMBean implements DynamicMBean {
     this.exportedOperations.putAll(extend.exportedOperations);
     this.objectName = extend.getObjectName();
     this.beanInfo = createBeanInfo();
+    this.attributes = this.exportedValues.values().toArray(new ExportedValue<?>[this.exportedValues.size()]);
+    this.attributeNames = attributeNames(this.attributes);
   }
 
 
@@ -188,9 +210,12 @@ final class ExportedValuesMBean implements DynamicMBean {
   @Override
   public AttributeList getAttributes(final String[] names) {
     AttributeList list = new AttributeList(names.length);
-    for (String name : names) {
+    // fast path, monitoring agents will typically request all attributes, in the bean info order.
+    boolean all = Arrays.equals(names, attributeNames);
+    for (int i = 0; i < names.length; i++) {
+      String name = names[i];
       try {
-        ExportedValue<?> attr = exportedValues.get(name);
+        ExportedValue<?> attr = all ? attributes[i] : exportedValues.get(name);
         if (attr == null) {
           throw new IllegalArgumentException("No attribute with name " + name);
         }
@@ -58,18 +58,19 @@ public final class MapEntryOpenTypeMapping extends MXBeanMapping implements JMXB
 
   private static final String[] NAMES = {"key", "value"};
 
-  private final JMXBeanMappingSupplier typeMapper;
-
   private final Class<?> rawType;
 
-  private final Type[] actualTypeArguments;
+  private final JMXBeanMapping keyMapping;
+
+  private final JMXBeanMapping valueMapping;
 
   public MapEntryOpenTypeMapping(final ParameterizedType javaType,
           final JMXBeanMappingSupplier typeMapper) throws NotSerializableException {
     super(javaType, typeFromMapEntry(javaType, typeMapper));
-    this.typeMapper = typeMapper;
     rawType = (Class) javaType.getRawType();
-    actualTypeArguments = javaType.getActualTypeArguments();
+    Type[] actualTypeArguments = javaType.getActualTypeArguments();
+    keyMapping = typeMapper.get(actualTypeArguments[0]);
+    valueMapping = typeMapper.get(actualTypeArguments[1]);
   }
 
   @Override
@@ -79,40 +80,25 @@ public final class MapEntryOpenTypeMapping extends MXBeanMapping implements JMXB
       throw new InvalidObjectException("Not a CompositeData " + openValue);
     }
     CompositeData cd = (CompositeData) openValue;
-    try {
-      if (rawType == Pair.class) {
-        return Pair.of(typeMapper.get(actualTypeArguments[0]).fromOpenValue(cd.get("key")),
-                typeMapper.get(actualTypeArguments[1]).fromOpenValue(cd.get("value")));
-      } else if (rawType == SerializablePair.class) {
-        return SerializablePair.of((Serializable) typeMapper.get(actualTypeArguments[0]).fromOpenValue(cd.get("key")),
-                (Serializable) typeMapper.get(actualTypeArguments[1]).fromOpenValue(cd.get("value")));
-      } else if (rawType == ComparablePair.class) {
-        return new ComparablePair(
-                (Serializable & Comparable) typeMapper.get(actualTypeArguments[0]).fromOpenValue(cd.get("key")),
-                (Serializable & Comparable) typeMapper.get(actualTypeArguments[1]).fromOpenValue(cd.get("value")));
-      } else {
-        return Pair.of(typeMapper.get(actualTypeArguments[0]).fromOpenValue(cd.get("key")),
-                typeMapper.get(actualTypeArguments[1]).fromOpenValue(cd.get("value")));
-      }
-    } catch (NotSerializableException ex) {
-      InvalidObjectException iex = new InvalidObjectException("Not serializable " + openValue);
-      iex.initCause(ex);
-      throw iex;
+    if (rawType == Pair.class) {
+      return Pair.of(keyMapping.fromOpenValue(cd.get("key")), valueMapping.fromOpenValue(cd.get("value")));
+    } else if (rawType == SerializablePair.class) {
+      return SerializablePair.of((Serializable) keyMapping.fromOpenValue(cd.get("key")),
+              (Serializable) valueMapping.fromOpenValue(cd.get("value")));
+    } else if (rawType == ComparablePair.class) {
+      return new ComparablePair(
+              (Serializable & Comparable) keyMapping.fromOpenValue(cd.get("key")),
+              (Serializable & Comparable) valueMapping.fromOpenValue(cd.get("value")));
+    } else {
+      return Pair.of(keyMapping.fromOpenValue(cd.get("key")), valueMapping.fromOpenValue(cd.get("value")));
     }
   }
 
   @Override
   public Object toOpenValue(final Object javaValue) throws OpenDataException {
     Map.Entry entry = (Map.Entry) javaValue;
-    try {
-      return new CompositeDataSupport((CompositeType) getOpenType(), NAMES,
-              new Object[]{typeMapper.get(actualTypeArguments[0]).toOpenValue(entry.getKey()),
-                typeMapper.get(actualTypeArguments[1]).toOpenValue(entry.getValue())});
-    } catch (NotSerializableException ex) {
-      OpenDataException iex = new OpenDataException("Not serializable " + javaValue);
-      iex.initCause(ex);
-      throw iex;
-    }
+    return new CompositeDataSupport((CompositeType) getOpenType(), NAMES,
+            new Object[]{keyMapping.toOpenValue(entry.getKey()), valueMapping.toOpenValue(entry.getValue())});
   }
 
   private static CompositeType typeFromMapEntry(final ParameterizedType type,
@@ -58,17 +58,43 @@ import org.spf4j.jmx.JMXBeanMappingSupplier;
 /**
  * @author Zoltan Farkas
  */
-@SuppressFBWarnings("SCII_SPOILED_CHILD_INTERFACE_IMPLEMENTOR")
+@SuppressFBWarnings({"SCII_SPOILED_CHILD_INTERFACE_IMPLEMENTOR", "PL_PARALLEL_LISTS"})
 public final class SpecificRecordOpenTypeMapping extends MXBeanMapping implements JMXBeanMapping {
 
   private static final Schema NULL_SCHEMA = Schema.create(Schema.Type.NULL);
 
   private final JMXBeanMappingSupplier typeMapper;
 
+  private final Class<? extends SpecificRecordBase> recordClass;
+
+  /** field names by field position, for recordClass. */
+  private final String[] fieldNames;
+
+  /** field mappings by field position, for recordClass. */
+  private final JMXBeanMapping[] fieldMappings;
+
   public SpecificRecordOpenTypeMapping(final Class<? extends SpecificRecordBase> javaType,
           final JMXBeanMappingSupplier typeMapper) throws NotSerializableException {
     super(javaType, typeFromSpecificRecord(javaType, typeMapper));
     this.typeMapper = typeMapper;
+    this.recordClass = javaType;
+    List<Schema.Field> fields = newRecord(javaType).getSchema().getFields();
+    int size = fields.size();
+    this.fieldNames = new String[size];
+    this.fieldMappings = new JMXBeanMapping[size];
+    for (Schema.Field field : fields) {
+      int pos = field.pos();
+      fieldNames[pos] = field.name();
+      fieldMappings[pos] = typeMapper.get(getGenericType(field.schema()));
+    }
+  }
+
+  private static SpecificRecordBase newRecord(final Class<? extends SpecificRecordBase> rc) {
+    try {
+      return rc.newInstance();
+    } catch (InstantiationException | IllegalAccessException ex) {
+      throw new UncheckedExecutionException(ex);
+    }
   }
 
   @Override
@@ -81,6 +107,14 @@ public final class SpecificRecordOpenTypeMapping extends MXBeanMapping implement
     CompositeData cd = (CompositeData) openValue;
     CompositeType compositeType = cd.getCompositeType();
     String typeName = compositeType.getTypeName();
+    if (typeName.equals(recordClass.getName())) {
+      // fast path, the mappings are precomputed.
+      SpecificRecordBase rec = newRecord(recordClass);
+      for (int i = 0; i < fieldNames.length; i++) {
+        rec.put(i, fieldMappings[i].fromOpenValue(cd.get(fieldNames[i])));
+      }
+      return rec;
+    }
     SpecificRecordBase rec;
     try {
       rec = (SpecificRecordBase) Class.forName(typeName).newInstance();
@@ -143,9 +177,19 @@ public final class SpecificRecordOpenTypeMapping extends MXBeanMapping implement
 
 
   @Override
+  @SuppressFBWarnings("URV_INHERITED_METHOD_WITH_RELATED_TYPES")
   public Object toOpenValue(final Object javaValue) throws OpenDataException {
     SpecificRecordBase sr = (SpecificRecordBase) javaValue;
-    return fromSpecificRecord((SpecificRecordBase) sr);
+    if (sr.getClass() == recordClass) {
+      // fast path, the composite type and the mappings are precomputed.
+      int size = fieldNames.length;
+      Object[] values = new Object[size];
+      for (int i = 0; i < size; i++) {
+        values[i] = fieldMappings[i].toOpenValue(sr.get(i));
+      }
+      return new CompositeDataSupport((CompositeType) getOpenType(), fieldNames, values);
+    }
+    return fromSpecificRecord(sr);
   }
 
 
@@ -179,11 +223,7 @@ public final class SpecificRecordOpenTypeMapping extends MXBeanMapping implement
 
   private static  CompositeType typeFromSpecificRecord(final Class<? extends SpecificRecordBase> rc,
           final JMXBeanMappingSupplier typeMapper) throws NotSerializableException {
-    try {
-      return typeFromSpecificRecord(rc.newInstance(), typeMapper);
-    } catch (InstantiationException | IllegalAccessException ex) {
-      throw new UncheckedExecutionException(ex);
-    }
+    return typeFromSpecificRecord(newRecord(rc), typeMapper);
   }
 
 
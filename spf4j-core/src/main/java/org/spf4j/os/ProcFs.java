@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.os;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import static org.spf4j.base.Runtime.PID;
+
+/**
+ * Linux /proc file system reader for the current process.
+ * Files are read into reused buffers and parsed in place, no processes are forked,
+ * so this is safe to use when the process is under resource pressure.
+ *
+ * @author Zoltan Farkas
+ */
+@NotThreadSafe
+@SuppressFBWarnings("PATH_TRAVERSAL_IN") // paths are not user supplied.
+public final class ProcFs implements Closeable {
+
+  private static final Path PROC_FOLDER = Paths.get("/proc/" + PID);
+
+  /** clock ticks per second, (getconf CLK_TCK) 100 on most linux systems. */
+  public static final int CLOCK_TICKS_PER_SECOND = Integer.getInteger("spf4j.os.clockTicksPerSecond", 100);
+
+  private static final byte[] VM_RSS = "VmRSS:".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] THREADS = "Threads:".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] VOL_CTX_SW = "voluntary_ctxt_switches:".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] INVOL_CTX_SW = "nonvoluntary_ctxt_switches:".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] RCHAR = "rchar:".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] WCHAR = "wchar:".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] READ_BYTES = "read_bytes:".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] WRITE_BYTES = "write_bytes:".getBytes(StandardCharsets.US_ASCII);
+
+  private final Path fdFolder;
+
+  private final Path taskFolder;
+
+  private final FileChannel stat;
+
+  private final FileChannel status;
+
+  @Nullable
+  private final FileChannel io;
+
+  private final ByteBuffer buffer;
+
+  private final StringBuilder threadName;
+
+  public ProcFs() throws IOException {
+    this(PROC_FOLDER);
+  }
+
+  ProcFs(final Path procFolder) throws IOException {
+    this.fdFolder = procFolder.resolve("fd");
+    this.taskFolder = procFolder.resolve("task");
+    this.stat = FileChannel.open(procFolder.resolve("stat"), StandardOpenOption.READ);
+    this.status = FileChannel.open(procFolder.resolve("status"), StandardOpenOption.READ);
+    FileChannel ioc;
+    try {
+      // io accounting might not be enabled, or readable.
+      ioc = FileChannel.open(procFolder.resolve("io"), StandardOpenOption.READ);
+    } catch (IOException ex) {
+      ioc = null;
+    }
+    this.io = ioc;
+    this.buffer = ByteBuffer.allocate(4096);
+    this.threadName = new StringBuilder(16);
+  }
+
+  public static boolean isAvailable() {
+    return Files.isDirectory(PROC_FOLDER);
+  }
+
+  /**
+   * @return the number of open file descriptors.
+   */
+  public int getOpenFileDescriptorCount() throws IOException {
+    int result = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(fdFolder)) {
+      Iterator<Path> it = stream.iterator();
+      while (it.hasNext()) {
+        it.next();
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Write the open file descriptors and their targets. (like lsof, but from readlink)
+   * @param destination the destination to write "fd -> target" lines to.
+   */
+  public void writeOpenFileDescriptors(final Appendable destination) throws IOException {
+    writeOpenFileDescriptors(fdFolder, destination);
+  }
+
+  private static void writeOpenFileDescriptors(final Path fdFolder, final Appendable destination)
+          throws IOException {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(fdFolder)) {
+      for (Path p : stream) {
+        Path fd = p.getFileName();
+        if (fd == null) {
+          continue;
+        }
+        destination.append(fd.toString()).append(" -> ");
+        try {
+          destination.append(Files.readSymbolicLink(p).toString());
+        } catch (NoSuchFileException ex) {
+          destination.append("closed");
+        }
+        destination.append('\n');
+      }
+    }
+  }
+
+  /**
+   * @return the open file descriptors and their targets, null if not able to read them.
+   */
+  @Nullable
+  public static CharSequence getOpenFileDescriptors() {
+    if (!isAvailable()) {
+      return null;
+    }
+    StringBuilder result = new StringBuilder(1024);
+    try {
+      writeOpenFileDescriptors(PROC_FOLDER.resolve("fd"), result);
+    } catch (IOException ex) {
+      result.append("Unable to read ").append(PROC_FOLDER).append("/fd: ").append(ex);
+    }
+    return result;
+  }
+
+  /**
+   * read the process statistics from /proc/PID/stat, /proc/PID/status and /proc/PID/io.
+   * @param stats the object to read into.
+   */
+  public void read(final ProcessStats stats) throws IOException {
+    read(stat);
+    parseStat(stats);
+    read(status);
+    parseStatus(stats);
+    if (io != null) {
+      read(io);
+      parseIo(stats);
+    }
+  }
+
+  /**
+   * Iterate through all the threads of this process, and read their cpu usage. (/proc/PID/task/TID/stat)
+   * @param consumer the thread stat consumer.
+   */
+  public void forEachThread(final ThreadStatConsumer consumer) throws IOException {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(taskFolder)) {
+      for (Path p : stream) {
+        Path fileName = p.getFileName();
+        if (fileName == null) {
+          continue;
+        }
+        int tid;
+        try {
+          tid = Integer.parseInt(fileName.toString());
+        } catch (NumberFormatException ex) {
+          continue;
+        }
+        try (FileChannel ch = FileChannel.open(p.resolve("stat"), StandardOpenOption.READ)) {
+          read(ch);
+        } catch (NoSuchFileException ex) {
+          // thread terminated meanwhile
+          continue;
+        }
+        int limit = buffer.limit();
+        int nameStart = indexOf(buffer, (byte) '(', 0, limit);
+        int nameEnd = lastIndexOf(buffer, (byte) ')', limit);
+        if (nameStart < 0 || nameEnd < nameStart) {
+          continue;
+        }
+        threadName.setLength(0);
+        for (int i = nameStart + 1; i < nameEnd; i++) {
+          threadName.append((char) (buffer.get(i) & 0xFF));
+        }
+        // fields after the command name: state(3) ... utime(14) stime(15)
+        int pos = skipFields(buffer, nameEnd + 2, 11, limit);
+        long utime = parseLong(buffer, pos, limit);
+        pos = skipFields(buffer, pos, 1, limit);
+        long stime = parseLong(buffer, pos, limit);
+        consumer.accept(tid, threadName, utime, stime);
+      }
+    }
+  }
+
+  private void read(final FileChannel ch) throws IOException {
+    buffer.clear();
+    long position = 0;
+    int nr;
+    while ((nr = ch.read(buffer, position)) > 0) {
+      position += nr;
+      if (!buffer.hasRemaining()) {
+        break;
+      }
+    }
+    buffer.flip();
+  }
+
+  private void parseStat(final ProcessStats stats) {
+    int limit = buffer.limit();
+    int nameEnd = lastIndexOf(buffer, (byte) ')', limit);
+    // fields after the command name: state(3), minflt(10), majflt(12), utime(14), stime(15), num_threads(20)
+    int pos = skipFields(buffer, nameEnd + 2, 7, limit);
+    stats.minorFaults = parseLong(buffer, pos, limit);
+    pos = skipFields(buffer, pos, 2, limit);
+    stats.majorFaults = parseLong(buffer, pos, limit);
+    pos = skipFields(buffer, pos, 2, limit);
+    stats.userCpuTicks = parseLong(buffer, pos, limit);
+    pos = skipFields(buffer, pos, 1, limit);
+    stats.systemCpuTicks = parseLong(buffer, pos, limit);
+  }
+
+  private void parseStatus(final ProcessStats stats) {
+    int limit = buffer.limit();
+    int pos = 0;
+    while (pos < limit) {
+      if (startsWith(buffer, pos, VM_RSS)) {
+        stats.rssBytes = parseLong(buffer, pos + VM_RSS.length, limit) * 1024;
+      } else if (startsWith(buffer, pos, THREADS)) {
+        stats.nrThreads = parseLong(buffer, pos + THREADS.length, limit);
+      } else if (startsWith(buffer, pos, VOL_CTX_SW)) {
+        stats.voluntaryContextSwitches = parseLong(buffer, pos + VOL_CTX_SW.length, limit);
+      } else if (startsWith(buffer, pos, INVOL_CTX_SW)) {
+        stats.involuntaryContextSwitches = parseLong(buffer, pos + INVOL_CTX_SW.length, limit);
+      }
+      pos = nextLine(buffer, pos, limit);
+    }
+  }
+
+  private void parseIo(final ProcessStats stats) {
+    int limit = buffer.limit();
+    int pos = 0;
+    while (pos < limit) {
+      if (startsWith(buffer, pos, RCHAR)) {
+        stats.readChars = parseLong(buffer, pos + RCHAR.length, limit);
+      } else if (startsWith(buffer, pos, WCHAR)) {
+        stats.writeChars = parseLong(buffer, pos + WCHAR.length, limit);
+      } else if (startsWith(buffer, pos, READ_BYTES)) {
+        stats.readBytes = parseLong(buffer, pos + READ_BYTES.length, limit);
+      } else if (startsWith(buffer, pos, WRITE_BYTES)) {
+        stats.writeBytes = parseLong(buffer, pos + WRITE_BYTES.length, limit);
+      }
+      pos = nextLine(buffer, pos, limit);
+    }
+  }
+
+  private static boolean startsWith(final ByteBuffer buff, final int pos, final byte[] prefix) {
+    if (pos + prefix.length > buff.limit()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buff.get(pos + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int nextLine(final ByteBuffer buff, final int pos, final int limit) {
+    int nl = indexOf(buff, (byte) '\n', pos, limit);
+    return nl < 0 ? limit : nl + 1;
+  }
+
+  private static int indexOf(final ByteBuffer buff, final byte what, final int from, final int limit) {
+    for (int i = from; i < limit; i++) {
+      if (buff.get(i) == what) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int lastIndexOf(final ByteBuffer buff, final byte what, final int limit) {
+    for (int i = limit - 1; i >= 0; i--) {
+      if (buff.get(i) == what) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * skip space separated fields.
+   */
+  private static int skipFields(final ByteBuffer buff, final int from, final int nrFields, final int limit) {
+    int pos = from;
+    for (int i = 0; i < nrFields; i++) {
+      while (pos < limit && buff.get(pos) != ' ') {
+        pos++;
+      }
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * parse a non negative decimal number, skipping leading white spaces.
+   */
+  private static long parseLong(final ByteBuffer buff, final int from, final int limit) {
+    int pos = from;
+    while (pos < limit) {
+      byte b = buff.get(pos);
+      if (b != ' ' && b != '\t') {
+        break;
+      }
+      pos++;
+    }
+    long result = 0;
+    while (pos < limit) {
+      byte b = buff.get(pos);
+      if (b < '0' || b > '9') {
+        break;
+      }
+      result = result * 10 + (b - '0');
+      pos++;
+    }
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (FileChannel s = stat; FileChannel st = status) {
+      if (io != null) {
+        io.close();
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ProcFs{" + "fdFolder=" + fdFolder + '}';
+  }
+
+  /**
+   * Consumer of per thread cpu usage.
+   */
+  @FunctionalInterface
+  public interface ThreadStatConsumer {
+
+    /**
+     * @param tid the native thread id.
+     * @param name the thread name (truncated to 15 chars by the OS), valid only for the duration of the call.
+     * @param userCpuTicks user cpu time in clock ticks.
+     * @param systemCpuTicks system cpu time in clock ticks.
+     */
+    void accept(int tid, CharSequence name, long userCpuTicks, long systemCpuTicks);
+  }
+
+  /**
+   * Process statistics, reused across reads.
+   * All counters are cumulative since the process started.
+   */
+  @SuppressFBWarnings("PMB_POSSIBLE_MEMORY_BLOAT")
+  public static final class ProcessStats {
+
+    private long rssBytes;
+    private long nrThreads;
+    private long voluntaryContextSwitches;
+    private long involuntaryContextSwitches;
+    private long readChars;
+    private long writeChars;
+    private long readBytes;
+    private long writeBytes;
+    private long userCpuTicks;
+    private long systemCpuTicks;
+    private long minorFaults;
+    private long majorFaults;
+
+    public long getRssBytes() {
+      return rssBytes;
+    }
+
+    public long getNrThreads() {
+      return nrThreads;
+    }
+
+    public long getVoluntaryContextSwitches() {
+      return voluntaryContextSwitches;
+    }
+
+    public long getInvoluntaryContextSwitches() {
+      return involuntaryContextSwitches;
+    }
+
+    public long getReadChars() {
+      return readChars;
+    }
+
+    public long getWriteChars() {
+      return writeChars;
+    }
+
+    public long getReadBytes() {
+      return readBytes;
+    }
+
+    public long getWriteBytes() {
+      return writeBytes;
+    }
+
+    public long getUserCpuTicks() {
+      return userCpuTicks;
+    }
+
+    public long getSystemCpuTicks() {
+      return systemCpuTicks;
+    }
+
+    public long getMinorFaults() {
+      return minorFaults;
+    }
+
+    public long getMajorFaults() {
+      return majorFaults;
+    }
+
+    @Override
+    public String toString() {
+      return "ProcessStats{" + "rssBytes=" + rssBytes + ", nrThreads=" + nrThreads
+              + ", voluntaryContextSwitches=" + voluntaryContextSwitches
+              + ", involuntaryContextSwitches=" + involuntaryContextSwitches + ", readChars=" + readChars
+              + ", writeChars=" + writeChars + ", readBytes=" + readBytes + ", writeBytes=" + writeBytes
+              + ", userCpuTicks=" + userCpuTicks + ", systemCpuTicks=" + systemCpuTicks
+              + ", minorFaults=" + minorFaults + ", majorFaults=" + majorFaults + '}';
+    }
+
+  }
+
+}
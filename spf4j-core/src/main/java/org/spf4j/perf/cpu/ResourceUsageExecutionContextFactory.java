@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.perf.cpu;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.spf4j.base.ExecutionContext;
+import org.spf4j.base.ExecutionContextFactory;
+import org.spf4j.perf.MeasurementRecorderSource;
+import org.spf4j.perf.impl.RecorderFactory;
+
+/**
+ * Execution context factory wrapper that accounts the thread cpu time and the allocated bytes of every context.
+ *
+ * Resource usage of child contexts that run in other threads (executor hops) is accumulated into the parent context.
+ * When a root context (no parent) is closed its total resource usage is recorded into per operation name recorders:
+ * "execCtx-cpu-time" (ns) and "execCtx-allocated-bytes" (bytes).
+ *
+ * Thread cpu time and allocated bytes can only be read for the current thread, so a context closed by a different
+ * thread than the one that started it cannot measure its own usage. Such a context is marked as not measured
+ * (see {@link ResourceUsage#isComplete()}), and incomplete root samples are not recorded.
+ *
+ * To enable: -Dspf4j.execContentFactoryWrapperClass=org.spf4j.perf.cpu.ResourceUsageExecutionContextFactory
+ *
+ * @author Zoltan Farkas
+ */
+@SuppressFBWarnings("IICU_INCORRECT_INTERNAL_CLASS_USE")
+@ParametersAreNonnullByDefault
+public final class ResourceUsageExecutionContextFactory implements ExecutionContextFactory<ExecutionContext> {
+
+  private static final ThreadMXBean TH_BEAN = ManagementFactory.getThreadMXBean();
+
+  private static final com.sun.management.ThreadMXBean SUN_TH_BEAN;
+
+  private static final boolean CPU_TIME_ENABLED;
+
+  private static final boolean ALLOCATION_ENABLED;
+
+  static {
+    CPU_TIME_ENABLED = TH_BEAN.isCurrentThreadCpuTimeSupported() && TH_BEAN.isThreadCpuTimeEnabled();
+    if (TH_BEAN instanceof com.sun.management.ThreadMXBean) {
+      SUN_TH_BEAN = (com.sun.management.ThreadMXBean) TH_BEAN;
+      ALLOCATION_ENABLED = SUN_TH_BEAN.isThreadAllocatedMemorySupported()
+              && SUN_TH_BEAN.isThreadAllocatedMemoryEnabled();
+    } else {
+      SUN_TH_BEAN = null;
+      ALLOCATION_ENABLED = false;
+    }
+  }
+
+  private final ExecutionContextFactory<ExecutionContext> wrapped;
+
+  private final MeasurementRecorderSource cpuTime;
+
+  private final MeasurementRecorderSource allocatedBytes;
+
+  public ResourceUsageExecutionContextFactory(final ExecutionContextFactory<ExecutionContext> wrapped) {
+    this(wrapped, Integer.getInteger("spf4j.execContext.resourceUsage.sampleTimeMillis", 60000));
+  }
+
+  public ResourceUsageExecutionContextFactory(final ExecutionContextFactory<ExecutionContext> wrapped,
+          final int sampleTimeMillis) {
+    this.wrapped = wrapped;
+    this.cpuTime = RecorderFactory.createScalableMinMaxAvgRecorderSource("execCtx-cpu-time",
+            "ns", sampleTimeMillis);
+    this.allocatedBytes = RecorderFactory.createScalableMinMaxAvgRecorderSource("execCtx-allocated-bytes",
+            "bytes", sampleTimeMillis);
+  }
+
+  public static long getCurrentThreadCpuTimeNanos() {
+    return CPU_TIME_ENABLED ? TH_BEAN.getCurrentThreadCpuTime() : 0L;
+  }
+
+  public static long getCurrentThreadAllocatedBytes() {
+    return ALLOCATION_ENABLED ? SUN_TH_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0L;
+  }
+
+  /**
+   * @param ctx the execution context.
+   * @return the resource usage of the context, null if the context was not created by this factory.
+   */
+  @Nullable
+  public static ResourceUsage getResourceUsage(final ExecutionContext ctx) {
+    return ctx.get(ResourceUsage.class, ResourceUsage.class);
+  }
+
+  @Override
+  public ExecutionContext start(final String name, @Nullable final ExecutionContext parent,
+          final long startTimeNanos, final long deadlineNanos, final Runnable onClose) {
+    ResourceUsage usage = new ResourceUsage();
+    ExecutionContext ctx = wrapped.start(name, parent, startTimeNanos, deadlineNanos,
+            () -> {
+              closed(name, parent, usage);
+              onClose.run();
+            });
+    ctx.put(ResourceUsage.class, usage);
+    return ctx;
+  }
+
+  @Override
+  public ExecutionContext startThreadRoot(final String name, @Nullable final ExecutionContext parent,
+          final long startTimeNanos, final long deadlineNanos, final Runnable onClose) {
+    ResourceUsage usage = new ResourceUsage();
+    ExecutionContext ctx = wrapped.startThreadRoot(name, parent, startTimeNanos, deadlineNanos,
+            () -> {
+              closed(name, parent, usage);
+              onClose.run();
+            });
+    ctx.put(ResourceUsage.class, usage);
+    return ctx;
+  }
+
+  private void closed(final String name, @Nullable final ExecutionContext parent, final ResourceUsage usage) {
+    usage.close();
+    if (parent == null) {
+      if (!usage.isComplete()) {
+        return;
+      }
+      cpuTime.getRecorder(name).record(usage.getCpuTimeNanos());
+      allocatedBytes.getRecorder(name).record(usage.getAllocatedBytes());
+    } else {
+      ResourceUsage parentUsage = getResourceUsage(parent);
+      if (parentUsage != null) {
+        parentUsage.addChild(usage);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ResourceUsageExecutionContextFactory{" + "wrapped=" + wrapped + '}';
+  }
+
+  /**
+   * Resource usage of a execution context.
+   * The own usage is measured in the thread that created the context, the usage of children
+   * that executed in other threads is accumulated separately.
+   */
+  public static final class ResourceUsage {
+
+    private final Thread thread;
+
+    private final long startCpuTimeNanos;
+
+    private final long startAllocatedBytes;
+
+    private final LongAdder otherThreadsCpuTimeNanos;
+
+    private final LongAdder otherThreadsAllocatedBytes;
+
+    private volatile long ownCpuTimeNanos;
+
+    private volatile long ownAllocatedBytes;
+
+    private volatile boolean measured;
+
+    private volatile boolean childrenMeasured;
+
+    ResourceUsage() {
+      this.thread = Thread.currentThread();
+      this.startCpuTimeNanos = getCurrentThreadCpuTimeNanos();
+      this.startAllocatedBytes = getCurrentThreadAllocatedBytes();
+      this.otherThreadsCpuTimeNanos = new LongAdder();
+      this.otherThreadsAllocatedBytes = new LongAdder();
+      this.childrenMeasured = true;
+    }
+
+    void close() {
+      // own usage can be measured only if the context is closed by the thread that created it.
+      if (Thread.currentThread() == thread) {
+        ownCpuTimeNanos = getCurrentThreadCpuTimeNanos() - startCpuTimeNanos;
+        ownAllocatedBytes = getCurrentThreadAllocatedBytes() - startAllocatedBytes;
+        measured = true;
+      }
+    }
+
+    void addChild(final ResourceUsage child) {
+      if (!child.isComplete()) {
+        childrenMeasured = false;
+      }
+      if (child.thread == thread) {
+        // the child own usage is already part of this context's own usage.
+        otherThreadsCpuTimeNanos.add(child.otherThreadsCpuTimeNanos.sum());
+        otherThreadsAllocatedBytes.add(child.otherThreadsAllocatedBytes.sum());
+      } else {
+        otherThreadsCpuTimeNanos.add(child.getCpuTimeNanos());
+        otherThreadsAllocatedBytes.add(child.getAllocatedBytes());
+      }
+    }
+
+    /**
+     * @return true if the own usage of this context was measured, false if the context was closed by a different
+     * thread than the one that started it (own usage is reported as 0 in this case).
+     */
+    public boolean isMeasured() {
+      return measured;
+    }
+
+    /**
+     * @return true if the usage of this context and of all its children was measured.
+     */
+    public boolean isComplete() {
+      return measured && childrenMeasured;
+    }
+
+    /**
+     * @return the bytes allocated by this context in the thread that started it, excluding children that ran
+     * in other threads. (valid after close)
+     */
+    public long getOwnAllocatedBytes() {
+      return ownAllocatedBytes;
+    }
+
+    /**
+     * @return the cpu time in nanoseconds used by this context, including the children. (valid after close)
+     */
+    public long getCpuTimeNanos() {
+      return ownCpuTimeNanos + otherThreadsCpuTimeNanos.sum();
+    }
+
+    /**
+     * @return the bytes allocated by this context, including the children. (valid after close)
+     */
+    public long getAllocatedBytes() {
+      return ownAllocatedBytes + otherThreadsAllocatedBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+      return "ResourceUsage{" + "thread=" + thread.getName() + ", cpuTimeNanos=" + getCpuTimeNanos()
+              + ", allocatedBytes=" + getAllocatedBytes() + ", complete=" + isComplete() + '}';
+    }
+
+  }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.perf.impl;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import org.spf4j.base.AppendableUtils;
+import org.spf4j.base.Pair;
+import org.spf4j.io.Csv;
+import org.spf4j.jmx.JmxExport;
+import org.spf4j.jmx.Registry;
+import org.spf4j.perf.MeasurementAccumulator;
+import org.spf4j.perf.MeasurementsInfo;
+
+/**
+ * Point in time snapshot of all live scalable recorders and recorder sources.
+ * The values of all series are collected first (using a single timestamp), and then streamed to the destination
+ * as CSV or JSON, without creating intermediary Strings for entity names or numbers.
+ *
+ * CSV format: timestamp,entity,measurement,unit,value (one row per measurement value).
+ * JSON format: {"timestamp":ts,"series":[{"entity":"...","measurements":{"name":{"unit":"..","value":v},...}},...]}
+ *
+ * @author Zoltan Farkas
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public final class MeasurementsSnapshot {
+
+  public enum Format { CSV, JSON }
+
+  private static final Set<Object> LIVE_RECORDERS = ConcurrentHashMap.newKeySet();
+
+  static {
+    Registry.export(MeasurementsSnapshot.class);
+  }
+
+  private MeasurementsSnapshot() { }
+
+  static void register(final ScalableMeasurementRecorder recorder) {
+    LIVE_RECORDERS.add(recorder);
+  }
+
+  static void register(final ScalableMeasurementRecorderSource source) {
+    LIVE_RECORDERS.add(source);
+  }
+
+  static void unregister(final Object recorder) {
+    LIVE_RECORDERS.remove(recorder);
+  }
+
+  @JmxExport(description = "number of live recorders and recorder sources")
+  public static int getNrLiveRecorders() {
+    return LIVE_RECORDERS.size();
+  }
+
+  /**
+   * Write a snapshot of all live recorders to a OutputStream (UTF-8), the stream is flushed but not closed.
+   */
+  public static void writeTo(final OutputStream os, final Format format) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+    writeTo(writer, format);
+    writer.flush();
+  }
+
+  /**
+   * Write a snapshot of all live recorders to a Appendable.
+   */
+  public static void writeTo(final Appendable to, final Format format) throws IOException {
+    long timestamp = System.currentTimeMillis();
+    List<MeasurementsInfo> infos = new ArrayList<>(LIVE_RECORDERS.size() * 2);
+    List<long[]> values = new ArrayList<>(LIVE_RECORDERS.size() * 2);
+    collect(infos, values);
+    switch (format) {
+      case CSV:
+        writeCsv(timestamp, infos, values, to);
+        break;
+      case JSON:
+        writeJson(timestamp, infos, values, to);
+        break;
+      default:
+        throw new UnsupportedOperationException("Unsupported format " + format);
+    }
+  }
+
+  @JmxExport(value = "snapshot", description = "snapshot of all live recorders as CSV or JSON")
+  public static String getSnapshot(@JmxExport(value = "format", description = "CSV or JSON") final String format)
+          throws IOException {
+    StringBuilder sb = new StringBuilder(LIVE_RECORDERS.size() * 256);
+    writeTo(sb, Format.valueOf(format));
+    return sb.toString();
+  }
+
+  @SuppressFBWarnings("PATH_TRAVERSAL_IN") // the destination is specified by the JMX operator.
+  @JmxExport(value = "dumpToFile", description = "write snapshot of all live recorders to a file")
+  public static String dumpToFile(@JmxExport(value = "fileName", description = "destination file") final String file,
+          @JmxExport(value = "format", description = "CSV or JSON") final String format) throws IOException {
+    Path dest = Paths.get(file);
+    try (OutputStream os = Files.newOutputStream(dest)) {
+      writeTo(os, Format.valueOf(format));
+    }
+    return dest.toAbsolutePath().toString();
+  }
+
+  private static void collect(final List<MeasurementsInfo> infos, final List<long[]> values) {
+    for (Object recorder : LIVE_RECORDERS) {
+      if (recorder instanceof ScalableMeasurementRecorder) {
+        ScalableMeasurementRecorder rec = (ScalableMeasurementRecorder) recorder;
+        long[] vals = rec.get();
+        if (vals != null) {
+          infos.add(rec.getInfo());
+          values.add(vals);
+        }
+      } else {
+        for (MeasurementAccumulator acc
+                : ((ScalableMeasurementRecorderSource) recorder).getEntitiesMeasurements().values()) {
+          long[] vals = acc.get();
+          if (vals != null) {
+            infos.add(acc.getInfo());
+            values.add(vals);
+          }
+        }
+      }
+    }
+  }
+
+  private static void writeCsv(final long timestamp, final List<MeasurementsInfo> infos, final List<long[]> values,
+          final Appendable to) throws IOException {
+    to.append("timestamp,entity,measurement,unit,value\n");
+    StringBuilder entity = new StringBuilder(64);
+    for (int i = 0, l = infos.size(); i < l; i++) {
+      MeasurementsInfo info = infos.get(i);
+      long[] vals = values.get(i);
+      entity.setLength(0);
+      appendEntity(info.getMeasuredEntity(), entity);
+      int nr = Math.min(vals.length, info.getNumberOfMeasurements());
+      for (int j = 0; j < nr; j++) {
+        AppendableUtils.appendLong(to, timestamp);
+        to.append(',');
+        Csv.writeCsvElement(entity, to);
+        to.append(',');
+        Csv.writeCsvElement(info.getMeasurementName(j), to);
+        to.append(',');
+        Csv.writeCsvElement(info.getMeasurementUnit(j), to);
+        to.append(',');
+        AppendableUtils.appendLong(to, vals[j]);
+        to.append('\n');
+      }
+    }
+  }
+
+  private static void writeJson(final long timestamp, final List<MeasurementsInfo> infos, final List<long[]> values,
+          final Appendable to) throws IOException {
+    to.append("{\"timestamp\":");
+    AppendableUtils.appendLong(to, timestamp);
+    to.append(",\"series\":[");
+    StringBuilder entity = new StringBuilder(64);
+    for (int i = 0, l = infos.size(); i < l; i++) {
+      if (i > 0) {
+        to.append(',');
+      }
+      MeasurementsInfo info = infos.get(i);
+      long[] vals = values.get(i);
+      entity.setLength(0);
+      appendEntity(info.getMeasuredEntity(), entity);
+      to.append("{\"entity\":\"");
+      AppendableUtils.escapeJsonString(entity, to);
+      to.append("\",\"measurements\":{");
+      int nr = Math.min(vals.length, info.getNumberOfMeasurements());
+      for (int j = 0; j < nr; j++) {
+        if (j > 0) {
+          to.append(',');
+        }
+        to.append('"');
+        AppendableUtils.escapeJsonString(info.getMeasurementName(j), to);
+        to.append("\":{\"unit\":\"");
+        AppendableUtils.escapeJsonString(info.getMeasurementUnit(j), to);
+        to.append("\",\"value\":");
+        AppendableUtils.appendLong(to, vals[j]);
+        to.append('}');
+      }
+      to.append("}}");
+    }
+    to.append("]}");
+  }
+
+  /**
+   * Entities of recorder source series are (nested) pairs, they are written as first/second.
+   */
+  @SuppressFBWarnings("ITC_INHERITANCE_TYPE_CHECKING")
+  private static void appendEntity(final Object entity, final StringBuilder to) {
+    if (entity instanceof Pair) {
+      Pair<?, ?> pair = (Pair<?, ?>) entity;
+      appendEntity(pair.getFirst(), to);
+      to.append('/');
+      appendEntity(pair.getSecond(), to);
+    } else if (entity instanceof CharSequence) {
+      to.append((CharSequence) entity);
+    } else {
+      to.append(entity);
+    }
+  }
+
+}
@@ -269,6 +269,15 @@ public final class RecorderFactory {
     return mrs;
   }
 
+  public static CloseableMeasurementRecorderSource createScalableMinMaxAvgRecorderSource2(
+          final Object forWhat, final String unitOfMeasurement, final int sampleTimeMillis) {
+    ScalableMeasurementRecorderSource mrs = new ScalableMeasurementRecorderSource(
+            new MinMaxAvgAccumulator(forWhat, "",
+                    unitOfMeasurement), sampleTimeMillis, MEASUREMENT_STORE, false);
+    mrs.registerJmx();
+    return mrs;
+  }
+
   public static MultiMeasurementRecorder createDirectRecorder(final Object measuredEntity, final String description,
           final String[] measurementNames, final String[] measurementUnits) {
     DirectStoreMultiAccumulator mr = new DirectStoreMultiAccumulator(
@@ -38,15 +38,19 @@ import org.spf4j.perf.MeasurementAccumulator;
 import org.spf4j.perf.MeasurementsInfo;
 import org.spf4j.perf.MeasurementStore;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ScheduledFuture;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spf4j.base.Arrays;
 import org.spf4j.io.Csv;
 import org.spf4j.jmx.GenericExportedValue;
 import org.spf4j.jmx.JmxExport;
@@ -60,7 +64,7 @@ import org.spf4j.perf.CloseableMeasurementRecorder;
  */
 @ThreadSafe
 // a recorder instance is tipically alive for the entire life of the process
-@SuppressFBWarnings("PMB_INSTANCE_BASED_THREAD_LOCAL")
+@SuppressFBWarnings({"PMB_INSTANCE_BASED_THREAD_LOCAL", "FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY"})
 public final class ScalableMeasurementRecorder extends AbstractMeasurementAccumulator
   implements CloseableMeasurementRecorder {
 
@@ -72,6 +76,7 @@ public final class ScalableMeasurementRecorder extends AbstractMeasurementAccumu
   private final MeasurementAccumulator processorTemplate;
   private final Persister persister;
   private final Runnable shutdownHook;
+  private final CompositeType compositeType;
 
   ScalableMeasurementRecorder(final MeasurementAccumulator processor, final int sampleTimeMillis,
           final MeasurementStore measurementStore, final boolean closeOnShutdown) {
@@ -80,6 +85,7 @@ public final class ScalableMeasurementRecorder extends AbstractMeasurementAccumu
     }
     threadLocalRecorders = new HashMap<>();
     processorTemplate = processor;
+    compositeType = processor.getInfo().toCompositeType();
     threadLocalRecorder = new ThreadLocal<MeasurementAccumulator>() {
 
       @Override
@@ -104,6 +110,7 @@ public final class ScalableMeasurementRecorder extends AbstractMeasurementAccumu
     } else {
       shutdownHook = null;
     }
+    MeasurementsSnapshot.register(this);
   }
 
   public Runnable closeOnShutdown() {
@@ -139,9 +146,28 @@ public final class ScalableMeasurementRecorder extends AbstractMeasurementAccumu
     return (result == null) ? null : result.get();
   }
 
+  /**
+   * @return the composite data, using the composite type computed at construction.
+   */
+  @Override
+  @Nullable
+  @SuppressFBWarnings("EXS_EXCEPTION_SOFTENING_NO_CHECKED")
+  public CompositeDataSupport getCompositeData() {
+    long[] measurements = get();
+    if (measurements == null) {
+      return null;
+    }
+    try {
+      return new CompositeDataSupport(compositeType, getInfo().getMeasurementNames(),
+              Arrays.toObjectArray(measurements));
+    } catch (OpenDataException ex) {
+      throw new IllegalArgumentException("Cannot convert to composite data " + getInfo(), ex);
+    }
+  }
+
   @JmxExport(description = "measurements as csv")
   public String getMeasurementsAsString() {
-    StringWriter sw = new StringWriter(128);
+    StringBuilder sw = new StringBuilder(128);
     MeasurementsInfo info = getInfo();
     try {
       Csv.writeCsvRow(sw, (Object[]) info.getMeasurementNames());
@@ -176,7 +202,7 @@ public final class ScalableMeasurementRecorder extends AbstractMeasurementAccumu
     MeasurementsInfo info = processorTemplate.getInfo();
     new DynamicMBeanBuilder().withJmxExportObject(this)
             .withAttribute(new GenericExportedValue<>("measurements", info.getDescription(),
-                    this::getCompositeData, null, getInfo().toCompositeType()))
+                    this::getCompositeData, null, compositeType))
             .register("org.spf4j.perf.recorders", info.getMeasuredEntity().toString());
   }
 
@@ -195,6 +221,7 @@ public final class ScalableMeasurementRecorder extends AbstractMeasurementAccumu
         }
         Registry.unregister("org.spf4j.perf.recorders",
                 processorTemplate.getInfo().getMeasuredEntity().toString());
+        MeasurementsSnapshot.unregister(this);
       }
     }
   }
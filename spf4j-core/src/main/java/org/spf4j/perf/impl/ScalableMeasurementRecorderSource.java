@@ -35,11 +35,11 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import gnu.trove.map.TObjectLongMap;
 import gnu.trove.map.hash.TObjectLongHashMap;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
@@ -50,6 +50,7 @@ import javax.management.openmbean.OpenType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spf4j.base.AbstractRunnable;
+import org.spf4j.base.Arrays;
 import org.spf4j.concurrent.DefaultScheduler;
 import org.spf4j.base.Pair;
 import org.spf4j.io.Csv;
@@ -67,7 +68,7 @@ import org.spf4j.perf.MeasurementRecorderSource;
 
 @ThreadSafe
 // a recorder instance is tipically alive for the entire life of the process
-@SuppressFBWarnings("PMB_INSTANCE_BASED_THREAD_LOCAL")
+@SuppressFBWarnings({"PMB_INSTANCE_BASED_THREAD_LOCAL", "FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY"})
 public final class ScalableMeasurementRecorderSource implements
         MeasurementRecorderSource, MeasurementsSource, CloseableMeasurementRecorderSource {
 
@@ -84,6 +85,11 @@ public final class ScalableMeasurementRecorderSource implements
 
   private final Persister persister;
   private final Runnable shutdownHook;
+  /**
+   * composite types keyed by measurement names and units, all entities of this source share the same shape,
+   * so this map does not grow with the number of measured entities.
+   */
+  private final Map<MeasurementsShape, CompositeType> compositeTypes;
 
   ScalableMeasurementRecorderSource(final MeasurementAccumulator processor,
           final int sampleTimeMillis, final MeasurementStore database, final boolean closeOnShutdown) {
@@ -105,6 +111,7 @@ public final class ScalableMeasurementRecorderSource implements
 
     };
     tableIds = new TObjectLongHashMap<>();
+    compositeTypes = new ConcurrentHashMap<>();
     persister = new Persister(database, sampleTimeMillis, processor);
     samplingFuture = DefaultScheduler.scheduleAllignedAtFixedRateMillis(persister, sampleTimeMillis);
     if (closeOnShutdown) {
@@ -112,6 +119,7 @@ public final class ScalableMeasurementRecorderSource implements
     } else {
       shutdownHook = null;
     }
+    MeasurementsSnapshot.register(this);
   }
 
   private Runnable closeOnShutdown() {
@@ -237,13 +245,14 @@ public final class ScalableMeasurementRecorderSource implements
         }
         Registry.unregister("org.spf4j.perf.recorders",
                 this.processorTemplate.getInfo().getMeasuredEntity().toString());
+        MeasurementsSnapshot.unregister(this);
       }
     }
   }
 
   @JmxExport(description = "measurements as csv")
   public String getMeasurementsAsString() {
-    StringWriter sw = new StringWriter(128);
+    StringBuilder sw = new StringBuilder(128);
     Map<Object, MeasurementAccumulator> entitiesMeasurements = getEntitiesMeasurements();
     MeasurementsInfo info = this.processorTemplate.getInfo();
     try {
@@ -251,7 +260,7 @@ public final class ScalableMeasurementRecorderSource implements
       Csv.writeCsvRow2(sw, "string", (Object[]) info.getMeasurementUnits());
       for (Map.Entry<Object, MeasurementAccumulator> entry : entitiesMeasurements.entrySet()) {
         Csv.writeCsvElement(entry.getKey().toString(), sw);
-        sw.write(',');
+        sw.append(',');
         final long[] measurements = entry.getValue().get();
         if (measurements != null) {
           Csv.writeCsvRow(sw, measurements);
@@ -283,8 +292,16 @@ public final class ScalableMeasurementRecorderSource implements
           cattrDesc = cattrName;
         }
         descriptions[i] = cattrDesc;
-        types[i] = eInfo.toCompositeType();
-        values[i] = acc.getCompositeData();
+        CompositeType type = compositeTypes.computeIfAbsent(new MeasurementsShape(eInfo),
+                (shape) -> shape.toCompositeType(info));
+        types[i] = type;
+        long[] measurements = acc.get();
+        try {
+          values[i] = measurements == null ? null
+                  : new CompositeDataSupport(type, eInfo.getMeasurementNames(), Arrays.toObjectArray(measurements));
+        } catch (OpenDataException ex) {
+          throw new IllegalArgumentException("Cannot convert to composite data " + eInfo, ex);
+        }
         i++;
       }
      try {
@@ -354,6 +371,50 @@ public final class ScalableMeasurementRecorderSource implements
     }
   }
 
+  private static final class MeasurementsShape {
+
+    private final String[] names;
+    private final String[] units;
+
+    MeasurementsShape(final MeasurementsInfo info) {
+      this.names = info.getMeasurementNames();
+      this.units = info.getMeasurementUnits();
+    }
+
+    CompositeType toCompositeType(final MeasurementsInfo sourceInfo) {
+      OpenType<?>[] types = new OpenType[names.length];
+      java.util.Arrays.fill(types, javax.management.openmbean.SimpleType.LONG);
+      String name = sourceInfo.getMeasuredEntity().toString();
+      String description = sourceInfo.getDescription();
+      if (description.isEmpty()) {
+        description = name;
+      }
+      try {
+        return new CompositeType(name, description, names, units, types);
+      } catch (OpenDataException ex) {
+        throw new IllegalArgumentException("Cannot convert to composite data " + sourceInfo, ex);
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * java.util.Arrays.hashCode(names) + java.util.Arrays.hashCode(units);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || obj.getClass() != MeasurementsShape.class) {
+        return false;
+      }
+      final MeasurementsShape other = (MeasurementsShape) obj;
+      return java.util.Arrays.equals(names, other.names) && java.util.Arrays.equals(units, other.units);
+    }
+
+  }
+
   @Override
   public String toString() {
     return "ScalableMeasurementRecorderSource{" + "measurementProcessorMap=" + measurementProcessorMap
@@ -41,6 +41,7 @@ import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spf4j.os.OperatingSystem;
+import org.spf4j.os.ProcFs;
 import org.spf4j.base.Runtime;
 import org.spf4j.base.SysExits;
 import org.spf4j.jmx.JmxExport;
@@ -136,6 +137,17 @@ public final class OpenFilesSampler {
     return lsofOutput == null ? "unable to obtain lsof" : lsofOutput.toString();
   }
 
+  /**
+   * @return open files detail, from /proc/PID/fd when available (no process fork), lsof otherwise.
+   */
+  private static CharSequence getOpenFilesDetail() {
+    CharSequence result = ProcFs.getOpenFileDescriptors();
+    if (result == null) {
+      result = Lsof.getLsofOutput();
+    }
+    return result == null ? "unable to obtain open files detail" : result;
+  }
+
   @Deprecated
   public static long getMaxNrOpenFiles() {
     return OperatingSystem.getMaxFileDescriptorCount();
@@ -184,14 +196,14 @@ public final class OpenFilesSampler {
       long time = System.currentTimeMillis();
       long nrOf = OperatingSystem.getOpenFileDescriptorCount();
       if (nrOf > errorThreshold) {
-        lastWarnLsof = Lsof.getLsofOutput();
+        lastWarnLsof = getOpenFilesDetail();
         LOG.error("Nr open files is {} and exceeds error threshold {}, detail:\n{}",
                 nrOf, errorThreshold, lastWarnLsof);
         if (shutdownOnError) {
           Runtime.goDownWithError(null, SysExits.EX_IOERR);
         }
       } else if (nrOf > warnThreshold) {
-        lastWarnLsof = Lsof.getLsofOutput();
+        lastWarnLsof = getOpenFilesDetail();
         LOG.warn("Nr open files is {} and exceeds warn threshold {}, detail:\n{} ",
                 nrOf, warnThreshold, lastWarnLsof);
         if (!Runtime.gc(60000)) {
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.perf.memory;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spf4j.base.AbstractRunnable;
+import org.spf4j.concurrent.DefaultExecutor;
+import org.spf4j.jmx.JmxExport;
+import org.spf4j.jmx.Registry;
+import org.spf4j.perf.CloseableMeasurementRecorder;
+import org.spf4j.perf.CloseableMeasurementRecorderSource;
+import org.spf4j.perf.impl.RecorderFactory;
+import org.spf4j.stackmonitor.Sampler;
+
+/**
+ * GC recorder driven by the GC notifications. (unlike GCUsageSampler which polls the cumulative gc time)
+ *
+ * Records for every collection:
+ * the pause time (quantized, per collector) for stop the world collections, the duration of concurrent cycles
+ * (per collector), the bytes allocated since the previous collection, the bytes collected,
+ * the bytes promoted to the old generation and the occupancy of every memory pool after the collection.
+ *
+ * Concurrent collectors (CMS, G1 concurrent cycle, ZGC, Shenandoah) report their concurrent cycles with the same
+ * notification as their pauses, these are told apart by the gc action and cause, see {@link #isPause(String, String)}.
+ *
+ * Optionally, when a pause exceeds a threshold, the stack samples collected by a Sampler are dumped to file.
+ *
+ * @author Zoltan Farkas
+ */
+@SuppressFBWarnings("IICU_INCORRECT_INTERNAL_CLASS_USE")
+public final class GCNotificationSampler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GCNotificationSampler.class);
+
+  private static final List<GarbageCollectorMXBean> MBEANS = ManagementFactory.getGarbageCollectorMXBeans();
+
+  private static GCListener listener;
+
+  static {
+    org.spf4j.base.Runtime.queueHook(2, new AbstractRunnable(true) {
+      @Override
+      public void doRun() {
+        stop();
+      }
+    });
+    Registry.export(GCNotificationSampler.class);
+  }
+
+  private GCNotificationSampler() {
+  }
+
+  @JmxExport
+  public static void start(@JmxExport("aggTimeMillis") final int aggTimeMillis) {
+    start(aggTimeMillis, Long.MAX_VALUE, null);
+  }
+
+  /**
+   * Start recording GC events.
+   * @param aggTimeMillis the measurement aggregation interval.
+   * @param dumpPauseThresholdMillis when a GC pause exceeds this threshold, stack samples will be dumped.
+   * @param sampler the stack sampler to dump.
+   */
+  public static synchronized void start(final int aggTimeMillis,
+          final long dumpPauseThresholdMillis, @Nullable final Sampler sampler) {
+    if (listener == null) {
+      GCListener l = new GCListener(aggTimeMillis, dumpPauseThresholdMillis, sampler);
+      for (GarbageCollectorMXBean gcBean : MBEANS) {
+        if (gcBean instanceof NotificationEmitter) {
+          ((NotificationEmitter) gcBean).addNotificationListener(l, null, null);
+        }
+      }
+      listener = l;
+    } else {
+      throw new IllegalStateException("GC notification recording already started " + listener);
+    }
+  }
+
+  @JmxExport
+  public static synchronized void stop() {
+    if (listener != null) {
+      for (GarbageCollectorMXBean gcBean : MBEANS) {
+        if (gcBean instanceof NotificationEmitter) {
+          try {
+            ((NotificationEmitter) gcBean).removeNotificationListener(listener);
+          } catch (ListenerNotFoundException ex) {
+            LOG.debug("Listener not registered with {}", gcBean.getName(), ex);
+          }
+        }
+      }
+      listener.close();
+      listener = null;
+    }
+  }
+
+  @JmxExport
+  public static synchronized boolean isStarted() {
+    return listener != null;
+  }
+
+  @JmxExport
+  public static synchronized long getLastPauseMillis() {
+    return listener == null ? -1 : listener.lastPauseMillis;
+  }
+
+  @JmxExport
+  public static synchronized long getLastCollectedBytes() {
+    return listener == null ? -1 : listener.lastCollectedBytes;
+  }
+
+  /**
+   * @param gcAction the gc action, like "end of minor GC", "end of major GC", "end of GC pause", "end of GC cycle".
+   * @param gcCause the gc cause, "No GC" for the concurrent cycles of CMS.
+   * @return true if the collection described by the action and cause is a stop the world pause.
+   */
+  static boolean isPause(final String gcAction, final String gcCause) {
+    if (gcAction.endsWith("pause")) {
+      return true;
+    }
+    return ("end of minor GC".equals(gcAction) || "end of major GC".equals(gcAction))
+            && !"No GC".equals(gcCause);
+  }
+
+  static boolean isOldGenPool(final String poolName) {
+    return poolName.contains("Old") || poolName.contains("Tenured");
+  }
+
+  private static final class GCListener implements NotificationListener, AutoCloseable {
+
+    private final CloseableMeasurementRecorderSource pauseTime;
+
+    private final CloseableMeasurementRecorderSource concurrentTime;
+
+    private final CloseableMeasurementRecorder collectedBytes;
+
+    private final CloseableMeasurementRecorder allocatedBytes;
+
+    private final CloseableMeasurementRecorder promotedBytes;
+
+    private final CloseableMeasurementRecorderSource poolUsedAfterGc;
+
+    private final long dumpPauseThresholdMillis;
+
+    @Nullable
+    private final Sampler sampler;
+
+    private final AtomicBoolean dumpInProgress;
+
+    /** notifications are delivered by a single thread, however gc-s of different collectors can interleave. */
+    private long lastUsedAfterGc;
+
+    private volatile long lastPauseMillis;
+
+    private volatile long lastCollectedBytes;
+
+    GCListener(final int aggTimeMillis, final long dumpPauseThresholdMillis, @Nullable final Sampler sampler) {
+      this.pauseTime = RecorderFactory.createScalableQuantizedRecorderSource2("gc-pause-time", "ms",
+              aggTimeMillis, 10, 0, 4, 10);
+      this.concurrentTime = RecorderFactory.createScalableMinMaxAvgRecorderSource2("gc-concurrent-time", "ms",
+              aggTimeMillis);
+      this.collectedBytes = RecorderFactory.createScalableMinMaxAvgRecorder2("gc-cycle-collected-bytes", "bytes",
+              aggTimeMillis);
+      this.allocatedBytes = RecorderFactory.createScalableMinMaxAvgRecorder2("gc-cycle-allocated-bytes", "bytes",
+              aggTimeMillis);
+      this.promotedBytes = RecorderFactory.createScalableMinMaxAvgRecorder2("gc-cycle-promoted-bytes", "bytes",
+              aggTimeMillis);
+      this.poolUsedAfterGc = RecorderFactory.createScalableMinMaxAvgRecorderSource2("gc-pool-used-after", "bytes",
+              aggTimeMillis);
+      this.dumpPauseThresholdMillis = dumpPauseThresholdMillis;
+      this.sampler = sampler;
+      this.dumpInProgress = new AtomicBoolean(false);
+      this.lastUsedAfterGc = -1;
+      this.lastPauseMillis = -1;
+      this.lastCollectedBytes = -1;
+    }
+
+    @Override
+    public synchronized void handleNotification(final Notification notification, final Object handback) {
+      if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+        return;
+      }
+      GarbageCollectionNotificationInfo info
+              = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+      GcInfo gcInfo = info.getGcInfo();
+      long duration = gcInfo.getDuration();
+      boolean isPause = isPause(info.getGcAction(), info.getGcCause());
+      if (isPause) {
+        pauseTime.getRecorder(info.getGcName()).record(duration);
+        lastPauseMillis = duration;
+      } else {
+        concurrentTime.getRecorder(info.getGcName()).record(duration);
+      }
+      Map<String, MemoryUsage> before = gcInfo.getMemoryUsageBeforeGc();
+      Map<String, MemoryUsage> after = gcInfo.getMemoryUsageAfterGc();
+      long usedBefore = 0;
+      long usedAfter = 0;
+      long promoted = 0;
+      for (Map.Entry<String, MemoryUsage> entry : after.entrySet()) {
+        String pool = entry.getKey();
+        long poolUsedAfter = entry.getValue().getUsed();
+        MemoryUsage beforeUsage = before.get(pool);
+        long poolUsedBefore = beforeUsage == null ? 0 : beforeUsage.getUsed();
+        usedBefore += poolUsedBefore;
+        usedAfter += poolUsedAfter;
+        if (poolUsedAfter > poolUsedBefore && isOldGenPool(pool)) {
+          promoted += poolUsedAfter - poolUsedBefore;
+        }
+        poolUsedAfterGc.getRecorder(pool).record(poolUsedAfter);
+      }
+      if (lastUsedAfterGc >= 0 && usedBefore >= lastUsedAfterGc) {
+        allocatedBytes.record(usedBefore - lastUsedAfterGc);
+      }
+      lastUsedAfterGc = usedAfter;
+      long collected = Math.max(0, usedBefore - usedAfter);
+      collectedBytes.record(collected);
+      lastCollectedBytes = collected;
+      promotedBytes.record(promoted);
+      if (isPause && duration >= dumpPauseThresholdMillis && sampler != null) {
+        dumpSamples(info.getGcName(), duration);
+      }
+    }
+
+    private void dumpSamples(final String gcName, final long duration) {
+      if (dumpInProgress.compareAndSet(false, true)) {
+        DefaultExecutor.INSTANCE.execute(new AbstractRunnable(true) {
+          @Override
+          public void doRun() throws IOException {
+            try {
+              File file = sampler.dumpToFile("gc_" + gcName.replace(' ', '_'));
+              LOG.info("GC pause of {} ms exceeded threshold {} ms, stack samples written to {}",
+                      duration, dumpPauseThresholdMillis, file);
+            } finally {
+              dumpInProgress.set(false);
+            }
+          }
+        });
+      }
+    }
+
+    @Override
+    public void close() {
+      pauseTime.close();
+      concurrentTime.close();
+      collectedBytes.close();
+      allocatedBytes.close();
+      promotedBytes.close();
+      poolUsedAfterGc.close();
+    }
+
+    @Override
+    public String toString() {
+      return "GCListener{" + "dumpPauseThresholdMillis=" + dumpPauseThresholdMillis + ", sampler=" + sampler + '}';
+    }
+
+  }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.perf.os;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.spf4j.base.AbstractRunnable;
+import org.spf4j.concurrent.DefaultScheduler;
+import org.spf4j.jmx.JmxExport;
+import org.spf4j.jmx.Registry;
+import org.spf4j.os.ProcFs;
+import org.spf4j.perf.MeasurementRecorderSource;
+import org.spf4j.perf.MultiMeasurementRecorder;
+import org.spf4j.perf.impl.RecorderFactory;
+
+/**
+ * Linux native process metrics sampler, based on the /proc file system.
+ * Samples open file descriptors, rss, context switches, io and per thread cpu usage
+ * without forking any processes. (unlike lsof)
+ *
+ * @author Zoltan Farkas
+ */
+public final class ProcFsSampler {
+
+  private static ScheduledFuture<?> samplingFuture;
+
+  private static ProcFsRecorder recorder;
+
+  static {
+    org.spf4j.base.Runtime.queueHook(2, new AbstractRunnable(true) {
+      @Override
+      public void doRun() throws IOException {
+        stop();
+      }
+    });
+    Registry.export(ProcFsSampler.class);
+  }
+
+  private ProcFsSampler() {
+  }
+
+  @JmxExport
+  public static boolean isAvailable() {
+    return ProcFs.isAvailable();
+  }
+
+  @JmxExport
+  public static synchronized void start(@JmxExport("sampleTimeMillis") final int sampleTime) throws IOException {
+    if (samplingFuture == null) {
+      recorder = new ProcFsRecorder(sampleTime);
+      samplingFuture = DefaultScheduler.INSTANCE.scheduleWithFixedDelay(recorder,
+              sampleTime, sampleTime, TimeUnit.MILLISECONDS);
+    } else {
+      throw new IllegalStateException("/proc sampling already started " + samplingFuture);
+    }
+  }
+
+  @JmxExport
+  public static synchronized void stop() throws IOException {
+    if (samplingFuture != null) {
+      samplingFuture.cancel(false);
+      samplingFuture = null;
+      recorder.close();
+      recorder = null;
+    }
+  }
+
+  @JmxExport
+  public static synchronized boolean isStarted() {
+    return samplingFuture != null;
+  }
+
+  @JmxExport
+  public static String getOpenFileDescriptors() {
+    CharSequence fds = ProcFs.getOpenFileDescriptors();
+    return fds == null ? "/proc not available" : fds.toString();
+  }
+
+  private static final class ThreadCpu {
+
+    private final String name;
+
+    private long lastTicks;
+
+    private long generation;
+
+    ThreadCpu(final String name, final long lastTicks, final long generation) {
+      this.name = name;
+      this.lastTicks = lastTicks;
+      this.generation = generation;
+    }
+  }
+
+  private static final class ProcFsRecorder extends AbstractRunnable implements AutoCloseable {
+
+    private final ProcFs procFs;
+
+    private final ProcFs.ProcessStats stats;
+
+    private final MultiMeasurementRecorder processRecorder;
+
+    private final MeasurementRecorderSource threadCpuRecorder;
+
+    private final TIntObjectHashMap<ThreadCpu> threads;
+
+    private final ProcFs.ThreadStatConsumer threadConsumer;
+
+    @SuppressFBWarnings("IS2_INCONSISTENT_SYNC") // threadSample is invoked only from the synchronized doRun.
+    private long generation;
+
+    private boolean closed;
+
+    private long lastVolCtxSw;
+    private long lastInvolCtxSw;
+    private long lastReadChars;
+    private long lastWriteChars;
+    private long lastReadBytes;
+    private long lastWriteBytes;
+    private long lastUserTicks;
+    private long lastSystemTicks;
+    private long lastMinorFaults;
+    private long lastMajorFaults;
+
+    ProcFsRecorder(final int sampleTime) throws IOException {
+      this.procFs = new ProcFs();
+      this.stats = new ProcFs.ProcessStats();
+      this.processRecorder = RecorderFactory.createDirectRecorder("process-proc-stats", "/proc process statistics",
+              new String[] {"open-fds", "rss", "nr-threads", "voluntary-ctx-switches", "involuntary-ctx-switches",
+                "read-chars", "write-chars", "read-bytes", "write-bytes", "user-cpu-time", "system-cpu-time",
+                "minor-faults", "major-faults"},
+              new String[] {"count", "bytes", "count", "count", "count",
+                "bytes", "bytes", "bytes", "bytes", "ms", "ms",
+                "count", "count"});
+      this.threadCpuRecorder = RecorderFactory.createDirectRecorderSource("thread-cpu-time", "ms");
+      this.threads = new TIntObjectHashMap<>();
+      this.threadConsumer = this::threadSample;
+      this.generation = 0;
+      procFs.read(stats);
+      updateLast();
+    }
+
+    private void updateLast() {
+      lastVolCtxSw = stats.getVoluntaryContextSwitches();
+      lastInvolCtxSw = stats.getInvoluntaryContextSwitches();
+      lastReadChars = stats.getReadChars();
+      lastWriteChars = stats.getWriteChars();
+      lastReadBytes = stats.getReadBytes();
+      lastWriteBytes = stats.getWriteBytes();
+      lastUserTicks = stats.getUserCpuTicks();
+      lastSystemTicks = stats.getSystemCpuTicks();
+      lastMinorFaults = stats.getMinorFaults();
+      lastMajorFaults = stats.getMajorFaults();
+    }
+
+    private void threadSample(final int tid, final CharSequence name,
+            final long userCpuTicks, final long systemCpuTicks) {
+      long ticks = userCpuTicks + systemCpuTicks;
+      ThreadCpu tc = threads.get(tid);
+      if (tc == null) {
+        // first time we see this thread, will record from the next sample.
+        threads.put(tid, new ThreadCpu(name.toString(), ticks, generation));
+      } else {
+        threadCpuRecorder.getRecorder(tc.name).record(ticksToMillis(ticks - tc.lastTicks));
+        tc.lastTicks = ticks;
+        tc.generation = generation;
+      }
+    }
+
+    private static long ticksToMillis(final long ticks) {
+      return ticks * 1000 / ProcFs.CLOCK_TICKS_PER_SECOND;
+    }
+
+    /**
+     * synchronized with close, a sample in flight when the sampler is stopped completes before procFs is closed.
+     */
+    @Override
+    public synchronized void doRun() throws IOException {
+      if (closed) {
+        return;
+      }
+      long time = System.currentTimeMillis();
+      int openFds = procFs.getOpenFileDescriptorCount();
+      procFs.read(stats);
+      processRecorder.recordAt(time, openFds, stats.getRssBytes(), stats.getNrThreads(),
+              stats.getVoluntaryContextSwitches() - lastVolCtxSw,
+              stats.getInvoluntaryContextSwitches() - lastInvolCtxSw,
+              stats.getReadChars() - lastReadChars, stats.getWriteChars() - lastWriteChars,
+              stats.getReadBytes() - lastReadBytes, stats.getWriteBytes() - lastWriteBytes,
+              ticksToMillis(stats.getUserCpuTicks() - lastUserTicks),
+              ticksToMillis(stats.getSystemCpuTicks() - lastSystemTicks),
+              stats.getMinorFaults() - lastMinorFaults, stats.getMajorFaults() - lastMajorFaults);
+      updateLast();
+      generation++;
+      procFs.forEachThread(threadConsumer);
+      final long gen = generation;
+      threads.retainEntries((tid, tc) -> tc.generation == gen);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        procFs.close();
+      }
+    }
+
+  }
+
+}
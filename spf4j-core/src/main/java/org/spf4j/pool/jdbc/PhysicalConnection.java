@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.pool.jdbc;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spf4j.base.TimeSource;
+import org.spf4j.perf.MeasurementRecorderSource;
+
+/**
+ * A physical (driver) connection held by the {@link PooledDataSource} pool, together with its prepared statement
+ * cache and the timestamps used to decide when the connection needs to be validated or retired.
+ *
+ * Instances are used by one borrower at a time, the pool hand-off provides the memory visibility guarantees,
+ * as such there is no synchronization here.
+ *
+ * @author zoly
+ */
+@SuppressFBWarnings({"SQL_INJECTION_JDBC", "SE_BAD_FIELD_INNER_CLASS"})
+final class PhysicalConnection {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PhysicalConnection.class);
+
+  private final Connection connection;
+
+  private final long createdNanos;
+
+  private final int maxCachedStatements;
+
+  private final MeasurementRecorderSource events;
+
+  /**
+   * idle prepared statements, in LRU order. Statements are removed while in use.
+   */
+  private final LinkedHashMap<String, PreparedStatement> statements;
+
+  private long lastUsedNanos;
+
+  private boolean invalidated;
+
+  PhysicalConnection(final Connection connection, final int maxCachedStatements,
+          final MeasurementRecorderSource events) {
+    this.connection = connection;
+    this.maxCachedStatements = maxCachedStatements;
+    this.events = events;
+    this.createdNanos = TimeSource.nanoTime();
+    this.lastUsedNanos = createdNanos;
+    this.invalidated = false;
+    this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, PreparedStatement> eldest) {
+        if (size() > PhysicalConnection.this.maxCachedStatements) {
+          events.getRecorder("stmt-cache-eviction").record(1);
+          closeQuietly(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  Connection getConnection() {
+    return connection;
+  }
+
+  long getCreatedNanos() {
+    return createdNanos;
+  }
+
+  long getLastUsedNanos() {
+    return lastUsedNanos;
+  }
+
+  void returned(final long nanoTime) {
+    this.lastUsedNanos = nanoTime;
+  }
+
+  void invalidate() {
+    this.invalidated = true;
+  }
+
+  boolean isInvalidated() {
+    return invalidated;
+  }
+
+  /**
+   * @param sql the statement sql.
+   * @return a cached prepared statement if available, a newly prepared one otherwise.
+   * @throws SQLException
+   */
+  PreparedStatement takeStatement(final String sql) throws SQLException {
+    PreparedStatement stmt = statements.remove(sql);
+    if (stmt != null && stmt.isClosed()) {
+      events.getRecorder("stmt-cache-closed").record(1);
+      stmt = null;
+    }
+    if (stmt == null) {
+      events.getRecorder("stmt-cache-miss").record(1);
+      return connection.prepareStatement(sql);
+    } else {
+      events.getRecorder("stmt-cache-hit").record(1);
+      return stmt;
+    }
+  }
+
+  /**
+   * Return a statement obtained via takeStatement to the cache. If a statement with the same sql is already cached
+   * (the same sql was prepared more than once at the same time) the returned statement is closed.
+   * @param sql the statement sql.
+   * @param stmt the statement, its state must have been reset already.
+   */
+  void putStatement(final String sql, final PreparedStatement stmt) throws SQLException {
+    if (maxCachedStatements <= 0 || statements.containsKey(sql)) {
+      stmt.close();
+    } else {
+      statements.put(sql, stmt);
+    }
+  }
+
+  /**
+   * close all cached statements.
+   * @return the first exception encountered, with subsequent ones suppressed, or null if all closed fine.
+   */
+  @Nullable
+  SQLException closeStatements() {
+    SQLException result = null;
+    Iterator<PreparedStatement> it = statements.values().iterator();
+    while (it.hasNext()) {
+      PreparedStatement stmt = it.next();
+      it.remove();
+      try {
+        stmt.close();
+      } catch (SQLException ex) {
+        if (result == null) {
+          result = ex;
+        } else {
+          result.addSuppressed(ex);
+        }
+      }
+    }
+    return result;
+  }
+
+  int getNrCachedStatements() {
+    return statements.size();
+  }
+
+  private static void closeQuietly(final PreparedStatement stmt) {
+    try {
+      stmt.close();
+    } catch (SQLException | RuntimeException ex) {
+      LOG.warn("Failed to close evicted statement {}", stmt, ex);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PhysicalConnection{" + "connection=" + connection + ", createdNanos=" + createdNanos
+            + ", lastUsedNanos=" + lastUsedNanos + ", invalidated=" + invalidated
+            + ", cachedStatements=" + statements.size() + '}';
+  }
+
+}
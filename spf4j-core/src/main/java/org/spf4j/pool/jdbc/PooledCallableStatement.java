@@ -0,0 +1,1420 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.pool.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+import org.spf4j.base.SuppressForbiden;
+
+/**
+ * A callable statement handed out by {@link PooledConnection#prepareCall(java.lang.String)} and its overloads.
+ * Callable statements are not cached, close closes the underlying statement.
+ *
+ * @author zoly
+ */
+final class PooledCallableStatement extends PooledPreparedStatement implements CallableStatement {
+
+  private final CallableStatement callable;
+
+  PooledCallableStatement(final PooledConnection connection, final CallableStatement raw) {
+    super(connection, raw, null);
+    this.callable = raw;
+  }
+
+  @Override
+  public void registerOutParameter(final int parameterIndex, final int sqlType) throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterIndex, sqlType);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final int parameterIndex, final int sqlType, final int scale) throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterIndex, sqlType, scale);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean wasNull() throws SQLException {
+    checkOpen();
+    try {
+      return callable.wasNull();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String getString(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getString(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean getBoolean(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getBoolean(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public byte getByte(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getByte(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public short getShort(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getShort(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getInt(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getInt(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long getLong(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getLong(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public float getFloat(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getFloat(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public double getDouble(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getDouble(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  @Deprecated
+  @SuppressForbiden // delegation only.
+  public BigDecimal getBigDecimal(final int parameterIndex, final int scale) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getBigDecimal(parameterIndex, scale);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public byte[] getBytes(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getBytes(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Date getDate(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getDate(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Time getTime(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getTime(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Timestamp getTimestamp(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getTimestamp(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Object getObject(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getObject(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public BigDecimal getBigDecimal(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getBigDecimal(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Object getObject(final int parameterIndex, final Map<String, Class<?>> map) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getObject(parameterIndex, map);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Ref getRef(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getRef(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Blob getBlob(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getBlob(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Clob getClob(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getClob(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Array getArray(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getArray(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Date getDate(final int parameterIndex, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getDate(parameterIndex, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Time getTime(final int parameterIndex, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getTime(parameterIndex, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Timestamp getTimestamp(final int parameterIndex, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getTimestamp(parameterIndex, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final int parameterIndex, final int sqlType, final String typeName)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterIndex, sqlType, typeName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final String parameterName, final int sqlType) throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterName, sqlType);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final String parameterName, final int sqlType, final int scale) throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterName, sqlType, scale);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final String parameterName, final int sqlType, final String typeName)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterName, sqlType, typeName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public URL getURL(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getURL(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setURL(final String parameterName, final URL val) throws SQLException {
+    checkOpen();
+    try {
+      callable.setURL(parameterName, val);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNull(final String parameterName, final int sqlType) throws SQLException {
+    checkOpen();
+    try {
+      callable.setNull(parameterName, sqlType);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBoolean(final String parameterName, final boolean x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setBoolean(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setByte(final String parameterName, final byte x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setByte(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setShort(final String parameterName, final short x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setShort(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setInt(final String parameterName, final int x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setInt(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setLong(final String parameterName, final long x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setLong(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setFloat(final String parameterName, final float x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setFloat(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setDouble(final String parameterName, final double x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setDouble(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBigDecimal(final String parameterName, final BigDecimal x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setBigDecimal(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setString(final String parameterName, final String x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setString(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBytes(final String parameterName, final byte[] x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setBytes(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setDate(final String parameterName, final Date x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setDate(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTime(final String parameterName, final Time x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setTime(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTimestamp(final String parameterName, final Timestamp x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setTimestamp(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setAsciiStream(final String parameterName, final InputStream x, final int length) throws SQLException {
+    checkOpen();
+    try {
+      callable.setAsciiStream(parameterName, x, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBinaryStream(final String parameterName, final InputStream x, final int length) throws SQLException {
+    checkOpen();
+    try {
+      callable.setBinaryStream(parameterName, x, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setObject(final String parameterName, final Object x, final int targetSqlType, final int scale)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.setObject(parameterName, x, targetSqlType, scale);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setObject(final String parameterName, final Object x, final int targetSqlType) throws SQLException {
+    checkOpen();
+    try {
+      callable.setObject(parameterName, x, targetSqlType);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setObject(final String parameterName, final Object x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setObject(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setCharacterStream(final String parameterName, final Reader reader, final int length)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.setCharacterStream(parameterName, reader, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setDate(final String parameterName, final Date x, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      callable.setDate(parameterName, x, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTime(final String parameterName, final Time x, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      callable.setTime(parameterName, x, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTimestamp(final String parameterName, final Timestamp x, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      callable.setTimestamp(parameterName, x, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNull(final String parameterName, final int sqlType, final String typeName) throws SQLException {
+    checkOpen();
+    try {
+      callable.setNull(parameterName, sqlType, typeName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String getString(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getString(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean getBoolean(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getBoolean(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public byte getByte(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getByte(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public short getShort(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getShort(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getInt(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getInt(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long getLong(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getLong(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public float getFloat(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getFloat(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public double getDouble(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getDouble(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public byte[] getBytes(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getBytes(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Date getDate(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getDate(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Time getTime(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getTime(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Timestamp getTimestamp(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getTimestamp(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Object getObject(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getObject(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public BigDecimal getBigDecimal(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getBigDecimal(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Object getObject(final String parameterName, final Map<String, Class<?>> map) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getObject(parameterName, map);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Ref getRef(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getRef(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Blob getBlob(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getBlob(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Clob getClob(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getClob(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Array getArray(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getArray(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Date getDate(final String parameterName, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getDate(parameterName, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Time getTime(final String parameterName, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getTime(parameterName, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Timestamp getTimestamp(final String parameterName, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getTimestamp(parameterName, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public URL getURL(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getURL(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public RowId getRowId(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getRowId(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public RowId getRowId(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getRowId(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setRowId(final String parameterName, final RowId x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setRowId(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNString(final String parameterName, final String value) throws SQLException {
+    checkOpen();
+    try {
+      callable.setNString(parameterName, value);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNCharacterStream(final String parameterName, final Reader value, final long length)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.setNCharacterStream(parameterName, value, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNClob(final String parameterName, final NClob value) throws SQLException {
+    checkOpen();
+    try {
+      callable.setNClob(parameterName, value);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setClob(final String parameterName, final Reader reader, final long length) throws SQLException {
+    checkOpen();
+    try {
+      callable.setClob(parameterName, reader, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBlob(final String parameterName, final InputStream inputStream, final long length)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.setBlob(parameterName, inputStream, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNClob(final String parameterName, final Reader reader, final long length) throws SQLException {
+    checkOpen();
+    try {
+      callable.setNClob(parameterName, reader, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public NClob getNClob(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getNClob(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public NClob getNClob(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getNClob(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setSQLXML(final String parameterName, final SQLXML xmlObject) throws SQLException {
+    checkOpen();
+    try {
+      callable.setSQLXML(parameterName, xmlObject);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public SQLXML getSQLXML(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getSQLXML(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public SQLXML getSQLXML(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getSQLXML(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String getNString(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getNString(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String getNString(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getNString(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Reader getNCharacterStream(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getNCharacterStream(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Reader getNCharacterStream(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getNCharacterStream(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Reader getCharacterStream(final int parameterIndex) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getCharacterStream(parameterIndex);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Reader getCharacterStream(final String parameterName) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getCharacterStream(parameterName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBlob(final String parameterName, final Blob x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setBlob(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setClob(final String parameterName, final Clob x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setClob(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setAsciiStream(final String parameterName, final InputStream x, final long length) throws SQLException {
+    checkOpen();
+    try {
+      callable.setAsciiStream(parameterName, x, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBinaryStream(final String parameterName, final InputStream x, final long length) throws SQLException {
+    checkOpen();
+    try {
+      callable.setBinaryStream(parameterName, x, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setCharacterStream(final String parameterName, final Reader reader, final long length)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.setCharacterStream(parameterName, reader, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setAsciiStream(final String parameterName, final InputStream x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setAsciiStream(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBinaryStream(final String parameterName, final InputStream x) throws SQLException {
+    checkOpen();
+    try {
+      callable.setBinaryStream(parameterName, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setCharacterStream(final String parameterName, final Reader reader) throws SQLException {
+    checkOpen();
+    try {
+      callable.setCharacterStream(parameterName, reader);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNCharacterStream(final String parameterName, final Reader value) throws SQLException {
+    checkOpen();
+    try {
+      callable.setNCharacterStream(parameterName, value);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setClob(final String parameterName, final Reader reader) throws SQLException {
+    checkOpen();
+    try {
+      callable.setClob(parameterName, reader);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBlob(final String parameterName, final InputStream inputStream) throws SQLException {
+    checkOpen();
+    try {
+      callable.setBlob(parameterName, inputStream);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNClob(final String parameterName, final Reader reader) throws SQLException {
+    checkOpen();
+    try {
+      callable.setNClob(parameterName, reader);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public <T> T getObject(final int parameterIndex, final Class<T> type) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getObject(parameterIndex, type);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public <T> T getObject(final String parameterName, final Class<T> type) throws SQLException {
+    checkOpen();
+    try {
+      return callable.getObject(parameterName, type);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setObject(final String parameterName, final Object x, final SQLType targetSqlType,
+          final int scaleOrLength) throws SQLException {
+    checkOpen();
+    try {
+      callable.setObject(parameterName, x, targetSqlType, scaleOrLength);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setObject(final String parameterName, final Object x, final SQLType targetSqlType) throws SQLException {
+    checkOpen();
+    try {
+      callable.setObject(parameterName, x, targetSqlType);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final int parameterIndex, final SQLType sqlType) throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterIndex, sqlType);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final int parameterIndex, final SQLType sqlType, final int scale)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterIndex, sqlType, scale);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final int parameterIndex, final SQLType sqlType, final String typeName)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterIndex, sqlType, typeName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final String parameterName, final SQLType sqlType) throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterName, sqlType);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final String parameterName, final SQLType sqlType, final int scale)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterName, sqlType, scale);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void registerOutParameter(final String parameterName, final SQLType sqlType, final String typeName)
+          throws SQLException {
+    checkOpen();
+    try {
+      callable.registerOutParameter(parameterName, sqlType, typeName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PooledCallableStatement{" + "raw=" + callable + ", closed=" + isClosed() + '}';
+  }
+
+}
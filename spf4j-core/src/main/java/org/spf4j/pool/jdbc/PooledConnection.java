@@ -0,0 +1,743 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.pool.jdbc;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import org.spf4j.base.TimeSource;
+import org.spf4j.recyclable.RecyclingSupplier;
+
+/**
+ * A connection handed out by {@link PooledDataSource}. Calls are delegated to the physical connection,
+ * close returns the physical connection to the pool. The first exception encountered is passed to the pool
+ * on return, so that the physical connection is validated.
+ * Statements created by this connection return it as their connection, and the ones left open are closed
+ * when this connection is closed.
+ *
+ * @author zoly
+ */
+@SuppressFBWarnings({"SQL_INJECTION_JDBC", "EXTERNAL_CONFIG_CONTROL"})
+final class PooledConnection implements Connection {
+
+  private final PhysicalConnection physical;
+
+  private final Connection raw;
+
+  private final RecyclingSupplier<PhysicalConnection> pool;
+
+  private final List<Statement> openStatements;
+
+  @Nullable
+  private Exception ex;
+
+  private boolean closed;
+
+  PooledConnection(final PhysicalConnection physical, final RecyclingSupplier<PhysicalConnection> pool) {
+    this.physical = physical;
+    this.raw = physical.getConnection();
+    this.pool = pool;
+    this.openStatements = new ArrayList<>(4);
+    this.ex = null;
+    this.closed = false;
+  }
+
+  PhysicalConnection getPhysical() {
+    return physical;
+  }
+
+  void statementClosed(final Statement stmt) {
+    for (int i = openStatements.size() - 1; i >= 0; i--) {
+      if (openStatements.get(i) == stmt) {
+        openStatements.remove(i);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Connection use after close fails with a {@link SQLNonTransientConnectionException},
+   * the reflective proxy this class replaces used to throw an IllegalStateException.
+   */
+  private void checkOpen() throws SQLException {
+    if (closed) {
+      throw new SQLNonTransientConnectionException("not a owner of this connection,"
+              + " it has been returned already to " + pool);
+    }
+  }
+
+  void failed(final Exception e) {
+    if (ex == null) {
+      ex = e;
+    }
+  }
+
+  private <T extends Statement> T open(final T stmt) {
+    openStatements.add(stmt);
+    return stmt;
+  }
+
+  /**
+   * Closes the statements that are still open, and returns the physical connection to the pool.
+   */
+  @Override
+  public void close() throws SQLException {
+    if (closed) {
+      return;
+    }
+    try {
+      for (int i = openStatements.size() - 1; i >= 0; i--) {
+        openStatements.get(i).close();
+      }
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    } finally {
+      closed = true;
+      openStatements.clear();
+      physical.returned(TimeSource.nanoTime());
+      Exception e = ex;
+      ex = null;
+      pool.recycle(physical, e);
+    }
+  }
+
+  @Override
+  public boolean isClosed() throws SQLException {
+    return closed || raw.isClosed();
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledPreparedStatement(this, physical.takeStatement(sql), sql));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(final String sql, final int resultSetType,
+          final int resultSetConcurrency) throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledPreparedStatement(this,
+              raw.prepareStatement(sql, resultSetType, resultSetConcurrency), null));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(final String sql, final int resultSetType,
+          final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledPreparedStatement(this,
+              raw.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), null));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledPreparedStatement(this, raw.prepareStatement(sql, autoGeneratedKeys), null));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(final String sql, final int[] columnIndexes) throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledPreparedStatement(this, raw.prepareStatement(sql, columnIndexes), null));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(final String sql, final String[] columnNames) throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledPreparedStatement(this, raw.prepareStatement(sql, columnNames), null));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setClientInfo(final String name, final String value) throws SQLClientInfoException {
+    if (closed) {
+      throw new SQLClientInfoException("Connection returned already to " + pool, Collections.emptyMap());
+    }
+    try {
+      raw.setClientInfo(name, value);
+    } catch (SQLClientInfoException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setClientInfo(final Properties properties) throws SQLClientInfoException {
+    if (closed) {
+      throw new SQLClientInfoException("Connection returned already to " + pool, Collections.emptyMap());
+    }
+    try {
+      raw.setClientInfo(properties);
+    } catch (SQLClientInfoException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public <T> T unwrap(final Class<T> iface) throws SQLException {
+    if (iface.isInstance(raw)) {
+      return iface.cast(raw);
+    }
+    return raw.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+    return iface.isInstance(raw) || raw.isWrapperFor(iface);
+  }
+
+  @Override
+  public Statement createStatement() throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledStatement(this, raw.createStatement()));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public CallableStatement prepareCall(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledCallableStatement(this, raw.prepareCall(sql)));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String nativeSQL(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return raw.nativeSQL(sql);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setAutoCommit(final boolean autoCommit) throws SQLException {
+    checkOpen();
+    try {
+      raw.setAutoCommit(autoCommit);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean getAutoCommit() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getAutoCommit();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void commit() throws SQLException {
+    checkOpen();
+    try {
+      raw.commit();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void rollback() throws SQLException {
+    checkOpen();
+    try {
+      raw.rollback();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public DatabaseMetaData getMetaData() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getMetaData();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setReadOnly(final boolean readOnly) throws SQLException {
+    checkOpen();
+    try {
+      raw.setReadOnly(readOnly);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean isReadOnly() throws SQLException {
+    checkOpen();
+    try {
+      return raw.isReadOnly();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setCatalog(final String catalog) throws SQLException {
+    checkOpen();
+    try {
+      raw.setCatalog(catalog);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String getCatalog() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getCatalog();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTransactionIsolation(final int level) throws SQLException {
+    checkOpen();
+    try {
+      raw.setTransactionIsolation(level);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getTransactionIsolation() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getTransactionIsolation();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getWarnings();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    checkOpen();
+    try {
+      raw.clearWarnings();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Statement createStatement(final int resultSetType, final int resultSetConcurrency) throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledStatement(this, raw.createStatement(resultSetType, resultSetConcurrency)));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency)
+          throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledCallableStatement(this, raw.prepareCall(sql, resultSetType, resultSetConcurrency)));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Map<String, Class<?>> getTypeMap() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getTypeMap();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTypeMap(final Map<String, Class<?>> map) throws SQLException {
+    checkOpen();
+    try {
+      raw.setTypeMap(map);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setHoldability(final int holdability) throws SQLException {
+    checkOpen();
+    try {
+      raw.setHoldability(holdability);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getHoldability() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getHoldability();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Savepoint setSavepoint() throws SQLException {
+    checkOpen();
+    try {
+      return raw.setSavepoint();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Savepoint setSavepoint(final String name) throws SQLException {
+    checkOpen();
+    try {
+      return raw.setSavepoint(name);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void rollback(final Savepoint savepoint) throws SQLException {
+    checkOpen();
+    try {
+      raw.rollback(savepoint);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void releaseSavepoint(final Savepoint savepoint) throws SQLException {
+    checkOpen();
+    try {
+      raw.releaseSavepoint(savepoint);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Statement createStatement(final int resultSetType, final int resultSetConcurrency,
+          final int resultSetHoldability) throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledStatement(this,
+              raw.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability)));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency,
+          final int resultSetHoldability) throws SQLException {
+    checkOpen();
+    try {
+      return open(new PooledCallableStatement(this,
+              raw.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability)));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Clob createClob() throws SQLException {
+    checkOpen();
+    try {
+      return raw.createClob();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Blob createBlob() throws SQLException {
+    checkOpen();
+    try {
+      return raw.createBlob();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public NClob createNClob() throws SQLException {
+    checkOpen();
+    try {
+      return raw.createNClob();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public SQLXML createSQLXML() throws SQLException {
+    checkOpen();
+    try {
+      return raw.createSQLXML();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean isValid(final int timeout) throws SQLException {
+    checkOpen();
+    try {
+      return raw.isValid(timeout);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String getClientInfo(final String name) throws SQLException {
+    checkOpen();
+    try {
+      return raw.getClientInfo(name);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Properties getClientInfo() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getClientInfo();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Array createArrayOf(final String typeName, final Object[] elements) throws SQLException {
+    checkOpen();
+    try {
+      return raw.createArrayOf(typeName, elements);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public Struct createStruct(final String typeName, final Object[] attributes) throws SQLException {
+    checkOpen();
+    try {
+      return raw.createStruct(typeName, attributes);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setSchema(final String schema) throws SQLException {
+    checkOpen();
+    try {
+      raw.setSchema(schema);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String getSchema() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getSchema();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void abort(final Executor executor) throws SQLException {
+    checkOpen();
+    physical.invalidate();
+    failed(new SQLNonTransientConnectionException("Connection aborted"));
+    try {
+      raw.abort(executor);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNetworkTimeout(final Executor executor, final int milliseconds) throws SQLException {
+    checkOpen();
+    try {
+      raw.setNetworkTimeout(executor, milliseconds);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getNetworkTimeout() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getNetworkTimeout();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PooledConnection{" + "physical=" + physical + ", closed=" + closed + '}';
+  }
+
+}
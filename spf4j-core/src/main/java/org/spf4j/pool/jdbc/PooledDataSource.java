@@ -33,17 +33,21 @@ package org.spf4j.pool.jdbc;
 
 import com.google.common.annotations.Beta;
 import java.io.PrintWriter;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLRecoverableException;
 import java.sql.SQLTimeoutException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
+import org.slf4j.LoggerFactory;
+import org.spf4j.base.TimeSource;
+import org.spf4j.perf.CloseableMeasurementRecorder;
+import org.spf4j.perf.CloseableMeasurementRecorderSource;
+import org.spf4j.perf.impl.RecorderFactory;
 import org.spf4j.recyclable.ObjectBorrowException;
 import org.spf4j.recyclable.ObjectCreationException;
 import org.spf4j.recyclable.ObjectDisposeException;
@@ -51,13 +55,53 @@ import org.spf4j.recyclable.RecyclingSupplier;
 import org.spf4j.recyclable.impl.RecyclingSupplierBuilder;
 
 /**
+ * A pooled data source.
+ *
+ * Pooled connections are plain delegating wrappers (no reflection), each physical connection keeps a LRU cache
+ * of prepared statements keyed by sql (only statements prepared via {@link Connection#prepareStatement(String)}
+ * are cached).
+ *
+ * Connections are not validated on every borrow. A connection is validated on borrow only when it has been idle
+ * for more than validateIdleMillis, connections older than maxAgeMillis are retired, and connections that
+ * encountered errors are validated when returned to the pool.
+ *
+ * Pool metrics (borrow time, statement cache hits/misses/evictions, validations, retirements)
+ * are exported via {@link RecorderFactory}.
  *
  * @author zoly
  */
 @Beta
 public final class PooledDataSource implements DataSource, AutoCloseable {
 
-  private final RecyclingSupplier<Connection> pool;
+  private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(PooledDataSource.class);
+
+  private static final int DEFAULT_MAX_CACHED_STATEMENTS
+          = Integer.getInteger("spf4j.jdbc.pool.maxCachedStatements", 32);
+
+  private static final long DEFAULT_VALIDATE_IDLE_MILLIS
+          = Long.getLong("spf4j.jdbc.pool.validateIdleMillis", 30000L);
+
+  private static final long DEFAULT_MAX_AGE_MILLIS
+          = Long.getLong("spf4j.jdbc.pool.maxAgeMillis", 1800000L);
+
+  private static final int METRICS_SAMPLE_TIME_MILLIS
+          = Integer.getInteger("spf4j.jdbc.pool.sampleTimeMillis", 60000);
+
+  private static final AtomicInteger POOL_IDS = new AtomicInteger();
+
+  private final String name;
+
+  private final RecyclingSupplier<PhysicalConnection> pool;
+
+  private final RecyclingSupplier.Factory<Connection> connectionFactory;
+
+  private final long validateIdleNanos;
+
+  private final long maxAgeNanos;
+
+  private final CloseableMeasurementRecorder borrowTime;
+
+  private final CloseableMeasurementRecorderSource events;
 
   public PooledDataSource(final int initialSize, final int maxSize,
           final String driverName, final String url, final String user, final String password)
@@ -67,53 +111,92 @@ public final class PooledDataSource implements DataSource, AutoCloseable {
 
   public PooledDataSource(final int initialSize, final int maxSize,
           final RecyclingSupplier.Factory<Connection> jdbcConnectionFactory) throws ObjectCreationException {
-    RecyclingSupplierBuilder<Connection> builder
-            = new RecyclingSupplierBuilder<>(maxSize, jdbcConnectionFactory);
+    this("jdbc-pool-" + POOL_IDS.getAndIncrement(), initialSize, maxSize, jdbcConnectionFactory,
+            DEFAULT_MAX_CACHED_STATEMENTS, DEFAULT_VALIDATE_IDLE_MILLIS, DEFAULT_MAX_AGE_MILLIS);
+  }
+
+  /**
+   * @param name the pool name, used to name the exported metrics.
+   * @param initialSize the initial number of connections.
+   * @param maxSize the maximum number of connections.
+   * @param jdbcConnectionFactory the physical connection factory.
+   * @param maxCachedStatements the maximum number of prepared statements cached per connection, 0 to disable.
+   * @param validateIdleMillis connections idle for longer than this will be validated on borrow.
+   * @param maxAgeMillis connections older than this will be closed and replaced, 0 for no limit.
+   * @throws ObjectCreationException - cannot create the initial connections.
+   */
+  public PooledDataSource(final String name, final int initialSize, final int maxSize,
+          final RecyclingSupplier.Factory<Connection> jdbcConnectionFactory, final int maxCachedStatements,
+          final long validateIdleMillis, final long maxAgeMillis) throws ObjectCreationException {
+    if (maxCachedStatements < 0 || validateIdleMillis < 0 || maxAgeMillis < 0) {
+      throw new IllegalArgumentException("Invalid pool config, maxCachedStatements = " + maxCachedStatements
+              + ", validateIdleMillis = " + validateIdleMillis + ", maxAgeMillis = " + maxAgeMillis);
+    }
+    this.name = name;
+    this.connectionFactory = jdbcConnectionFactory;
+    this.validateIdleNanos = TimeUnit.MILLISECONDS.toNanos(validateIdleMillis);
+    this.maxAgeNanos = maxAgeMillis == 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    this.borrowTime = RecorderFactory.createScalableMinMaxAvgRecorder2(name + "-borrow-time", "us",
+            METRICS_SAMPLE_TIME_MILLIS);
+    this.events = RecorderFactory.createScalableCountingRecorderSource2(name + "-events", "count",
+            METRICS_SAMPLE_TIME_MILLIS);
+    RecyclingSupplierBuilder<PhysicalConnection> builder
+            = new RecyclingSupplierBuilder<>(maxSize,
+                    new PhysicalConnectionFactory(jdbcConnectionFactory, maxCachedStatements, maxAgeNanos, events));
     builder.withInitialSize(initialSize);
-    pool = builder.build();
+    try {
+      pool = builder.build();
+    } catch (ObjectCreationException | RuntimeException ex) {
+      borrowTime.close();
+      events.close();
+      throw ex;
+    }
   }
 
   @Override
   public Connection getConnection() throws SQLException {
-    Connection raw;
-    try {
-      raw = pool.get();
-    } catch (InterruptedException | ObjectBorrowException | ObjectCreationException ex) {
-      throw new SQLException(ex);
-    } catch (TimeoutException ex) {
-      throw new SQLTimeoutException(ex);
-    }
-    return (Connection) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
-            new Class<?>[]{Connection.class}, new InvocationHandler() {
-
-      private Exception ex;
-
-      private boolean closed = false;
-
-      @Override
-      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Exception {
-        String mName = method.getName();
-        if ("close".equals(mName)) {
-          if (!closed) {
-            pool.recycle(raw, ex);
-            ex = null;
-            closed = true;
-          }
-          return null;
-        } else {
-          if (closed) {
-            throw new IllegalStateException("not aowner of this connection,"
-                    + " it has been returned already to " + pool);
-          }
-          try {
-            return method.invoke(raw, args);
-          } catch (IllegalAccessException | InvocationTargetException | RuntimeException e) {
-            ex = e;
-            throw e;
-          }
+    long startNanos = TimeSource.nanoTime();
+    PhysicalConnection physical;
+    while (true) {
+      try {
+        physical = pool.get();
+      } catch (InterruptedException | ObjectBorrowException | ObjectCreationException ex) {
+        throw new SQLException(ex);
+      } catch (TimeoutException ex) {
+        throw new SQLTimeoutException(ex);
+      }
+      long nanoTime = TimeSource.nanoTime();
+      long createdNanos = physical.getCreatedNanos();
+      long lastUsedNanos = physical.getLastUsedNanos();
+      if (nanoTime - createdNanos >= maxAgeNanos) {
+        events.getRecorder("retired").record(1);
+        physical.invalidate();
+        pool.recycle(physical, new SQLRecoverableException("Connection max age exceeded " + physical));
+      } else if (nanoTime - lastUsedNanos >= validateIdleNanos && !isValid(physical)) {
+        events.getRecorder("validation-failure").record(1);
+        physical.invalidate();
+        SQLRecoverableException ex = new SQLRecoverableException("Idle connection validation failed " + physical);
+        pool.recycle(physical, ex);
+        if (lastUsedNanos == createdNanos) {
+          // never used connection, retrying would most likely end up creating connections in a loop.
+          throw ex;
         }
+      } else {
+        break;
       }
-    });
+    }
+    borrowTime.record(TimeUnit.NANOSECONDS.toMicros(TimeSource.nanoTime() - startNanos));
+    return new PooledConnection(physical, pool);
+  }
+
+  private boolean isValid(final PhysicalConnection physical) {
+    events.getRecorder("validation").record(1);
+    try {
+      return connectionFactory.validate(physical.getConnection(), null);
+    } catch (Exception ex) {
+      LOG.debug("Connection validation failed for {}", physical, ex);
+      return false;
+    }
   }
 
   @Override
@@ -161,14 +244,81 @@ public final class PooledDataSource implements DataSource, AutoCloseable {
     throw new SQLFeatureNotSupportedException();
   }
 
+  /**
+   * @return the pool name, used to name the exported metrics.
+   */
+  public String getName() {
+    return name;
+  }
+
   @Override
   public String toString() {
-    return "PooledDataSource{" + "pool=" + pool + '}';
+    return "PooledDataSource{" + "name=" + name + ", pool=" + pool + '}';
   }
 
   @Override
   public void close() throws ObjectDisposeException, InterruptedException {
-    pool.dispose();
+    try {
+      pool.dispose();
+    } finally {
+      borrowTime.close();
+      events.close();
+    }
+  }
+
+  private static final class PhysicalConnectionFactory implements RecyclingSupplier.Factory<PhysicalConnection> {
+
+    private final RecyclingSupplier.Factory<Connection> factory;
+
+    private final int maxCachedStatements;
+
+    private final long maxAgeNanos;
+
+    private final CloseableMeasurementRecorderSource events;
+
+    PhysicalConnectionFactory(final RecyclingSupplier.Factory<Connection> factory, final int maxCachedStatements,
+            final long maxAgeNanos, final CloseableMeasurementRecorderSource events) {
+      this.factory = factory;
+      this.maxCachedStatements = maxCachedStatements;
+      this.maxAgeNanos = maxAgeNanos;
+      this.events = events;
+    }
+
+    @Override
+    public PhysicalConnection create() throws ObjectCreationException {
+      return new PhysicalConnection(factory.create(), maxCachedStatements, events);
+    }
+
+    @Override
+    public void dispose(final PhysicalConnection object) throws ObjectDisposeException {
+      SQLException ex = object.closeStatements();
+      try {
+        factory.dispose(object.getConnection());
+      } catch (ObjectDisposeException | RuntimeException dex) {
+        if (ex != null) {
+          dex.addSuppressed(ex);
+        }
+        throw dex;
+      }
+      if (ex != null) {
+        throw new ObjectDisposeException(ex);
+      }
+    }
+
+    @Override
+    public boolean validate(final PhysicalConnection object, final Exception e) throws Exception {
+      if (object.isInvalidated() || TimeSource.nanoTime() - object.getCreatedNanos() >= maxAgeNanos) {
+        return false;
+      }
+      return factory.validate(object.getConnection(), e);
+    }
+
+    @Override
+    public String toString() {
+      return "PhysicalConnectionFactory{" + "factory=" + factory + ", maxCachedStatements=" + maxCachedStatements
+              + '}';
+    }
+
   }
 
 }
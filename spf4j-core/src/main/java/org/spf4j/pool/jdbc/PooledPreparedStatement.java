@@ -0,0 +1,1366 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.pool.jdbc;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import javax.annotation.Nullable;
+import org.spf4j.base.SuppressForbiden;
+
+/**
+ * A prepared statement handed out by a {@link PooledConnection}.
+ *
+ * Statements prepared with {@link java.sql.Connection#prepareStatement(java.lang.String)} are cacheable:
+ * on close their state (parameters, batch, open result set, timeouts and limits) is reset and the underlying
+ * statement is returned to the physical connection statement cache instead of being closed.
+ * Statements that fail, or that have state that cannot be reset (cursor name, fetch direction...) are closed.
+ * {@link PooledCallableStatement} extends this class with the callable statement methods.
+ *
+ * @author zoly
+ */
+@SuppressFBWarnings({"SQL_INJECTION_JDBC", "FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY",
+  "AI_ANNOTATION_ISSUES_NEEDS_NULLABLE"})
+class PooledPreparedStatement implements PreparedStatement {
+
+  private final PooledConnection connection;
+
+  private final PreparedStatement raw;
+
+  /**
+   * the sql this statement is cached by, null if not cacheable.
+   */
+  @Nullable
+  private final String cacheKey;
+
+  private boolean reusable;
+
+  private boolean closed;
+
+  private boolean batched;
+
+  @Nullable
+  private ResultSet resultSet;
+
+  private int origQueryTimeout = -1;
+
+  private int origMaxRows = -1;
+
+  private int origFetchSize = -1;
+
+  private int origMaxFieldSize = -1;
+
+  PooledPreparedStatement(final PooledConnection connection, final PreparedStatement raw,
+          @Nullable final String cacheKey) {
+    this.connection = connection;
+    this.raw = raw;
+    this.cacheKey = cacheKey;
+    this.reusable = cacheKey != null;
+    this.closed = false;
+    this.batched = false;
+    this.resultSet = null;
+  }
+
+  final void checkOpen() throws SQLException {
+    if (closed) {
+      throw new SQLException("Statement is closed " + this);
+    }
+  }
+
+  /**
+   * the statement will not be reused, and the exception is forwarded to the connection,
+   * so that the physical connection is validated when returned to the pool.
+   */
+  final void failed(final Exception e) {
+    reusable = false;
+    connection.failed(e);
+  }
+
+  private void notReusable() throws SQLException {
+    checkOpen();
+    reusable = false;
+  }
+
+  @Nullable
+  private ResultSet track(@Nullable final ResultSet rs) {
+    resultSet = rs;
+    return rs;
+  }
+
+  @Override
+  public void close() throws SQLException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    connection.statementClosed(this);
+    if (reusable) {
+      try {
+        reset();
+      } catch (SQLException | RuntimeException ex) {
+        reusable = false;
+      }
+    }
+    // the raw statement can be closed via the result set: rs.getStatement().close()
+    if (reusable && !raw.isClosed()) {
+      connection.getPhysical().putStatement(cacheKey, raw);
+    } else {
+      raw.close();
+    }
+  }
+
+  private void reset() throws SQLException {
+    ResultSet rs = resultSet;
+    if (rs != null) {
+      resultSet = null;
+      rs.close();
+    }
+    if (batched) {
+      raw.clearBatch();
+    }
+    raw.clearParameters();
+    raw.clearWarnings();
+    if (origQueryTimeout >= 0) {
+      raw.setQueryTimeout(origQueryTimeout);
+    }
+    if (origMaxRows >= 0) {
+      raw.setMaxRows(origMaxRows);
+    }
+    if (origFetchSize >= 0) {
+      raw.setFetchSize(origFetchSize);
+    }
+    if (origMaxFieldSize >= 0) {
+      raw.setMaxFieldSize(origMaxFieldSize);
+    }
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    checkOpen();
+    return connection;
+  }
+
+  @Override
+  public ResultSet executeQuery() throws SQLException {
+    checkOpen();
+    try {
+      return track(raw.executeQuery());
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public ResultSet executeQuery(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return track(raw.executeQuery(sql));
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public ResultSet getResultSet() throws SQLException {
+    checkOpen();
+    try {
+      return track(raw.getResultSet());
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void addBatch() throws SQLException {
+    checkOpen();
+    batched = true;
+    try {
+      raw.addBatch();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void addBatch(final String sql) throws SQLException {
+    checkOpen();
+    batched = true;
+    try {
+      raw.addBatch(sql);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setQueryTimeout(final int seconds) throws SQLException {
+    checkOpen();
+    try {
+      if (origQueryTimeout < 0) {
+        origQueryTimeout = raw.getQueryTimeout();
+      }
+      raw.setQueryTimeout(seconds);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setMaxRows(final int max) throws SQLException {
+    checkOpen();
+    try {
+      if (origMaxRows < 0) {
+        origMaxRows = raw.getMaxRows();
+      }
+      raw.setMaxRows(max);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setFetchSize(final int rows) throws SQLException {
+    checkOpen();
+    try {
+      if (origFetchSize < 0) {
+        origFetchSize = raw.getFetchSize();
+      }
+      raw.setFetchSize(rows);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setMaxFieldSize(final int max) throws SQLException {
+    checkOpen();
+    try {
+      if (origMaxFieldSize < 0) {
+        origMaxFieldSize = raw.getMaxFieldSize();
+      }
+      raw.setMaxFieldSize(max);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setLargeMaxRows(final long max) throws SQLException {
+    notReusable();
+    raw.setLargeMaxRows(max);
+  }
+
+  @Override
+  public void setCursorName(final String name) throws SQLException {
+    notReusable();
+    raw.setCursorName(name);
+  }
+
+  @Override
+  public void setEscapeProcessing(final boolean enable) throws SQLException {
+    notReusable();
+    raw.setEscapeProcessing(enable);
+  }
+
+  @Override
+  public void setFetchDirection(final int direction) throws SQLException {
+    notReusable();
+    raw.setFetchDirection(direction);
+  }
+
+  @Override
+  public void setPoolable(final boolean poolable) throws SQLException {
+    notReusable();
+    raw.setPoolable(poolable);
+  }
+
+  @Override
+  public void closeOnCompletion() throws SQLException {
+    notReusable();
+    raw.closeOnCompletion();
+  }
+
+  @Override
+  public <T> T unwrap(final Class<T> iface) throws SQLException {
+    if (iface.isInstance(raw)) {
+      return iface.cast(raw);
+    }
+    return raw.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+    return iface.isInstance(raw) || raw.isWrapperFor(iface);
+  }
+
+  @Override
+  public int executeUpdate() throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeUpdate();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNull(final int parameterIndex, final int sqlType) throws SQLException {
+    checkOpen();
+    try {
+      raw.setNull(parameterIndex, sqlType);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBoolean(final int parameterIndex, final boolean x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setBoolean(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setByte(final int parameterIndex, final byte x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setByte(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setShort(final int parameterIndex, final short x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setShort(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setInt(final int parameterIndex, final int x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setInt(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setLong(final int parameterIndex, final long x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setLong(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setFloat(final int parameterIndex, final float x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setFloat(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setDouble(final int parameterIndex, final double x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setDouble(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBigDecimal(final int parameterIndex, final BigDecimal x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setBigDecimal(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setString(final int parameterIndex, final String x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setString(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBytes(final int parameterIndex, final byte[] x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setBytes(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setDate(final int parameterIndex, final Date x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setDate(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTime(final int parameterIndex, final Time x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setTime(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTimestamp(final int parameterIndex, final Timestamp x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setTimestamp(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setAsciiStream(final int parameterIndex, final InputStream x, final int length)
+          throws SQLException {
+    checkOpen();
+    try {
+      raw.setAsciiStream(parameterIndex, x, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  @Deprecated
+  @SuppressForbiden // delegation only.
+  public void setUnicodeStream(final int parameterIndex, final InputStream x, final int length)
+          throws SQLException {
+    checkOpen();
+    try {
+      raw.setUnicodeStream(parameterIndex, x, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBinaryStream(final int parameterIndex, final InputStream x, final int length)
+          throws SQLException {
+    checkOpen();
+    try {
+      raw.setBinaryStream(parameterIndex, x, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void clearParameters() throws SQLException {
+    checkOpen();
+    try {
+      raw.clearParameters();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setObject(final int parameterIndex, final Object x, final int targetSqlType) throws SQLException {
+    checkOpen();
+    try {
+      raw.setObject(parameterIndex, x, targetSqlType);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setObject(final int parameterIndex, final Object x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setObject(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean execute() throws SQLException {
+    checkOpen();
+    try {
+      return raw.execute();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setCharacterStream(final int parameterIndex, final Reader reader, final int length)
+          throws SQLException {
+    checkOpen();
+    try {
+      raw.setCharacterStream(parameterIndex, reader, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public ResultSetMetaData getMetaData() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getMetaData();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setDate(final int parameterIndex, final Date x, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      raw.setDate(parameterIndex, x, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTime(final int parameterIndex, final Time x, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      raw.setTime(parameterIndex, x, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTimestamp(final int parameterIndex, final Timestamp x, final Calendar cal) throws SQLException {
+    checkOpen();
+    try {
+      raw.setTimestamp(parameterIndex, x, cal);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setURL(final int parameterIndex, final URL x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setURL(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public ParameterMetaData getParameterMetaData() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getParameterMetaData();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setRowId(final int parameterIndex, final RowId x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setRowId(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNString(final int parameterIndex, final String value) throws SQLException {
+    checkOpen();
+    try {
+      raw.setNString(parameterIndex, value);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNCharacterStream(final int parameterIndex, final Reader value, final long length) throws SQLException {
+    checkOpen();
+    try {
+      raw.setNCharacterStream(parameterIndex, value, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNClob(final int parameterIndex, final NClob value) throws SQLException {
+    checkOpen();
+    try {
+      raw.setNClob(parameterIndex, value);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
+    checkOpen();
+    try {
+      raw.setClob(parameterIndex, reader, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBlob(final int parameterIndex, final InputStream inputStream, final long length) throws SQLException {
+    checkOpen();
+    try {
+      raw.setBlob(parameterIndex, inputStream, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
+    checkOpen();
+    try {
+      raw.setNClob(parameterIndex, reader, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setSQLXML(final int parameterIndex, final SQLXML xmlObject) throws SQLException {
+    checkOpen();
+    try {
+      raw.setSQLXML(parameterIndex, xmlObject);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setObject(final int parameterIndex, final Object x, final int targetSqlType, final int scaleOrLength)
+          throws SQLException {
+    checkOpen();
+    try {
+      raw.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setAsciiStream(final int parameterIndex, final InputStream x, final long length)
+          throws SQLException {
+    checkOpen();
+    try {
+      raw.setAsciiStream(parameterIndex, x, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBinaryStream(final int parameterIndex, final InputStream x, final long length)
+          throws SQLException {
+    checkOpen();
+    try {
+      raw.setBinaryStream(parameterIndex, x, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setCharacterStream(final int parameterIndex, final Reader reader, final long length)
+          throws SQLException {
+    checkOpen();
+    try {
+      raw.setCharacterStream(parameterIndex, reader, length);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setAsciiStream(final int parameterIndex, final InputStream x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setAsciiStream(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBinaryStream(final int parameterIndex, final InputStream x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setBinaryStream(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setCharacterStream(final int parameterIndex, final Reader reader) throws SQLException {
+    checkOpen();
+    try {
+      raw.setCharacterStream(parameterIndex, reader);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNCharacterStream(final int parameterIndex, final Reader value) throws SQLException {
+    checkOpen();
+    try {
+      raw.setNCharacterStream(parameterIndex, value);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setClob(final int parameterIndex, final Reader reader) throws SQLException {
+    checkOpen();
+    try {
+      raw.setClob(parameterIndex, reader);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBlob(final int parameterIndex, final InputStream inputStream) throws SQLException {
+    checkOpen();
+    try {
+      raw.setBlob(parameterIndex, inputStream);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNClob(final int parameterIndex, final Reader reader) throws SQLException {
+    checkOpen();
+    try {
+      raw.setNClob(parameterIndex, reader);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setObject(final int parameterIndex, final Object x, final SQLType targetSqlType,
+          final int scaleOrLength) throws SQLException {
+    checkOpen();
+    try {
+      raw.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setObject(final int parameterIndex, final Object x, final SQLType targetSqlType) throws SQLException {
+    checkOpen();
+    try {
+      raw.setObject(parameterIndex, x, targetSqlType);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long executeLargeUpdate() throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeUpdate();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int executeUpdate(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeUpdate(sql);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getMaxFieldSize() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getMaxFieldSize();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getMaxRows() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getMaxRows();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getQueryTimeout() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getQueryTimeout();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void cancel() throws SQLException {
+    checkOpen();
+    try {
+      raw.cancel();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getWarnings();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    checkOpen();
+    try {
+      raw.clearWarnings();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean execute(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return raw.execute(sql);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getUpdateCount() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getUpdateCount();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean getMoreResults() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getMoreResults();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getFetchDirection() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getFetchDirection();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getFetchSize() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getFetchSize();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getResultSetConcurrency() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getResultSetConcurrency();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getResultSetType() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getResultSetType();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void clearBatch() throws SQLException {
+    checkOpen();
+    try {
+      raw.clearBatch();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int[] executeBatch() throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeBatch();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean getMoreResults(final int current) throws SQLException {
+    checkOpen();
+    try {
+      return raw.getMoreResults(current);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public ResultSet getGeneratedKeys() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getGeneratedKeys();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeUpdate(sql, autoGeneratedKeys);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int executeUpdate(final String sql, final String[] columnNames) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeUpdate(sql, columnNames);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException {
+    checkOpen();
+    try {
+      return raw.execute(sql, autoGeneratedKeys);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean execute(final String sql, final String[] columnNames) throws SQLException {
+    checkOpen();
+    try {
+      return raw.execute(sql, columnNames);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getResultSetHoldability() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getResultSetHoldability();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean isPoolable() throws SQLException {
+    checkOpen();
+    try {
+      return raw.isPoolable();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean isCloseOnCompletion() throws SQLException {
+    checkOpen();
+    try {
+      return raw.isCloseOnCompletion();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long getLargeUpdateCount() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getLargeUpdateCount();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long getLargeMaxRows() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getLargeMaxRows();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long[] executeLargeBatch() throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeBatch();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long executeLargeUpdate(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeUpdate(sql);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long executeLargeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeUpdate(sql, autoGeneratedKeys);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long executeLargeUpdate(final String sql, final String[] columnNames) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeUpdate(sql, columnNames);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setRef(final int parameterIndex, final Ref x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setRef(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setBlob(final int parameterIndex, final Blob x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setBlob(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setClob(final int parameterIndex, final Clob x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setClob(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setArray(final int parameterIndex, final Array x) throws SQLException {
+    checkOpen();
+    try {
+      raw.setArray(parameterIndex, x);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setNull(final int parameterIndex, final int sqlType, final String typeName) throws SQLException {
+    checkOpen();
+    try {
+      raw.setNull(parameterIndex, sqlType, typeName);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeUpdate(sql, columnIndexes);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean execute(final String sql, final int[] columnIndexes) throws SQLException {
+    checkOpen();
+    try {
+      return raw.execute(sql, columnIndexes);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long executeLargeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeUpdate(sql, columnIndexes);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PooledPreparedStatement{" + "raw=" + raw + ", cached=" + reusable + ", closed=" + closed + '}';
+  }
+
+}
@@ -0,0 +1,629 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.pool.jdbc;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/**
+ * A statement handed out by {@link PooledConnection#createStatement()} and its overloads.
+ * Statements are not cached, close closes the underlying statement. Statements left open are closed
+ * when the pooled connection is closed.
+ *
+ * @author zoly
+ */
+@SuppressFBWarnings({"SQL_INJECTION_JDBC", "FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY"})
+final class PooledStatement implements Statement {
+
+  private final PooledConnection connection;
+
+  private final Statement raw;
+
+  private boolean closed;
+
+  PooledStatement(final PooledConnection connection, final Statement raw) {
+    this.connection = connection;
+    this.raw = raw;
+    this.closed = false;
+  }
+
+  private void checkOpen() throws SQLException {
+    if (closed) {
+      throw new SQLException("Statement is closed " + this);
+    }
+  }
+
+  private void failed(final Exception e) {
+    connection.failed(e);
+  }
+
+  @Override
+  public void close() throws SQLException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    connection.statementClosed(this);
+    raw.close();
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    checkOpen();
+    return connection;
+  }
+
+  @Override
+  public <T> T unwrap(final Class<T> iface) throws SQLException {
+    if (iface.isInstance(raw)) {
+      return iface.cast(raw);
+    }
+    return raw.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+    return iface.isInstance(raw) || raw.isWrapperFor(iface);
+  }
+
+  @Override
+  public ResultSet executeQuery(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeQuery(sql);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int executeUpdate(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeUpdate(sql);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getMaxFieldSize() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getMaxFieldSize();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setMaxFieldSize(final int max) throws SQLException {
+    checkOpen();
+    try {
+      raw.setMaxFieldSize(max);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getMaxRows() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getMaxRows();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setMaxRows(final int max) throws SQLException {
+    checkOpen();
+    try {
+      raw.setMaxRows(max);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setEscapeProcessing(final boolean enable) throws SQLException {
+    checkOpen();
+    try {
+      raw.setEscapeProcessing(enable);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getQueryTimeout() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getQueryTimeout();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setQueryTimeout(final int seconds) throws SQLException {
+    checkOpen();
+    try {
+      raw.setQueryTimeout(seconds);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void cancel() throws SQLException {
+    checkOpen();
+    try {
+      raw.cancel();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getWarnings();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    checkOpen();
+    try {
+      raw.clearWarnings();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setCursorName(final String name) throws SQLException {
+    checkOpen();
+    try {
+      raw.setCursorName(name);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean execute(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return raw.execute(sql);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public ResultSet getResultSet() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getResultSet();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getUpdateCount() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getUpdateCount();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean getMoreResults() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getMoreResults();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setFetchDirection(final int direction) throws SQLException {
+    checkOpen();
+    try {
+      raw.setFetchDirection(direction);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getFetchDirection() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getFetchDirection();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setFetchSize(final int rows) throws SQLException {
+    checkOpen();
+    try {
+      raw.setFetchSize(rows);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getFetchSize() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getFetchSize();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getResultSetConcurrency() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getResultSetConcurrency();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getResultSetType() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getResultSetType();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void addBatch(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      raw.addBatch(sql);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void clearBatch() throws SQLException {
+    checkOpen();
+    try {
+      raw.clearBatch();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int[] executeBatch() throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeBatch();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean getMoreResults(final int current) throws SQLException {
+    checkOpen();
+    try {
+      return raw.getMoreResults(current);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public ResultSet getGeneratedKeys() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getGeneratedKeys();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeUpdate(sql, autoGeneratedKeys);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeUpdate(sql, columnIndexes);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int executeUpdate(final String sql, final String[] columnNames) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeUpdate(sql, columnNames);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException {
+    checkOpen();
+    try {
+      return raw.execute(sql, autoGeneratedKeys);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean execute(final String sql, final int[] columnIndexes) throws SQLException {
+    checkOpen();
+    try {
+      return raw.execute(sql, columnIndexes);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean execute(final String sql, final String[] columnNames) throws SQLException {
+    checkOpen();
+    try {
+      return raw.execute(sql, columnNames);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public int getResultSetHoldability() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getResultSetHoldability();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setPoolable(final boolean poolable) throws SQLException {
+    checkOpen();
+    try {
+      raw.setPoolable(poolable);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean isPoolable() throws SQLException {
+    checkOpen();
+    try {
+      return raw.isPoolable();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void closeOnCompletion() throws SQLException {
+    checkOpen();
+    try {
+      raw.closeOnCompletion();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean isCloseOnCompletion() throws SQLException {
+    checkOpen();
+    try {
+      return raw.isCloseOnCompletion();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long getLargeUpdateCount() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getLargeUpdateCount();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void setLargeMaxRows(final long max) throws SQLException {
+    checkOpen();
+    try {
+      raw.setLargeMaxRows(max);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long getLargeMaxRows() throws SQLException {
+    checkOpen();
+    try {
+      return raw.getLargeMaxRows();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long[] executeLargeBatch() throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeBatch();
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long executeLargeUpdate(final String sql) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeUpdate(sql);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long executeLargeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeUpdate(sql, autoGeneratedKeys);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long executeLargeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeUpdate(sql, columnIndexes);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public long executeLargeUpdate(final String sql, final String[] columnNames) throws SQLException {
+    checkOpen();
+    try {
+      return raw.executeLargeUpdate(sql, columnNames);
+    } catch (SQLException | RuntimeException e) {
+      failed(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PooledStatement{" + "raw=" + raw + ", closed=" + closed + '}';
+  }
+
+}
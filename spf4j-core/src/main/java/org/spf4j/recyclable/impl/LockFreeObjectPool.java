@@ -0,0 +1,561 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.recyclable.impl;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.base.Throwables;
+import org.spf4j.base.TimeSource;
+import org.spf4j.recyclable.ObjectCreationException;
+import org.spf4j.recyclable.ObjectDisposeException;
+import org.spf4j.recyclable.RecyclingSupplier;
+
+/**
+ * Lock free object pool, inspired by HikariCP's ConcurrentBag.
+ * <ul>
+ * <li>every thread remembers the last object it returned, and will try to reuse it first.</li>
+ * <li>the pooled objects are kept in a copy on write list,
+ * a object is borrowed by changing the state of its entry with a CAS.</li>
+ * <li>returned objects are handed off directly to the threads waiting for one, in FIFO order.</li>
+ * <li>objects borrowed for longer than the leak detection threshold are reported. (logged once)</li>
+ * </ul>
+ *
+ * @author zoly
+ */
+// a pool instance is tipically alive for the entire life of the process
+@SuppressFBWarnings("PMB_INSTANCE_BASED_THREAD_LOCAL")
+@ParametersAreNonnullByDefault
+final class LockFreeObjectPool<T> implements RecyclingSupplier<T> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LockFreeObjectPool.class);
+
+  /**
+   * waiters will re-scan the pool at least this often.
+   */
+  private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final RecyclingSupplier.Factory<T> factory;
+
+  private final int maxSize;
+
+  private final long leakDetectionNanos;
+
+  private final CopyOnWriteArrayList<Entry<T>> entries;
+
+  /**
+   * number of objects in the pool (borrowed, available or being created).
+   */
+  private final AtomicInteger size;
+
+  private final ConcurrentLinkedQueue<Waiter<T>> waiters;
+
+  private final ThreadLocal<Slot<T>> localSlot;
+
+  /**
+   * handed off to a waiter to let it know that it can create a object.
+   */
+  private final Entry<T> capacityAvailable;
+
+  /**
+   * marks waiters that gave up waiting.
+   */
+  private final Entry<T> cancelled;
+
+  private volatile boolean closed;
+
+  /**
+   * @param initialSize the number of objects to create upfront.
+   * @param maxSize the maximum number of objects.
+   * @param factory the object factory.
+   * @param leakDetectionMillis report objects borrowed for longer than this, 0 to disable.
+   */
+  LockFreeObjectPool(final int initialSize, final int maxSize,
+          final RecyclingSupplier.Factory<T> factory, final long leakDetectionMillis)
+          throws ObjectCreationException {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("Invalid pool size: " + maxSize);
+    }
+    if (initialSize > maxSize) {
+      throw new IllegalArgumentException("Invalid initial size: " + initialSize + ", max size = " + maxSize);
+    }
+    this.factory = factory;
+    this.maxSize = maxSize;
+    this.leakDetectionNanos = TimeUnit.MILLISECONDS.toNanos(leakDetectionMillis);
+    this.entries = new CopyOnWriteArrayList<>();
+    this.size = new AtomicInteger(initialSize);
+    this.waiters = new ConcurrentLinkedQueue<>();
+    this.localSlot = ThreadLocal.withInitial(Slot::new);
+    this.capacityAvailable = new Entry<>(null, Entry.REMOVED);
+    this.cancelled = new Entry<>(null, Entry.REMOVED);
+    this.closed = false;
+    for (int i = 0; i < initialSize; i++) {
+      entries.add(new Entry<>(factory.create(), Entry.AVAILABLE));
+    }
+  }
+
+  @Override
+  @Nonnull
+  public T get() throws ObjectCreationException, InterruptedException, TimeoutException {
+    Slot<T> slot = localSlot.get();
+    Entry<T> entry = slot.returned;
+    if (entry == null || !entry.compareAndSet(Entry.AVAILABLE, Entry.IN_USE)) {
+      do {
+        if (closed) {
+          throw new IllegalStateException("Pool closed, noting available " + this);
+        }
+        entry = acquire();
+        if (entry == null) {
+          entry = createIfPossible();
+          if (entry == null) {
+            entry = await();
+          }
+        }
+      } while (entry == null);
+    }
+    if (leakDetectionNanos > 0) {
+      entry.borrowed(TimeSource.nanoTime(), Thread.currentThread());
+    }
+    slot.borrowed = entry;
+    return entry.object;
+  }
+
+  @Nullable
+  private Entry<T> acquire() {
+    for (Entry<T> entry : entries) {
+      if (entry.compareAndSet(Entry.AVAILABLE, Entry.IN_USE)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private Entry<T> createIfPossible() throws ObjectCreationException {
+    int s;
+    while ((s = size.get()) < maxSize) {
+      if (size.compareAndSet(s, s + 1)) {
+        T object;
+        try {
+          object = factory.create();
+        } catch (ObjectCreationException | RuntimeException ex) {
+          size.decrementAndGet();
+          signalCapacityAvailable();
+          throw ex;
+        }
+        Entry<T> entry = new Entry<>(object, Entry.IN_USE);
+        entries.add(entry);
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * wait for a object to be handed off.
+   * @return the borrowed object entry, or null if a object can be created or the pool needs to be re-scanned.
+   */
+  @Nullable
+  private Entry<T> await() throws InterruptedException, TimeoutException {
+    if (leakDetectionNanos > 0) {
+      detectLeaks();
+    }
+    Waiter<T> waiter = new Waiter<>(Thread.currentThread());
+    waiters.add(waiter);
+    Entry<T> entry;
+    try {
+      // objects returned or removed before we became visible as waiter, are not handed off to us.
+      entry = acquire();
+      if (entry == null && !closed && size.get() >= maxSize) {
+        long waitNanos = Math.min(MAX_WAIT_NANOS, ExecutionContexts.getTimeToDeadline(TimeUnit.NANOSECONDS));
+        long deadlineNanos = TimeSource.nanoTime() + waitNanos;
+        while (waitNanos > 0 && waiter.handed == null) {
+          LockSupport.parkNanos(this, waitNanos);
+          if (Thread.interrupted()) {
+            throw new InterruptedException("Interrupted while waiting for a object from " + this);
+          }
+          waitNanos = deadlineNanos - TimeSource.nanoTime();
+        }
+      }
+    } catch (InterruptedException | TimeoutException | RuntimeException ex) {
+      Entry<T> handed = cancel(waiter);
+      if (handed != null) {
+        passOn(handed);
+      }
+      throw ex;
+    }
+    Entry<T> handed = cancel(waiter);
+    if (handed != null) {
+      if (entry == null && handed != capacityAvailable) {
+        return handed;
+      }
+      passOn(handed);
+    }
+    return entry;
+  }
+
+  /**
+   * stop waiting.
+   * @return the entry that was handed off to the waiter, if any.
+   */
+  @Nullable
+  private Entry<T> cancel(final Waiter<T> waiter) {
+    Entry<T> handed = waiter.cancel(cancelled);
+    if (handed == null) {
+      waiters.remove(waiter);
+    }
+    return handed;
+  }
+
+  /**
+   * pass on to other waiters something that was handed off to us and we do not need.
+   */
+  private void passOn(final Entry<T> handed) {
+    if (handed == capacityAvailable) {
+      signalCapacityAvailable();
+    } else {
+      release(handed);
+    }
+  }
+
+  @Override
+  public void recycle(final T object, @Nullable final Exception e) {
+    Slot<T> slot = localSlot.get();
+    Entry<T> entry = slot.borrowed;
+    if (entry != null && entry.object == object && entry.state == Entry.IN_USE) {
+      slot.borrowed = null;
+    } else {
+      entry = find(object);
+      if (entry == null) {
+        throw new IllegalStateException("Object " + object + " has not been borrowed from " + this);
+      }
+    }
+    entry.returned();
+    if (e != null && !isValid(object, e)) {
+      remove(entry);
+      return;
+    }
+    if (closed) {
+      remove(entry);
+      return;
+    }
+    if (release(entry)) {
+      slot.returned = entry;
+    }
+  }
+
+  @Override
+  public void recycle(final T object) {
+    recycle(object, null);
+  }
+
+  @Nullable
+  private Entry<T> find(final T object) {
+    for (Entry<T> entry : entries) {
+      if (entry.object == object && entry.state == Entry.IN_USE) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * hand off a entry we own to the longest waiting thread, or make it available if nobody is waiting.
+   * @return true if the entry was made available, false if it was handed off.
+   */
+  private boolean release(final Entry<T> entry) {
+    entry.state = Entry.IN_USE;
+    do {
+      Waiter<T> waiter;
+      while ((waiter = waiters.poll()) != null) {
+        if (waiter.handoff(entry)) {
+          return false;
+        }
+      }
+      entry.state = Entry.AVAILABLE;
+      // a thread that became a waiter after we polled will find the entry when re-scanning,
+      // unless we take it back to hand it off.
+    } while (!waiters.isEmpty() && entry.compareAndSet(Entry.AVAILABLE, Entry.IN_USE));
+    return true;
+  }
+
+  /**
+   * let a waiting thread know that it can create a object.
+   */
+  private void signalCapacityAvailable() {
+    while (size.get() < maxSize) {
+      Waiter<T> waiter = waiters.poll();
+      if (waiter == null || waiter.handoff(capacityAvailable)) {
+        return;
+      }
+    }
+  }
+
+  private boolean isValid(final T object, final Exception e) {
+    boolean isValid;
+    Exception vex = null;
+    try {
+      isValid = factory.validate(object, e);
+    } catch (Exception ex) {
+      isValid = false;
+      vex = ex;
+    }
+    if (!isValid) {
+      LOG.warn("Validation of {} failed, detail {}", object, vex, e);
+    }
+    return isValid;
+  }
+
+  /**
+   * remove a entry we own from the pool, and dispose its object.
+   */
+  private void remove(final Entry<T> entry) {
+    ObjectDisposeException ex = removeAndDispose(entry, null);
+    if (ex != null) {
+      LOG.warn("Failed to dispose {}", entry.object, ex);
+    }
+  }
+
+  @Nullable
+  private ObjectDisposeException removeAndDispose(final Entry<T> entry,
+          @Nullable final ObjectDisposeException exception) {
+    entry.state = Entry.REMOVED;
+    entries.remove(entry);
+    size.decrementAndGet();
+    if (!closed) {
+      signalCapacityAvailable();
+    }
+    try {
+      factory.dispose(entry.object);
+      return exception;
+    } catch (ObjectDisposeException ex) {
+      return exception == null ? ex : Throwables.suppress(ex, exception);
+    } catch (RuntimeException ex) {
+      ObjectDisposeException dex = new ObjectDisposeException(ex);
+      return exception == null ? dex : Throwables.suppress(dex, exception);
+    }
+  }
+
+  /**
+   * validate the objects that are not borrowed, and report leaked objects.
+   */
+  void maintain() {
+    for (Entry<T> entry : entries) {
+      if (entry.compareAndSet(Entry.AVAILABLE, Entry.RESERVED)) {
+        boolean isValid;
+        try {
+          isValid = factory.validate(entry.object, null);
+        } catch (Exception ex) {
+          LOG.warn("Validation of {} failed", entry.object, ex);
+          isValid = false;
+        }
+        if (isValid && !closed) {
+          release(entry);
+        } else {
+          remove(entry);
+        }
+      }
+    }
+    if (leakDetectionNanos > 0) {
+      detectLeaks();
+    }
+  }
+
+  void detectLeaks() {
+    long now = TimeSource.nanoTime();
+    for (Entry<T> entry : entries) {
+      Thread borrower = entry.borrower;
+      if (borrower == null || entry.leakReported) {
+        continue;
+      }
+      long borrowedNanos = now - entry.borrowNanos;
+      if (borrowedNanos > leakDetectionNanos && entry.state == Entry.IN_USE) {
+        entry.leakReported = true;
+        LOG.warn("Possible leak, {} borrowed by {} for {} ms", entry.object, borrower,
+                TimeUnit.NANOSECONDS.toMillis(borrowedNanos));
+      }
+    }
+  }
+
+  @Override
+  @SuppressFBWarnings("MDM_THREAD_YIELD")
+  public boolean tryDispose(final long timeoutMillis) throws ObjectDisposeException, InterruptedException {
+    closed = true;
+    Waiter<T> waiter;
+    while ((waiter = waiters.poll()) != null) {
+      waiter.handoff(capacityAvailable);
+    }
+    long deadlineNanos = TimeSource.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    ObjectDisposeException exception = null;
+    while (true) {
+      for (Entry<T> entry : entries) {
+        if (entry.compareAndSet(Entry.AVAILABLE, Entry.REMOVED)) {
+          exception = removeAndDispose(entry, exception);
+        }
+      }
+      if (entries.isEmpty()) {
+        break;
+      }
+      // borrowed objects are disposed when returned.
+      if (deadlineNanos - TimeSource.nanoTime() <= 0) {
+        if (exception != null) {
+          throw exception;
+        }
+        return false;
+      }
+      Thread.sleep(1);
+    }
+    if (exception != null) {
+      throw exception;
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "LockFreeObjectPool{" + "maxSize=" + maxSize + ", size=" + size + ", closed=" + closed
+            + ", factory=" + factory + '}';
+  }
+
+  private static final class Slot<T> {
+    /** the last object returned by this thread */
+    @Nullable
+    private Entry<T> returned;
+    /** the last object borrowed by this thread */
+    @Nullable
+    private Entry<T> borrowed;
+  }
+
+  private static final class Waiter<T> {
+
+    private static final AtomicReferenceFieldUpdater<Waiter, Entry> HANDED =
+            AtomicReferenceFieldUpdater.newUpdater(Waiter.class, Entry.class, "handed");
+
+    private final Thread thread;
+
+    @Nullable
+    private volatile Entry<T> handed;
+
+    Waiter(final Thread thread) {
+      this.thread = thread;
+    }
+
+    /**
+     * transfer the ownership of a entry to this waiter.
+     * @return false if this waiter does not wait anymore.
+     */
+    boolean handoff(final Entry<T> entry) {
+      if (HANDED.compareAndSet(this, null, entry)) {
+        LockSupport.unpark(thread);
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * @return the entry that was handed off to this waiter before being cancelled, null if none.
+     */
+    @Nullable
+    Entry<T> cancel(final Entry<T> cancelled) {
+      if (HANDED.compareAndSet(this, null, cancelled)) {
+        return null;
+      }
+      return handed;
+    }
+  }
+
+  private static final class Entry<T> {
+
+    static final int REMOVED = -1;
+    static final int AVAILABLE = 0;
+    static final int IN_USE = 1;
+    /** being validated */
+    static final int RESERVED = 2;
+
+    private static final AtomicIntegerFieldUpdater<Entry> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+    private final T object;
+
+    private volatile int state;
+
+    private volatile long borrowNanos;
+
+    @Nullable
+    private volatile Thread borrower;
+
+    private volatile boolean leakReported;
+
+    Entry(final T object, final int state) {
+      this.object = object;
+      this.state = state;
+    }
+
+    boolean compareAndSet(final int expected, final int newState) {
+      return STATE.compareAndSet(this, expected, newState);
+    }
+
+    void borrowed(final long nanoTime, final Thread thread) {
+      this.borrowNanos = nanoTime;
+      this.borrower = thread;
+      this.leakReported = false;
+    }
+
+    void returned() {
+      if (borrower != null) {
+        borrower = null;
+        if (leakReported) {
+          LOG.info("Leak report false positive, {} has been returned after {} ms", object,
+                  TimeUnit.NANOSECONDS.toMillis(TimeSource.nanoTime() - borrowNanos));
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Entry{" + "object=" + object + ", state=" + state + '}';
+    }
+  }
+
+}
@@ -56,6 +56,8 @@ public final class RecyclingSupplierBuilder<T> {
     private Handler<T, ? extends Exception> returnHook;
     private int initialSize;
     private boolean collectBorrowed;
+    private boolean lockFree;
+    private long leakDetectionMillis;
 
     public RecyclingSupplierBuilder(final int maxSize, @Nonnull final RecyclingSupplier.Factory<T> factory) {
         this.fair = true;
@@ -69,6 +71,33 @@ public final class RecyclingSupplierBuilder<T> {
         return this;
     }
 
+    /**
+     * Build a lock free pool (see {@link LockFreeObjectPool}), instead of the default lock based pool.
+     * Lock free pools scale better with the number of threads competing for objects,
+     * but objects cannot be reclaimed from borrowers that do not return them.
+     * Lock free pools are always fair, returned objects are handed off to waiting threads in FIFO order,
+     * building an {@link #unfair()} lock free pool, or one with maintenance that collects borrowed objects,
+     * will fail.
+     */
+    public RecyclingSupplierBuilder<T> lockFree() {
+        this.lockFree = true;
+        return this;
+    }
+
+    /**
+     * Report objects that have not been returned to the pool for longer than the provided threshold.
+     * Only supported by lock free pools, the check is done by the pool maintenance and by threads
+     * that wait for a object.
+     * @param pleakDetectionMillis the threshold, 0 to disable leak detection.
+     */
+    public RecyclingSupplierBuilder<T> withLeakDetection(final long pleakDetectionMillis) {
+        if (pleakDetectionMillis < 0) {
+            throw new IllegalArgumentException("Invalid leak detection threshold " + pleakDetectionMillis);
+        }
+        this.leakDetectionMillis = pleakDetectionMillis;
+        return this;
+    }
+
     public RecyclingSupplierBuilder<T> withInitialSize(final int pinitialSize) {
         this.initialSize = pinitialSize;
         return this;
@@ -94,14 +123,15 @@ public final class RecyclingSupplierBuilder<T> {
     }
 
     public RecyclingSupplier<T> build() throws ObjectCreationException {
+        if (lockFree) {
+            return buildLockFree();
+        }
+        if (leakDetectionMillis > 0) {
+            throw new IllegalStateException("Leak detection is supported only by lock free pools " + this);
+        }
         final ScalableObjectPool<T> underlyingPool =
                 new ScalableObjectPool<>(initialSize, maxSize, factory, fair);
-        final RecyclingSupplier<T> pool;
-        if (borrowHook != null || returnHook != null) {
-            pool = new ObjectPoolWrapper<>(underlyingPool, borrowHook, returnHook);
-        } else {
-            pool = underlyingPool;
-        }
+        final RecyclingSupplier<T> pool = withHooks(underlyingPool);
         if (maintenanceExecutor != null) {
             maintenanceExecutor.scheduleWithFixedDelay(new MaintenanceRunner<>(underlyingPool, collectBorrowed),
                     maintenanceIntervalMillis, maintenanceIntervalMillis, TimeUnit.MILLISECONDS);
@@ -109,6 +139,32 @@ public final class RecyclingSupplierBuilder<T> {
         return pool;
     }
 
+    private RecyclingSupplier<T> buildLockFree() throws ObjectCreationException {
+        if (!fair) {
+            throw new IllegalStateException("Lock free pools are always fair " + this);
+        }
+        if (collectBorrowed) {
+            throw new IllegalStateException("Collecting borrowed objects is not supported by lock free pools "
+                    + this);
+        }
+        final LockFreeObjectPool<T> underlyingPool =
+                new LockFreeObjectPool<>(initialSize, maxSize, factory, leakDetectionMillis);
+        final RecyclingSupplier<T> pool = withHooks(underlyingPool);
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.scheduleWithFixedDelay(new LockFreeMaintenanceRunner<>(underlyingPool),
+                    maintenanceIntervalMillis, maintenanceIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return pool;
+    }
+
+    private RecyclingSupplier<T> withHooks(final RecyclingSupplier<T> underlyingPool) {
+        if (borrowHook != null || returnHook != null) {
+            return new ObjectPoolWrapper<>(underlyingPool, borrowHook, returnHook);
+        } else {
+            return underlyingPool;
+        }
+    }
+
     private static final class MaintenanceRunner<T> extends AbstractRunnable {
 
         private final ScalableObjectPool<T> underlyingPool;
@@ -136,12 +192,28 @@ public final class RecyclingSupplierBuilder<T> {
         }
     }
 
+    private static final class LockFreeMaintenanceRunner<T> extends AbstractRunnable {
+
+        private final LockFreeObjectPool<T> underlyingPool;
+
+        LockFreeMaintenanceRunner(final LockFreeObjectPool<T> underlyingPool) {
+            super(true);
+            this.underlyingPool = underlyingPool;
+        }
+
+        @Override
+        public void doRun() {
+            underlyingPool.maintain();
+        }
+    }
+
     @Override
     public String toString() {
         return "RecyclingSupplierBuilder{" + "maxSize=" + maxSize + ", factory=" + factory + ", fair="
                 + fair + ", maintenanceExecutor=" + maintenanceExecutor + ", maintenanceIntervalMillis="
                 + maintenanceIntervalMillis + ", borrowHook=" + borrowHook + ", returnHook=" + returnHook
-                + ", initialSize=" + initialSize + ", collectBorrowed=" + collectBorrowed + '}';
+                + ", initialSize=" + initialSize + ", collectBorrowed=" + collectBorrowed
+                + ", lockFree=" + lockFree + ", leakDetectionMillis=" + leakDetectionMillis + '}';
     }
 
 
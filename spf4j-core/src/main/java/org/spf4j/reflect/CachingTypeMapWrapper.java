@@ -74,9 +74,14 @@ public final class CachingTypeMapWrapper<H> implements TypeMap<H> {
 
   @Override
   public boolean putIfNotPresent(final Type type, final H appender) {
+    boolean put;
     synchronized (syncObj) {
-      return wrapped.putIfNotPresent(type, appender);
+      put = wrapped.putIfNotPresent(type, appender);
     }
+    if (put) {
+      cache.invalidateAll(); // a bit lazy
+    }
+    return put;
   }
 
   @Override
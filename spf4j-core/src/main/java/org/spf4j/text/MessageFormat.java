@@ -48,6 +48,9 @@ package org.spf4j.text;
  *   Taligent is a registered trademark of Taligent, Inc.
  *
  */
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.InvalidObjectException;
 import java.io.IOException;
@@ -83,6 +86,7 @@ import org.spf4j.base.CharSequences;
  * 3) made this more flexible and usable against StringBuilder not only StringBuffer...
  * 4) thrown exceptions provide more detail on what went wrong.
  * 5) cleaned up lots of static analisys reported issues.
+ * 6) the static format methods use a cache of parsed patterns (spf4j.messageFormat.cacheSize, default 1024).
  *
  * <code>MessageFormat</code> provides a means to produce concatenated messages in a language-neutral way. Use this to
  * construct messages displayed for end users.
@@ -365,6 +369,10 @@ public final class MessageFormat extends Format {
 
   private static final long serialVersionUID = 1L;
 
+  private static final LoadingCache<String, MessageFormat> PATTERN_CACHE = CacheBuilder.newBuilder()
+          .maximumSize(Integer.getInteger("spf4j.messageFormat.cacheSize", 1024))
+          .build(CacheLoader.from(MessageFormat::new));
+
   // Indices for segments
   private static final int SEG_RAW = 0;
   private static final int SEG_INDEX = 1;
@@ -896,8 +904,51 @@ public final class MessageFormat extends Format {
    * array is not of the type expected by the format element(s) that use it.
    */
   public static String format(String pattern, Object... arguments) {
-    MessageFormat temp = new MessageFormat(pattern);
-    return temp.format(arguments);
+    return getFormat(pattern).format(arguments);
+  }
+
+  /**
+   * Formats the arguments with the given pattern into the provided destination.
+   * The parsed pattern is cached, see {@link #getFormat(java.lang.String)}.
+   *
+   * @param to the destination.
+   * @param pattern the pattern string
+   * @param arguments object(s) to format
+   * @return the destination.
+   */
+  public static <T extends CharSequence & Appendable> T format(T to, String pattern, Object... arguments)
+          throws IOException {
+    return getFormat(pattern).subformat(arguments, to, null, null);
+  }
+
+  /**
+   * Returns a MessageFormat for the default FORMAT locale, parsed from the pattern cache.
+   * Instances without sub-formats are read only during formatting, and are shared.
+   * Instances with sub-formats (which are not thread safe) are cloned from the cached instance.
+   * The returned instance must not be mutated.
+   *
+   * @param pattern the pattern string.
+   * @return the MessageFormat for the pattern.
+   */
+  private static MessageFormat getFormat(final String pattern) {
+    Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+    MessageFormat cached = PATTERN_CACHE.getUnchecked(pattern);
+    if (!locale.equals(cached.locale)) {
+      return new MessageFormat(pattern, locale);
+    }
+    if (cached.hasSubformats()) {
+      return cached.clone();
+    }
+    return cached;
+  }
+
+  private boolean hasSubformats() {
+    for (int i = 0; i <= maxOffset; i++) {
+      if (formats[i].getFormat() != null) {
+        return true;
+      }
+    }
+    return false;
   }
 
   // Overrides
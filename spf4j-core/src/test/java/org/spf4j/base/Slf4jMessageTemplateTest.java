@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.base;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.io.ConfigurableAppenderSupplier;
+import org.spf4j.io.ObjectAppender;
+import org.spf4j.io.ObjectAppenderSupplier;
+
+/**
+ * @author Zoltan Farkas
+ */
+@SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+public final class Slf4jMessageTemplateTest {
+
+  private static final String[] PATTERNS = {
+    "", "no args", "{}", "{}{}", "a {} b {} c", "\\{} escaped {}", "double \\\\{} escaped {}",
+    "{} trailing \\{}", "{", "}{", "{{}}", "\\\\{}\\{}{}"
+  };
+
+  @Test
+  public void testSameAsSlf4j() throws IOException {
+    Object[][] argSets = {
+      {}, {"x"}, {"x", 1}, {"x", 1, 2.5, null}, {new int[] {1, 2}, new Object[] {"a", null}, 3L, "z", "w"}
+    };
+    for (String pattern : PATTERNS) {
+      for (Object[] args : argSets) {
+        StringBuilder sb = new StringBuilder();
+        int nr = Slf4jMessageTemplate.compile(pattern).format(sb, ObjectAppenderSupplier.TO_STRINGER, args);
+        String expected = org.slf4j.helpers.MessageFormatter.arrayFormat(pattern, args).getMessage();
+        Assert.assertEquals(pattern, expected, sb.toString());
+        Assert.assertTrue(nr <= args.length);
+      }
+    }
+  }
+
+  @Test
+  public void testArgIdx() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int nr = Slf4jMessageTemplate.of("a {} b \\{} {}").format(Slf4jMessageFormatter::exHandle, 1, sb,
+            ObjectAppenderSupplier.TO_STRINGER, "skip", "x", "y", "z");
+    Assert.assertEquals("a x b {} y", sb.toString());
+    Assert.assertEquals(3, nr);
+    Assert.assertSame(Slf4jMessageTemplate.of("a {} b \\{} {}"), Slf4jMessageTemplate.of("a {} b \\{} {}"));
+  }
+
+  @Test
+  public void testFormatterUsesOnlyExplicitTemplates() throws IOException {
+    String pattern = "implicit {} " + System.nanoTime();
+    StringBuilder sb = new StringBuilder();
+    Slf4jMessageFormatter.format(sb, pattern, "x");
+    Assert.assertEquals(pattern.replace("{}", "x"), sb.toString());
+    Assert.assertNull(Slf4jMessageTemplate.getIfCached(pattern));
+    Slf4jMessageTemplate template = Slf4jMessageTemplate.of(pattern);
+    Assert.assertSame(template, Slf4jMessageTemplate.getIfCached(pattern));
+    sb.setLength(0);
+    Slf4jMessageFormatter.format(sb, pattern, "y");
+    Assert.assertEquals(pattern.replace("{}", "y"), sb.toString());
+  }
+
+  @Test
+  public void testAppenderChange() throws IOException {
+    ConfigurableAppenderSupplier supp = new ConfigurableAppenderSupplier(false, (t) -> false);
+    Slf4jMessageTemplate template = Slf4jMessageTemplate.compile("v={}");
+    StringBuilder sb = new StringBuilder();
+    template.format(sb, supp, 1);
+    Assert.assertEquals("v=1", sb.toString());
+    supp.register(Integer.class, (ObjectAppender<Integer>) (final Integer o, final Appendable to) -> {
+      to.append("int:").append(o.toString());
+    });
+    sb.setLength(0);
+    template.format(sb, supp, 1);
+    Assert.assertEquals("v=int:1", sb.toString());
+    supp.unregister(Integer.class);
+    sb.setLength(0);
+    template.format(sb, supp, 1);
+    Assert.assertEquals("v=1", sb.toString());
+  }
+
+  @Test
+  public void testAppenderLookupFailureHandled() throws IOException {
+    ObjectAppenderSupplier supp = (c) -> {
+      throw new IllegalStateException("no appender for " + c);
+    };
+    StringBuilder sb = new StringBuilder();
+    int nr = Slf4jMessageTemplate.compile("v={}").format((obj, to, t) -> to.append("err:").append(t.getMessage()),
+            0, sb, supp, "x");
+    Assert.assertEquals("v=err:no appender for class java.lang.String", sb.toString());
+    Assert.assertEquals(1, nr);
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Checksum;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.base.IntMath;
+
+/**
+ * @author Zoltan Farkas
+ */
+@SuppressFBWarnings("AFBR_ABNORMAL_FINALLY_BLOCK_RETURN")
+public final class Crc32CTest {
+
+  private static final long CHECK_VALUE = 0xE3069283L;
+
+  private static byte[] testData(final int size) {
+    final IntMath.XorShift32 random = new IntMath.XorShift32();
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) random.nextInt();
+    }
+    return data;
+  }
+
+  private static long crc(final byte[] data, final int off, final int len) {
+    Crc32C crc = new Crc32C();
+    crc.update(data, off, len);
+    return crc.getValue();
+  }
+
+  @Test
+  public void testCheckValue() {
+    byte[] data = "123456789".getBytes(StandardCharsets.US_ASCII);
+    Assert.assertEquals(CHECK_VALUE, crc(data, 0, data.length));
+    Checksum checksum = Crc32C.newChecksum();
+    checksum.update(data, 0, data.length);
+    Assert.assertEquals(CHECK_VALUE, checksum.getValue());
+  }
+
+  @Test
+  public void testByteBuffer() {
+    byte[] data = testData(1027);
+    long expected = crc(data, 3, 1021);
+    ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+    direct.put(data);
+    direct.position(3);
+    direct.limit(1024);
+    Crc32C crc = new Crc32C();
+    crc.update(direct);
+    Assert.assertEquals(expected, crc.getValue());
+    Assert.assertFalse(direct.hasRemaining());
+    Checksum checksum = Crc32C.newChecksum();
+    Crc32C.update(checksum, ByteBuffer.wrap(data, 3, 1021));
+    Assert.assertEquals(expected, checksum.getValue());
+  }
+
+  @Test
+  public void testCombine() {
+    byte[] data = testData(10000);
+    long expected = crc(data, 0, data.length);
+    for (int split : new int[] {0, 1, 7, 5000, 9999, 10000}) {
+      long crc1 = crc(data, 0, split);
+      long crc2 = crc(data, split, data.length - split);
+      Assert.assertEquals(expected, Crc32C.combine(crc1, crc2, data.length - split));
+    }
+  }
+
+  @Test
+  public void testFileChecksum() throws IOException {
+    byte[] data = testData(100003);
+    Path file = Files.createTempFile("crc", ".bin");
+    try {
+      Files.write(file, data);
+      long expected = crc(data, 0, data.length);
+      Assert.assertEquals(expected, Crc32C.checksum(file, 4096));
+      Assert.assertEquals(expected, Crc32C.checksum(file, 1000000));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.recyclable.impl.ArraySuppliers;
+
+/**
+ * @author Zoltan Farkas
+ */
+@SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+public final class SegmentedByteArrayBuilderTest {
+
+  private static byte[] testData(final int size) {
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) (i * 31);
+    }
+    return data;
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    byte[] data = testData(100000);
+    try (SegmentedByteArrayBuilder bab = new SegmentedByteArrayBuilder(16, 4096,
+            ArraySuppliers.Bytes.GL_SUPPLIER)) {
+      bab.write(data[0]);
+      bab.write(data, 1, 999);
+      bab.write(ByteBuffer.wrap(data, 1000, 9000));
+      bab.write(data, 10000, data.length - 10000);
+      Assert.assertEquals(data.length, bab.size());
+      Assert.assertTrue(bab.getNrSegments() > 1);
+      Assert.assertArrayEquals(data, bab.toByteArray());
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      bab.writeTo(bos);
+      Assert.assertArrayEquals(data, bos.toByteArray());
+      bos.reset();
+      Assert.assertEquals(data.length, bab.writeTo(Channels.newChannel(bos)));
+      Assert.assertArrayEquals(data, bos.toByteArray());
+      long total = 0;
+      for (ByteBuffer bb : bab.toByteBuffers()) {
+        total += bb.remaining();
+      }
+      Assert.assertEquals(data.length, total);
+      bab.reset();
+      Assert.assertEquals(0, bab.size());
+      Assert.assertEquals(1, bab.getNrSegments());
+      bab.write("abc".getBytes(StandardCharsets.UTF_8));
+      Assert.assertEquals("abc", bab.toString(StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testGatheringWrite() throws IOException {
+    byte[] data = testData(50000);
+    Path file = Files.createTempFile("sbab", ".bin");
+    try (SegmentedByteArrayBuilder bab = new SegmentedByteArrayBuilder(64);
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      bab.write(data);
+      Assert.assertEquals(data.length, bab.writeTo(ch));
+    }
+    Assert.assertArrayEquals(data, Files.readAllBytes(file));
+    Files.delete(file);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonBlockingChannelRejected() throws IOException {
+    Pipe pipe = Pipe.open();
+    try (SegmentedByteArrayBuilder bab = new SegmentedByteArrayBuilder(64);
+            Pipe.SinkChannel sink = pipe.sink();
+            Pipe.SourceChannel source = pipe.source()) {
+      sink.configureBlocking(false);
+      bab.write(testData(100));
+      bab.writeTo(sink);
+    }
+  }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.base.ExecutionContext;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.base.IntMath;
+import org.spf4j.concurrent.DefaultExecutor;
+
+/**
+ * @author Zoltan Farkas
+ */
+@SuppressFBWarnings("OS_OPEN_STREAM")
+public final class SpscPipedOutputStreamTest {
+
+  private static byte[] testData(final int size) {
+    final IntMath.XorShift32 random = new IntMath.XorShift32();
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) random.nextInt();
+    }
+    return data;
+  }
+
+  private static Future<?> writeAsync(final SpscPipedOutputStream pos, final byte[] data) {
+    return DefaultExecutor.INSTANCE.submit(() -> {
+      try (OutputStream os = pos) {
+        os.write(data[0]);
+        os.write(data, 1, 10);
+        int i = 11;
+        while (i < data.length) {
+          int len = Math.min(data.length - i, 777);
+          os.write(data, i, len);
+          i += len;
+        }
+      }
+      return null;
+    });
+  }
+
+  private static void testPipe(final SpscPipedOutputStream pos, final byte[] data)
+          throws IOException, InterruptedException, ExecutionException {
+    Future<?> wf = writeAsync(pos, data);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (InputStream is = pos.getInputStream()) {
+      int b = is.read();
+      bos.write(b);
+      byte[] buffer = new byte[1000];
+      int read;
+      while ((read = is.read(buffer)) >= 0) {
+        bos.write(buffer, 0, read);
+      }
+    }
+    wf.get();
+    Assert.assertArrayEquals(data, bos.toByteArray());
+  }
+
+  @Test
+  public void testStreamPiping() throws Exception {
+    byte[] data = testData(1000000);
+    testPipe(new SpscPipedOutputStream(2), testData(10000));
+    testPipe(new SpscPipedOutputStream(64), data);
+    testPipe(new SpscPipedOutputStream(null, 8192, true), data);
+    testPipe(new SpscPipedOutputStream(null, 1000, false), data);
+  }
+
+  @Test
+  public void testChannelTransfer() throws Exception {
+    byte[] data = testData(100000);
+    SpscPipedOutputStream pos = new SpscPipedOutputStream(null, 4096, true);
+    Future<?> wf = DefaultExecutor.INSTANCE.submit(() -> {
+      try (SpscPipedOutputStream os = pos) {
+        os.write(ByteBuffer.wrap(data, 0, 1000));
+        os.transferFrom(Channels.newChannel(new ByteArrayInputStream(data, 1000, data.length - 1000)));
+      }
+      return null;
+    });
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (SpscPipedOutputStream.SpscPipedInputStream is
+            = (SpscPipedOutputStream.SpscPipedInputStream) pos.getInputStream()) {
+      ByteBuffer bb = ByteBuffer.allocate(10);
+      Assert.assertEquals(10, is.read(bb));
+      bos.write(bb.array());
+      Assert.assertEquals(data.length - 10, is.transferTo(Channels.newChannel(bos)));
+    }
+    wf.get();
+    Assert.assertArrayEquals(data, bos.toByteArray());
+  }
+
+  @Test(expected = IOTimeoutException.class)
+  public void testReadTimeout() throws IOException {
+    SpscPipedOutputStream pos = new SpscPipedOutputStream(16);
+    try (ExecutionContext ctx = ExecutionContexts.start("test", 50, TimeUnit.MILLISECONDS);
+            InputStream is = pos.getInputStream()) {
+      is.read();
+    }
+  }
+
+  @Test
+  public void testConsumerFailure() throws IOException {
+    SpscPipedOutputStream pos = new SpscPipedOutputStream(16);
+    pos.write(1);
+    pos.getInputStream().close();
+    pos.close(new RuntimeException("consumer failed"));
+    try {
+      pos.write(new byte[] {1, 2});
+      Assert.fail();
+    } catch (IOException ex) {
+      Assert.assertEquals("consumer failed", ex.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testCloseWithExceptionIsNotEof() throws IOException {
+    SpscPipedOutputStream pos = new SpscPipedOutputStream(16);
+    try (InputStream is = pos.getInputStream()) {
+      pos.write(7);
+      pos.flush();
+      pos.close(new RuntimeException("failed"));
+      Assert.assertEquals(7, is.read());
+      try {
+        is.read();
+        Assert.fail();
+      } catch (IOException ex) {
+        Assert.assertEquals("failed", ex.getCause().getMessage());
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTransferFromNonBlockingRejected() throws IOException {
+    Pipe pipe = Pipe.open();
+    try (SpscPipedOutputStream pos = new SpscPipedOutputStream(16);
+            Pipe.SourceChannel source = pipe.source();
+            Pipe.SinkChannel sink = pipe.sink()) {
+      source.configureBlocking(false);
+      pos.transferFrom(source);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTransferToNonBlockingRejected() throws IOException {
+    Pipe pipe = Pipe.open();
+    SpscPipedOutputStream pos = new SpscPipedOutputStream(16);
+    try (SpscPipedOutputStream.SpscPipedInputStream is = (SpscPipedOutputStream.SpscPipedInputStream)
+            pos.getInputStream();
+            Pipe.SourceChannel source = pipe.source();
+            Pipe.SinkChannel sink = pipe.sink()) {
+      sink.configureBlocking(false);
+      is.transferTo(sink);
+    } finally {
+      pos.close();
+    }
+  }
+
+}
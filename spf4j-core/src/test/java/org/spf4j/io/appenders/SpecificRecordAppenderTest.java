@@ -32,19 +32,34 @@
 package org.spf4j.io.appenders;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.io.JsonEncoder;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.util.Utf8;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spf4j.base.avro.Converters;
 import org.spf4j.base.avro.JThrowable;
 
 /**
  *
  * @author Zoltan Farkas
  */
-@SuppressFBWarnings("LO_INCORRECT_NUMBER_OF_ANCHOR_PARAMETERS")
+@SuppressFBWarnings({"LO_INCORRECT_NUMBER_OF_ANCHOR_PARAMETERS", "NAB_NEEDLESS_BOOLEAN_CONSTANT_CONVERSION",
+  "PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS", "UTAO_JUNIT_ASSERTION_ODDITIES_ACTUAL_CONSTANT"})
 public class SpecificRecordAppenderTest {
 
   private static final Logger LOG = LoggerFactory.getLogger(SpecificRecordAppenderTest.class);
@@ -59,6 +74,63 @@ public class SpecificRecordAppenderTest {
     String str = sb.toString();
     Assert.assertThat(str, Matchers.containsString("SerializationError"));
     Assert.assertThat(str, Matchers.containsString("java.lang.NullPointerException"));
+    // the error is pretty printed.
+    Assert.assertThat(str, Matchers.containsString("{\"SerializationError\":\n{\n"));
+  }
+
+  @Test
+  public void testSpecificRecordAppenderSameAsAvro() throws IOException {
+    JThrowable jThrowable = Converters.convert(new RuntimeException("test \"quoted\"\n",
+            new IllegalStateException("cause")));
+    SpecificRecordAppender ap = new SpecificRecordAppender();
+    StringBuilder sb = new StringBuilder();
+    ap.append(jThrowable, sb);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    JsonEncoder encoder = EncoderFactory.get().jsonEncoder(jThrowable.getSchema(), bos);
+    new SpecificDatumWriter<>(jThrowable.getSchema()).write(jThrowable, encoder);
+    encoder.flush();
+    Assert.assertEquals(new String(bos.toByteArray(), StandardCharsets.UTF_8), sb.toString());
+  }
+
+  @Test
+  public void testGenericRecordAppenderSameAsAvro() throws IOException {
+    Schema schema = new Schema.Parser().parse("{\"type\":\"record\",\"name\":\"TestRecord\","
+            + "\"namespace\":\"org.spf4j.test\",\"fields\":["
+            + "{\"name\":\"str\",\"type\":\"string\"},"
+            + "{\"name\":\"nr\",\"type\":\"long\"},"
+            + "{\"name\":\"dbl\",\"type\":\"double\"},"
+            + "{\"name\":\"flag\",\"type\":\"boolean\"},"
+            + "{\"name\":\"bytes\",\"type\":\"bytes\"},"
+            + "{\"name\":\"color\",\"type\":{\"type\":\"enum\",\"name\":\"Color\","
+            + "\"symbols\":[\"RED\",\"GREEN\"]}},"
+            + "{\"name\":\"tags\",\"type\":{\"type\":\"array\",\"items\":\"int\"}},"
+            + "{\"name\":\"attrs\",\"type\":{\"type\":\"map\",\"values\":\"string\"}},"
+            + "{\"name\":\"opt\",\"type\":[\"null\",\"string\",\"TestRecord\"]}"
+            + "]}");
+    GenericRecord child = record(schema, null);
+    GenericRecord record = record(schema, child);
+    GenericRecordAppender ap = new GenericRecordAppender();
+    StringBuilder sb = new StringBuilder();
+    ap.append(record, sb);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    JsonEncoder encoder = EncoderFactory.get().jsonEncoder(schema, bos);
+    new GenericDatumWriter<>(schema).write(record, encoder);
+    encoder.flush();
+    Assert.assertEquals(new String(bos.toByteArray(), StandardCharsets.UTF_8), sb.toString());
+  }
+
+  private static GenericRecord record(final Schema schema, final GenericRecord child) {
+    GenericRecord record = new GenericData.Record(schema);
+    record.put("str", new Utf8("a\tb\u00e9"));
+    record.put("nr", 123456789012L);
+    record.put("dbl", 0.5d);
+    record.put("flag", true);
+    record.put("bytes", ByteBuffer.wrap(new byte[] {0, 1, (byte) 200, 'a'}));
+    record.put("color", new GenericData.EnumSymbol(schema.getField("color").schema(), "GREEN"));
+    record.put("tags", Arrays.asList(1, 2, 3));
+    record.put("attrs", Collections.singletonMap("k", "v"));
+    record.put("opt", child == null ? "leaf" : child);
+    return record;
   }
 
 }
@@ -32,11 +32,21 @@
 package org.spf4j.io.compress;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Test;
@@ -45,6 +55,8 @@ import org.junit.Test;
  *
  * @author zoly
  */
+@SuppressFBWarnings({"DMI_RANDOM_USED_ONLY_ONCE", "IOI_USE_OF_FILE_STREAM_CONSTRUCTORS",
+  "PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
 public class CompressTest {
 
   @Test
@@ -83,6 +95,60 @@ public class CompressTest {
     Assert.assertEquals(testStr, Files.toString(unzip.get(0).toFile(), Charsets.UTF_8));
   }
 
-
+  @Test
+  public void testParallelZip() throws IOException {
+    File tmpFolder = Files.createTempDir();
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      text.append("line ").append(i).append('\n');
+    }
+    File textFile = new File(tmpFolder, "text.txt");
+    Files.asCharSink(textFile, Charsets.UTF_8).write(text);
+    File gzFile = new File(tmpFolder, "text.txt.gz");
+    try (OutputStream os = new GZIPOutputStream(new java.io.FileOutputStream(gzFile))) {
+      os.write(text.toString().getBytes(Charsets.UTF_8));
+    }
+    byte[] random = new byte[10000];
+    new Random(0).nextBytes(random);
+    File subFolder = new File(tmpFolder, "subFolder");
+    if (!subFolder.mkdir()) {
+      throw new IOException("Cannot create folder " + subFolder);
+    }
+    File randomFile = new File(subFolder, "random.bin");
+    Files.write(random, randomFile);
+    File emptyFile = new File(subFolder, "empty.txt");
+    Files.write(new byte[0], emptyFile);
+    Path zip = tmpFolder.toPath().resolveSibling(tmpFolder.getName() + ".zip");
+    Compress.zip(tmpFolder.toPath(), zip, ForkJoinPool.commonPool(), 2);
+    try (ZipFile zf = new ZipFile(zip.toFile())) {
+      Assert.assertEquals(4, zf.size());
+      Assert.assertEquals(ZipEntry.DEFLATED, zf.getEntry("text.txt").getMethod());
+      Assert.assertEquals(ZipEntry.STORED, zf.getEntry("text.txt.gz").getMethod());
+      Assert.assertEquals(ZipEntry.STORED, zf.getEntry("subFolder/random.bin").getMethod());
+      CRC32 crc = new CRC32();
+      crc.update(Files.toByteArray(gzFile));
+      Assert.assertEquals(crc.getValue(), zf.getEntry("text.txt.gz").getCrc());
+    }
+    // ZipInputStream validates the local header crc of STORED entries.
+    try (ZipInputStream zis = new ZipInputStream(java.nio.file.Files.newInputStream(zip))) {
+      int nrEntries = 0;
+      while (zis.getNextEntry() != null) {
+        ByteStreams.exhaust(zis);
+        nrEntries++;
+      }
+      Assert.assertEquals(4, nrEntries);
+    }
+    File destFolder = Files.createTempDir();
+    List<Path> unzip = Compress.unzip(zip, destFolder.toPath(), ForkJoinPool.commonPool(), 3);
+    Assert.assertEquals(4, unzip.size());
+    Assert.assertEquals(text.toString(),
+            Files.asCharSource(new File(destFolder, "text.txt"), Charsets.UTF_8).read());
+    Assert.assertArrayEquals(Files.toByteArray(gzFile), Files.toByteArray(new File(destFolder, "text.txt.gz")));
+    Assert.assertArrayEquals(random, Files.toByteArray(new File(destFolder, "subFolder/random.bin")));
+    Assert.assertEquals(0, new File(destFolder, "subFolder/empty.txt").length());
+    // the sequential (zip file system based) unzip must be able to read it as well.
+    List<Path> unzip2 = Compress.unzip(zip, Files.createTempDir().toPath());
+    Assert.assertEquals(4, unzip2.size());
+  }
 
 }
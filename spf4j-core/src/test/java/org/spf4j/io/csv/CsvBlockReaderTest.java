@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.csv;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.io.Csv;
+import org.spf4j.io.csv.CsvReader.TokenType;
+
+/**
+ *
+ * @author Zoltan Farkas
+ */
+@SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+public final class CsvBlockReaderTest {
+
+  @Test
+  public void testTokens() throws IOException, CsvParseException {
+    CsvBlockReader reader = new CsvBlockReader(new StringReader("﻿bla,\"b\"\"la\"\r\nuhu,\n"), ',', 16);
+    Assert.assertEquals(TokenType.ELEMENT, reader.next());
+    Assert.assertEquals("bla", reader.getElement().toString());
+    Assert.assertEquals(TokenType.ELEMENT, reader.next());
+    Assert.assertEquals("b\"la", reader.getElement().toString());
+    Assert.assertEquals(TokenType.END_ROW, reader.next());
+    Assert.assertEquals(TokenType.ELEMENT, reader.next());
+    Assert.assertEquals("uhu", reader.getElement().toString());
+    Assert.assertEquals(TokenType.ELEMENT, reader.next());
+    Assert.assertEquals("", reader.getElement().toString());
+    Assert.assertEquals(TokenType.END_ROW, reader.next());
+    Assert.assertEquals(TokenType.END_DOCUMENT, reader.next());
+    Assert.assertEquals(TokenType.END_DOCUMENT, reader.next());
+  }
+
+  @Test
+  public void testNoEndOfLine() throws IOException, CsvParseException {
+    CsvBlockReader reader = Csv.blockReader(new StringReader("a,\"b\""));
+    Assert.assertEquals(TokenType.ELEMENT, reader.next());
+    Assert.assertEquals("a", reader.getElement().toString());
+    Assert.assertEquals(TokenType.ELEMENT, reader.next());
+    Assert.assertEquals("b", reader.getElement().toString());
+    Assert.assertEquals(TokenType.END_ROW, reader.next());
+    Assert.assertEquals(TokenType.END_DOCUMENT, reader.next());
+    Assert.assertEquals(TokenType.END_DOCUMENT, Csv.blockReader(new StringReader("")).next());
+  }
+
+  @Test(expected = CsvParseException.class)
+  public void testUnterminatedQuote() throws IOException, CsvParseException {
+    Csv.readBlocks(new StringReader("a,\"b"), new RowsHandler());
+  }
+
+  @Test(expected = CsvParseException.class)
+  public void testBadQuote() throws IOException, CsvParseException {
+    Csv.readBlocks(new StringReader("a,\"b\"c,d"), new RowsHandler());
+  }
+
+  @Test
+  public void testRandomContent() throws IOException, CsvParseException {
+    Random rnd = new Random(7);
+    List<List<String>> rows = randomRows(rnd, 500);
+    StringWriter sw = new StringWriter();
+    for (List<String> row : rows) {
+      Csv.writeCsvRow(sw, row);
+    }
+    String csv = sw.toString();
+    Assert.assertEquals(rows, new CsvBlockReader(new StringReader(csv), ',', 16).read(new RowsHandler()));
+    Assert.assertEquals(rows, Csv.readBlocks(new StringReader(csv), new RowsHandler()));
+    char[] chars = csv.toCharArray();
+    Assert.assertEquals(rows, new CsvBlockReader(chars, 0, chars.length, ',').read(new RowsHandler()));
+  }
+
+  @Test
+  public void testParallelRead() throws IOException, CsvParseException {
+    Random rnd = new Random(11);
+    List<List<String>> rows = randomRows(rnd, 2000);
+    File file = File.createTempFile("csvParallel", ".csv");
+    file.deleteOnExit();
+    try (Writer writer = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+      for (List<String> row : rows) {
+        Csv.writeCsvRow(writer, row);
+      }
+    }
+    List<List<List<String>>> chunks = Csv.readParallel(file.toPath(), StandardCharsets.UTF_8, 1024,
+            (chunkIdx) -> new RowsHandler());
+    Assert.assertTrue(chunks.size() > 10);
+    List<List<String>> result = new ArrayList<>(rows.size());
+    for (List<List<String>> chunk : chunks) {
+      result.addAll(chunk);
+    }
+    Assert.assertEquals(rows, result);
+    List<List<String>>[] unordered = new List[chunks.size()];
+    Csv.CSV.readParallel(file.toPath(), StandardCharsets.UTF_8, 1024, (chunkIdx) -> new RowsHandler(),
+            (chunk, chunkIdx) -> unordered[chunkIdx] = chunk, ForkJoinPool.commonPool());
+    Assert.assertEquals(chunks, Arrays.asList(unordered));
+  }
+
+  @Test
+  public void testParallelReadStrayQuotes() throws IOException, CsvParseException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      // a stray quote in the middle of a unquoted element is literal, and must not flip the quote state.
+      sb.append("a\"b").append(i).append(",\"q\"\"\n").append(i).append("\",x\"\r\n");
+    }
+    String csv = sb.toString();
+    List<List<String>> expected = Csv.readBlocks(new StringReader(csv), new RowsHandler());
+    Assert.assertEquals(500, expected.size());
+    Assert.assertEquals(Arrays.asList("a\"b7", "q\"\n7", "x\""), expected.get(7));
+    File file = File.createTempFile("csvParallelQuotes", ".csv");
+    file.deleteOnExit();
+    Files.write(file.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+    for (int chunkSize : new int[] {16, 17, 31, 64, 1000}) {
+      List<List<List<String>>> chunks = Csv.readParallel(file.toPath(), StandardCharsets.UTF_8, chunkSize,
+              (chunkIdx) -> new RowsHandler());
+      Assert.assertTrue(chunks.size() > 1);
+      List<List<String>> result = new ArrayList<>(expected.size());
+      for (List<List<String>> chunk : chunks) {
+        result.addAll(chunk);
+      }
+      Assert.assertEquals("chunkSize " + chunkSize, expected, result);
+    }
+  }
+
+  @Test
+  public void testParallelReadBomOnlyAtStart() throws IOException, CsvParseException {
+    StringBuilder sb = new StringBuilder("\uFEFF\"h\",b\n");
+    for (int i = 0; i < 200; i++) {
+      sb.append('\uFEFF').append(i).append(",b\n");
+    }
+    File file = File.createTempFile("csvParallelBom", ".csv");
+    file.deleteOnExit();
+    Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    List<List<List<String>>> chunks = Csv.readParallel(file.toPath(), StandardCharsets.UTF_8, 64,
+            (chunkIdx) -> new RowsHandler());
+    Assert.assertTrue(chunks.size() > 10);
+    List<List<String>> result = new ArrayList<>();
+    for (List<List<String>> chunk : chunks) {
+      result.addAll(chunk);
+    }
+    Assert.assertEquals(201, result.size());
+    Assert.assertEquals(Arrays.asList("h", "b"), result.get(0));
+    for (int i = 1; i < result.size(); i++) {
+      Assert.assertEquals("\uFEFF" + (i - 1), result.get(i).get(0));
+    }
+  }
+
+  @Test
+  @SuppressFBWarnings("HES_LOCAL_EXECUTOR_SERVICE")
+  public void testParallelReadFailureCancelsChunks() throws IOException, CsvParseException, InterruptedException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      sb.append(i).append(",b\n");
+    }
+    File file = File.createTempFile("csvParallelFail", ".csv");
+    file.deleteOnExit();
+    Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    AtomicInteger nrHandlers = new AtomicInteger();
+    CountDownLatch never = new CountDownLatch(1);
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      Csv.CSV.readParallel(file.toPath(), StandardCharsets.UTF_8, 64, (chunkIdx) -> {
+        nrHandlers.incrementAndGet();
+        if (chunkIdx == 0) {
+          throw new IllegalStateException("chunk 0 failure");
+        }
+        try {
+          Assert.assertFalse(never.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        return new RowsHandler();
+      }, pool);
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      Assert.assertEquals("chunk 0 failure", ex.getMessage());
+    } finally {
+      pool.shutdown();
+    }
+    Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    Assert.assertTrue(nrHandlers.toString(), nrHandlers.get() <= 2);
+  }
+
+  private static List<List<String>> randomRows(final Random rnd, final int nrRows) {
+    char[] chars = {'a', 'b', ',', '"', '\n', '\r', ' ', 'é', '1'};
+    List<List<String>> rows = new ArrayList<>(nrRows);
+    for (int i = 0; i < nrRows; i++) {
+      int nrCols = 1 + rnd.nextInt(5);
+      List<String> row = new ArrayList<>(nrCols);
+      for (int j = 0; j < nrCols; j++) {
+        int len = rnd.nextInt(40);
+        StringBuilder sb = new StringBuilder(len);
+        for (int k = 0; k < len; k++) {
+          sb.append(chars[rnd.nextInt(chars.length)]);
+        }
+        row.add(sb.toString());
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  private static final class RowsHandler implements CsvHandler<List<List<String>>> {
+
+    private final List<List<String>> rows = new ArrayList<>();
+    private List<String> row;
+
+    @Override
+    public void startRow() {
+      row = new ArrayList<>();
+    }
+
+    @Override
+    public void element(final CharSequence elem) {
+      row.add(elem.toString());
+    }
+
+    @Override
+    public void endRow() {
+      rows.add(row);
+    }
+
+    @Override
+    public List<List<String>> eof() {
+      return rows;
+    }
+  }
+
+}
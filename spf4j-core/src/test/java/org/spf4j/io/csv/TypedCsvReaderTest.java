@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.csv;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.io.Csv;
+
+/**
+ *
+ * @author Zoltan Farkas
+ */
+@SuppressFBWarnings({"CLI_CONSTANT_LIST_INDEX", "PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS",
+  "SACM_STATIC_ARRAY_CREATED_IN_METHOD"})
+public final class TypedCsvReaderTest {
+
+  @Test
+  public void testTypedRead() throws IOException, CsvParseException {
+    CsvColumnSchema schema = CsvColumnSchema.builder()
+            .add("count", CsvColumnType.LONG)
+            .add("value", CsvColumnType.DOUBLE)
+            .add("flag", CsvColumnType.BOOLEAN)
+            .add("name", CsvColumnType.STRING)
+            .add("color", CsvColumnType.ENUM)
+            .build();
+    TypedCsvReader reader = Csv.CSV.typedReader(new StringReader(
+            "name,ignored,count,value,flag,color\n"
+            + "a,x,1,1.5,true,red\n"
+            + "\"b,c\",x,-9223372036854775808,-2e-3,0,green\n"
+            + "d,x,,,FALSE,red\n"
+            + "e,x,7"), schema, true);
+    CsvColumnBatch batch = new CsvColumnBatch(schema, 3);
+    Assert.assertEquals(3, reader.read(batch));
+    Assert.assertArrayEquals(new long[] {1, Long.MIN_VALUE}, java.util.Arrays.copyOf(batch.getLongs(0), 2));
+    Assert.assertTrue(batch.isNull(0, 2));
+    Assert.assertEquals(1.5, batch.getDoubles(1)[0], 0);
+    Assert.assertEquals(-0.002, batch.getDoubles(1)[1], 0);
+    Assert.assertTrue(batch.isNull(1, 2));
+    Assert.assertTrue(batch.getBooleans(2)[0]);
+    Assert.assertFalse(batch.getBooleans(2)[1]);
+    Assert.assertFalse(batch.getBooleans(2)[2]);
+    Assert.assertEquals("b,c", batch.getStrings(3)[1]);
+    int[] codes = batch.getCodes(4);
+    Assert.assertEquals(codes[0], codes[2]);
+    Assert.assertNotEquals(codes[0], codes[1]);
+    Assert.assertEquals("green", batch.getDictionary(4).get(codes[1]));
+    Assert.assertEquals(1, reader.read(batch));
+    Assert.assertEquals(7, batch.getLongs(0)[0]);
+    Assert.assertFalse(batch.isNull(0, 0));
+    Assert.assertTrue(batch.isNull(1, 0));
+    Assert.assertTrue(batch.isNull(4, 0));
+    Assert.assertEquals(0, reader.read(batch));
+  }
+
+  @Test(expected = CsvParseException.class)
+  public void testInvalidNumber() throws IOException, CsvParseException {
+    CsvColumnSchema schema = CsvColumnSchema.builder().add("a", CsvColumnType.LONG).build();
+    TypedCsvReader reader = Csv.CSV.typedReader(new StringReader("1\n1x\n"), schema, false);
+    reader.read(new CsvColumnBatch(schema, 10));
+  }
+
+  @Test
+  public void testParseNumbers() {
+    Random rnd = new Random(3);
+    for (int i = 0; i < 100000; i++) {
+      double d;
+      switch (i % 4) {
+        case 0:
+          d = rnd.nextDouble();
+          break;
+        case 1:
+          d = rnd.nextGaussian() * 1e6;
+          break;
+        case 2:
+          d = Math.round(rnd.nextGaussian() * 1e6) / 1000d;
+          break;
+        default:
+          d = Double.longBitsToDouble(rnd.nextLong());
+      }
+      assertDouble(Double.toString(d));
+      assertDouble(String.format(Locale.US, "%.6f", d));
+      long l = rnd.nextLong();
+      String ls = Long.toString(l);
+      Assert.assertEquals(l, CharArrayNumbers.parseLong(ls.toCharArray(), 0, ls.length()));
+    }
+    for (String str : new String[] {"0", "-0.0", "1.", ".5", "1e22", "123456789012345678", "1E-5", "NaN",
+      "-Infinity", "0x1p3", "4.9e-324", "00012.50"}) {
+      assertDouble(str);
+    }
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testLongOverflow() {
+    char[] chars = "9223372036854775808".toCharArray();
+    CharArrayNumbers.parseLong(chars, 0, chars.length);
+  }
+
+  private static void assertDouble(final String str) {
+    char[] chars = ("x" + str + "y").toCharArray();
+    Assert.assertEquals(str, Double.doubleToLongBits(Double.parseDouble(str)),
+            Double.doubleToLongBits(CharArrayNumbers.parseDouble(chars, 1, str.length())));
+  }
+
+}
@@ -32,7 +32,13 @@
 package org.spf4j.jmx;
 
 import java.lang.reflect.Type;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
+import javax.management.MBeanInfo;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -59,4 +65,51 @@ public class DynamicMBeanBuilderTest {
 
   }
 
+  @Test
+  public void testExportedAccessors() throws MBeanException, AttributeNotFoundException,
+          InvalidAttributeValueException {
+    AccessorsTestBean bean = new AccessorsTestBean();
+    ExportedValuesMBean mbean = new DynamicMBeanBuilder()
+            .withJmxExportObject(bean).replace("test", "accessorsTest");
+    mbean.setAttribute(new Attribute("intVal", 5));
+    Assert.assertEquals(5, mbean.getAttribute("intVal"));
+    Assert.assertEquals("5", mbean.invoke("format", new Object[]{"", 5L}, new String[]{}));
+    MBeanInfo info = mbean.getMBeanInfo();
+    MBeanAttributeInfo[] attributes = info.getAttributes();
+    String[] names = new String[attributes.length];
+    for (int i = 0; i < attributes.length; i++) {
+      names[i] = attributes[i].getName();
+    }
+    AttributeList all = mbean.getAttributes(names);
+    Assert.assertEquals(names.length, all.size());
+    AttributeList one = mbean.getAttributes(new String[] {"stringVal"});
+    Assert.assertEquals("5", ((Attribute) one.get(0)).getValue());
+    Registry.unregister("test", "accessorsTest");
+  }
+
+  public static final class AccessorsTestBean {
+
+    private volatile int intVal;
+
+    @JmxExport
+    public int getIntVal() {
+      return intVal;
+    }
+
+    @JmxExport
+    public void setIntVal(final int intVal) {
+      this.intVal = intVal;
+    }
+
+    @JmxExport
+    public String getStringVal() {
+      return Integer.toString(intVal);
+    }
+
+    @JmxExport
+    public static String format(@JmxExport("prefix") final String prefix, @JmxExport("value") final long value) {
+      return prefix + value;
+    }
+  }
+
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.os;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Zoltan Farkas
+ */
+@SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+public final class ProcFsTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProcFsTest.class);
+
+  @Test
+  public void testProcFs() throws IOException {
+    Assume.assumeTrue(ProcFs.isAvailable());
+    try (ProcFs procFs = new ProcFs()) {
+      ProcFs.ProcessStats stats = new ProcFs.ProcessStats();
+      procFs.read(stats);
+      LOG.debug("Process stats {}", stats);
+      Assert.assertTrue(stats.getRssBytes() > 0);
+      Assert.assertTrue(stats.getNrThreads() > 0);
+      Assert.assertTrue(stats.getUserCpuTicks() + stats.getSystemCpuTicks() > 0);
+      long minorFaults = stats.getMinorFaults();
+      procFs.read(stats);
+      Assert.assertTrue(stats.getMinorFaults() >= minorFaults);
+      Assert.assertTrue(procFs.getOpenFileDescriptorCount() > 0);
+      AtomicInteger nrThreads = new AtomicInteger();
+      procFs.forEachThread((tid, name, utime, stime) -> {
+        Assert.assertTrue(utime >= 0);
+        Assert.assertTrue(stime >= 0);
+        Assert.assertTrue(name.length() > 0);
+        nrThreads.incrementAndGet();
+      });
+      Assert.assertTrue(nrThreads.get() > 0);
+    }
+    CharSequence fds = ProcFs.getOpenFileDescriptors();
+    LOG.debug("Open fds {}", fds);
+    Assert.assertNotNull(fds);
+    Assert.assertTrue(fds.toString().contains(" -> "));
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.perf.cpu;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.spf4j.base.ExecutionContext;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.concurrent.DefaultExecutor;
+import org.spf4j.perf.cpu.ResourceUsageExecutionContextFactory.ResourceUsage;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class ResourceUsageExecutionContextFactoryTest {
+
+  private static final int MB = 1024 * 1024;
+
+  private static final ResourceUsageExecutionContextFactory FACTORY
+          = new ResourceUsageExecutionContextFactory(ExecutionContexts.getContextFactory(), 1000);
+
+  @SuppressFBWarnings("VO_VOLATILE_REFERENCE_TO_ARRAY") // only used to keep the allocation alive.
+  private static volatile byte[] sink;
+
+  @Test
+  public void testResourceUsageAccounting() throws InterruptedException, ExecutionException {
+    long now = System.nanoTime();
+    ResourceUsage usage;
+    ResourceUsage childUsage;
+    try (ExecutionContext ctx = FACTORY.startThreadRoot("testOp", null, now,
+            now + TimeUnit.SECONDS.toNanos(10), () -> { })) {
+      usage = ResourceUsageExecutionContextFactory.getResourceUsage(ctx);
+      Assert.assertNotNull(usage);
+      Future<ResourceUsage> submit = DefaultExecutor.INSTANCE.submit(() -> {
+        ResourceUsage cu;
+        try (ExecutionContext child = FACTORY.startThreadRoot("child", ctx, System.nanoTime(),
+                ctx.getDeadlineNanos(), () -> { })) {
+          cu = ResourceUsageExecutionContextFactory.getResourceUsage(child);
+          burn();
+        }
+        return cu;
+      });
+      childUsage = submit.get();
+      burn();
+    }
+    Assert.assertTrue(childUsage.getAllocatedBytes() >= 0);
+    Assert.assertTrue(usage.getCpuTimeNanos() >= childUsage.getCpuTimeNanos());
+    Assert.assertTrue(usage.getAllocatedBytes() >= childUsage.getAllocatedBytes());
+    Assert.assertTrue(usage.getCpuTimeNanos() > 0);
+    Assert.assertTrue(usage.isComplete());
+  }
+
+  @Test
+  public void testAllocationAttributedToChild() throws InterruptedException, ExecutionException {
+    Assume.assumeTrue(ResourceUsageExecutionContextFactory.getCurrentThreadAllocatedBytes() > 0);
+    long now = System.nanoTime();
+    ResourceUsage usage;
+    ResourceUsage childUsage;
+    try (ExecutionContext ctx = FACTORY.startThreadRoot("testAlloc", null, now,
+            now + TimeUnit.SECONDS.toNanos(10), () -> { })) {
+      usage = ResourceUsageExecutionContextFactory.getResourceUsage(ctx);
+      childUsage = DefaultExecutor.INSTANCE.submit(() -> {
+        try (ExecutionContext child = FACTORY.startThreadRoot("allocChild", ctx, System.nanoTime(),
+                ctx.getDeadlineNanos(), () -> { })) {
+          sink = new byte[MB];
+          return ResourceUsageExecutionContextFactory.getResourceUsage(child);
+        }
+      }).get();
+    }
+    Assert.assertEquals(MB, sink.length);
+    Assert.assertTrue(childUsage.toString(), childUsage.getAllocatedBytes() >= MB);
+    Assert.assertTrue(usage.toString(), usage.getOwnAllocatedBytes() < MB);
+    Assert.assertTrue(usage.toString(), usage.getAllocatedBytes() >= MB);
+  }
+
+  @Test
+  public void testClosedInOtherThreadIsNotMeasured() throws InterruptedException, ExecutionException {
+    long now = System.nanoTime();
+    ExecutionContext ctx = FACTORY.startThreadRoot("testOtherThread", null, now,
+            now + TimeUnit.SECONDS.toNanos(10), () -> { });
+    ResourceUsage usage = ResourceUsageExecutionContextFactory.getResourceUsage(ctx);
+    DefaultExecutor.INSTANCE.submit(ctx::close).get();
+    Assert.assertFalse(usage.isMeasured());
+    Assert.assertFalse(usage.isComplete());
+    Assert.assertEquals(0L, usage.getCpuTimeNanos());
+  }
+
+  private static void burn() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      sb.append(Integer.toString(i));
+    }
+    Assert.assertTrue(sb.length() > 0);
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.perf.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.base.AppendableUtils;
+import org.spf4j.perf.CloseableMeasurementRecorder;
+import org.spf4j.perf.CloseableMeasurementRecorderSource;
+
+/**
+ *
+ * @author Zoltan Farkas
+ */
+public final class MeasurementsSnapshotTest {
+
+  @Test
+  public void testSnapshot() throws IOException {
+    try (CloseableMeasurementRecorder rec = RecorderFactory.createScalableMinMaxAvgRecorder2("snapTest", "ms", 60000);
+         CloseableMeasurementRecorderSource src
+                 = RecorderFactory.createScalableCountingRecorderSource2("snapSrcTest", "count", 60000)) {
+      rec.record(3);
+      rec.record(7);
+      src.getRecorder("a,b").record(5);
+      src.getRecorder("c").record(2);
+      StringBuilder sb = new StringBuilder();
+      MeasurementsSnapshot.writeTo(sb, MeasurementsSnapshot.Format.CSV);
+      String csv = sb.toString();
+      Assert.assertTrue(csv, csv.startsWith("timestamp,entity,measurement,unit,value\n"));
+      Assert.assertTrue(csv, csv.contains(",snapTest,total,ms,10\n"));
+      Assert.assertTrue(csv, csv.contains(",snapTest,max,ms,7\n"));
+      Assert.assertTrue(csv, csv.contains(",\"snapSrcTest/a,b\",total,count,5\n"));
+      Assert.assertTrue(csv, csv.contains(",snapSrcTest/c,total,count,2\n"));
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      MeasurementsSnapshot.writeTo(bos, MeasurementsSnapshot.Format.JSON);
+      String json = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+      Assert.assertTrue(json, json.startsWith("{\"timestamp\":"));
+      Assert.assertTrue(json, json.endsWith("]}"));
+      Assert.assertTrue(json,
+              json.contains("{\"entity\":\"snapSrcTest/a,b\",\"measurements\":{\"count\":{\"unit\":\"count\","
+                      + "\"value\":1},\"total\":{\"unit\":\"count\",\"value\":5}}}"));
+      Assert.assertTrue(MeasurementsSnapshot.getNrLiveRecorders() >= 2);
+    }
+    String csv = MeasurementsSnapshot.getSnapshot("CSV");
+    Assert.assertFalse(csv, csv.contains("snapTest"));
+  }
+
+  @Test
+  public void testSourceCompositeData() {
+    try (ScalableMeasurementRecorderSource src = (ScalableMeasurementRecorderSource)
+            RecorderFactory.createScalableCountingRecorderSource2("compSrcTest", "count", 60000)) {
+      src.getRecorder("a").record(5);
+      src.getRecorder("b").record(2);
+      CompositeDataSupport data = src.getMeasurements();
+      CompositeData a = (CompositeData) data.get("compSrcTest,a");
+      CompositeData b = (CompositeData) data.get("compSrcTest,b");
+      Assert.assertEquals(5L, a.get("total"));
+      Assert.assertEquals(2L, b.get("total"));
+      Assert.assertSame(a.getCompositeType(), b.getCompositeType());
+    }
+  }
+
+  @Test
+  public void testAppendLong() throws IOException {
+    long[] values = {0, 1, -1, 9, 10, 123456789, Long.MAX_VALUE, Long.MIN_VALUE, -1000};
+    for (long val : values) {
+      StringWriter sw = new StringWriter();
+      AppendableUtils.appendLong(sw, val);
+      Assert.assertEquals(Long.toString(val), sw.toString());
+    }
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.perf.memory;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spf4j.stackmonitor.Sampler;
+
+/**
+ * @author Zoltan Farkas
+ */
+@SuppressFBWarnings({"AFBR_ABNORMAL_FINALLY_BLOCK_RETURN", "MDM_THREAD_YIELD", "SA_FIELD_DOUBLE_ASSIGNMENT"})
+public final class GCNotificationSamplerTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GCNotificationSamplerTest.class);
+
+  @SuppressFBWarnings("VO_VOLATILE_REFERENCE_TO_ARRAY") // only used to keep the allocation alive.
+  private volatile byte[] sink;
+
+  @Test
+  public void testGCNotifications() throws InterruptedException, IOException {
+    Sampler sampler = new Sampler(10);
+    sampler.start();
+    try {
+      GCNotificationSampler.start(1000, 0, sampler);
+      Assert.assertTrue(GCNotificationSampler.isStarted());
+      String str = "";
+      for (int i = 0; i < 100000; i++) {
+        str = Integer.toString(i);
+      }
+      LOG.debug("lastNr = {}", str);
+      Assert.assertEquals(-1L, GCNotificationSampler.getLastCollectedBytes());
+      sink = new byte[1024 * 1024];
+      sink = null;
+      System.gc();
+      long deadline = System.currentTimeMillis() + 10000;
+      while (GCNotificationSampler.getLastCollectedBytes() <= 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+      }
+      LOG.debug("last pause = {} ms, collected {} bytes", GCNotificationSampler.getLastPauseMillis(),
+              GCNotificationSampler.getLastCollectedBytes());
+      Assert.assertTrue(GCNotificationSampler.getLastPauseMillis() >= 0);
+      Assert.assertTrue(GCNotificationSampler.getLastCollectedBytes() > 0);
+      GCNotificationSampler.stop();
+      Assert.assertFalse(GCNotificationSampler.isStarted());
+    } finally {
+      sampler.dispose();
+    }
+  }
+
+  @Test
+  public void testIsPause() {
+    Assert.assertTrue(GCNotificationSampler.isPause("end of minor GC", "Allocation Failure"));
+    Assert.assertTrue(GCNotificationSampler.isPause("end of major GC", "System.gc()"));
+    Assert.assertTrue(GCNotificationSampler.isPause("end of GC pause", "Timer"));
+    Assert.assertFalse(GCNotificationSampler.isPause("end of major GC", "No GC"));
+    Assert.assertFalse(GCNotificationSampler.isPause("end of GC cycle", "Allocation Rate"));
+  }
+
+  @Test
+  public void testOldGenPool() {
+    Assert.assertTrue(GCNotificationSampler.isOldGenPool("PS Old Gen"));
+    Assert.assertTrue(GCNotificationSampler.isOldGenPool("Tenured Gen"));
+    Assert.assertFalse(GCNotificationSampler.isOldGenPool("PS Eden Space"));
+  }
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.pool.jdbc;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.recyclable.ObjectCreationException;
+import org.spf4j.recyclable.ObjectDisposeException;
+import org.spf4j.recyclable.RecyclingSupplier;
+
+/**
+ * @author zoly
+ */
+@SuppressFBWarnings({"HARD_CODE_PASSWORD", "SQL_INJECTION_JDBC", "CC_CYCLOMATIC_COMPLEXITY", "MDM_THREAD_YIELD",
+  "OBL_UNSATISFIED_OBLIGATION", "OBL_UNSATISFIED_OBLIGATION_EXCEPTION_EDGE", "ODR_OPEN_DATABASE_RESOURCE",
+  "ODR_OPEN_DATABASE_RESOURCE_EXCEPTION_PATH", "RV_RETURN_VALUE_IGNORED"})
+public final class PooledDataSourceTest {
+
+  private static final String QUERY = "SELECT COUNT(*) FROM TEST_TABLE WHERE ID > ?";
+
+  @Test
+  public void testStatementCache() throws SQLException, ObjectCreationException, ObjectDisposeException,
+          InterruptedException {
+    try (PooledDataSource ds = new PooledDataSource("testStatementCache", 1, 1, new H2Factory("stmtCache"),
+            2, 60000, 0)) {
+      createTable(ds);
+      PreparedStatement raw;
+      try (Connection conn = ds.getConnection()) {
+        PreparedStatement stmt = conn.prepareStatement(QUERY);
+        Assert.assertSame(conn, stmt.getConnection());
+        raw = stmt.unwrap(PreparedStatement.class);
+        stmt.setQueryTimeout(5);
+        stmt.setInt(1, 0);
+        Assert.assertEquals(3, count(stmt));
+        stmt.close();
+        Assert.assertTrue(stmt.isClosed());
+        Assert.assertFalse(raw.isClosed());
+        try {
+          stmt.executeQuery();
+          Assert.fail();
+        } catch (SQLException ex) {
+          // expected
+        }
+      }
+      try (Connection conn = ds.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(QUERY)) {
+        Assert.assertSame(raw, stmt.unwrap(PreparedStatement.class));
+        Assert.assertEquals(0, raw.getQueryTimeout());
+        try {
+          stmt.executeQuery();
+          Assert.fail("parameters must be cleared");
+        } catch (SQLException ex) {
+          // expected
+        }
+        stmt.setInt(1, 1);
+        Assert.assertEquals(2, count(stmt));
+      }
+      // statement failed, must not be reused.
+      Assert.assertTrue(raw.isClosed());
+    }
+  }
+
+  @Test
+  public void testStatementCacheEviction() throws SQLException, ObjectCreationException, ObjectDisposeException,
+          InterruptedException {
+    try (PooledDataSource ds = new PooledDataSource("testStatementCacheEviction", 1, 1,
+            new H2Factory("stmtCacheEviction"), 1, 60000, 0)) {
+      createTable(ds);
+      try (Connection conn = ds.getConnection()) {
+        PreparedStatement stmt1 = conn.prepareStatement(QUERY);
+        PreparedStatement raw1 = stmt1.unwrap(PreparedStatement.class);
+        PreparedStatement stmt2 = conn.prepareStatement(QUERY);
+        PreparedStatement raw2 = stmt2.unwrap(PreparedStatement.class);
+        Assert.assertNotSame(raw1, raw2);
+        stmt1.close();
+        stmt2.close();
+        Assert.assertFalse(raw1.isClosed());
+        Assert.assertTrue("same sql is cached only once", raw2.isClosed());
+        PreparedStatement stmt3 = conn.prepareStatement("SELECT ID FROM TEST_TABLE");
+        PreparedStatement raw3 = stmt3.unwrap(PreparedStatement.class);
+        stmt3.close();
+        Assert.assertTrue("LRU statement must be evicted", raw1.isClosed());
+        Assert.assertFalse(raw3.isClosed());
+      }
+    }
+  }
+
+  @Test
+  public void testConnectionCloseReturnsStatements() throws SQLException, ObjectCreationException,
+          ObjectDisposeException, InterruptedException {
+    try (PooledDataSource ds = new PooledDataSource("testConnectionClose", 1, 1, new H2Factory("connClose"),
+            2, 60000, 0)) {
+      createTable(ds);
+      PreparedStatement stmt;
+      PreparedStatement raw;
+      Connection conn = ds.getConnection();
+      stmt = conn.prepareStatement(QUERY);
+      raw = stmt.unwrap(PreparedStatement.class);
+      conn.close();
+      Assert.assertTrue(conn.isClosed());
+      Assert.assertTrue(stmt.isClosed());
+      try {
+        conn.createStatement();
+        Assert.fail();
+      } catch (SQLException ex) {
+        // expected
+      }
+      try (Connection conn2 = ds.getConnection();
+              PreparedStatement stmt2 = conn2.prepareStatement(QUERY)) {
+        Assert.assertSame(raw, stmt2.unwrap(PreparedStatement.class));
+      }
+    }
+  }
+
+  @Test
+  public void testPlainAndCallableStatements() throws SQLException, ObjectCreationException,
+          ObjectDisposeException, InterruptedException {
+    try (PooledDataSource ds = new PooledDataSource("testPlainAndCallable", 1, 1, new H2Factory("plainCallable"),
+            2, 60000, 0)) {
+      createTable(ds);
+      Connection conn = ds.getConnection();
+      Statement stmt = conn.createStatement();
+      Assert.assertSame(conn, stmt.getConnection());
+      Statement rawStmt = stmt.unwrap(Statement.class);
+      try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM TEST_TABLE")) {
+        Assert.assertTrue(rs.next());
+        Assert.assertEquals(3, rs.getInt(1));
+      }
+      CallableStatement call = conn.prepareCall("CALL ?");
+      Assert.assertSame(conn, call.getConnection());
+      CallableStatement rawCall = call.unwrap(CallableStatement.class);
+      call.setInt(1, 5);
+      Assert.assertEquals(5, count(call));
+      Statement closedStmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      Statement rawClosed = closedStmt.unwrap(Statement.class);
+      closedStmt.close();
+      Assert.assertTrue(rawClosed.isClosed());
+      conn.close();
+      Assert.assertTrue(stmt.isClosed());
+      Assert.assertTrue(rawStmt.isClosed());
+      Assert.assertTrue(call.isClosed());
+      Assert.assertTrue(rawCall.isClosed());
+      try {
+        stmt.getConnection();
+        Assert.fail();
+      } catch (SQLException ex) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testMaxAge() throws SQLException, ObjectCreationException, ObjectDisposeException,
+          InterruptedException {
+    try (PooledDataSource ds = new PooledDataSource("testMaxAge", 1, 1, new H2Factory("maxAge"),
+            2, 60000, 1)) {
+      Connection raw;
+      try (Connection conn = ds.getConnection()) {
+        raw = conn.unwrap(Connection.class);
+      }
+      Thread.sleep(5);
+      try (Connection conn = ds.getConnection()) {
+        Assert.assertNotSame(raw, conn.unwrap(Connection.class));
+      }
+      Assert.assertTrue(raw.isClosed());
+    }
+  }
+
+  @Test
+  public void testIdleValidation() throws SQLException, ObjectCreationException, ObjectDisposeException,
+          InterruptedException {
+    H2Factory factory = new H2Factory("idleValidation");
+    try (PooledDataSource ds = new PooledDataSource("testIdleValidation", 1, 1, factory, 2, 0, 0)) {
+      Connection raw;
+      try (Connection conn = ds.getConnection()) {
+        raw = conn.unwrap(Connection.class);
+      }
+      Assert.assertEquals(1, factory.validations.get());
+      try (Connection conn = ds.getConnection()) {
+        Assert.assertSame(raw, conn.unwrap(Connection.class));
+      }
+      Assert.assertEquals(2, factory.validations.get());
+      factory.failValidations.set(1);
+      try (Connection conn = ds.getConnection()) {
+        Assert.assertNotSame(raw, conn.unwrap(Connection.class));
+      }
+      Assert.assertTrue(raw.isClosed());
+      factory.failValidations.set(1);
+      try (Connection conn = ds.getConnection()) {
+        Assert.assertNotNull(conn);
+      }
+      factory.failValidations.set(2);
+      try {
+        ds.getConnection();
+        Assert.fail("new connection that fails validation");
+      } catch (SQLException ex) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testNoValidationWhenActive() throws SQLException, ObjectCreationException, ObjectDisposeException,
+          InterruptedException {
+    H2Factory factory = new H2Factory("noValidation");
+    try (PooledDataSource ds = new PooledDataSource("testNoValidation", 1, 1, factory, 2, 60000, 0)) {
+      for (int i = 0; i < 10; i++) {
+        try (Connection conn = ds.getConnection()) {
+          Assert.assertTrue(conn.getAutoCommit());
+        }
+      }
+      Assert.assertEquals(0, factory.validations.get());
+    }
+  }
+
+  @Test
+  public void testResultSetStatementClose() throws SQLException, ObjectCreationException, ObjectDisposeException,
+          InterruptedException {
+    try (PooledDataSource ds = new PooledDataSource("testResultSetStatementClose", 1, 1,
+            new H2Factory("rsStmtClose"), 2, 60000, 0)) {
+      createTable(ds);
+      PreparedStatement raw;
+      try (Connection conn = ds.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(QUERY)) {
+        raw = stmt.unwrap(PreparedStatement.class);
+        stmt.setInt(1, 0);
+        try (ResultSet rs = stmt.executeQuery()) {
+          rs.getStatement().close();
+        }
+      }
+      Assert.assertTrue(raw.isClosed());
+      try (Connection conn = ds.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(QUERY)) {
+        Assert.assertNotSame(raw, stmt.unwrap(PreparedStatement.class));
+        stmt.setInt(1, 2);
+        Assert.assertEquals(1, count(stmt));
+      }
+    }
+  }
+
+  @Test
+  public void testStatementFailureValidatesConnection() throws SQLException, ObjectCreationException,
+          ObjectDisposeException, InterruptedException {
+    H2Factory factory = new H2Factory("stmtFailure");
+    try (PooledDataSource ds = new PooledDataSource("testStatementFailure", 1, 1, factory, 2, 60000, 0)) {
+      createTable(ds);
+      Assert.assertEquals(0, factory.validations.get());
+      try (Connection conn = ds.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(QUERY)) {
+        stmt.executeQuery();
+        Assert.fail("parameter not set");
+      } catch (SQLException ex) {
+        // expected
+      }
+      Assert.assertEquals(1, factory.validations.get());
+    }
+  }
+
+  @Test
+  public void testDefaultNamesAreUnique() throws SQLException, ObjectCreationException, ObjectDisposeException,
+          InterruptedException {
+    try (PooledDataSource ds1 = new PooledDataSource(1, 1, new H2Factory("defaultName1"));
+            PooledDataSource ds2 = new PooledDataSource(1, 1, new H2Factory("defaultName2"))) {
+      Assert.assertNotEquals(ds1.getName(), ds2.getName());
+    }
+  }
+
+  private static void createTable(final DataSource ds) throws SQLException {
+    try (Connection conn = ds.getConnection();
+            Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE TEST_TABLE (ID INT PRIMARY KEY)");
+      stmt.execute("INSERT INTO TEST_TABLE VALUES (1), (2), (3)");
+    }
+  }
+
+  private static int count(final PreparedStatement stmt) throws SQLException {
+    try (ResultSet rs = stmt.executeQuery()) {
+      Assert.assertTrue(rs.next());
+      return rs.getInt(1);
+    }
+  }
+
+  private static final class H2Factory implements RecyclingSupplier.Factory<Connection> {
+
+    private final JdbcDataSource ds;
+
+    private final AtomicInteger validations = new AtomicInteger();
+
+    private final AtomicInteger failValidations = new AtomicInteger();
+
+    H2Factory(final String dbName) {
+      ds = new JdbcDataSource();
+      ds.setURL("jdbc:h2:mem:" + dbName + ";DB_CLOSE_DELAY=-1");
+      ds.setUser("sa");
+      ds.setPassword("sa");
+    }
+
+    @Override
+    public Connection create() throws ObjectCreationException {
+      try {
+        return ds.getConnection();
+      } catch (SQLException ex) {
+        throw new ObjectCreationException(ex);
+      }
+    }
+
+    @Override
+    public void dispose(final Connection object) throws ObjectDisposeException {
+      try {
+        object.close();
+      } catch (SQLException ex) {
+        throw new ObjectDisposeException(ex);
+      }
+    }
+
+    @Override
+    public boolean validate(final Connection object, final Exception e) throws SQLException {
+      validations.incrementAndGet();
+      if (failValidations.getAndUpdate((x) -> x > 0 ? x - 1 : 0) > 0) {
+        return false;
+      }
+      return object.isValid(60);
+    }
+  }
+
+}
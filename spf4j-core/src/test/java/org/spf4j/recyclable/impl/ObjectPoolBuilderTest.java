@@ -60,6 +60,10 @@ import org.spf4j.concurrent.LifoThreadPoolExecutorSQP;
 import org.spf4j.failsafe.AsyncRetryExecutor;
 import org.spf4j.failsafe.RetryPolicy;
 import org.spf4j.failsafe.concurrent.RetryExecutor;
+import org.spf4j.test.log.Level;
+import org.spf4j.test.log.LogAssert;
+import org.spf4j.test.log.TestLoggers;
+import org.spf4j.test.matchers.LogMatchers;
 
 /**
  *
@@ -207,6 +211,124 @@ public final class ObjectPoolBuilderTest {
 
   }
 
+  @Test
+  @SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+  public void testBuildLockFree() throws ObjectCreationException, InterruptedException,
+          ObjectBorrowException, TimeoutException, ObjectDisposeException, ExecutionException {
+    RecyclingSupplier<ExpensiveTestObject> pool
+            = new RecyclingSupplierBuilder<>(2, new ExpensiveTestObjectFactory()).lockFree().build();
+    LOG.debug("pool = {}", pool);
+    ExpensiveTestObject object = pool.get();
+    pool.recycle(object, null);
+    Assert.assertSame(object, pool.get());
+    ExpensiveTestObject object2 = pool.get();
+    Assert.assertNotSame(object, object2);
+    Future<ExpensiveTestObject> handedOff = DefaultExecutor.INSTANCE.submit(() -> pool.get());
+    Thread.sleep(50);
+    Assert.assertFalse(handedOff.isDone());
+    pool.recycle(object2, null);
+    Assert.assertSame(object2, handedOff.get());
+    try {
+      pool.recycle(object2, null);
+      pool.recycle(object2, null);
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      // expected, returned twice.
+    }
+    pool.recycle(object, null);
+    pool.dispose();
+    try {
+      pool.get();
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      // expected, pool is disposed.
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testLockFreePoolUseNoFailuresStarvation()
+          throws ObjectCreationException, ObjectBorrowException, InterruptedException,
+          TimeoutException, ObjectReturnException, ObjectDisposeException, ExecutionException {
+    RecyclingSupplier<ExpensiveTestObject> pool
+            = new RecyclingSupplierBuilder<>(1, new ExpensiveTestObjectFactory(1000000, 1000000, 1, 5))
+                    .lockFree().build();
+    runTest(pool, 0, 15000);
+    pool.dispose();
+  }
+
+  @Test(timeout = 20000)
+  public void testLockFreePoolUse()
+          throws ObjectCreationException, ObjectBorrowException, InterruptedException,
+          TimeoutException, ObjectReturnException, ObjectDisposeException, ExecutionException {
+    final RecyclingSupplier<ExpensiveTestObject> pool
+            = new RecyclingSupplierBuilder<>(10, new ExpensiveTestObjectFactory()).lockFree().build();
+    runTest(pool, 0, 10000);
+    try {
+      ExpensiveTestObject.setFailAll(true);
+      pool.dispose();
+      Assert.fail();
+    } catch (ObjectDisposeException ex) {
+      Throwables.writeTo(ex, System.err, Throwables.PackageDetail.SHORT);
+    } finally {
+      ExpensiveTestObject.setFailAll(false);
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testLockFreePoolUseWithMaintenance()
+          throws ObjectCreationException, ObjectBorrowException, InterruptedException,
+          TimeoutException, ObjectReturnException, ObjectDisposeException, ExecutionException {
+    final RecyclingSupplier<ExpensiveTestObject> pool =
+            new RecyclingSupplierBuilder<>(10, new ExpensiveTestObjectFactory())
+            .lockFree().withMaintenance(DefaultScheduler.INSTANCE, 10, false).build();
+    runTest(pool, 5, 20000);
+    try {
+      pool.dispose();
+    } catch (ObjectDisposeException ex) {
+      Throwables.writeTo(ex, System.err, Throwables.PackageDetail.SHORT);
+    }
+  }
+
+  @Test
+  public void testLockFreeUnsupportedOptions() throws ObjectCreationException {
+    try {
+      new RecyclingSupplierBuilder<>(10, new ExpensiveTestObjectFactory()).lockFree().unfair().build();
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      // expected, lock free pools are always fair.
+    }
+    try {
+      new RecyclingSupplierBuilder<>(10, new ExpensiveTestObjectFactory()).lockFree()
+              .withMaintenance(DefaultScheduler.INSTANCE, 10, true).build();
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      // expected, borrowed objects cannot be collected.
+    }
+  }
+
+  @Test
+  public void testLockFreeLeakDetection() throws ObjectCreationException, InterruptedException,
+          ObjectBorrowException, TimeoutException, ObjectDisposeException {
+    RecyclingSupplier<ExpensiveTestObject> pool
+            = new RecyclingSupplierBuilder<>(1, new ExpensiveTestObjectFactory())
+                    .lockFree().withLeakDetection(10).build();
+    ExpensiveTestObject object = pool.get();
+    Thread.sleep(20);
+    try (LogAssert expect = TestLoggers.sys().expect(LockFreeObjectPool.class.getName(), Level.WARN,
+            LogMatchers.hasMessageWithPattern("Possible leak, .* borrowed by .*"));
+         ExecutionContext ctx = ExecutionContexts.start(50, TimeUnit.MILLISECONDS)) {
+      try {
+        pool.get();
+        Assert.fail();
+      } catch (TimeoutException ex) {
+        // expected, the only object has leaked.
+        expect.assertObservation();
+      }
+    }
+    pool.recycle(object);
+    pool.dispose();
+  }
+
   private volatile boolean isDeadlock = false;
 
   private Thread startDeadlockMonitor(final RecyclingSupplier<ExpensiveTestObject> pool,
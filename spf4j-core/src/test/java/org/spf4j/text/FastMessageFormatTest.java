@@ -81,4 +81,15 @@ public class FastMessageFormatTest {
     Assert.assertEquals("pre b, a, $#1,00 suf", sb.toString());
   }
 
+  @Test
+  public void testStaticCachedFormat() throws IOException {
+    Assert.assertEquals(java.text.MessageFormat.format("pre {1}, {0} suf", "a", "b"),
+            MessageFormat.format("pre {1}, {0} suf", "a", "b"));
+    Assert.assertEquals(java.text.MessageFormat.format("pre {1}, {0} suf", "c", "d"),
+            MessageFormat.format("pre {1}, {0} suf", "c", "d"));
+    Assert.assertEquals(java.text.MessageFormat.format("{0,number,#.##} {0}", 1.5),
+            MessageFormat.format("{0,number,#.##} {0}", 1.5));
+    Assert.assertEquals("x: a", MessageFormat.format(new StringBuilder("x: "), "{0}", "a").toString());
+  }
+
 }
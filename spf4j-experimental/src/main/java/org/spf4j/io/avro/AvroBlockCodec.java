@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.io.avro;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.iq80.snappy.Snappy;
+
+/**
+ * Block compression codecs supported by {@link AvroFileWriter}. The codec is stored for every block,
+ * blocks that do not compress well are stored with NONE.
+ *
+ * @author Zoltan Farkas
+ */
+public enum AvroBlockCodec {
+
+  NONE((byte) 0) {
+    @Override
+    public int maxCompressedLength(final int length) {
+      return length;
+    }
+
+    @Override
+    public int compress(final byte[] in, final int off, final int len, final byte[] out, final int outOff) {
+      System.arraycopy(in, off, out, outOff, len);
+      return len;
+    }
+
+    @Override
+    public void decompress(final byte[] in, final int off, final int len, final byte[] out,
+            final int uncompressedLength) throws IOException {
+      if (len != uncompressedLength) {
+        throw new IOException("Invalid uncompressed block size " + len + " expected " + uncompressedLength);
+      }
+      System.arraycopy(in, off, out, 0, len);
+    }
+  },
+  SNAPPY((byte) 1) {
+    @Override
+    public int maxCompressedLength(final int length) {
+      return Snappy.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(final byte[] in, final int off, final int len, final byte[] out, final int outOff) {
+      return Snappy.compress(in, off, len, out, outOff);
+    }
+
+    @Override
+    public void decompress(final byte[] in, final int off, final int len, final byte[] out,
+            final int uncompressedLength) throws IOException {
+      int size = Snappy.uncompress(in, off, len, out, 0);
+      if (size != uncompressedLength) {
+        throw new IOException("Invalid snappy block size " + size + " expected " + uncompressedLength);
+      }
+    }
+  },
+  DEFLATE((byte) 2) {
+    @Override
+    public int maxCompressedLength(final int length) {
+      return length + (length >> 12) + (length >> 14) + (length >> 25) + 64;
+    }
+
+    @Override
+    public int compress(final byte[] in, final int off, final int len, final byte[] out, final int outOff) {
+      Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      try {
+        deflater.setInput(in, off, len);
+        deflater.finish();
+        int size = 0;
+        final int avail = out.length - outOff;
+        while (!deflater.finished()) {
+          if (size >= avail) {
+            // does not fit, will not be smaller than the input.
+            return avail;
+          }
+          size += deflater.deflate(out, outOff + size, avail - size);
+        }
+        return size;
+      } finally {
+        deflater.end();
+      }
+    }
+
+    @Override
+    public void decompress(final byte[] in, final int off, final int len, final byte[] out,
+            final int uncompressedLength) throws IOException {
+      Inflater inflater = new Inflater(true);
+      try {
+        inflater.setInput(in, off, len);
+        int size = 0;
+        while (size < uncompressedLength && !inflater.finished()) {
+          int n = inflater.inflate(out, size, uncompressedLength - size);
+          if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          size += n;
+        }
+        if (size != uncompressedLength) {
+          throw new IOException("Invalid deflate block size " + size + " expected " + uncompressedLength);
+        }
+      } catch (DataFormatException ex) {
+        throw new IOException("Corrupt deflate block", ex);
+      } finally {
+        inflater.end();
+      }
+    }
+  };
+
+  private static final AvroBlockCodec[] BY_ID = {NONE, SNAPPY, DEFLATE};
+
+  private final byte id;
+
+  AvroBlockCodec(final byte id) {
+    this.id = id;
+  }
+
+  public byte getId() {
+    return id;
+  }
+
+  public static AvroBlockCodec fromId(final byte id) throws IOException {
+    if (id < 0 || id >= BY_ID.length) {
+      throw new IOException("Unknown block codec " + id);
+    }
+    return BY_ID[id];
+  }
+
+  /**
+   * @return the default codec, SNAPPY if the (optional) snappy library is available, otherwise DEFLATE.
+   */
+  public static AvroBlockCodec getDefault() {
+    try {
+      Class.forName("org.iq80.snappy.Snappy");
+      return SNAPPY;
+    } catch (ClassNotFoundException ex) {
+      return DEFLATE;
+    }
+  }
+
+  public abstract int maxCompressedLength(int length);
+
+  /**
+   * Compress the input into the output array at outOff, the output must have at least maxCompressedLength
+   * bytes available.
+   * @return the compressed length. A result &gt;= len means the data is not compressible, and the output
+   * must not be used.
+   */
+  public abstract int compress(byte[] in, int off, int len, byte[] out, int outOff);
+
+  public abstract void decompress(byte[] in, int off, int len, byte[] out, int uncompressedLength)
+          throws IOException;
+
+}
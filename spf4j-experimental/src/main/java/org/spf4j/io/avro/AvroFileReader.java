@@ -36,17 +36,30 @@ import com.sun.nio.file.SensitivityWatchEventModifier;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.Closeable;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
@@ -58,11 +71,17 @@ import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificRecord;
 import org.spf4j.concurrent.DefaultExecutor;
+import org.spf4j.io.Crc32C;
 import org.spf4j.io.FSWatchEventSensitivity;
 import org.spf4j.io.MemorizingBufferedInputStream;
 import org.spf4j.tsdb2.avro.Header;
 
 /**
+ * Reader for files written with {@link AvroFileWriter}.
+ *
+ * Records can be read sequentially with {@link #read()}, or block-parallel with {@link #parallelIterator}.
+ * {@link #getBlockDirectory()} and {@link #findBlockStart(long)} allow splitting a file into block ranges
+ * that can be decoded independently with {@link #readBlock(BlockInfo)}.
  *
  * @author zoly
  */
@@ -70,34 +89,211 @@ import org.spf4j.tsdb2.avro.Header;
 @Beta
 public final class AvroFileReader<T extends IndexedRecord> implements Closeable {
 
-  private final MemorizingBufferedInputStream bis;
   private final Header header;
-  private long size;
-  private final BinaryDecoder decoder;
-  private final GenericDatumReader<Object> recordReader;
-  private RandomAccessFile raf;
+  private final byte[] sync;
+  private final long dataStart;
+  private final FileChannel channel;
+  private final GenericDatumReader<T> recordReader;
   private final File file;
+  private long size;
+  private long nextBlockPos;
+  private int blockRemainingRecords;
+  private BinaryDecoder decoder;
 
   public AvroFileReader(final File file, final Schema schema, final Class<T> recordType, final int bufferSize)
           throws IOException {
     this.file = file;
-    final FileInputStream fis = new FileInputStream(file);
-    bis = new MemorizingBufferedInputStream(fis, bufferSize);
-    SpecificDatumReader<Header> reader = new SpecificDatumReader<>(Header.getClassSchema());
-    decoder = DecoderFactory.get().directBinaryDecoder(bis, null);
-    AvroFileWriter.validateType(bis);
-    DataInputStream dis = new DataInputStream(bis);
-    size = dis.readLong();
-    header = reader.read(null, decoder);
+    try (MemorizingBufferedInputStream bis = new MemorizingBufferedInputStream(new FileInputStream(file),
+            bufferSize)) {
+      SpecificDatumReader<Header> reader = new SpecificDatumReader<>(Header.getClassSchema());
+      AvroFileWriter.validateType(bis);
+      DataInputStream dis = new DataInputStream(bis);
+      size = dis.readLong();
+      header = reader.read(null, DecoderFactory.get().directBinaryDecoder(bis, null));
+      sync = new byte[AvroFileWriter.SYNC_SIZE];
+      dis.readFully(sync);
+      dataStart = bis.getReadBytes();
+    }
+    nextBlockPos = dataStart;
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
     if (SpecificRecord.class.isAssignableFrom(recordType)) {
       recordReader = new SpecificDatumReader<>(
               new Schema.Parser().parse(header.getContentSchema()), schema);
     } else {
-      recordReader = new GenericDatumReader(
+      recordReader = new GenericDatumReader<>(
               new Schema.Parser().parse(header.getContentSchema()), schema);
     }
   }
 
+  /**
+   * Block metadata, as stored in the block header.
+   */
+  public static final class BlockInfo {
+
+    private final long position;
+    private final int nrRecords;
+    private final AvroBlockCodec codec;
+    private final int uncompressedSize;
+    private final int compressedSize;
+    private final int crc;
+
+    BlockInfo(final long position, final int nrRecords, final AvroBlockCodec codec,
+            final int uncompressedSize, final int compressedSize, final int crc) {
+      this.position = position;
+      this.nrRecords = nrRecords;
+      this.codec = codec;
+      this.uncompressedSize = uncompressedSize;
+      this.compressedSize = compressedSize;
+      this.crc = crc;
+    }
+
+    public long getPosition() {
+      return position;
+    }
+
+    public int getNrRecords() {
+      return nrRecords;
+    }
+
+    public AvroBlockCodec getCodec() {
+      return codec;
+    }
+
+    public int getUncompressedSize() {
+      return uncompressedSize;
+    }
+
+    public int getCompressedSize() {
+      return compressedSize;
+    }
+
+    /**
+     * @return the file position right after this block.
+     */
+    public long getEnd() {
+      return position + AvroFileWriter.BLOCK_HEADER_SIZE + compressedSize;
+    }
+
+    @Override
+    public String toString() {
+      return "BlockInfo{" + "position=" + position + ", nrRecords=" + nrRecords + ", codec=" + codec
+              + ", uncompressedSize=" + uncompressedSize + ", compressedSize=" + compressedSize + '}';
+    }
+
+  }
+
+  private void readFully(final ByteBuffer buff, final long pos) throws IOException {
+    long p = pos;
+    while (buff.hasRemaining()) {
+      int nr = channel.read(buff, p);
+      if (nr < 0) {
+        throw new EOFException("Unexpected end of " + file + " at " + p);
+      }
+      p += nr;
+    }
+    buff.flip();
+  }
+
+  /**
+   * Read the block header at position.
+   */
+  public BlockInfo readBlockInfo(final long position) throws IOException {
+    ByteBuffer buff = ByteBuffer.allocate(AvroFileWriter.BLOCK_HEADER_SIZE);
+    readFully(buff, position);
+    byte[] marker = new byte[AvroFileWriter.SYNC_SIZE];
+    buff.get(marker);
+    if (!Arrays.equals(marker, sync)) {
+      throw new IOException("Invalid sync marker at " + position + " in " + file);
+    }
+    int nrRecords = buff.getInt();
+    AvroBlockCodec codec = AvroBlockCodec.fromId(buff.get());
+    int uncompressedSize = buff.getInt();
+    int compressedSize = buff.getInt();
+    int crc = buff.getInt();
+    return new BlockInfo(position, nrRecords, codec, uncompressedSize, compressedSize, crc);
+  }
+
+  private byte[] readBlockData(final BlockInfo block) throws IOException {
+    ByteBuffer buff = ByteBuffer.allocate(block.compressedSize);
+    readFully(buff, block.position + AvroFileWriter.BLOCK_HEADER_SIZE);
+    byte[] result = new byte[block.uncompressedSize];
+    block.codec.decompress(buff.array(), 0, block.compressedSize, result, block.uncompressedSize);
+    int crc = Crc32C.maskedCrc32c(result, 0, result.length);
+    if (crc != block.crc) {
+      throw new IOException("Checksum mismatch for " + block + " in " + file);
+    }
+    return result;
+  }
+
+  /**
+   * Read and decode all records of a block. Thread safe, can be used to decode blocks in parallel.
+   */
+  public List<T> readBlock(final BlockInfo block) throws IOException {
+    byte[] data = readBlockData(block);
+    BinaryDecoder dec = DecoderFactory.get().binaryDecoder(data, null);
+    List<T> result = new ArrayList<>(block.nrRecords);
+    for (int i = 0; i < block.nrRecords; i++) {
+      result.add(recordReader.read(null, dec));
+    }
+    return result;
+  }
+
+  /**
+   * @return the list of all blocks, built from the block headers only (no block data is read).
+   */
+  public List<BlockInfo> getBlockDirectory() throws IOException {
+    long end = getSize();
+    List<BlockInfo> result = new ArrayList<>();
+    long pos = dataStart;
+    while (pos < end) {
+      BlockInfo block = readBlockInfo(pos);
+      result.add(block);
+      pos = block.getEnd();
+    }
+    return result;
+  }
+
+  /**
+   * Find the first block that starts at or after the provided file position. Useful to split a file in ranges
+   * for parallel processing: range [a, b) will contain the blocks starting
+   * from findBlockStart(a) to findBlockStart(b) (exclusive).
+   *
+   * @param from the file position to start searching from.
+   * @return the position of the first block starting at or after from, or the data end if there is none.
+   */
+  public long findBlockStart(final long from) throws IOException {
+    long end = getSize();
+    long pos = Math.max(from, dataStart);
+    if (pos >= end) {
+      return end;
+    }
+    final int syncSize = AvroFileWriter.SYNC_SIZE;
+    ByteBuffer buff = ByteBuffer.allocate(8192);
+    byte[] arr = buff.array();
+    while (pos + syncSize <= end) {
+      buff.clear();
+      buff.limit((int) Math.min(arr.length, end - pos));
+      readFully(buff, pos);
+      int limit = buff.limit() - syncSize;
+      for (int i = 0; i <= limit; i++) {
+        if (matchesSync(arr, i)) {
+          return pos + i;
+        }
+      }
+      pos += limit + 1;
+    }
+    return end;
+  }
+
+  private boolean matchesSync(final byte[] arr, final int from) {
+    for (int j = 0; j < sync.length; j++) {
+      if (arr[from + j] != sync[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * method useful when implementing tailing.
    *
@@ -105,31 +301,120 @@ public final class AvroFileReader<T extends IndexedRecord> implements Closeable
    * @throws IOException
    */
   public synchronized boolean reReadSize() throws IOException {
-    if (raf == null) {
-      raf = new RandomAccessFile(file, "r");
-    }
-    raf.seek(AvroFileWriter.MAGIC.length);
+    ByteBuffer buff = ByteBuffer.allocate(8);
+    readFully(buff, AvroFileWriter.MAGIC.length);
     long old = size;
-    size = raf.readLong();
+    size = buff.getLong();
     return size != old;
   }
 
   @Nullable
   public synchronized T read() throws IOException {
-    final long position = bis.getReadBytes();
-    if (position >= size) {
-      return null;
+    while (blockRemainingRecords <= 0) {
+      if (nextBlockPos >= size) {
+        return null;
+      }
+      BlockInfo block = readBlockInfo(nextBlockPos);
+      decoder = DecoderFactory.get().binaryDecoder(readBlockData(block), decoder);
+      blockRemainingRecords = block.nrRecords;
+      nextBlockPos = block.getEnd();
     }
-    return (T) recordReader.read(null, decoder);
+    blockRemainingRecords--;
+    return recordReader.read(null, decoder);
   }
 
-  @Override
-  public synchronized void close() throws IOException {
-    try (InputStream is = bis) {
-      if (raf != null) {
-        raf.close();
+  /**
+   * Iterate through all records currently in the file, decoding blocks in parallel in the common fork join pool.
+   */
+  public Iterator<T> parallelIterator() {
+    return parallelIterator(ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Iterate through all records currently in the file, decoding blocks in parallel.
+   * Records are returned in file order. IO errors are thrown as UncheckedIOException.
+   *
+   * @param exec the executor to decode blocks with.
+   * @param readAhead the maximum number of blocks decoded ahead of the consumer.
+   */
+  public Iterator<T> parallelIterator(final Executor exec, final int readAhead) {
+    if (readAhead < 1) {
+      throw new IllegalArgumentException("Invalid readAhead " + readAhead);
+    }
+    return new ParallelIterator(exec, readAhead, dataStart, getSize());
+  }
+
+  private final class ParallelIterator implements Iterator<T> {
+
+    private final Executor exec;
+    private final int readAhead;
+    private final long end;
+    private final ArrayDeque<CompletableFuture<List<T>>> decoding;
+    private long pos;
+    private Iterator<T> current;
+
+    ParallelIterator(final Executor exec, final int readAhead, final long start, final long end) {
+      this.exec = exec;
+      this.readAhead = readAhead;
+      this.end = end;
+      this.pos = start;
+      this.decoding = new ArrayDeque<>(readAhead);
+      this.current = null;
+    }
+
+    private void schedule() {
+      while (decoding.size() < readAhead && pos < end) {
+        final BlockInfo block;
+        try {
+          block = readBlockInfo(pos);
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+        pos = block.getEnd();
+        decoding.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return readBlock(block);
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        }, exec));
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (current == null || !current.hasNext()) {
+        schedule();
+        CompletableFuture<List<T>> next = decoding.poll();
+        if (next == null) {
+          return false;
+        }
+        try {
+          current = next.join().iterator();
+        } catch (CompletionException ex) {
+          Throwable cause = ex.getCause();
+          if (cause instanceof UncheckedIOException) {
+            throw (UncheckedIOException) cause;
+          }
+          throw new UncheckedIOException(new IOException("Failed to decode block", cause));
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
       }
+      return current.next();
     }
+
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    channel.close();
   }
 
   public synchronized long getSize() {
@@ -167,7 +452,7 @@ public final class AvroFileReader<T extends IndexedRecord> implements Closeable
 
   }
 
-  public interface SowAndSubscribeHandler<T, E extends Exception> extends SowHandler {
+  public interface SowAndSubscribeHandler<T, E extends Exception> extends SowHandler<T, E> {
 
     void sowEnd();
 
@@ -201,7 +486,7 @@ public final class AvroFileReader<T extends IndexedRecord> implements Closeable
     }
     final Path path = file.getParentFile().toPath();
     try (WatchService watchService = path.getFileSystem().newWatchService()) {
-      path.register(watchService, new WatchEvent.Kind[]{StandardWatchEventKinds.ENTRY_MODIFY,
+      path.register(watchService, new WatchEvent.Kind<?>[]{StandardWatchEventKinds.ENTRY_MODIFY,
         StandardWatchEventKinds.OVERFLOW
       }, sensitivity);
       readAll(handler);
@@ -245,7 +530,7 @@ public final class AvroFileReader<T extends IndexedRecord> implements Closeable
 
   @Override
   public String toString() {
-    return "AvroFileReader{" + "size=" + size + ", raf=" + raf + ", file=" + file + '}';
+    return "AvroFileReader{" + "size=" + size + ", file=" + file + '}';
   }
 
 }
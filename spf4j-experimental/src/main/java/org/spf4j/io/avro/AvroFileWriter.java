@@ -43,10 +43,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.IndexedRecord;
@@ -58,39 +63,73 @@ import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificDatumWriter;
 import org.apache.avro.specific.SpecificRecord;
 import org.spf4j.base.Strings;
+import org.spf4j.concurrent.DefaultExecutor;
 import org.spf4j.io.BufferedInputStream;
 import org.spf4j.io.ByteArrayBuilder;
+import org.spf4j.io.Crc32C;
 import org.spf4j.recyclable.impl.ArraySuppliers;
 import org.spf4j.tsdb2.avro.Header;
 
 /**
- * File format to sequentially write Avro records.
+ * File format to sequentially write Avro records in compressed blocks.
  * Format:
  *
- * AVROZ[ptr LastFrameEnd][Header][Snappy Frame]....[Snappy Frame]
+ * AVROZ[ptr LastBlockEnd][Header][Sync Marker][Block]....[Block]
  *
- * Snappy frame detail: https://github.com/google/snappy/blob/master/framing_format.txt
+ * Block: [Sync Marker(16)][nrRecords int][codec byte][uncompressed size int][compressed size int]
+ * [masked crc32c of the uncompressed data int][compressed data]
+ *
+ * The sync marker before each block allows a reader to find block boundaries from any file position
+ * (file splitting), and the block headers allow building a block directory without decoding the data.
+ *
+ * Records are encoded on the producer thread, block compression and writing to disk are done asynchronously
+ * (blocks are written in order), with at most 4 blocks in flight.
  *
  * @author zoly
  */
 @Beta
 public final class AvroFileWriter<T extends IndexedRecord> implements Closeable, Flushable {
 
+  static final byte[] MAGIC = Strings.toUtf8("AVROZ");
+
+  static final int SYNC_SIZE = 16;
+
+  static final int BLOCK_HEADER_SIZE = SYNC_SIZE + 17;
+
+  private static final int MAX_PENDING_BLOCKS = 4;
+
   private final File file;
   private final FileChannel channel;
-  private final BinaryEncoder encoder;
   private final Header header;
+  private final byte[] sync;
   private final GenericDatumWriter<Object> recordWriter;
-  private final List<T> writeBlocks;
   private final int maxRowsPerBlock;
   private final RandomAccessFile raf;
-
-  static final byte[] MAGIC = Strings.toUtf8("AVROZ");
-  private final ByteArrayBuilder bab;
+  private final AvroBlockCodec codec;
+  private final Executor executor;
+  private final ArrayDeque<CompletableFuture<Void>> pending;
+  private ByteArrayBuilder bab;
+  private BinaryEncoder encoder;
+  private int nrRecords;
+  private CompletableFuture<Void> lastWrite;
+  /** the next block write position, used only by the (ordered) block writes. */
+  private long filePos;
 
   @CreatesObligation
   public AvroFileWriter(final File file, final Schema schema, final Class<?> objectType,
           final int maxRowsPerBlock, final String description, final boolean append) throws IOException {
+    this(file, schema, objectType, maxRowsPerBlock, description, append,
+            AvroBlockCodec.getDefault(), DefaultExecutor.INSTANCE);
+  }
+
+  /**
+   * @param codec the block compression codec.
+   * @param executor the executor to compress and write blocks with.
+   */
+  @CreatesObligation
+  public AvroFileWriter(final File file, final Schema schema, final Class<?> objectType,
+          final int maxRowsPerBlock, final String description, final boolean append,
+          final AvroBlockCodec codec, final Executor executor) throws IOException {
     if (SpecificRecord.class.isAssignableFrom(objectType)) {
       recordWriter = new SpecificDatumWriter<>(schema);
     } else {
@@ -98,7 +137,10 @@ public final class AvroFileWriter<T extends IndexedRecord> implements Closeable,
     }
     this.file = file;
     this.maxRowsPerBlock = maxRowsPerBlock;
-    this.writeBlocks = new ArrayList<>(maxRowsPerBlock);
+    this.codec = codec;
+    this.executor = executor;
+    this.pending = new ArrayDeque<>(MAX_PENDING_BLOCKS + 1);
+    this.lastWrite = CompletableFuture.completedFuture(null);
     raf = new RandomAccessFile(file, "rw");
     bab = new ByteArrayBuilder(32768, ArraySuppliers.Bytes.JAVA_NEW);
     encoder = EncoderFactory.get().directBinaryEncoder(bab, null);
@@ -119,15 +161,18 @@ public final class AvroFileWriter<T extends IndexedRecord> implements Closeable,
       SpecificDatumWriter<Header> headerWriter = new SpecificDatumWriter<>(Header.SCHEMA$);
       headerWriter.write(header, encoder);
       encoder.flush();
+      sync = newSyncMarker();
+      bab.write(sync);
       byte[] buffer = bab.getBuffer();
       final int size = bab.size();
       toByteArray(size, buffer, MAGIC.length);
       raf.write(buffer, 0, size);
+      filePos = size;
+      bab.reset();
     } else {
       if (description != null) {
         throw new IllegalArgumentException("Providing description when appending is not allowed for " + file);
       }
-
       try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file));
               DataInputStream dis = new DataInputStream(bis)) {
         validateType(dis);
@@ -135,11 +180,21 @@ public final class AvroFileWriter<T extends IndexedRecord> implements Closeable,
         SpecificDatumReader<Header> reader = new SpecificDatumReader<>(Header.getClassSchema());
         BinaryDecoder directBinaryDecoder = DecoderFactory.get().directBinaryDecoder(dis, null);
         header = reader.read(null, directBinaryDecoder);
-        raf.seek(size);
+        sync = new byte[SYNC_SIZE];
+        dis.readFully(sync);
+        // drop any partially written block.
+        raf.setLength(size);
+        filePos = size;
       }
     }
   }
 
+  private static byte[] newSyncMarker() {
+    UUID uuid = UUID.randomUUID();
+    return ByteBuffer.allocate(SYNC_SIZE).putLong(uuid.getMostSignificantBits())
+            .putLong(uuid.getLeastSignificantBits()).array();
+  }
+
   static void validateType(final InputStream dis) throws IOException {
     byte[] readMagic = new byte[MAGIC.length];
     ByteStreams.readFully(dis, readMagic);
@@ -149,17 +204,93 @@ public final class AvroFileWriter<T extends IndexedRecord> implements Closeable,
   }
 
   public synchronized void write(final T record) throws IOException {
-    writeBlocks.add(record);
-    if (writeBlocks.size() >= maxRowsPerBlock) {
-      flush();
+    recordWriter.write(record, encoder);
+    nrRecords++;
+    if (nrRecords >= maxRowsPerBlock) {
+      submitBlock();
     }
   }
 
+  /**
+   * Hand the current block to the background compression and start a new block.
+   * Will block if there are too many blocks in flight.
+   */
+  private void submitBlock() throws IOException {
+    encoder.flush();
+    final byte[] data = bab.getBuffer();
+    final int size = bab.size();
+    final int nr = nrRecords;
+    bab = new ByteArrayBuilder(Math.max(size, 256), ArraySuppliers.Bytes.JAVA_NEW);
+    encoder = EncoderFactory.get().directBinaryEncoder(bab, encoder);
+    nrRecords = 0;
+    CompletableFuture<ByteBuffer> block = CompletableFuture.supplyAsync(() -> encodeBlock(data, size, nr), executor);
+    lastWrite = lastWrite.thenCombine(block, (v, b) -> {
+      try {
+        writeBlock(b);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+      return null;
+    });
+    pending.add(lastWrite);
+    while (pending.size() > MAX_PENDING_BLOCKS) {
+      await(pending.poll());
+    }
+  }
+
+  private ByteBuffer encodeBlock(final byte[] data, final int size, final int nr) {
+    int crc = Crc32C.maskedCrc32c(data, 0, size);
+    byte[] out = new byte[BLOCK_HEADER_SIZE + Math.max(size, codec.maxCompressedLength(size))];
+    AvroBlockCodec usedCodec = codec;
+    int compressedSize = codec.compress(data, 0, size, out, BLOCK_HEADER_SIZE);
+    if (compressedSize >= size) {
+      usedCodec = AvroBlockCodec.NONE;
+      System.arraycopy(data, 0, out, BLOCK_HEADER_SIZE, size);
+      compressedSize = size;
+    }
+    ByteBuffer result = ByteBuffer.wrap(out, 0, BLOCK_HEADER_SIZE + compressedSize);
+    result.put(sync);
+    result.putInt(nr);
+    result.put(usedCodec.getId());
+    result.putInt(size);
+    result.putInt(compressedSize);
+    result.putInt(crc);
+    result.position(0);
+    return result;
+  }
+
+  private void writeBlock(final ByteBuffer block) throws IOException {
+    long pos = filePos;
+    while (block.hasRemaining()) {
+      pos += channel.write(block, pos);
+    }
+    filePos = pos;
+    ByteBuffer ptr = ByteBuffer.allocate(8).putLong(pos);
+    ptr.flip();
+    long ptrPos = MAGIC.length;
+    while (ptr.hasRemaining()) {
+      ptrPos += channel.write(ptr, ptrPos);
+    }
+  }
+
+  private static void await(final CompletableFuture<Void> future) throws IOException {
+    try {
+      future.join();
+    } catch (CompletionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      }
+      throw new IOException("Failed to write block", cause);
+    }
+  }
 
   @Override
   public synchronized void close() throws IOException {
-    try (RandomAccessFile f = raf) {
+    try {
       flush();
+    } finally {
+      raf.close();
     }
   }
 
@@ -167,6 +298,10 @@ public final class AvroFileWriter<T extends IndexedRecord> implements Closeable,
     return file;
   }
 
+  public AvroBlockCodec getCodec() {
+    return codec;
+  }
+
   public static void toByteArray(final long pvalue, final byte[] bytes, final int idx) {
     long value = pvalue;
     for (int i = idx + 7; i >= idx; i--) {
@@ -184,36 +319,19 @@ public final class AvroFileWriter<T extends IndexedRecord> implements Closeable,
   }
 
   /**
-   * Commits the data to disk.
+   * Commits the data to disk, waits until all blocks are compressed and written.
    *
    * @throws IOException
    */
   @Override
   public synchronized void flush() throws IOException {
-    int nrRecords = writeBlocks.size();
     if (nrRecords > 0) {
-      bab.reset();
-      for (T obj : writeBlocks) {
-        this.recordWriter.write(obj, this.encoder);
-      }
-      int bsize = bab.size();
-
-      raf.writeInt(nrRecords);
-      raf.writeInt(bsize);
-      raf.write(bab.getBuffer(), 0, bsize);
-      encoder.flush();
-      channel.force(true);
-      updateEOFPtrPointer();
-      writeBlocks.clear();
-      channel.force(true);
+      submitBlock();
     }
-  }
-
-  private void updateEOFPtrPointer() throws IOException {
-    long filePointer = raf.getFilePointer();
-    raf.seek(MAGIC.length);
-    raf.writeLong(filePointer);
-    raf.seek(filePointer);
+    while (!pending.isEmpty()) {
+      await(pending.poll());
+    }
+    channel.force(true);
   }
 
   public Header getHeader() {
@@ -222,7 +340,7 @@ public final class AvroFileWriter<T extends IndexedRecord> implements Closeable,
 
   @Override
   public String toString() {
-    return "AVROFileWriter{" + "file=" + file + ", raf=" + raf + '}';
+    return "AVROFileWriter{" + "file=" + file + ", raf=" + raf + ", codec=" + codec + '}';
   }
 
 }
@@ -37,6 +37,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.function.IntFunction;
 import org.iq80.snappy.Snappy;
+import org.spf4j.io.Crc32C;
 import org.spf4j.recyclable.impl.ArraySuppliers;
 
 /**
@@ -33,6 +33,9 @@ package org.spf4j.io.avro;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Assert;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
@@ -60,7 +63,7 @@ public class AvroFileReaderTest {
     record.put("someString", "test string");
     writer.write(record);
     GenericRecord record2 = new GenericData.Record(record, true);
-    record2.put("number", 1);
+    record2.put("number", 1.0);
     writer.write(record2);
     writer.close();
 
@@ -73,4 +76,63 @@ public class AvroFileReaderTest {
 
   }
 
+  @Test
+  public void testMultiBlockWriteRead() throws IOException {
+    testMultiBlockWriteRead(AvroBlockCodec.SNAPPY);
+    testMultiBlockWriteRead(AvroBlockCodec.DEFLATE);
+    testMultiBlockWriteRead(AvroBlockCodec.NONE);
+  }
+
+  private static void testMultiBlockWriteRead(final AvroBlockCodec codec) throws IOException {
+    Schema schema = SchemaBuilder.builder().record("TestRecord").fields()
+            .requiredDouble("number")
+            .requiredString("someString").endRecord();
+    File file = File.createTempFile("temp", ".tavro");
+    file.deleteOnExit();
+    try (AvroFileWriter<GenericRecord> writer = new AvroFileWriter<>(file, schema, GenericRecord.class, 100,
+            "test records", false, codec, ForkJoinPool.commonPool())) {
+      for (int i = 0; i < 1050; i++) {
+        GenericData.Record record = new GenericData.Record(schema);
+        record.put("number", (double) i);
+        record.put("someString", "test string " + i);
+        writer.write(record);
+      }
+    }
+    try (AvroFileWriter<GenericRecord> writer = new AvroFileWriter<>(file, schema, GenericRecord.class, 100,
+            null, true, codec, ForkJoinPool.commonPool())) {
+      GenericData.Record record = new GenericData.Record(schema);
+      record.put("number", 1050.0);
+      record.put("someString", "test string 1050");
+      writer.write(record);
+    }
+    try (AvroFileReader<GenericRecord> reader = new AvroFileReader<>(file, schema, GenericRecord.class, 8192)) {
+      for (int i = 0; i <= 1050; i++) {
+        GenericRecord read = reader.read();
+        Assert.assertEquals(i, (double) read.get("number"), 0.0001);
+        Assert.assertEquals("test string " + i, read.get("someString").toString());
+      }
+      Assert.assertNull(reader.read());
+      Iterator<GenericRecord> it = reader.parallelIterator(ForkJoinPool.commonPool(), 3);
+      int i = 0;
+      while (it.hasNext()) {
+        Assert.assertEquals(i++, (double) it.next().get("number"), 0.0001);
+      }
+      Assert.assertEquals(1051, i);
+      List<AvroFileReader.BlockInfo> blocks = reader.getBlockDirectory();
+      Assert.assertEquals(12, blocks.size());
+      AvroFileReader.BlockInfo first = blocks.get(0);
+      AvroFileReader.BlockInfo second = blocks.get(1);
+      Assert.assertEquals(first.getPosition(), reader.findBlockStart(0));
+      Assert.assertEquals(second.getPosition(), reader.findBlockStart(first.getPosition() + 1));
+      Assert.assertEquals(reader.getSize(), reader.findBlockStart(blocks.get(11).getPosition() + 1));
+      List<GenericRecord> secondRecords = reader.readBlock(second);
+      Assert.assertEquals(100, secondRecords.size());
+      Assert.assertEquals(100, (double) secondRecords.get(0).get("number"), 0.0001);
+      if (codec != AvroBlockCodec.NONE) {
+        Assert.assertEquals(codec, second.getCodec());
+        Assert.assertTrue(second.getCompressedSize() < second.getUncompressedSize());
+      }
+    }
+  }
+
 }
@@ -51,7 +51,12 @@ public final class ABS extends Instruction {
     @Override
     public int execute(final ExecutionContext context)
             throws ExecutionException, SuspendedException {
-        Number nr = (Number) context.popSyncStackVal();
+        context.push(abs((Number) context.popSyncStackVal()));
+        return 1;
+    }
+
+    public static Number abs(final Number number) {
+        Number nr = number;
         if (nr instanceof Integer) {
             int integer = ((Integer) nr);
             if (integer < 0) {
@@ -74,8 +79,7 @@ public final class ABS extends Instruction {
             BigInteger val = ((BigInteger) nr);
             nr = val.abs();
         }
-        context.push(nr);
-        return 1;
+        return nr;
     }
 
     @Override
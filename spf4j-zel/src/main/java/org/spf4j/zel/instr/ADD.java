@@ -32,14 +32,13 @@
 package org.spf4j.zel.instr;
 
 import java.util.concurrent.ExecutionException;
-import org.spf4j.base.Arrays;
 import org.spf4j.zel.operators.Operator;
 import org.spf4j.zel.operators.Operators;
 import org.spf4j.zel.vm.ExecutionContext;
 import org.spf4j.zel.vm.SuspendedException;
 
 
-public final class ADD extends Instruction {
+public final class ADD extends ArithmeticInstruction {
 
     private static final long serialVersionUID = 6127414006563169983L;
 
@@ -48,18 +47,28 @@ public final class ADD extends Instruction {
     private ADD() {
     }
 
+    /**
+     * replaces this instruction with a inline caching instruction on first execution at a code site.
+     */
     @Override
     public int execute(final ExecutionContext context)
             throws SuspendedException, ExecutionException {
-        final Object[] vals = context.tuple();
-        context.popSyncStackVals(vals);
-        context.push(Operators.apply(Operator.Enum.Add, vals[0], vals[1]));
-        return 1;
+        return context.replaceInstruction(forSite()).execute(context);
     }
 
     @Override
-    public Object[] getParameters() {
-        return Arrays.EMPTY_OBJ_ARRAY;
+    public Operator.Enum getOperator() {
+        return Operator.Enum.Add;
+    }
+
+    @Override
+    public Object apply(final Object a, final Object b) {
+        return Operators.apply(Operator.Enum.Add, a, b);
+    }
+
+    @Override
+    public ArithmeticInstruction forSite() {
+        return new ARITH(Operator.Enum.Add);
     }
 
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.instr;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+import org.spf4j.zel.operators.Operator;
+import org.spf4j.zel.operators.Operators;
+import org.spf4j.zel.vm.ExecutionContext;
+import org.spf4j.zel.vm.SuspendedException;
+
+/**
+ * Arithmetic instruction with a monomorphic inline cache: it remembers the operand classes last seen at this code
+ * site together with the resolved operator implementation. Once the same operand classes have been seen
+ * spf4j.zel.specializationThreshold times, the instruction replaces itself with a type specialized one when one
+ * exists.
+ *
+ * Instances hold per site state and must not be shared between code sites.
+ */
+@SuppressFBWarnings("FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY")
+public final class ARITH extends ArithmeticInstruction {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int SPECIALIZATION_THRESHOLD = Integer.getInteger("spf4j.zel.specializationThreshold", 64);
+
+    private final Operator.Enum op;
+
+    private final boolean specialize;
+
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED") // lazily rebuilt.
+    private transient CacheEntry cache;
+
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+    private transient int hits;
+
+    public ARITH(final Operator.Enum op) {
+        this(op, true);
+    }
+
+    /**
+     * @param op the operator.
+     * @param specialize false when the site should stay generic, used after a specialized instruction failed
+     * its type guard so that a polymorphic site does not flip back and forth.
+     */
+    public ARITH(final Operator.Enum op, final boolean specialize) {
+        this.op = op;
+        this.specialize = specialize;
+    }
+
+    @Override
+    public Operator.Enum getOperator() {
+        return op;
+    }
+
+    @Override
+    public Object apply(final Object a, final Object b) {
+        final Class<?> aClass = a.getClass();
+        final Class<?> bClass = b.getClass();
+        CacheEntry entry = cache;
+        if (entry == null || entry.aClass != aClass || entry.bClass != bClass) {
+            Operator<Object, Object, Object> impl = Operators.resolve(op, aClass, bClass);
+            if (impl == null) {
+                return Operators.apply(op, a, b);
+            }
+            entry = new CacheEntry(aClass, bClass, impl);
+            cache = entry;
+            hits = 0;
+        }
+        return entry.operator.op(a, b);
+    }
+
+    @Override
+    public int execute(final ExecutionContext context)
+            throws SuspendedException, ExecutionException {
+        final Object b = context.peekFromTop(0);
+        final Object a = context.peekFromTop(1);
+        final CacheEntry entry = cache;
+        // cached operand classes are numbers, never futures, so a cache hit does not need to sync the operands.
+        if (entry != null && a != null && b != null && entry.aClass == a.getClass() && entry.bClass == b.getClass()) {
+            if (specialize && hits < SPECIALIZATION_THRESHOLD && ++hits == SPECIALIZATION_THRESHOLD) {
+                ArithmeticInstruction specialized = specialized(op, entry.aClass, entry.bClass);
+                if (specialized != null) {
+                    context.replaceInstruction(specialized);
+                }
+            }
+            context.replaceTop(2, entry.operator.op(a, b));
+        } else {
+            final Object[] vals = context.tuple();
+            context.popSyncStackVals(vals);
+            context.push(apply(vals[0], vals[1]));
+        }
+        return 1;
+    }
+
+    @Override
+    public Object[] getParameters() {
+        return new Object[] {op};
+    }
+
+    /**
+     * @return the type specialized instruction for the operator and operand classes, null if there is none.
+     */
+    @Nullable
+    public static ArithmeticInstruction specialized(final Operator.Enum op,
+            final Class<?> aClass, final Class<?> bClass) {
+        if (aClass != bClass) {
+            return null;
+        }
+        switch (op) {
+            case Add:
+                return select(aClass, ADD_II.INSTANCE, ADD_LL.INSTANCE, ADD_DD.INSTANCE);
+            case Sub:
+                return select(aClass, SUB_II.INSTANCE, SUB_LL.INSTANCE, SUB_DD.INSTANCE);
+            case Mul:
+                return select(aClass, MUL_II.INSTANCE, MUL_LL.INSTANCE, MUL_DD.INSTANCE);
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    private static ArithmeticInstruction select(final Class<?> clasz, final ArithmeticInstruction intInstr,
+            final ArithmeticInstruction longInstr, final ArithmeticInstruction doubleInstr) {
+        if (clasz == Integer.class) {
+            return intInstr;
+        } else if (clasz == Long.class) {
+            return longInstr;
+        } else if (clasz == Double.class) {
+            return doubleInstr;
+        } else {
+            return null;
+        }
+    }
+
+    private static final class CacheEntry {
+
+        private final Class<?> aClass;
+
+        private final Class<?> bClass;
+
+        private final Operator<Object, Object, Object> operator;
+
+        CacheEntry(final Class<?> aClass, final Class<?> bClass, final Operator<Object, Object, Object> operator) {
+            this.aClass = aClass;
+            this.bClass = bClass;
+            this.operator = operator;
+        }
+    }
+
+}
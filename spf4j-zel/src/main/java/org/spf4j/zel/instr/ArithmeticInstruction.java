@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.instr;
+
+import java.util.concurrent.ExecutionException;
+import org.spf4j.base.Arrays;
+import org.spf4j.zel.operators.Operator;
+import org.spf4j.zel.vm.ExecutionContext;
+import org.spf4j.zel.vm.SuspendedException;
+
+/**
+ * Base for the binary arithmetic instructions.
+ *
+ * The generic instructions emitted by the compiler (ADD, SUB, ...) replace themselves on first execution
+ * with a {@link ARITH} instruction that holds an inline cache for the code site. After the site has seen the same
+ * operand types for a while, the ARITH instruction will replace itself with a type specialized instruction
+ * (ADD_LL, ADD_DD, ...), which will revert to a generic ARITH instruction if its type guard fails.
+ */
+public abstract class ArithmeticInstruction extends Instruction {
+
+    private static final long serialVersionUID = 1L;
+
+    public abstract Operator.Enum getOperator();
+
+    /**
+     * @return a (operator) b.
+     */
+    public abstract Object apply(Object a, Object b);
+
+    /**
+     * @return the instruction to use at a single code site. Instructions that hold site state (inline caches)
+     * return a new instance, all others return themselves.
+     */
+    public ArithmeticInstruction forSite() {
+        return this;
+    }
+
+    @Override
+    public abstract int execute(ExecutionContext context) throws SuspendedException, ExecutionException;
+
+    /**
+     * @return no parameters, instructions that have parameters will override this.
+     */
+    @Override
+    public Object[] getParameters() {
+        return Arrays.EMPTY_OBJ_ARRAY;
+    }
+
+}
@@ -32,10 +32,10 @@
 package org.spf4j.zel.instr;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.ExecutionException;
 import org.spf4j.zel.vm.ExecutionContext;
+import org.spf4j.zel.vm.JavaCallSite;
+import org.spf4j.zel.vm.JavaMethodCall;
 import org.spf4j.zel.vm.Method;
 import org.spf4j.zel.vm.Program;
 import org.spf4j.zel.vm.SuspendedException;
@@ -48,10 +48,26 @@ public final class CALL extends Instruction {
 
     private final int nrParameters;
 
+    // racing lazy initializations are benign, only one of the created call sites will be retained.
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED") // lazily created.
+    private transient volatile JavaCallSite javaCallSite;
+
     public CALL(final int nrParameters) {
         this.nrParameters = nrParameters;
     }
 
+    /**
+     * @return the inline cache of the java method invocations done by this instruction.
+     */
+    public JavaCallSite getJavaCallSite() {
+        JavaCallSite result = javaCallSite;
+        if (result == null) {
+            result = new JavaCallSite();
+            javaCallSite = result;
+        }
+        return result;
+    }
+
     @Override
     @SuppressFBWarnings("ITC_INHERITANCE_TYPE_CHECKING")
     public int execute(final ExecutionContext context)
@@ -65,8 +81,8 @@ public final class CALL extends Instruction {
                 case DETERMINISTIC:
                     nctx = context.getSubProgramContext(p, nrParameters);
                     context.pop();
-                    List<Object> params = getParameters(nctx, nrParameters);
-                    obj = context.getResultCache().getResult(p,  params, nctx::executeSyncOrAsync);
+                    obj = context.getResultCache().getResult(p, nctx.getMem(), nrParameters,
+                            nctx::executeSyncOrAsync);
                     break;
                 case NONDETERMINISTIC:
                         nctx = context.getSubProgramContext(p, nrParameters);
@@ -81,7 +97,11 @@ public final class CALL extends Instruction {
             Object[] parameters = context.popSyncStackVals(nrParameters);
             context.pop();
             try {
-                context.push(((Method) function).invoke(context, parameters));
+                if (function instanceof JavaMethodCall) {
+                    context.push(getJavaCallSite().invoke(context, (JavaMethodCall) function, parameters));
+                } else {
+                    context.push(((Method) function).invoke(context, parameters));
+                }
             } catch (RuntimeException ex) {
                 throw new ZExecutionException("cannot invoke " + function, ex);
             }
@@ -91,14 +111,6 @@ public final class CALL extends Instruction {
         return 1;
     }
 
-  public static List<Object> getParameters(final ExecutionContext nctx, final int nrParameters) {
-    List<Object> params = new ArrayList<>(nrParameters);
-    for (int i = 0; i < nrParameters; i++) {
-      params.add(nctx.localPeek(i));
-    }
-    return params;
-  }
-
     @Override
     public Object[] getParameters() {
         return new Object[] {nrParameters};
@@ -65,8 +65,8 @@ public final class CALLA extends Instruction {
                 case DETERMINISTIC:
                     nctx = context.getSubProgramContext(p, nrParameters);
                     context.pop();
-                    List<Object> params = CALL.getParameters(nctx, nrParameters);
-                    obj = context.getResultCache().getResult(p, params, nctx::executeAsync);
+                    obj = context.getResultCache().getResult(p, nctx.getMem(), nrParameters,
+                            nctx::executeAsync);
                     break;
                 case NONDETERMINISTIC:
                     nctx = context.getSubProgramContext(p, nrParameters);
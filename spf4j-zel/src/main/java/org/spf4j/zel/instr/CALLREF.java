@@ -31,7 +31,6 @@
  */
 package org.spf4j.zel.instr;
 
-import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
 import org.spf4j.zel.vm.AssignableValue;
 import org.spf4j.zel.vm.ExecutionContext;
@@ -82,7 +81,7 @@ public final class CALLREF extends Instruction {
         public void assign(final Object object) throws ExecutionException {
           if (function instanceof Program && ((Program) function).getType() == Program.Type.DETERMINISTIC) {
             context.getResultCache().putPermanentResult((Program) function,
-                      Arrays.asList(parameters), object);
+                      parameters, parameters.length, object);
           } else {
             throw new ZExecutionException("Function " + function  + " must be deterministic to memorize value ");
           }
@@ -98,7 +97,7 @@ public final class CALLREF extends Instruction {
                 switch (p.getType()) {
                     case DETERMINISTIC:
                         nctx = context.getSyncSubProgramContext(p, parameters);
-                        obj = context.getResultCache().getResult(p, Arrays.asList(parameters),
+                        obj = context.getResultCache().getResult(p, parameters, parameters.length,
                                 nctx::call);
 
                         break;
@@ -32,6 +32,8 @@
 package org.spf4j.zel.instr;
 
 import java.util.concurrent.ExecutionException;
+import org.spf4j.zel.operators.IntegerOperators;
+import org.spf4j.zel.operators.LongOperators;
 import org.spf4j.zel.operators.Operator;
 import org.spf4j.zel.operators.Operators;
 import org.spf4j.zel.vm.AssignableValue;
@@ -57,14 +59,27 @@ public final class DEC extends Instruction {
         if (val instanceof AssignableValue) {
             AssignableValue aval = (AssignableValue) val;
             Number nr = (Number) aval.get();
-            Number result = (Number) Operators.apply(Operator.Enum.Sub, nr, 1);
+            Number result = decrement(nr);
             aval.assign(result);
         } else {
-            context.push(Operators.apply(Operator.Enum.Sub, val, 1));
+            context.push(decrement(val));
         }
         return 1;
     }
 
+    /**
+     * @return val - 1, with fast paths for Integer and Long.
+     */
+    public static Number decrement(final Object val) {
+        if (val instanceof Integer) {
+            return IntegerOperators.subtract((Integer) val, 1);
+        } else if (val instanceof Long) {
+            return LongOperators.subtract((Long) val, 1L);
+        } else {
+            return (Number) Operators.apply(Operator.Enum.Sub, val, 1);
+        }
+    }
+
     @Override
     public Object[] getParameters() {
         return org.spf4j.base.Arrays.EMPTY_OBJ_ARRAY;
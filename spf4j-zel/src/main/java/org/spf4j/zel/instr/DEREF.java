@@ -31,6 +31,7 @@
  */
 package org.spf4j.zel.instr;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -58,28 +59,33 @@ public final class DEREF extends Instruction {
     }
 
     static void pushDeref(final Object relativeTo, final Object ref, final ExecutionContext context) {
+        context.push(deref(relativeTo, ref));
+    }
+
+    @SuppressFBWarnings("URV_UNRELATED_RETURN_VALUES")
+    public static Object deref(final Object relativeTo, final Object ref) {
         if (relativeTo instanceof Map) {
-            context.push(((Map) relativeTo).get(ref));
+            return ((Map) relativeTo).get(ref);
         } else if (relativeTo instanceof Object[]) {
             if ("length".equals(ref)) {
-                context.push(((Object[]) relativeTo).length);
+                return ((Object[]) relativeTo).length;
             } else {
-                context.push(((Object[]) relativeTo)[((Number) ref).intValue()]);
+                return ((Object[]) relativeTo)[((Number) ref).intValue()];
             }
         } else if (relativeTo instanceof int[]) {
-            context.push(((int[]) relativeTo)[((Number) ref).intValue()]);
+            return ((int[]) relativeTo)[((Number) ref).intValue()];
         } else if (relativeTo instanceof byte[]) {
-            context.push(((byte[]) relativeTo)[((Number) ref).intValue()]);
+            return ((byte[]) relativeTo)[((Number) ref).intValue()];
         } else if (relativeTo instanceof char[]) {
-            context.push(((char[]) relativeTo)[((Number) ref).intValue()]);
+            return ((char[]) relativeTo)[((Number) ref).intValue()];
         } else if (relativeTo instanceof long[]) {
-            context.push(((long[]) relativeTo)[((Number) ref).intValue()]);
+            return ((long[]) relativeTo)[((Number) ref).intValue()];
         } else if (relativeTo instanceof short[]) {
-            context.push(((short[]) relativeTo)[((Number) ref).intValue()]);
+            return ((short[]) relativeTo)[((Number) ref).intValue()];
         } else if (relativeTo instanceof List) {
-            context.push(((List) relativeTo).get(((Number) ref).intValue()));
+            return ((List) relativeTo).get(((Number) ref).intValue());
         } else {
-            context.push(new JavaMethodCall(relativeTo, (String) ref));
+            return new JavaMethodCall(relativeTo, (String) ref);
         }
     }
 
@@ -55,8 +55,12 @@ public final class DEREFX extends Instruction {
        return 1;
     }
 
+    public Object getRef() {
+        return ref;
+    }
+
     @Override
     public Object[] getParameters() {
-        return org.spf4j.base.Arrays.EMPTY_OBJ_ARRAY;
+        return new Object[] {ref};
     }
 }
@@ -32,13 +32,12 @@
 package org.spf4j.zel.instr;
 
 import java.util.concurrent.ExecutionException;
-import org.spf4j.base.Arrays;
 import org.spf4j.zel.operators.Operator;
 import org.spf4j.zel.vm.ExecutionContext;
 import org.spf4j.zel.operators.Operators;
 import org.spf4j.zel.vm.SuspendedException;
 
-public final class DIV extends Instruction {
+public final class DIV extends ArithmeticInstruction {
 
     private static final long serialVersionUID = -2148283081301406237L;
 
@@ -47,16 +46,27 @@ public final class DIV extends Instruction {
     private DIV() {
     }
 
+    /**
+     * replaces this instruction with a inline caching instruction on first execution at a code site.
+     */
     @Override
-    public int execute(final ExecutionContext context) throws SuspendedException, ExecutionException {
-        final Object[] vals = context.tuple();
-        context.popSyncStackVals(vals);
-        context.push(Operators.apply(Operator.Enum.Div, vals[0], vals[1]));
-        return 1;
+    public int execute(final ExecutionContext context)
+            throws SuspendedException, ExecutionException {
+        return context.replaceInstruction(forSite()).execute(context);
     }
 
     @Override
-    public Object[] getParameters() {
-        return Arrays.EMPTY_OBJ_ARRAY;
+    public Operator.Enum getOperator() {
+        return Operator.Enum.Div;
+    }
+
+    @Override
+    public Object apply(final Object a, final Object b) {
+        return Operators.apply(Operator.Enum.Div, a, b);
+    }
+
+    @Override
+    public ArithmeticInstruction forSite() {
+        return new ARITH(Operator.Enum.Div);
     }
 }
@@ -33,6 +33,8 @@ package org.spf4j.zel.instr;
 
 import java.util.concurrent.ExecutionException;
 import org.spf4j.base.Arrays;
+import org.spf4j.zel.operators.IntegerOperators;
+import org.spf4j.zel.operators.LongOperators;
 import org.spf4j.zel.operators.Operator;
 import org.spf4j.zel.operators.Operators;
 import org.spf4j.zel.vm.AssignableValue;
@@ -58,14 +60,27 @@ public final class INC extends Instruction {
         if (val instanceof AssignableValue) {
             AssignableValue aval = (AssignableValue) val;
             Number nr = (Number) aval.get();
-            Number result = (Number) Operators.apply(Operator.Enum.Add, nr, 1);
+            Number result = increment(nr);
             aval.assign(result);
         } else {
-            context.push(Operators.apply(Operator.Enum.Add, val, 1));
+            context.push(increment(val));
         }
         return 1;
     }
 
+    /**
+     * @return val + 1, with fast paths for Integer and Long.
+     */
+    public static Number increment(final Object val) {
+        if (val instanceof Integer) {
+            return IntegerOperators.add((Integer) val, 1);
+        } else if (val instanceof Long) {
+            return LongOperators.add((Long) val, 1L);
+        } else {
+            return (Number) Operators.apply(Operator.Enum.Add, val, 1);
+        }
+    }
+
     @Override
     public Object[] getParameters() {
         return Arrays.EMPTY_OBJ_ARRAY;
@@ -32,7 +32,6 @@
 package org.spf4j.zel.instr;
 
 import java.util.concurrent.ExecutionException;
-import org.spf4j.base.Arrays;
 import org.spf4j.zel.operators.Operator;
 import org.spf4j.zel.operators.Operators;
 import org.spf4j.zel.vm.ExecutionContext;
@@ -40,7 +39,7 @@ import org.spf4j.zel.vm.SuspendedException;
 
 
 
-public final class MOD extends Instruction {
+public final class MOD extends ArithmeticInstruction {
 
     private static final long serialVersionUID = -8318761232689949542L;
 
@@ -49,17 +48,27 @@ public final class MOD extends Instruction {
     private MOD() {
     }
 
+    /**
+     * replaces this instruction with a inline caching instruction on first execution at a code site.
+     */
     @Override
     public int execute(final ExecutionContext context)
             throws SuspendedException, ExecutionException {
-        final Object[] vals = context.tuple();
-        context.popSyncStackVals(vals);
-        context.push(Operators.apply(Operator.Enum.Mod, vals[0], vals[1]));
-        return 1;
+        return context.replaceInstruction(forSite()).execute(context);
     }
 
     @Override
-    public Object[] getParameters() {
-        return Arrays.EMPTY_OBJ_ARRAY;
+    public Operator.Enum getOperator() {
+        return Operator.Enum.Mod;
+    }
+
+    @Override
+    public Object apply(final Object a, final Object b) {
+        return Operators.apply(Operator.Enum.Mod, a, b);
+    }
+
+    @Override
+    public ArithmeticInstruction forSite() {
+        return new ARITH(Operator.Enum.Mod);
     }
 }
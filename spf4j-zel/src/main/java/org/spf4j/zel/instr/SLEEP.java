@@ -91,10 +91,8 @@ public final class SLEEP extends Instruction {
 
         @Override
         public void run() {
-            Object stuff;
-            do {
-                stuff = context.getExecService().resumeSuspendables(future);
-            } while (stuff == null);
+            future.setResult(null);
+            context.getExecService().resumeSuspendables(future);
         }
     }
 
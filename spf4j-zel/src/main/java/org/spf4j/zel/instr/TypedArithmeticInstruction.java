@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.instr;
+
+import java.util.concurrent.ExecutionException;
+import org.spf4j.zel.operators.Operators;
+import org.spf4j.zel.vm.ExecutionContext;
+import org.spf4j.zel.vm.SuspendedException;
+
+/**
+ * Arithmetic instruction specialized for a pair of operand types. The operand types are guarded,
+ * when the guard fails the instruction replaces itself with a generic (non specializing) {@link ARITH}.
+ */
+public abstract class TypedArithmeticInstruction extends ArithmeticInstruction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @return true if the operands are of the types this instruction is specialized for.
+     */
+    protected abstract boolean accepts(Object a, Object b);
+
+    /**
+     * @return a (operator) b, operands are guaranteed to be accepted.
+     */
+    protected abstract Object applyTyped(Object a, Object b);
+
+    @Override
+    public final Object apply(final Object a, final Object b) {
+        if (accepts(a, b)) {
+            return applyTyped(a, b);
+        } else {
+            return Operators.apply(getOperator(), a, b);
+        }
+    }
+
+    @Override
+    public final int execute(final ExecutionContext context)
+            throws SuspendedException, ExecutionException {
+        final Object b = context.peekFromTop(0);
+        final Object a = context.peekFromTop(1);
+        // the accepted operand types are never futures, so there is no need to sync them.
+        if (accepts(a, b)) {
+            context.replaceTop(2, applyTyped(a, b));
+            return 1;
+        } else {
+            return context.replaceInstruction(new ARITH(getOperator(), false)).execute(context);
+        }
+    }
+
+}
@@ -33,12 +33,13 @@ package org.spf4j.zel.instr.var;
 
 import java.util.Objects;
 import javax.annotation.Nullable;
+import org.spf4j.zel.vm.DeterministicMethod;
 import org.spf4j.zel.vm.ExecutionContext;
 import org.spf4j.zel.vm.Method;
 
 
 
-public final class DECODE implements Method {
+public final class DECODE implements DeterministicMethod {
 
     public static final Method INSTANCE = new DECODE();
 
@@ -32,6 +32,7 @@
 package org.spf4j.zel.instr.var;
 
 
+import org.spf4j.zel.vm.DeterministicMethod;
 import org.spf4j.zel.vm.ExecutionContext;
 import org.spf4j.zel.vm.Method;
 
@@ -39,7 +40,7 @@ import org.spf4j.zel.vm.Method;
  *
  * @author zoly
  */
-public final class INT implements Method {
+public final class INT implements DeterministicMethod {
 
 
     public static final Method INSTANCE = new INT();
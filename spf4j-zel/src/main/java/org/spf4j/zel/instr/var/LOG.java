@@ -31,12 +31,13 @@
  */
 package org.spf4j.zel.instr.var;
 
+import org.spf4j.zel.vm.DeterministicMethod;
 import org.spf4j.zel.vm.ExecutionContext;
 import org.spf4j.zel.vm.Method;
 
 
 
-public final class LOG implements Method {
+public final class LOG implements DeterministicMethod {
 
     public static final Method INSTANCE = new LOG();
   
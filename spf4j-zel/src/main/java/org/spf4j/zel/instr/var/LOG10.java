@@ -31,12 +31,13 @@
  */
 package org.spf4j.zel.instr.var;
 
+import org.spf4j.zel.vm.DeterministicMethod;
 import org.spf4j.zel.vm.ExecutionContext;
 import org.spf4j.zel.vm.Method;
 
 
 
-public final class LOG10 implements Method {
+public final class LOG10 implements DeterministicMethod {
 
     public static final Method INSTANCE = new LOG10();
 
@@ -32,12 +32,13 @@
 package org.spf4j.zel.instr.var;
 
 import org.spf4j.base.Comparables;
+import org.spf4j.zel.vm.DeterministicMethod;
 import org.spf4j.zel.vm.ExecutionContext;
 import org.spf4j.zel.vm.Method;
 
 
 
-public final class MAX implements Method {
+public final class MAX implements DeterministicMethod {
 
     public static final Method INSTANCE = new MAX();
 
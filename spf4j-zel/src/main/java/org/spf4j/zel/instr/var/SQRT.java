@@ -31,10 +31,11 @@
  */
 package org.spf4j.zel.instr.var;
 
+import org.spf4j.zel.vm.DeterministicMethod;
 import org.spf4j.zel.vm.ExecutionContext;
 import org.spf4j.zel.vm.Method;
 
-public final class SQRT implements Method {
+public final class SQRT implements DeterministicMethod {
 
     public static final Method INSTANCE = new SQRT();
 
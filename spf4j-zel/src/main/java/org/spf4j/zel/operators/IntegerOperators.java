@@ -43,6 +43,42 @@ public final class IntegerOperators {
     private IntegerOperators() {
     }
 
+    /**
+     * @return a + b, as a Long if the result overflows int.
+     */
+    public static Number add(final int a, final int b) {
+        long result = (long) a + b;
+        if (result == (int) result) {
+            return (int) result;
+        } else {
+            return result;
+        }
+    }
+
+    /**
+     * @return a - b, as a Long if the result overflows int.
+     */
+    public static Number subtract(final int a, final int b) {
+        long result = (long) a - b;
+        if (result == (int) result) {
+            return (int) result;
+        } else {
+            return result;
+        }
+    }
+
+    /**
+     * @return a * b, as a Long if the result overflows int.
+     */
+    public static Number multiply(final int a, final int b) {
+        long result = (long) a * b;
+        if (result == (int) result) {
+            return (int) result;
+        } else {
+            return result;
+        }
+    }
+
     public static final class Add extends AbstractOps<Integer> {
 
         public Add() {
@@ -51,12 +87,7 @@ public final class IntegerOperators {
 
                 @Override
                 public Number op(final Integer a, final Number b) {
-                    long result = (long) a + b.intValue();
-                    if (result == (int) result) {
-                        return (int) result;
-                    } else {
-                        return result;
-                    }
+                    return add(a, b.intValue());
                 }
             };
             operations.put(Integer.class, isbc);
@@ -67,15 +98,7 @@ public final class IntegerOperators {
 
                 @Override
                 public Number op(final Integer a, final Number b) {
-                    long aa = a;
-                    long bb = (Long) b;
-                    long result = aa + bb;
-                    if ((aa ^ bb) < 0 || (aa ^ result) >= 0) {
-                        return result;
-                    } else {
-                        BigInteger rr = BigInteger.valueOf(bb);
-                        return rr.add(BigInteger.valueOf(aa));
-                    }
+                    return LongOperators.add(a, (Long) b);
                 }
             });
             final Operator<Integer, Number, Number> dfOp = new Operator<Integer, Number, Number>() {
@@ -113,12 +136,7 @@ public final class IntegerOperators {
 
                 @Override
                 public Number op(final Integer a, final Number b) {
-                    long result = (long) a - b.intValue();
-                    if (result == (int) result) {
-                        return (int) result;
-                    } else {
-                        return result;
-                    }
+                    return subtract(a, b.intValue());
                 }
             };
             operations.put(Integer.class, isbc);
@@ -129,15 +147,7 @@ public final class IntegerOperators {
 
                 @Override
                 public Number op(final Integer a, final Number b) {
-                    long aa = a;
-                    long bb = (Long) b;
-                    long result = aa - bb;
-                    if ((aa ^ bb) < 0 || (aa ^ result) >= 0) {
-                        return result;
-                    } else {
-                        BigInteger rr = BigInteger.valueOf(bb);
-                        return rr.add(BigInteger.valueOf(aa));
-                    }
+                    return LongOperators.subtract(a, (Long) b);
                 }
             });
             final Operator<Integer, Number, Number> dfOp = new Operator<Integer, Number, Number>() {
@@ -176,12 +186,7 @@ public final class IntegerOperators {
 
                 @Override
                 public Number op(final Integer a, final Number b) {
-                    long result = (long) a * b.intValue();
-                    if (result == (int) result) {
-                        return (int) result;
-                    } else {
-                        return result;
-                    }
+                    return multiply(a, b.intValue());
                 }
             };
             operations.put(Integer.class, isbc);
@@ -192,24 +197,7 @@ public final class IntegerOperators {
 
                 @Override
                 public Number op(final Integer a, final Number b) {
-                    long aa = a;
-                    long bb = (Long) b;
-                    int leadingZeros = Long.numberOfLeadingZeros(aa) + Long.numberOfLeadingZeros(~aa)
-                            + Long.numberOfLeadingZeros(bb) + Long.numberOfLeadingZeros(~bb);
-                    if (leadingZeros > Long.SIZE + 1) {
-                        return aa * bb;
-                    }
-                    if (leadingZeros < Long.SIZE) {
-                        return BigInteger.valueOf(aa).multiply(BigInteger.valueOf(bb));
-                    }
-                    if (!(aa >= 0 || bb != Long.MIN_VALUE)) {
-                        return BigInteger.valueOf(aa).multiply(BigInteger.valueOf(bb));
-                    }
-                    long tentativeResult = aa * bb;
-                    if (!(aa == 0 || tentativeResult / aa == bb)) {
-                        return BigInteger.valueOf(aa).multiply(BigInteger.valueOf(bb));
-                    }
-                    return tentativeResult;
+                    return LongOperators.multiply(a, (Long) b);
                 }
             });
             final Operator<Integer, Number, Number> dfOp = new Operator<Integer, Number, Number>() {
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.operators;
+
+/**
+ * Boxed Long cache for the values the ZEL arithmetic operators produce most often (loop counters, indexes, small
+ * sums). Long.valueOf only caches [-128, 127], so counting loops would otherwise allocate a new Long per iteration.
+ * The upper bound can be configured with the spf4j.zel.longCacheHigh system property.
+ */
+public final class LongCache {
+
+  private static final int LOW = -1024;
+
+  private static final int HIGH = Math.max(127, Integer.getInteger("spf4j.zel.longCacheHigh", 4095));
+
+  private static final Long[] CACHE = new Long[HIGH - LOW + 1];
+
+  static {
+    for (int i = 0; i < CACHE.length; i++) {
+      CACHE[i] = (long) (i + LOW);
+    }
+  }
+
+  private LongCache() {
+  }
+
+  public static Long valueOf(final long value) {
+    if (value >= LOW && value <= HIGH) {
+      return CACHE[(int) value - LOW];
+    } else {
+      return value;
+    }
+  }
+
+}
@@ -43,6 +43,50 @@ public final class LongOperators {
     private LongOperators() {
     }
 
+    /**
+     * @return a + b, as a BigInteger if the result overflows long.
+     */
+    public static Number add(final long a, final long b) {
+        long result = a + b;
+        if (((a ^ result) & (b ^ result)) < 0) {
+            return BigInteger.valueOf(a).add(BigInteger.valueOf(b));
+        }
+        return LongCache.valueOf(result);
+    }
+
+    /**
+     * @return a - b, as a BigInteger if the result overflows long.
+     */
+    public static Number subtract(final long a, final long b) {
+        long result = a - b;
+        if (((a ^ b) & (a ^ result)) < 0) {
+            return BigInteger.valueOf(a).subtract(BigInteger.valueOf(b));
+        }
+        return LongCache.valueOf(result);
+    }
+
+    /**
+     * @return a * b, as a BigInteger if the result overflows long.
+     */
+    public static Number multiply(final long a, final long b) {
+        int leadingZeros = Long.numberOfLeadingZeros(a) + Long.numberOfLeadingZeros(~a)
+                + Long.numberOfLeadingZeros(b) + Long.numberOfLeadingZeros(~b);
+        if (leadingZeros > Long.SIZE + 1) {
+            return LongCache.valueOf(a * b);
+        }
+        if (leadingZeros < Long.SIZE) {
+            return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b));
+        }
+        if (!(a >= 0 || b != Long.MIN_VALUE)) {
+            return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b));
+        }
+        long result = a * b;
+        if (!(a == 0 || result / a == b)) {
+            return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b));
+        }
+        return LongCache.valueOf(result);
+    }
+
     public static final class Add extends AbstractOps<Long> {
 
         public Add() {
@@ -50,15 +94,8 @@ public final class LongOperators {
             Operator<Long, Number, Number> isbc = new Operator<Long, Number, Number>() {
 
                 @Override
-                public Number op(final Long pa, final Number b) {
-                    long a = pa;
-                    long bb = b.longValue();
-                    long result = a + bb;
-                    if ((a ^ bb) < 0 || (a ^ result) >= 0) {
-                        return result;
-                    } else {
-                        return BigInteger.valueOf(a).add(BigInteger.valueOf(bb));
-                    }
+                public Number op(final Long a, final Number b) {
+                    return add(a, b.longValue());
                 }
             };
             operations.put(Integer.class, isbc);
@@ -99,15 +136,8 @@ public final class LongOperators {
             Operator<Long, Number, Number> isbc = new Operator<Long, Number, Number>() {
 
                 @Override
-                public Number op(final Long pa, final Number b) {
-                    long a = pa;
-                    long bb = b.longValue();
-                    long result = a - bb;
-                    if ((a ^ bb) < 0 || (a ^ result) >= 0) {
-                        return result;
-                    } else {
-                        return BigInteger.valueOf(a).subtract(BigInteger.valueOf(bb));
-                    }
+                public Number op(final Long a, final Number b) {
+                    return subtract(a, b.longValue());
                 }
             };
             operations.put(Integer.class, isbc);
@@ -148,26 +178,8 @@ public final class LongOperators {
             Operator<Long, Number, Number> isbc = new Operator<Long, Number, Number>() {
 
                 @Override
-                public Number op(final Long pa, final Number b) {
-                    long a = pa;
-                    long bb = b.longValue();
-                    int leadingZeros = Long.numberOfLeadingZeros(a) + Long.numberOfLeadingZeros(~a)
-                            + Long.numberOfLeadingZeros(bb) + Long.numberOfLeadingZeros(~bb);
-
-                    if (leadingZeros > Long.SIZE + 1) {
-                        return a * bb;
-                    }
-                    if (leadingZeros < Long.SIZE) {
-                        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(bb));
-                    }
-                    if (!(a >= 0 || bb != Long.MIN_VALUE)) {
-                        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(bb));
-                    }
-                    long result = a * bb;
-                    if (!(a == 0 || result / a == bb)) {
-                        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(bb));
-                    }
-                    return result;
+                public Number op(final Long a, final Number b) {
+                    return multiply(a, b.longValue());
                 }
             };
             operations.put(Integer.class, isbc);
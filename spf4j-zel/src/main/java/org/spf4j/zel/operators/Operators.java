@@ -37,6 +37,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 /**
  *
@@ -91,4 +92,20 @@ public final class Operators {
     return OPS[op.ordinal()].get(a.getClass()).op(a, b);
   }
 
+  /**
+   * Resolve the operator implementation for a pair of operand classes, skipping the 2 map lookups
+   * {@link #apply(org.spf4j.zel.operators.Operator.Enum, java.lang.Object, java.lang.Object)} does on every call.
+   * Used by the instruction inline caches.
+   * @return the operator implementation, or null if there is none for the operand classes.
+   */
+  @Nullable
+  public static Operator<Object, Object, Object> resolve(final Operator.Enum op,
+          final Class<?> aClass, final Class<?> bClass) {
+    Operator<Object, Object, Object> ops = OPS[op.ordinal()].get(aClass);
+    if (ops instanceof AbstractOps) {
+      return (Operator<Object, Object, Object>) ((AbstractOps) ops).operations.get(bClass);
+    }
+    return ops;
+  }
+
 }
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.spf4j.tsdb2.TSDBQuery;
+import org.spf4j.tsdb2.TimeSeries;
+import org.spf4j.tsdb2.avro.TableDef;
+import org.spf4j.zel.instr.HALT;
+import org.spf4j.zel.instr.Instruction;
+import org.spf4j.zel.instr.PUSH;
+import org.spf4j.zel.operators.LongCache;
+
+/**
+ * Evaluates a program over a batch of inputs provided as columns. Column i provides the values of the i-th program
+ * parameter, and can be a long[], double[] or Object[]. Row r of the output column will contain the program
+ * result for the values at row r of the input columns.
+ *
+ * Unlike {@link Program#execute(java.lang.Object...)}, a batch evaluation reuses the execution context, memory
+ * and deterministic function result cache across rows. Large batches can be split across fork join workers,
+ * each worker evaluating a range of rows in its own context. Programs that evaluate to a constant are
+ * not executed at all (constant sub-expressions are folded at compile time when optimized by
+ * {@link ProgramOptimizer}).
+ *
+ * Programs are evaluated synchronously, programs that need to suspend (reading channels) cannot be evaluated.
+ *
+ * example, derive a error rate series from a tsdb table:
+ * <pre>
+ * double[] errorRate = BatchEvaluator.forTable("errors / (total * 1.0)", tableDef).evaluate(timeSeries);
+ * </pre>
+ *
+ * @author zoly
+ */
+@ParametersAreNonnullByDefault
+public final class BatchEvaluator {
+
+  /**
+   * batches smaller than this number of rows are not split across workers.
+   */
+  private static final int MIN_PARALLEL_ROWS = Integer.getInteger("spf4j.zel.batch.minParallelRows", 4096);
+
+  private final Program program;
+
+  @Nullable
+  private final Object constant;
+
+  public BatchEvaluator(final Program program) {
+    this.program = program;
+    this.constant = getConstant(program);
+  }
+
+  /**
+   * Create a evaluator for a expression over the columns of a tsdb table.
+   * @param zExpr the expression, the column names can be used as variables.
+   * @param tableDef the table definition.
+   * @return the evaluator.
+   */
+  public static BatchEvaluator forTable(final String zExpr, final TableDef tableDef) throws CompileException {
+    return new BatchEvaluator(Program.compile(zExpr, TSDBQuery.getColumnNames(tableDef)));
+  }
+
+  @Nullable
+  @SuppressFBWarnings("CLI_CONSTANT_LIST_INDEX")
+  private static Object getConstant(final Program program) {
+    Instruction[] code = program.getInstructions();
+    if (code.length >= 2 && code[1] instanceof HALT && code[0] instanceof PUSH) {
+      Object value = code[0].getParameters()[0];
+      if (value instanceof Number || value instanceof String || value instanceof Boolean) {
+        return value;
+      }
+    }
+    return null;
+  }
+
+  public Program getProgram() {
+    return program;
+  }
+
+  /**
+   * Evaluate the program for every row of a time series. (the program parameters are the table columns)
+   * @param series the time series.
+   * @return the derived series values, NaN for rows where the program does not evaluate to a number.
+   */
+  public double[] evaluate(final TimeSeries series) throws ExecutionException, InterruptedException {
+    final long[][] rows = series.getValues();
+    double[] result = new double[rows.length];
+    evaluate(result.length, (row, mem) -> {
+      long[] values = rows[row];
+      for (int i = 0; i < values.length; i++) {
+        mem[i] = LongCache.valueOf(values[i]);
+      }
+    }, (value, row) -> result[row] = toDouble(value), null);
+    return result;
+  }
+
+  public void evaluate(final Object[] columns, final Object[] result)
+          throws ExecutionException, InterruptedException {
+    evaluate(columns, result, null);
+  }
+
+  /**
+   * Evaluate the program over a batch.
+   * @param columns the input columns (long[], double[], Object[]), one for each program parameter.
+   * @param result the output column, the number of rows evaluated is equal to its length.
+   * @param pool the pool to split the evaluation over, or null to evaluate in the current thread.
+   */
+  public void evaluate(final Object[] columns, final Object[] result, @Nullable final ForkJoinPool pool)
+          throws ExecutionException, InterruptedException {
+    if (constant != null) {
+      Arrays.fill(result, constant);
+      return;
+    }
+    evaluate(result.length, columnsReader(columns, result.length), (value, row) -> result[row] = value, pool);
+  }
+
+  public void evaluate(final Object[] columns, final double[] result)
+          throws ExecutionException, InterruptedException {
+    evaluate(columns, result, null);
+  }
+
+  /**
+   * Evaluate the program over a batch, rows where the program does not evaluate to a number will be NaN.
+   * @param columns the input columns (long[], double[], Object[]), one for each program parameter.
+   * @param result the output column, the number of rows evaluated is equal to its length.
+   * @param pool the pool to split the evaluation over, or null to evaluate in the current thread.
+   */
+  public void evaluate(final Object[] columns, final double[] result, @Nullable final ForkJoinPool pool)
+          throws ExecutionException, InterruptedException {
+    if (constant != null) {
+      Arrays.fill(result, toDouble(constant));
+      return;
+    }
+    evaluate(result.length, columnsReader(columns, result.length),
+            (value, row) -> result[row] = toDouble(value), pool);
+  }
+
+  public void evaluate(final Object[] columns, final long[] result)
+          throws ExecutionException, InterruptedException {
+    evaluate(columns, result, null);
+  }
+
+  /**
+   * Evaluate the program over a batch, the program must evaluate to a number for every row.
+   * @param columns the input columns (long[], double[], Object[]), one for each program parameter.
+   * @param result the output column, the number of rows evaluated is equal to its length.
+   * @param pool the pool to split the evaluation over, or null to evaluate in the current thread.
+   */
+  public void evaluate(final Object[] columns, final long[] result, @Nullable final ForkJoinPool pool)
+          throws ExecutionException, InterruptedException {
+    if (constant != null) {
+      Arrays.fill(result, toLong(constant, 0));
+      return;
+    }
+    evaluate(result.length, columnsReader(columns, result.length),
+            (value, row) -> result[row] = toLong(value, row), pool);
+  }
+
+  private static double toDouble(@Nullable final Object value) {
+    return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+  }
+
+  private static long toLong(@Nullable final Object value, final int row) {
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
+    throw new IllegalStateException("Row " + row + " evaluated to " + value + ", number expected");
+  }
+
+  @SuppressFBWarnings("ITC_INHERITANCE_TYPE_CHECKING")
+  private RowReader columnsReader(final Object[] columns, final int nrRows) {
+    final IntFunction<Object>[] readers = new IntFunction[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      Object column = columns[i];
+      final int length;
+      if (column instanceof long[]) {
+        final long[] values = (long[]) column;
+        length = values.length;
+        readers[i] = (row) -> LongCache.valueOf(values[row]);
+      } else if (column instanceof double[]) {
+        final double[] values = (double[]) column;
+        length = values.length;
+        readers[i] = (row) -> values[row];
+      } else if (column instanceof Object[]) {
+        final Object[] values = (Object[]) column;
+        length = values.length;
+        readers[i] = (row) -> values[row];
+      } else {
+        throw new IllegalArgumentException("Unsupported column " + i + ": " + column);
+      }
+      if (length < nrRows) {
+        throw new IllegalArgumentException("Column " + i + " has " + length + " rows, " + nrRows + " expected");
+      }
+    }
+    if (readers.length > program.getLocalMemSize()) {
+      throw new IllegalArgumentException("Too many columns " + readers.length + " for " + program);
+    }
+    return (row, mem) -> {
+      for (int i = 0; i < readers.length; i++) {
+        mem[i] = readers[i].apply(row);
+      }
+    };
+  }
+
+  @SuppressFBWarnings({"ITC_INHERITANCE_TYPE_CHECKING", "LEST_LOST_EXCEPTION_STACK_TRACE"})
+  private void evaluate(final int nrRows, final RowReader reader, final ObjIntConsumer<Object> writer,
+          @Nullable final ForkJoinPool pool)
+          throws ExecutionException, InterruptedException {
+    final ResultCache resultCache = program.getResultCache();
+    if (pool == null || nrRows < MIN_PARALLEL_ROWS * 2) {
+      evaluate(0, nrRows, reader, writer, resultCache);
+      return;
+    }
+    int chunkSize = Math.max(MIN_PARALLEL_ROWS, nrRows / (pool.getParallelism() * 4) + 1);
+    try {
+      pool.invoke(new RangeEvaluation(0, nrRows, chunkSize, reader, writer, resultCache));
+    } catch (UncheckedExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof ExecutionException) {
+        throw (ExecutionException) cause;
+      } else if (cause instanceof InterruptedException) {
+        throw (InterruptedException) cause;
+      }
+      throw ex;
+    }
+  }
+
+  private void evaluate(final int from, final int to, final RowReader reader, final ObjIntConsumer<Object> writer,
+          @Nullable final ResultCache resultCache)
+          throws ExecutionException, InterruptedException {
+    final Object[] mem = new Object[program.getLocalMemSize()];
+    final ExecutionContext ectx = new ExecutionContext(program, program.getGlobalMem(), mem, resultCache,
+            ProcessIOStreams.DEFAULT, null);
+    for (int row = from; row < to; row++) {
+      Arrays.fill(mem, null);
+      reader.read(row, mem);
+      ectx.reset();
+      Object value;
+      try {
+        value = ectx.call();
+      } catch (SuspendedException ex) {
+        throw new ExecutionException("Suspension not supported in batch evaluation, row " + row + ", " + ectx, ex);
+      } catch (ExecutionException | RuntimeException ex) {
+        throw new ExecutionException("Evaluation failed for row " + row + " of " + program.getName(), ex);
+      }
+      writer.accept(value, row);
+    }
+  }
+
+  @FunctionalInterface
+  private interface RowReader {
+
+    /**
+     * write the values of a row into the program memory.
+     */
+    void read(int row, Object[] mem);
+  }
+
+  @SuppressFBWarnings("SE_BAD_FIELD") // never serialized.
+  private final class RangeEvaluation extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final int chunkSize;
+    private final RowReader reader;
+    private final ObjIntConsumer<Object> writer;
+    private final ResultCache resultCache;
+
+    RangeEvaluation(final int from, final int to, final int chunkSize, final RowReader reader,
+            final ObjIntConsumer<Object> writer, @Nullable final ResultCache resultCache) {
+      this.from = from;
+      this.to = to;
+      this.chunkSize = chunkSize;
+      this.reader = reader;
+      this.writer = writer;
+      this.resultCache = resultCache;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= chunkSize) {
+        try {
+          evaluate(from, to, reader, writer, resultCache);
+        } catch (ExecutionException | InterruptedException ex) {
+          throw new UncheckedExecutionException(ex);
+        }
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new RangeEvaluation(from, mid, chunkSize, reader, writer, resultCache),
+                new RangeEvaluation(mid, to, chunkSize, reader, writer, resultCache));
+      }
+    }
+  }
+
+  @Override
+  @Nonnull
+  public String toString() {
+    return "BatchEvaluator{" + "program=" + program + ", constant=" + constant + '}';
+  }
+
+}
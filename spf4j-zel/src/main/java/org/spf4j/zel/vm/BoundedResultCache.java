@@ -0,0 +1,718 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.spf4j.jmx.JmxExport;
+import org.spf4j.jmx.Registry;
+
+/**
+ * Bounded memoization engine for deterministic functions.
+ *
+ * Every function has its own hash table, where the entries hold the argument tuple together with its precomputed
+ * hash. Lookups compare the arguments in place (the local memory of the callee context), a hit allocates nothing,
+ * and the argument tuple is copied only when a new result is stored.
+ *
+ * Transient results are bounded per function by number of entries (spf4j.zel.resultCache.maxEntriesPerFunction,
+ * default 100000) and estimated weight in bytes (spf4j.zel.resultCache.maxWeightPerFunction, default 64MB), and
+ * the weight of all live caches is bounded by spf4j.zel.resultCache.maxGlobalWeight (default 1/4 of max heap).
+ * When a per function limit is reached, transient results are evicted with a CLOCK (second chance) policy,
+ * when the global limit is reached, new transient results are not memorized.
+ * Permanent results, memorized with the fn(args) = value syntax, are never evicted.
+ *
+ * A function that does not benefit from memoization, with a hit rate below spf4j.zel.resultCache.minHitRate
+ * (default 0.02) after spf4j.zel.resultCache.minSamples (default 10000) misses, will have its transient results
+ * dropped and will be invoked directly from there on.
+ *
+ * The result cache of a {@link Program} is created on first use and shared by all its executions.
+ *
+ * Aggregate statistics are available via JMX (org.spf4j.zel.vm:name=BoundedResultCache), and per function via
+ * {@link #getStats(Program)}.
+ *
+ * @author zoly
+ */
+@ThreadSafe
+public final class BoundedResultCache implements ResultCache {
+
+  private static final int MAX_ENTRIES_PER_FUNCTION =
+          Integer.getInteger("spf4j.zel.resultCache.maxEntriesPerFunction", 100000);
+
+  private static final long MAX_WEIGHT_PER_FUNCTION =
+          Long.getLong("spf4j.zel.resultCache.maxWeightPerFunction", 64L * 1024 * 1024);
+
+  private static final long MAX_GLOBAL_WEIGHT =
+          Long.getLong("spf4j.zel.resultCache.maxGlobalWeight", Runtime.getRuntime().maxMemory() / 4);
+
+  private static final int MIN_SAMPLES = Integer.getInteger("spf4j.zel.resultCache.minSamples", 10000);
+
+  private static final double MIN_HIT_RATE =
+          Double.parseDouble(System.getProperty("spf4j.zel.resultCache.minHitRate", "0.02"));
+
+  private static final int ENTRY_OVERHEAD = 64;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final AtomicLong GLOBAL_WEIGHT = new AtomicLong();
+
+  private static final LongAdder HITS = new LongAdder();
+
+  private static final LongAdder MISSES = new LongAdder();
+
+  private static final LongAdder BYPASSES = new LongAdder();
+
+  private static final LongAdder REJECTIONS = new LongAdder();
+
+  private static final AtomicLong EVICTIONS = new AtomicLong();
+
+  private static final AtomicLong DISABLED = new AtomicLong();
+
+  private static final ReferenceQueue<BoundedResultCache> COLLECTED = new ReferenceQueue<>();
+
+  private static final Set<WeightRelease> LIVE = ConcurrentHashMap.newKeySet();
+
+  static {
+    Registry.export(BoundedResultCache.class);
+  }
+
+  private final ConcurrentMap<Program, Memo> memos;
+
+  private final int maxEntries;
+
+  private final long maxWeight;
+
+  private final AtomicLong weight;
+
+  public BoundedResultCache() {
+    this(MAX_ENTRIES_PER_FUNCTION, MAX_WEIGHT_PER_FUNCTION);
+  }
+
+  /**
+   * @param maxEntries the maximum number of transient results memorized per function.
+   * @param maxWeight the maximum estimated weight (bytes) of the transient results memorized per function.
+   */
+  public BoundedResultCache(final int maxEntries, final long maxWeight) {
+    if (maxEntries < 0 || maxWeight < 0) {
+      throw new IllegalArgumentException("Invalid limits " + maxEntries + ", " + maxWeight);
+    }
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+    this.memos = new ConcurrentHashMap<>(4);
+    this.weight = new AtomicLong();
+    releaseCollected();
+    LIVE.add(new WeightRelease(this, weight));
+  }
+
+  @Override
+  public void putPermanentResult(final Program program, @Nonnull final List<Object> params,
+          @Nullable final Object result) {
+    Object[] args = params.toArray();
+    putPermanentResult(program, args, args.length, result);
+  }
+
+  @Override
+  public void putTransientResult(final Program program, @Nonnull final List<Object> params,
+          @Nullable final Object result) {
+    Object[] args = params.toArray();
+    putTransientResult(program, args, args.length, result);
+  }
+
+  @Override
+  @Nullable
+  public Object getResult(final Program program, @Nonnull final List<Object> params,
+          final Callable<Object> compute) throws ExecutionException {
+    Object[] args = params.toArray();
+    return getResult(program, args, args.length, compute);
+  }
+
+  @Override
+  public void putPermanentResult(final Program program, @Nonnull final Object[] params, final int nrParams,
+          @Nullable final Object result) {
+    getMemo(program).put(Arrays.copyOf(params, nrParams), hash(params, nrParams), mask(result), true);
+  }
+
+  @Override
+  public void putTransientResult(final Program program, @Nonnull final Object[] params, final int nrParams,
+          @Nullable final Object result) {
+    Memo memo = getMemo(program);
+    if (!memo.disabled) {
+      memo.put(Arrays.copyOf(params, nrParams), hash(params, nrParams), mask(result), false);
+    }
+  }
+
+  @Override
+  @Nullable
+  public Object getResult(final Program program, @Nonnull final Object[] params, final int nrParams,
+          final Callable<Object> compute) throws ExecutionException {
+    Memo memo = getMemo(program);
+    int hash = hash(params, nrParams);
+    Entry entry = memo.find(params, nrParams, hash);
+    if (entry != null) {
+      memo.hits.increment();
+      HITS.increment();
+      if (!entry.referenced) {
+        entry.referenced = true;
+      }
+      return unmask(entry.value);
+    }
+    if (memo.disabled) {
+      BYPASSES.increment();
+      return call(compute);
+    }
+    Object[] key = Arrays.copyOf(params, nrParams);
+    Object result = call(compute);
+    return unmask(memo.put(key, hash, mask(result), false));
+  }
+
+  /**
+   * @return the statistics of the memorized results of a function, null if function was never invoked via this cache.
+   */
+  @Nullable
+  public Stats getStats(final Program program) {
+    Memo memo = memos.get(program);
+    return memo == null ? null : memo.getStats();
+  }
+
+  /**
+   * @return the estimated weight (bytes) of all results memorized in this cache.
+   */
+  public long getWeight() {
+    return weight.get();
+  }
+
+  /**
+   * Drop all memorized results, including the permanent ones.
+   */
+  public void clear() {
+    for (Memo memo : memos.values()) {
+      memo.clear();
+    }
+    memos.clear();
+  }
+
+  private Memo getMemo(final Program program) {
+    Memo memo = memos.get(program);
+    if (memo == null) {
+      memo = new Memo();
+      Memo existing = memos.putIfAbsent(program, memo);
+      if (existing != null) {
+        memo = existing;
+      }
+    }
+    return memo;
+  }
+
+  @SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_HAS_CHECKED", "LEST_LOST_EXCEPTION_STACK_TRACE"})
+  private static Object call(final Callable<Object> compute) throws ExecutionException {
+    try {
+      return compute.call();
+    } catch (ExecutionException | RuntimeException ex) {
+      throw ex;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ExecutionException(ex);
+    } catch (Exception ex) {
+      throw new ExecutionException(ex);
+    }
+  }
+
+  private static Object mask(@Nullable final Object result) {
+    return result == null ? NULL : result;
+  }
+
+  @Nullable
+  private static Object unmask(final Object result) {
+    return result == NULL ? null : result;
+  }
+
+  private static int hash(final Object[] params, final int nrParams) {
+    int h = 1;
+    for (int i = 0; i < nrParams; i++) {
+      h = 31 * h + Objects.hashCode(params[i]);
+    }
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return a rough estimate of the retained size of a memorized value.
+   */
+  @SuppressFBWarnings("ITC_INHERITANCE_TYPE_CHECKING")
+  static int weigh(@Nullable final Object obj) {
+    if (obj == null || obj == NULL || obj instanceof Boolean) {
+      return 0;
+    } else if (obj instanceof BigInteger) {
+      return 40 + (((BigInteger) obj).bitLength() >> 3);
+    } else if (obj instanceof BigDecimal) {
+      return 72 + (((BigDecimal) obj).unscaledValue().bitLength() >> 3);
+    } else if (obj instanceof Number) {
+      return 24;
+    } else if (obj instanceof CharSequence) {
+      return 40 + 2 * ((CharSequence) obj).length();
+    } else if (obj instanceof Object[]) {
+      return 16 + 8 * ((Object[]) obj).length;
+    } else {
+      return 32;
+    }
+  }
+
+  private static int weigh(final Object[] key, final Object value) {
+    int result = ENTRY_OVERHEAD + 8 * key.length + weigh(value);
+    for (Object param : key) {
+      result += weigh(param);
+    }
+    return result;
+  }
+
+  private static boolean reserve(final long w) {
+    releaseCollected();
+    long current;
+    do {
+      current = GLOBAL_WEIGHT.get();
+      if (current + w > MAX_GLOBAL_WEIGHT) {
+        return false;
+      }
+    } while (!GLOBAL_WEIGHT.compareAndSet(current, current + w));
+    return true;
+  }
+
+  private static void releaseCollected() {
+    WeightRelease ref;
+    while ((ref = (WeightRelease) COLLECTED.poll()) != null) {
+      LIVE.remove(ref);
+      GLOBAL_WEIGHT.addAndGet(-ref.weight.getAndSet(0));
+    }
+  }
+
+  @JmxExport(description = "number of memorized results returned")
+  public static long getHits() {
+    return HITS.sum();
+  }
+
+  @JmxExport(description = "number of results computed and memorized")
+  public static long getMisses() {
+    return MISSES.sum();
+  }
+
+  @JmxExport(description = "number of results computed for functions that have memoization disabled")
+  public static long getBypasses() {
+    return BYPASSES.sum();
+  }
+
+  @JmxExport(description = "number of results not memorized because the global weight limit was reached")
+  public static long getRejections() {
+    return REJECTIONS.sum();
+  }
+
+  @JmxExport(description = "number of results evicted")
+  public static long getEvictions() {
+    return EVICTIONS.get();
+  }
+
+  @JmxExport(description = "number of functions that had memoization disabled due to a low hit rate")
+  public static long getDisabledFunctions() {
+    return DISABLED.get();
+  }
+
+  @JmxExport(description = "estimated weight (bytes) of the results memorized by all live caches")
+  public static long getGlobalWeight() {
+    releaseCollected();
+    return GLOBAL_WEIGHT.get();
+  }
+
+  @JmxExport(description = "maximum weight (bytes) of the results memorized by all live caches")
+  public static long getMaxGlobalWeight() {
+    return MAX_GLOBAL_WEIGHT;
+  }
+
+  @JmxExport(description = "number of live result caches")
+  public static int getNrLiveCaches() {
+    releaseCollected();
+    return LIVE.size();
+  }
+
+  @Override
+  public String toString() {
+    return "BoundedResultCache{" + "memos=" + memos.size() + ", weight=" + weight + ", maxEntries=" + maxEntries
+            + ", maxWeight=" + maxWeight + '}';
+  }
+
+  /**
+   * Memorized results statistics of a function.
+   */
+  public static final class Stats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int nrEntries;
+    private final int nrPermanentEntries;
+    private final long weight;
+    private final boolean disabled;
+
+    Stats(final long hits, final long misses, final long evictions, final int nrEntries,
+            final int nrPermanentEntries, final long weight, final boolean disabled) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.nrEntries = nrEntries;
+      this.nrPermanentEntries = nrPermanentEntries;
+      this.weight = weight;
+      this.disabled = disabled;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    public double getHitRate() {
+      long total = hits + misses;
+      return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getEvictions() {
+      return evictions;
+    }
+
+    /**
+     * @return the number of memorized results, transient and permanent.
+     */
+    public int getNrEntries() {
+      return nrEntries;
+    }
+
+    public int getNrPermanentEntries() {
+      return nrPermanentEntries;
+    }
+
+    public long getWeight() {
+      return weight;
+    }
+
+    public boolean isDisabled() {
+      return disabled;
+    }
+
+    @Override
+    public String toString() {
+      return "Stats{" + "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+              + ", nrEntries=" + nrEntries + ", nrPermanentEntries=" + nrPermanentEntries
+              + ", weight=" + weight + ", disabled=" + disabled + '}';
+    }
+
+  }
+
+  /**
+   * Memorized result. Entries are never modified, except for the chain link and the CLOCK reference bit;
+   * a removed entry keeps its link to the rest of the chain, so lock free readers never skip entries.
+   */
+  private static final class Entry {
+
+    private final int hash;
+    private final Object[] key;
+    private final Object value;
+    private final int weight;
+    private final boolean permanent;
+    private volatile Entry next;
+    private boolean referenced;
+
+    Entry(final int hash, final Object[] key, final Object value, final int weight, final boolean permanent,
+            @Nullable final Entry next) {
+      this.hash = hash;
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+      this.permanent = permanent;
+      this.next = next;
+    }
+
+    boolean matches(final Object[] params, final int nrParams) {
+      if (key.length != nrParams) {
+        return false;
+      }
+      for (int i = 0; i < nrParams; i++) {
+        if (!Objects.equals(key[i], params[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+  }
+
+  /**
+   * The memorized results of a function. Lookups are lock free, updates are done while holding the monitor.
+   */
+  private final class Memo {
+
+    private final LongAdder hits = new LongAdder();
+
+    private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    private volatile boolean disabled;
+
+    @GuardedBy("this")
+    private int nrEntries;
+
+    @GuardedBy("this")
+    private int nrPermanent;
+
+    @GuardedBy("this")
+    private long transientWeight;
+
+    @GuardedBy("this")
+    private long permanentWeight;
+
+    @GuardedBy("this")
+    private long misses;
+
+    @GuardedBy("this")
+    private long evictions;
+
+    @GuardedBy("this")
+    private int clockHand;
+
+    @Nullable
+    Entry find(final Object[] params, final int nrParams, final int hash) {
+      AtomicReferenceArray<Entry> tab = table;
+      Entry e = tab.get(hash & (tab.length() - 1));
+      while (e != null) {
+        if (e.hash == hash && e.matches(params, nrParams)) {
+          return e;
+        }
+        e = e.next;
+      }
+      return null;
+    }
+
+    /**
+     * Memorize a result, a permanent result replaces any existing result, a transient result will not replace
+     * an existing result, and is not memorized if there is no room for it.
+     * @return the memorized result.
+     */
+    synchronized Object put(final Object[] key, final int hash, final Object value, final boolean permanent) {
+      Entry existing = find(key, key.length, hash);
+      if (existing != null) {
+        if (!permanent) {
+          return existing.value;
+        }
+        remove(existing);
+      }
+      int w = weigh(key, value);
+      if (permanent) {
+        GLOBAL_WEIGHT.addAndGet(w);
+        permanentWeight += w;
+        nrPermanent++;
+      } else {
+        misses++;
+        MISSES.increment();
+        if (disabled || (misses % 1024 == 0 && lowHitRate())) {
+          return value;
+        }
+        while (nrEntries - nrPermanent >= maxEntries || transientWeight + w > maxWeight) {
+          if (!evictOne()) {
+            return value;
+          }
+        }
+        // the global budget is shared with other functions and caches, evicting the results of this function
+        // would only thrash it, the result is not memorized instead.
+        if (!reserve(w)) {
+          REJECTIONS.increment();
+          return value;
+        }
+        transientWeight += w;
+      }
+      weight.addAndGet(w);
+      AtomicReferenceArray<Entry> tab = table;
+      if (nrEntries >= (tab.length() >> 2) * 3) {
+        tab = resize(tab);
+      }
+      int idx = hash & (tab.length() - 1);
+      tab.set(idx, new Entry(hash, key, value, w, permanent, tab.get(idx)));
+      nrEntries++;
+      return value;
+    }
+
+    @GuardedBy("this")
+    private boolean lowHitRate() {
+      long h = hits.sum();
+      if (misses < MIN_SAMPLES || h >= (h + misses) * MIN_HIT_RATE) {
+        return false;
+      }
+      disabled = true;
+      DISABLED.incrementAndGet();
+      retainPermanent();
+      return true;
+    }
+
+    @GuardedBy("this")
+    private AtomicReferenceArray<Entry> resize(final AtomicReferenceArray<Entry> tab) {
+      int oldLength = tab.length();
+      int length = oldLength << 1;
+      AtomicReferenceArray<Entry> newTab = new AtomicReferenceArray<>(length);
+      for (int i = 0; i < oldLength; i++) {
+        for (Entry e = tab.get(i); e != null; e = e.next) {
+          int idx = e.hash & (length - 1);
+          newTab.set(idx, new Entry(e.hash, e.key, e.value, e.weight, e.permanent, newTab.get(idx)));
+        }
+      }
+      table = newTab;
+      clockHand = 0;
+      return newTab;
+    }
+
+    /**
+     * Evict one transient result, giving a second chance to the recently used ones.
+     */
+    @GuardedBy("this")
+    private boolean evictOne() {
+      if (nrEntries == nrPermanent) {
+        return false;
+      }
+      AtomicReferenceArray<Entry> tab = table;
+      int length = tab.length();
+      for (int i = 0, n = length << 1; i <= n; i++) {
+        int idx = clockHand;
+        clockHand = (idx + 1) & (length - 1);
+        for (Entry e = tab.get(idx); e != null; e = e.next) {
+          if (!e.permanent) {
+            if (e.referenced) {
+              e.referenced = false;
+            } else {
+              remove(e);
+              evictions++;
+              EVICTIONS.incrementAndGet();
+              return true;
+            }
+          }
+        }
+      }
+      return false;
+    }
+
+    @GuardedBy("this")
+    private void remove(final Entry entry) {
+      AtomicReferenceArray<Entry> tab = table;
+      int idx = entry.hash & (tab.length() - 1);
+      Entry e = tab.get(idx);
+      if (e == entry) {
+        tab.set(idx, entry.next);
+      } else {
+        while (e.next != entry) {
+          e = e.next;
+        }
+        e.next = entry.next;
+      }
+      nrEntries--;
+      weight.addAndGet(-entry.weight);
+      GLOBAL_WEIGHT.addAndGet(-entry.weight);
+      if (entry.permanent) {
+        nrPermanent--;
+        permanentWeight -= entry.weight;
+      } else {
+        transientWeight -= entry.weight;
+      }
+    }
+
+    @GuardedBy("this")
+    private void retainPermanent() {
+      AtomicReferenceArray<Entry> tab = table;
+      int length = tab.length();
+      AtomicReferenceArray<Entry> newTab = new AtomicReferenceArray<>(length);
+      for (int i = 0; i < length; i++) {
+        for (Entry e = tab.get(i); e != null; e = e.next) {
+          if (e.permanent) {
+            newTab.set(i, new Entry(e.hash, e.key, e.value, e.weight, true, newTab.get(i)));
+          }
+        }
+      }
+      table = newTab;
+      weight.addAndGet(-transientWeight);
+      GLOBAL_WEIGHT.addAndGet(-transientWeight);
+      transientWeight = 0;
+      nrEntries = nrPermanent;
+    }
+
+    synchronized void clear() {
+      long w = transientWeight + permanentWeight;
+      weight.addAndGet(-w);
+      GLOBAL_WEIGHT.addAndGet(-w);
+      table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+      transientWeight = 0;
+      permanentWeight = 0;
+      nrEntries = 0;
+      nrPermanent = 0;
+    }
+
+    synchronized Stats getStats() {
+      return new Stats(hits.sum(), misses, evictions, nrEntries, nrPermanent, transientWeight + permanentWeight,
+              disabled);
+    }
+
+  }
+
+  /**
+   * Returns the weight accounted by a cache to the global budget, once the cache is garbage collected.
+   */
+  private static final class WeightRelease extends PhantomReference<BoundedResultCache> {
+
+    private final AtomicLong weight;
+
+    WeightRelease(final BoundedResultCache referent, final AtomicLong weight) {
+      super(referent, COLLECTED);
+      this.weight = weight;
+    }
+
+  }
+
+}
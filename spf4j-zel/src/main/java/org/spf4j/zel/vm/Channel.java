@@ -32,75 +32,180 @@
 package org.spf4j.zel.vm;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
 
 /**
- * TODO: there is some dumb sync in this class that needs to be reviewed.
+ * Lock free multiple producer, multiple consumer channel.
+ *
+ * Every write and every read takes a ticket from its counter, the n-th write and the n-th read meet in the n-th
+ * cell of a linked list of fixed size segments. The first one to reach the cell leaves its value (or, for a read,
+ * a future), the second one completes the exchange, so no operation waits for its counterpart.
+ * Segments are dropped once all their exchanges are complete.
+ *
+ * The closed state is part of the write counter, so that a write either happens before the close and will be
+ * delivered, or is rejected. Once closed, all readers beyond the last written value will receive EOF.
  *
  * @author zoly
  */
-@SuppressFBWarnings("NOS_NON_OWNED_SYNCHRONIZATION")
+@ThreadSafe
 public final class Channel {
 
   public static final Object EOF = new Object();
 
-  private final Queue<Object> queue;
+  private static final int SEGMENT_SIZE = 32;
 
-  private final Queue<VMFuture<Object>> readers;
+  private static final long CLOSED = 1L << 62;
 
-  private final VMExecutor exec;
+  private static final Object NULL = new Object();
+
+  /**
+   * cell content of a read beyond the last written value of a closed channel.
+   */
+  private static final Object CLOSED_CELL = new Object();
+
+  private static final AtomicReferenceFieldUpdater<Channel, Segment> HEAD =
+          AtomicReferenceFieldUpdater.newUpdater(Channel.class, Segment.class, "head");
+
+  /**
+   * the number of writes, with the CLOSED bit set once closed.
+   */
+  private final AtomicLong writes;
+
+  private final AtomicLong reads;
 
-  private boolean closed;
+  /**
+   * the first segment with incomplete exchanges, or the last complete one.
+   */
+  private volatile Segment head;
+
+  /**
+   * the segment of the last write, where the search for the segment of the next write starts.
+   */
+  private volatile Segment writeSegment;
+
+  /**
+   * the segment of the last read, where the search for the segment of the next read starts.
+   */
+  private volatile Segment readSegment;
+
+  private final VMExecutor exec;
 
   public Channel(final VMExecutor exec) {
-    this.queue = new LinkedList<>();
-    this.readers = new LinkedList<>();
+    this.writes = new AtomicLong();
+    this.reads = new AtomicLong();
+    this.head = new Segment(0);
+    this.writeSegment = head;
+    this.readSegment = head;
     this.exec = exec;
-    this.closed = false;
   }
 
+  /**
+   * @return the next value from this channel, or a VMFuture that will be completed with it.
+   */
   @SuppressFBWarnings("URV_UNRELATED_RETURN_VALUES")
+  @Nullable
   public Object read() {
-    synchronized (this) {
-      Object obj = queue.poll();
-      if (obj == null) {
-        VMASyncFuture<Object> fut = new VMASyncFuture<>();
-        readers.add(fut);
-        return fut;
-      } else {
-        if (obj == EOF) {
-          queue.add(EOF);
-        }
-        return obj;
+    long ticket = reads.getAndIncrement();
+    long w = writes.get();
+    if ((w & CLOSED) != 0 && ticket >= (w & ~CLOSED)) {
+      return EOF;
+    }
+    Segment segment = segment(readSegment, ticket);
+    readSegment = segment;
+    int idx = (int) (ticket % SEGMENT_SIZE);
+    Object cell = segment.get(idx);
+    if (cell == null) {
+      Waiter waiter = new Waiter();
+      if (segment.compareAndSet(idx, null, waiter)) {
+        return waiter.future;
       }
+      cell = segment.get(idx);
     }
+    if (cell == CLOSED_CELL) {
+      return EOF;
+    }
+    complete(segment);
+    return cell == NULL ? null : cell;
   }
 
-  public void write(final Object obj) {
-    synchronized (this) {
-      if (closed) {
+  /**
+   * @param obj the value to write, writing EOF closes the channel.
+   * @throws IllegalStateException if the channel is closed.
+   */
+  public void write(@Nullable final Object obj) {
+    if (obj == EOF) {
+      close();
+      return;
+    }
+    long ticket;
+    do {
+      ticket = writes.get();
+      if ((ticket & CLOSED) != 0) {
         throw new IllegalStateException("Channel is closed, cannot write " + obj + " into it");
       }
-      VMFuture<Object> reader = readers.poll();
-      if (reader != null) {
-        reader.setResult(obj);
-        exec.resumeSuspendables(reader);
-      } else {
-        queue.add(obj);
-      }
+    } while (!writes.compareAndSet(ticket, ticket + 1));
+    Segment segment = segment(writeSegment, ticket);
+    writeSegment = segment;
+    int idx = (int) (ticket % SEGMENT_SIZE);
+    Object value = obj == null ? NULL : obj;
+    if (!segment.compareAndSet(idx, null, value)) {
+      complete(segment);
+      resume(((Waiter) segment.get(idx)).future, obj);
     }
   }
 
+  /**
+   * Close this channel, subsequent writes will fail, readers will receive EOF once all values are read.
+   * Closing a closed channel has no effect.
+   */
   public void close() {
-    synchronized (this) {
-      VMFuture<Object> reader;
-      while ((reader = readers.poll()) != null) {
-        reader.setResult(EOF);
-        exec.resumeSuspendables(reader);
+    long w = writes.getAndUpdate((x) -> x | CLOSED);
+    if ((w & CLOSED) != 0) {
+      return;
+    }
+    // reads beyond the last write, that started before the close.
+    long nrReads = reads.get();
+    for (long ticket = w; ticket < nrReads; ticket++) {
+      Segment segment = segment(head, ticket);
+      int idx = (int) (ticket % SEGMENT_SIZE);
+      if (!segment.compareAndSet(idx, null, CLOSED_CELL)) {
+        resume(((Waiter) segment.get(idx)).future, EOF);
+      }
+    }
+  }
+
+  private void resume(final VMFuture<Object> reader, @Nullable final Object obj) {
+    reader.setResult(obj);
+    exec.resumeSuspendables(reader);
+  }
+
+  /**
+   * @param from the segment to start the search from, the head is used when it is past the ticket.
+   */
+  private Segment segment(final Segment from, final long ticket) {
+    long id = ticket / SEGMENT_SIZE;
+    Segment segment = from.id <= id ? from : head;
+    while (segment.id < id) {
+      segment = segment.next();
+    }
+    return segment;
+  }
+
+  private void complete(final Segment segment) {
+    if (segment.complete()) {
+      while (true) {
+        Segment h = head;
+        Segment next = h.next;
+        if (next == null || !h.isComplete()) {
+          return;
+        }
+        HEAD.compareAndSet(this, h, next);
       }
-      queue.add(EOF);
-      closed = true;
     }
   }
 
@@ -120,7 +225,61 @@ public final class Channel {
 
   @Override
   public String toString() {
-    return "Channel{" + "queue=" + queue + ", readers=" + readers + ", exec=" + exec + ", closed=" + closed + '}';
+    long w = writes.get();
+    return "Channel{" + "writes=" + (w & ~CLOSED) + ", reads=" + reads + ", exec=" + exec
+            + ", closed=" + ((w & CLOSED) != 0) + '}';
+  }
+
+  private static final class Waiter {
+
+    private final VMFuture<Object> future = new VMASyncFuture<>();
+
+  }
+
+  @SuppressFBWarnings("SE_BAD_FIELD") // never serialized.
+  private static final class Segment extends AtomicReferenceArray<Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final AtomicReferenceFieldUpdater<Segment, Segment> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Segment.class, Segment.class, "next");
+
+    private static final AtomicIntegerFieldUpdater<Segment> COMPLETED =
+            AtomicIntegerFieldUpdater.newUpdater(Segment.class, "completed");
+
+    private final long id;
+
+    private volatile Segment next;
+
+    private volatile int completed;
+
+    Segment(final long id) {
+      super(SEGMENT_SIZE);
+      this.id = id;
+    }
+
+    Segment next() {
+      Segment result = next;
+      if (result == null) {
+        result = new Segment(id + 1);
+        if (!NEXT.compareAndSet(this, null, result)) {
+          result = next;
+        }
+      }
+      return result;
+    }
+
+    /**
+     * @return true if this completed the last exchange of the segment.
+     */
+    boolean complete() {
+      return COMPLETED.incrementAndGet(this) == SEGMENT_SIZE;
+    }
+
+    boolean isComplete() {
+      return completed == SEGMENT_SIZE;
+    }
+
   }
 
 }
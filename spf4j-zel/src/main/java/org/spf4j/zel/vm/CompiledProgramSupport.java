@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import com.google.common.base.Objects;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Runtime support for the byte code generated by {@link ProgramCompiler}.
+ * The semantics of these methods must be kept in sync with the corresponding instructions.
+ *
+ * @author Zoltan Farkas
+ */
+public final class CompiledProgramSupport {
+
+  private CompiledProgramSupport() { }
+
+  /**
+   * CALL instruction equivalent.
+   */
+  public static Object call(final ExecutionContext context, final JavaCallSite site, final Object function,
+          final Object[] parameters) throws ExecutionException, InterruptedException {
+    if (function instanceof JavaMethodCall) {
+      try {
+        return site.invoke(context, (JavaMethodCall) function, parameters);
+      } catch (RuntimeException ex) {
+        throw new ZExecutionException("cannot invoke " + function, ex);
+      }
+    }
+    return call(context, function, parameters);
+  }
+
+  /**
+   * CALL instruction equivalent.
+   */
+  @SuppressFBWarnings("ITC_INHERITANCE_TYPE_CHECKING")
+  public static Object call(final ExecutionContext context, final Object function, final Object[] parameters)
+          throws ExecutionException, InterruptedException {
+    if (function instanceof Program) {
+      final Program p = (Program) function;
+      final ExecutionContext nctx = context.getSubProgramContext(p, parameters);
+      Object obj;
+      switch (p.getType()) {
+        case DETERMINISTIC:
+          obj = context.getResultCache().getResult(p, nctx.getMem(), parameters.length, nctx::executeSyncOrAsync);
+          break;
+        case NONDETERMINISTIC:
+          obj = nctx.executeSyncOrAsync();
+          break;
+        default:
+          throw new UnsupportedOperationException(p.getType().toString());
+      }
+      if (obj instanceof Future) {
+        return ((Future<Object>) obj).get();
+      } else {
+        return obj;
+      }
+    } else if (function instanceof Method) {
+      try {
+        return ((Method) function).invoke(context, parameters);
+      } catch (RuntimeException ex) {
+        throw new ZExecutionException("cannot invoke " + function, ex);
+      }
+    } else {
+      throw new ZExecutionException("cannot invoke " + function);
+    }
+  }
+
+  public static Boolean lt(final Object a, final Object b) {
+    return ((Comparable) b).compareTo(a) > 0;
+  }
+
+  public static Boolean le(final Object a, final Object b) {
+    return ((Comparable) b).compareTo(a) >= 0;
+  }
+
+  public static Boolean gt(final Object a, final Object b) {
+    return ((Comparable) b).compareTo(a) < 0;
+  }
+
+  public static Boolean ge(final Object a, final Object b) {
+    return ((Comparable) a).compareTo(b) >= 0;
+  }
+
+  public static Boolean eq(final Object a, final Object b) {
+    return Objects.equal(a, b);
+  }
+
+  public static Boolean neq(final Object a, final Object b) {
+    return !Objects.equal(a, b);
+  }
+
+  public static Boolean and(final Object a, final Object b) {
+    return ((Boolean) a) && ((Boolean) b);
+  }
+
+  public static Boolean or(final Object a, final Object b) {
+    boolean v1 = (Boolean) a;
+    boolean v2 = (Boolean) b;
+    return v1 || v2;
+  }
+
+  public static Boolean xor(final Object a, final Object b) {
+    return ((Boolean) a) ^ ((Boolean) b);
+  }
+
+  public static Boolean not(final Object a) {
+    return !((Boolean) a);
+  }
+
+  public static ZExecutionException exception(final Object payload) {
+    return new ZExecutionException(payload);
+  }
+
+  /**
+   * Add the zel frame of the program executing in context to the exception.
+   */
+  @SuppressFBWarnings("CFS_CONFUSING_FUNCTION_SEMANTICS")
+  public static ZExecutionException addZelFrame(final ZExecutionException ex, final ExecutionContext context,
+          final int row) {
+    Program code = context.getProgram();
+    ex.addZelFrame(new ZelFrame(code.getName(), code.getSource(), row));
+    return ex;
+  }
+
+}
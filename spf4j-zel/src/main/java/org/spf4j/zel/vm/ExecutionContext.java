@@ -47,7 +47,7 @@ import org.spf4j.base.Throwables;
 import org.spf4j.concurrent.FutureBean;
 import org.spf4j.zel.instr.Instruction;
 import org.spf4j.zel.operators.Operator;
-import static org.spf4j.zel.vm.Program.ExecutionType.SYNC;
+import static org.spf4j.zel.vm.Program.ExecutionType.ASYNC;
 
 /**
  * Virtual Machine Execution Context
@@ -88,6 +88,11 @@ public final class ExecutionContext implements VMExecutor.Suspendable<Object> {
    */
   private int ip;
 
+  /**
+   * the instructions being interpreted, see {@link Program#getExecInstructions()}.
+   */
+  private Instruction[] instructions;
+
   /**
    * The halt register
    */
@@ -133,7 +138,7 @@ public final class ExecutionContext implements VMExecutor.Suspendable<Object> {
           @Nullable final ProcessIO io,
           @Nullable final VMExecutor execService) {
     this(program, globalMem, new Object[program.getLocalMemSize()],
-            program.hasDeterministicFunctions() ? new SimpleResultCache() : null,
+            program.getResultCache(),
             io, execService);
   }
 
@@ -141,7 +146,7 @@ public final class ExecutionContext implements VMExecutor.Suspendable<Object> {
           @Nullable final ProcessIO io,
           @Nullable final VMExecutor execService) {
     this(program, globalMem, localMem,
-            program.hasDeterministicFunctions() ? new SimpleResultCache() : null,
+            program.getResultCache(),
             io, execService);
   }
 
@@ -195,15 +200,39 @@ public final class ExecutionContext implements VMExecutor.Suspendable<Object> {
     ip++;
   }
 
+  /**
+   * Replaces the instruction currently being executed. Used by instructions that rewrite themselves into
+   * equivalent, faster (inline caching, type specialized) versions of themselves. All versions compute the same
+   * result, so programs executed concurrently by several contexts will behave correctly with either of them.
+   * The program instructions are not modified, the replacement is published in a copy of them.
+   * @param instr the new instruction.
+   * @return the new instruction.
+   */
+  public <T extends Instruction> T replaceInstruction(final T instr) {
+    instructions = code.replaceInstruction(ip, instr);
+    return instr;
+  }
+
   public void terminate() {
     terminated = true;
   }
 
+  /**
+   * Prepares this context to execute its program again, with the current content of its memory.
+   * Allows a context to be reused for evaluating the same program over a batch of inputs.
+   */
+  void reset() {
+    ip = 0;
+    terminated = false;
+    suspendedAt = null;
+    stack.clear();
+  }
+
   // TODO: Need to employ Either here
   @SuppressFBWarnings("URV_UNRELATED_RETURN_VALUES")
   public Object executeSyncOrAsync()
           throws ExecutionException, InterruptedException {
-    if (this.execService != null && this.code.getExecType() == Program.ExecutionType.ASYNC) {
+    if (this.execService != null && this.code.getExecType() == ASYNC) {
       if (this.isChildContext()) {
         return this.execService.submitInternal(VMExecutor.synchronize(this));
       } else {
@@ -253,7 +282,11 @@ public final class ExecutionContext implements VMExecutor.Suspendable<Object> {
           throws ExecutionException, InterruptedException, SuspendedException {
     suspendedAt = null;
     Operator.MATH_CONTEXT.set(getMathContext());
-    Instruction[] instructions = code.getInstructions();
+    CompiledProgram compiled = code.getCompiled();
+    if (compiled != null) {
+      return compiled.execute(this);
+    }
+    instructions = code.getExecInstructions();
     try {
       while (!terminated) {
         Instruction icode = instructions[ip];
@@ -461,6 +494,16 @@ public final class ExecutionContext implements VMExecutor.Suspendable<Object> {
     return this.stack.peekFromTop(n);
   }
 
+  /**
+   * Replaces the top n values of the stack with a value, without synchronizing them.
+   * @param n the number of values to replace, must be > 0.
+   * @param value the value.
+   */
+  public void replaceTop(final int n, @Nullable final Object value) {
+    this.stack.removeFromTop(n - 1);
+    this.stack.replaceFromTop(0, value);
+  }
+
   public Object peekElemAfter(final Object elem) {
     return this.stack.peekElemAfter(elem);
   }
@@ -472,7 +515,7 @@ public final class ExecutionContext implements VMExecutor.Suspendable<Object> {
   public ExecutionContext getSubProgramContext(final Program program, final int nrParams)
           throws ExecutionException, SuspendedException {
     Object[] localMem = new Object[program.getLocalMemSize()];
-    if (program.getExecType() == SYNC) {
+    if (program.getExecType() != ASYNC) {
       this.popSyncStackVals(localMem, nrParams);
       return new ExecutionContext(this, null, program, localMem);
     } else {
@@ -481,6 +524,12 @@ public final class ExecutionContext implements VMExecutor.Suspendable<Object> {
     }
   }
 
+  public ExecutionContext getSubProgramContext(final Program program, final Object[] parameters) {
+    Object[] localMem = program.allocMem(parameters);
+    return new ExecutionContext(this, program.getExecType() == ASYNC ? this.execService : null,
+            program, localMem);
+  }
+
   public ExecutionContext getSyncSubProgramContext(final Program program, final int nrParams)
           throws ExecutionException, SuspendedException {
     Object[] localMem = new Object[program.getLocalMemSize()];
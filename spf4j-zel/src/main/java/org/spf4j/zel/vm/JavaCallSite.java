@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import org.spf4j.base.Reflections;
+
+/**
+ * Polymorphic inline cache for the java method invocations done by a CALL instruction.
+ *
+ * For every receiver class, method name and argument classes combination seen, the site caches a method handle
+ * adapted to (Object receiver, Object[] arguments) -&gt; Object, with the varargs collection and the argument
+ * conversions pre-bound. A combination that does not match any cached entry is resolved and added to the cache,
+ * once more than spf4j.zel.javaCallSite.maxEntries (default 4) combinations are seen, the site becomes megamorphic
+ * and all invocations go through {@link JavaMethodCall#invoke(ExecutionContext, Object[])}.
+ *
+ * @author zoly
+ */
+@SuppressFBWarnings("EXS_EXCEPTION_SOFTENING_NO_CHECKED")
+public final class JavaCallSite {
+
+  private static final int MAX_ENTRIES = Integer.getInteger("spf4j.zel.javaCallSite.maxEntries", 4);
+
+  private static final Entry[] NO_ENTRIES = new Entry[0];
+
+  /**
+   * copy on write, null when megamorphic.
+   */
+  @Nullable
+  @SuppressFBWarnings("VO_VOLATILE_REFERENCE_TO_ARRAY") // the arrays are not modified once published.
+  private volatile Entry[] entries = NO_ENTRIES;
+
+  public Object invoke(final ExecutionContext context, final JavaMethodCall call, final Object[] parameters) {
+    Entry[] cached = entries;
+    if (cached == null) {
+      return call.invoke(context, parameters);
+    }
+    for (Entry entry : cached) {
+      if (entry.matches(call, parameters)) {
+        return entry.invoke(call.getObject(), parameters);
+      }
+    }
+    Entry entry = Entry.resolve(call, parameters);
+    if (entry == null) {
+      return call.invoke(context, parameters);
+    }
+    addEntry(cached, entry);
+    return entry.invoke(call.getObject(), parameters);
+  }
+
+  private synchronized void addEntry(final Entry[] cached, final Entry entry) {
+    Entry[] current = entries;
+    if (current != cached) { // concurrent update, no need to retry.
+      return;
+    }
+    if (current.length >= MAX_ENTRIES) {
+      entries = null;
+    } else {
+      Entry[] newEntries = Arrays.copyOf(current, current.length + 1);
+      newEntries[current.length] = entry;
+      entries = newEntries;
+    }
+  }
+
+  /**
+   * @return the number of cached entries, -1 if the site is megamorphic.
+   */
+  public int getNrEntries() {
+    Entry[] cached = entries;
+    return cached == null ? -1 : cached.length;
+  }
+
+  @Override
+  public String toString() {
+    return "JavaCallSite{" + "entries=" + getNrEntries() + '}';
+  }
+
+  private static final class Entry {
+
+    private final Class<?> objectClass;
+    private final boolean isStatic;
+    private final String name;
+    private final Class<?>[] paramClasses;
+    /**
+     * (Object, Object[])Object.
+     */
+    private final MethodHandle handle;
+
+    Entry(final Class<?> objectClass, final boolean isStatic, final String name,
+            final Class<?>[] paramClasses, final MethodHandle handle) {
+      this.objectClass = objectClass;
+      this.isStatic = isStatic;
+      this.name = name;
+      this.paramClasses = paramClasses;
+      this.handle = handle;
+    }
+
+    @SuppressFBWarnings("ES_COMPARING_STRINGS_WITH_EQ") // fast path for the same literal.
+    boolean matches(final JavaMethodCall call, final Object[] parameters) {
+      if (objectClass != call.getObjectClass() || isStatic != (call.getObject() == null)
+              || parameters.length != paramClasses.length) {
+        return false;
+      }
+      String callName = call.getName();
+      if (callName != name && !callName.equals(name)) {
+        return false;
+      }
+      for (int i = 0; i < parameters.length; i++) {
+        Object param = parameters[i];
+        if (param == null || param.getClass() != paramClasses[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * exceptions thrown by the method are wrapped the same way as in
+     * {@link JavaMethodCall#invoke(ExecutionContext, Object[])}.
+     */
+    Object invoke(@Nullable final Object object, final Object[] parameters) {
+      try {
+        return handle.invokeExact(object, parameters);
+      } catch (Throwable ex) {
+        throw new UncheckedExecutionException(new InvocationTargetException(ex));
+      }
+    }
+
+    /**
+     * @return the entry for the invocation, null if it cannot be cached, in which case the invocation should go
+     * through the reflection path, that will also report the error if any.
+     */
+    @Nullable
+    static Entry resolve(final JavaMethodCall call, final Object[] parameters) {
+      final int np = parameters.length;
+      Class<?>[] classes = new Class<?>[np];
+      for (int i = 0; i < np; i++) {
+        Object param = parameters[i];
+        if (param == null) {
+          return null;
+        }
+        classes[i] = param.getClass();
+      }
+      Class<?> objectClass = call.getObjectClass();
+      java.lang.reflect.Method m = Reflections.getCompatibleMethodCached(objectClass, call.getName(), classes);
+      if (m == null) {
+        return null;
+      }
+      boolean isStaticCall = call.getObject() == null;
+      boolean isStaticMethod = Modifier.isStatic(m.getModifiers());
+      if (isStaticCall && !isStaticMethod) {
+        return null;
+      }
+      MethodHandle mh;
+      try {
+        mh = MethodHandles.publicLookup().unreflect(m).asFixedArity();
+      } catch (IllegalAccessException ex) {
+        return null;
+      }
+      Class<?>[] actTypes = Reflections.getParameterTypes(m);
+      int na = actTypes.length;
+      if (np > 0) {
+        Class<?> lastParamClass = actTypes[na - 1];
+        if (!(np == na && Reflections.canAssign(lastParamClass, classes[np - 1]))) {
+          if (!lastParamClass.isArray()) {
+            return null;
+          }
+          mh = mh.asCollector(lastParamClass, np - na + 1);
+        }
+      }
+      if (isStaticMethod) {
+        mh = MethodHandles.dropArguments(mh, 0, Object.class);
+      }
+      mh = mh.asType(MethodType.genericMethodType(np + 1)).asSpreader(Object[].class, np);
+      return new Entry(objectClass, isStaticCall, call.getName(), classes, mh);
+    }
+
+  }
+
+}
@@ -35,6 +35,7 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
+import javax.annotation.Nullable;
 import org.spf4j.base.Reflections;
 
 /**
@@ -99,6 +100,19 @@ public final class JavaMethodCall implements Method {
         }
     }
 
+    String getName() {
+        return name;
+    }
+
+    Class<?> getObjectClass() {
+        return objectClass;
+    }
+
+    @Nullable
+    Object getObject() {
+        return object;
+    }
+
     @Override
     public String toString() {
         return "JavaMethodCall{" + "name=" + name + ", objectClass=" + objectClass + ", object=" + object + '}';
@@ -36,6 +36,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -43,15 +44,18 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Function;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
 import org.spf4j.base.Pair;
 import org.spf4j.base.Throwables;
 import org.spf4j.base.TimeSource;
@@ -76,17 +80,38 @@ import org.spf4j.zel.vm.gen.ZCompiler;
  *
  * This is a Turing machine a Program will always be pretty much an array of operations (instructions).
  *
+ * The program code is not modified after construction, the execution statistics, the JVM byte code translation,
+ * the self rewritten instructions and the deterministic function result cache are mutable and safely published,
+ * a program can be executed concurrently. Memorized function results are shared by all executions of a program.
+ *
  * @author zoly
  * @version 1.0
  *
  */
-@Immutable
+@ThreadSafe
+@SuppressFBWarnings("FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY")
 public final class Program implements Serializable {
 
   private static final long serialVersionUID = 748365748433474932L;
 
   private static final MemoryBuilder ZEL_GLOBAL_FUNC;
 
+  /**
+   * Number of interpreted executions after which a SYNC program is translated to JVM byte code.
+   * negative value (default) disables the automatic translation, only {@link ExecutionType#COMPILED} programs
+   * are translated.
+   */
+  static final int JIT_THRESHOLD = Integer.getInteger("spf4j.zel.jitThreshold", -1);
+
+  private static final AtomicIntegerFieldUpdater<Program> NR_INTERPRETED_UPDATER
+          = AtomicIntegerFieldUpdater.newUpdater(Program.class, "nrInterpretedExecutions");
+
+  private static final AtomicReferenceFieldUpdater<Program, Instruction[]> SITE_INSTRUCTIONS_UPDATER
+          = AtomicReferenceFieldUpdater.newUpdater(Program.class, Instruction[].class, "siteInstructions");
+
+  private static final AtomicReferenceFieldUpdater<Program, BoundedResultCache> RESULT_CACHE_UPDATER
+          = AtomicReferenceFieldUpdater.newUpdater(Program.class, BoundedResultCache.class, "sharedResultCache");
+
   private static volatile boolean terminated = false;
 
   static {
@@ -111,16 +136,26 @@ public final class Program implements Serializable {
 
   public enum ExecutionType {
     SYNC,
-    ASYNC
+    ASYNC,
+    /**
+     * synchronous execution of the program translated to JVM byte code.
+     */
+    COMPILED
   }
 
   private final Type type;
   private final ExecutionType execType;
-  private final int id; // program ID, unique ID identifying the program
+  /**
+   * program ID, unique ID identifying the program in this JVM, assigned again when deserialized.
+   */
+  private transient int id;
 
   private final Instruction[] instructions;
   private final Location[] debug;
-  private final String source;
+  /**
+   * the source ID ({@link ZelFrame}), replaced when loaded from a {@link ProgramCache} image.
+   */
+  private String source;
   private final boolean hasDeterministicFunctions;
   private final Object[] globalMem;
   private final int localMemSize;
@@ -128,6 +163,26 @@ public final class Program implements Serializable {
   private final Map<String, Integer> globalSymbolTable;
   private final String name;
 
+  @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+  private transient volatile Optional<CompiledProgram> compiled;
+
+  @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+  private transient volatile int nrInterpretedExecutions;
+
+  /**
+   * copy on write version of the instructions, containing the instructions that rewrote themselves
+   * (inline caching, type specialized), null until the first rewrite. {@link #instructions} is never modified,
+   * and the arrays are not modified once published.
+   */
+  @SuppressFBWarnings({ "SE_TRANSIENT_FIELD_NOT_RESTORED", "VO_VOLATILE_REFERENCE_TO_ARRAY" })
+  private transient volatile Instruction[] siteInstructions;
+
+  /**
+   * the memorized results of the deterministic functions, shared by all executions, created on first use.
+   */
+  @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+  private transient volatile BoundedResultCache sharedResultCache;
+
 //CHECKSTYLE:OFF
   Program(final String name, final Map<String, Integer> globalTable, final Object[] globalMem,
           final Map<String, Integer> localTable,
@@ -173,6 +228,21 @@ public final class Program implements Serializable {
     this.name = name;
   }
 
+  private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.id = ProgramBuilder.generateID();
+    if (in instanceof ProgramCache.ImageInputStream) {
+      this.source = ((ProgramCache.ImageInputStream) in).getSourceId();
+    }
+  }
+
+  /**
+   * @return the builtin functions and constants, and their symbol table.
+   */
+  static Pair<Object[], Map<String, Integer>> getBuiltins() {
+    return ZEL_GLOBAL_FUNC.build();
+  }
+
   Location[] getDebug() {
     return debug;
   }
@@ -257,6 +327,25 @@ public final class Program implements Serializable {
     return hasDeterministicFunctions;
   }
 
+  /**
+   * @return the result cache shared by all executions of this program, null if the program has no deterministic
+   * functions.
+   */
+  @Nullable
+  ResultCache getResultCache() {
+    if (!hasDeterministicFunctions) {
+      return null;
+    }
+    BoundedResultCache cache = sharedResultCache;
+    if (cache == null) {
+      cache = new BoundedResultCache();
+      if (!RESULT_CACHE_UPDATER.compareAndSet(this, null, cache)) {
+        cache = sharedResultCache;
+      }
+    }
+    return cache;
+  }
+
   /**
    * @param i - inst address.
    * @return the instruction.
@@ -290,6 +379,46 @@ public final class Program implements Serializable {
     return execType;
   }
 
+  /**
+   * @return the byte code version of this program, null if this program is to be interpreted.
+   */
+  @Nullable
+  // null means not attempted yet, empty means not compilable.
+  @SuppressFBWarnings({"NP_OPTIONAL_RETURN_NULL", "OI_OPTIONAL_ISSUES_CHECKING_REFERENCE"})
+  CompiledProgram getCompiled() {
+    Optional<CompiledProgram> result = compiled;
+    if (result == null) {
+      if (execType == ExecutionType.COMPILED
+              || (execType == ExecutionType.SYNC && JIT_THRESHOLD >= 0
+              && NR_INTERPRETED_UPDATER.getAndIncrement(this) >= JIT_THRESHOLD)) {
+        result = Optional.ofNullable(ProgramCompiler.compile(this));
+        compiled = result;
+      } else {
+        return null;
+      }
+    }
+    return result.orElse(null);
+  }
+
+  /**
+   * Compile a ZEL expression.
+   * @param zExpr the expression.
+   * @param execType the preferred execution type. {@link ExecutionType#COMPILED} will translate the program to
+   * JVM byte code if possible, other values leave the execution type as inferred from the expression.
+   * @param varNames the program parameter names.
+   * @return the program.
+   */
+  @Nonnull
+  public static Program compile(@Nonnull final String zExpr, final ExecutionType execType,
+          @Nonnull final String... varNames)
+          throws CompileException {
+    Program result = compile(zExpr, varNames);
+    if (execType == ExecutionType.COMPILED) {
+      return ProgramCompiler.INSTANCE.apply(result);
+    }
+    return result;
+  }
+
   @Nonnull
   public static Program compile(@Nonnull final String zExpr, @Nonnull final String... varNames)
           throws CompileException {
@@ -302,6 +431,9 @@ public final class Program implements Serializable {
       throw new CompileException(err);
     }
     Program result = RefOptimizer.INSTANCE.apply(cc.getProgramBuilder().toProgram("anon@root", srcId, varNames));
+    if (ProgramOptimizer.ENABLED) {
+      result = ProgramOptimizer.INSTANCE.apply(result);
+    }
     ZelFrame.annotate(srcId, result);
     return result;
   }
@@ -396,7 +528,7 @@ public final class Program implements Serializable {
 
   public Object execute(final ProcessIO io, final Object... args)
           throws ExecutionException, InterruptedException {
-    if (execType == ExecutionType.SYNC) {
+    if (execType != ExecutionType.ASYNC) {
       return execute((VMExecutor) null, io, args);
     } else {
       return execute(VMExecutor.Lazy.DEFAULT, io, args);
@@ -417,7 +549,7 @@ public final class Program implements Serializable {
     Map<String, Integer> globalSymTable = gmemPair.getSecond();
     Object[] mem = new Object[]{};
     Object[] gmem = gmemPair.getFirst();
-    ResultCache resCache = new SimpleResultCache();
+    ResultCache resCache = new BoundedResultCache();
     InputStreamReader inp = new InputStreamReader(System.in, StandardCharsets.UTF_8);
     BufferedReader br = new BufferedReader(inp);
     org.spf4j.base.Runtime.queueHookAtBeginning(new Runnable() {
@@ -473,8 +605,9 @@ public final class Program implements Serializable {
   public String toAssemblyString() {
     StringBuilder result = new StringBuilder();
     result.append("Program: \n");
-    for (int i = 0; i < instructions.length; i++) {
-      Object obj = instructions[i];
+    Instruction[] execInstructions = getExecInstructions();
+    for (int i = 0; i < execInstructions.length; i++) {
+      Object obj = execInstructions[i];
       result.append(Strings.padEnd(Integer.toString(i), 8, ' '));
       result.append(':');
       result.append(obj);
@@ -532,6 +665,30 @@ public final class Program implements Serializable {
     return instructions;
   }
 
+  /**
+   * @return the instructions to interpret, the original instructions with the site rewrites applied.
+   */
+  Instruction[] getExecInstructions() {
+    Instruction[] result = siteInstructions;
+    return result == null ? instructions : result;
+  }
+
+  /**
+   * Replaces the instruction at ip in a new copy of the executed instructions. Rewrites are few per code site,
+   * so copying the array is cheap, and contexts that are executing this program keep using the array they read.
+   * @return the new instructions to interpret.
+   */
+  Instruction[] replaceInstruction(final int ip, final Instruction instr) {
+    Instruction[] current;
+    Instruction[] updated;
+    do {
+      current = siteInstructions;
+      updated = (current == null ? instructions : current).clone();
+      updated[ip] = instr;
+    } while (!SITE_INSTRUCTIONS_UPDATER.compareAndSet(this, current, updated));
+    return updated;
+  }
+
   public static final class HasClass implements Function<Object, Boolean> {
 
     private final Class<? extends Instruction> instr;
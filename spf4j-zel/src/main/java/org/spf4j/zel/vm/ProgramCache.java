@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.spf4j.base.Pair;
+import org.spf4j.concurrent.DefaultExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of compiled programs, keyed by the program source and parameter names.
+ *
+ * Programs are kept in a bounded in memory tier, and optionally in a directory as program images:
+ * a small header (magic, image format version, ZEL version, source and parameter names) followed by the deflated
+ * java serialization of the program. Builtin functions and constants are written by name, and resolved on load.
+ * Images written by a different image format or ZEL version, or that cannot be read are ignored and rewritten.
+ *
+ * Cached programs are shared by all users, programs are immutable and can be executed concurrently.
+ *
+ * @author zoly
+ */
+@ThreadSafe
+public final class ProgramCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProgramCache.class);
+
+  private static final int MAGIC = 0x5A454C50; // ZELP
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final String ZEL_VERSION = getZelVersion();
+
+  private static final String IMAGE_SUFFIX = ".zelp";
+
+  private static final Map<Object, String> BUILTIN_NAMES;
+
+  private static final Map<String, Object> BUILTINS;
+
+  static {
+    Pair<Object[], Map<String, Integer>> builtins = Program.getBuiltins();
+    Object[] values = builtins.getFirst();
+    Map<String, Integer> symbols = builtins.getSecond();
+    BUILTIN_NAMES = new IdentityHashMap<>(symbols.size());
+    BUILTINS = new HashMap<>(symbols.size() + symbols.size() / 3);
+    for (Map.Entry<String, Integer> entry : symbols.entrySet()) {
+      Object value = values[entry.getValue()];
+      BUILTINS.put(entry.getKey(), value);
+      BUILTIN_NAMES.putIfAbsent(value, entry.getKey());
+    }
+  }
+
+  private final Cache<Key, Program> memory;
+
+  @Nullable
+  private final Path directory;
+
+  /**
+   * Create a in memory program cache.
+   * @param maxSize the maximum number of programs cached.
+   */
+  public ProgramCache(final int maxSize) {
+    this.memory = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    this.directory = null;
+  }
+
+  /**
+   * Create a program cache that stores the compiled program images in a directory.
+   * @param maxSize the maximum number of programs cached in memory.
+   * @param directory the program images directory, created if it does not exist.
+   */
+  public ProgramCache(final int maxSize, final Path directory) throws IOException {
+    this.memory = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    this.directory = Files.createDirectories(directory);
+  }
+
+  /**
+   * Get the compiled program, compiling it if not cached.
+   * @param zExpr the program source.
+   * @param varNames the program parameter names.
+   * @return the program.
+   */
+  @Nonnull
+  public Program get(@Nonnull final String zExpr, @Nonnull final String... varNames) throws CompileException {
+    Key key = new Key(zExpr, varNames);
+    Program result = memory.getIfPresent(key);
+    if (result == null) {
+      result = load(key);
+      if (result == null) {
+        result = Program.compile(zExpr, varNames);
+        store(key, result);
+      }
+      Program existing = memory.asMap().putIfAbsent(key, result);
+      if (existing != null) {
+        result = existing;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get the compiled programs, the programs not cached are compiled in parallel using the {@link DefaultExecutor}.
+   * @param expressions the programs sources.
+   * @param varNames the parameter names of all programs.
+   * @return the programs, in the order of their source.
+   */
+  @Nonnull
+  @SuppressFBWarnings("LEST_LOST_EXCEPTION_STACK_TRACE")
+  public List<Program> getAll(@Nonnull final List<String> expressions, @Nonnull final String... varNames)
+          throws CompileException, InterruptedException {
+    List<Future<Program>> futures = new ArrayList<>(expressions.size());
+    for (String expression : expressions) {
+      futures.add(DefaultExecutor.INSTANCE.submit(() -> get(expression, varNames)));
+    }
+    List<Program> result = new ArrayList<>(futures.size());
+    try {
+      for (Future<Program> future : futures) {
+        result.add(future.get());
+      }
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof CompileException) {
+        throw (CompileException) cause;
+      }
+      throw new UncheckedExecutionException(cause);
+    } finally {
+      if (result.size() < futures.size()) {
+        for (Future<Program> future : futures) {
+          future.cancel(false);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of programs cached in memory.
+   */
+  public long size() {
+    return memory.size();
+  }
+
+  /**
+   * Drop all programs cached in memory.
+   */
+  public void invalidateMemory() {
+    memory.invalidateAll();
+  }
+
+  private static String getImageName(final Key key) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putString(key.source, StandardCharsets.UTF_8);
+    for (String varName : key.varNames) {
+      hasher.putByte((byte) 0);
+      hasher.putString(varName, StandardCharsets.UTF_8);
+    }
+    return hasher.hash().toString() + IMAGE_SUFFIX;
+  }
+
+  @Nullable
+  private Program load(final Key key) {
+    if (directory == null) {
+      return null;
+    }
+    Path path = directory.resolve(getImageName(key));
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+      return readImage(is, key);
+    } catch (NoSuchFileException ex) {
+      return null;
+    } catch (IOException | ClassNotFoundException | RuntimeException ex) {
+      LOG.warn("Unable to load program image {}, will recompile", path, ex);
+      return null;
+    }
+  }
+
+  private void store(final Key key, final Program program) {
+    if (directory == null) {
+      return;
+    }
+    String name = getImageName(key);
+    Path path = directory.resolve(name);
+    Path tmp = directory.resolve(name + '.' + Thread.currentThread().getId() + ".tmp");
+    try {
+      try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+        writeImage(os, key, program);
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException ex) {
+      LOG.warn("Unable to store program image {}", path, ex);
+      try {
+        Files.deleteIfExists(tmp);
+      } catch (IOException ex2) {
+        ex.addSuppressed(ex2);
+      }
+    }
+  }
+
+  static void writeImage(final OutputStream os, final Key key, final Program program) throws IOException {
+    DataOutputStream dos = new DataOutputStream(os);
+    dos.writeInt(MAGIC);
+    dos.writeShort(FORMAT_VERSION);
+    dos.writeUTF(ZEL_VERSION);
+    writeString(dos, key.source);
+    dos.writeShort(key.varNames.length);
+    for (String varName : key.varNames) {
+      dos.writeUTF(varName);
+    }
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      DeflaterOutputStream dfos = new DeflaterOutputStream(dos, deflater, 8192);
+      ObjectOutputStream oos = new ImageOutputStream(dfos);
+      oos.writeObject(program);
+      oos.flush();
+      dfos.finish();
+      dos.flush();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * @return the program read from the image, or null if the image is for a different program or version.
+   */
+  @Nullable
+  @SuppressFBWarnings("OBJECT_DESERIALIZATION") // the classes are restricted by ImageInputStream.
+  static Program readImage(final InputStream is, final Key key) throws IOException, ClassNotFoundException {
+    DataInputStream dis = new DataInputStream(is);
+    if (dis.readInt() != MAGIC || dis.readShort() != FORMAT_VERSION || !ZEL_VERSION.equals(dis.readUTF())
+            || !key.source.equals(readString(dis))) {
+      return null;
+    }
+    String[] varNames = new String[dis.readShort()];
+    for (int i = 0; i < varNames.length; i++) {
+      varNames[i] = dis.readUTF();
+    }
+    if (!Arrays.equals(key.varNames, varNames)) {
+      return null;
+    }
+    String sourceId = ZelFrame.newSource(key.source);
+    Program result;
+    try (ObjectInputStream ois = new ImageInputStream(new InflaterInputStream(dis), sourceId)) {
+      result = (Program) ois.readObject();
+    }
+    ZelFrame.annotate(sourceId, result);
+    return result;
+  }
+
+  private static void writeString(final DataOutput dos, final String str) throws IOException {
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    dos.writeInt(bytes.length);
+    dos.write(bytes);
+  }
+
+  private static String readString(final DataInput dis) throws IOException {
+    byte[] bytes = new byte[dis.readInt()];
+    dis.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static String getZelVersion() {
+    String version = Program.class.getPackage().getImplementationVersion();
+    return version == null ? "unknown" : version;
+  }
+
+  @Override
+  public String toString() {
+    return "ProgramCache{" + "size=" + memory.size() + ", directory=" + directory + '}';
+  }
+
+  static final class Key {
+
+    private final String source;
+
+    private final String[] varNames;
+
+    private final int hash;
+
+    Key(final String source, final String[] varNames) {
+      this.source = source;
+      this.varNames = varNames.clone();
+      this.hash = 31 * source.hashCode() + Arrays.hashCode(varNames);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return hash == other.hash && source.equals(other.source) && Arrays.equals(varNames, other.varNames);
+    }
+
+    @Override
+    public String toString() {
+      return "Key{" + "source=" + source + ", varNames=" + Arrays.toString(varNames) + '}';
+    }
+
+  }
+
+  /**
+   * Reference to a builtin function or constant.
+   */
+  private static final class BuiltinRef implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+
+    BuiltinRef(final String name) {
+      this.name = name;
+    }
+
+  }
+
+  private static final class ImageOutputStream extends ObjectOutputStream {
+
+    ImageOutputStream(final OutputStream out) throws IOException {
+      super(out);
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected Object replaceObject(final Object obj) {
+      String name = BUILTIN_NAMES.get(obj);
+      return name == null ? obj : new BuiltinRef(name);
+    }
+
+  }
+
+  /**
+   * Program image input, programs read from it get their source ID replaced.
+   */
+  static final class ImageInputStream extends ObjectInputStream {
+
+    private static final Set<String> ALLOWED_CLASSES = ImmutableSet.of(
+            "java.lang.Object", "java.lang.String", "java.lang.Boolean", "java.lang.Character",
+            "java.lang.Number", "java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long",
+            "java.lang.Float", "java.lang.Double", "java.lang.Enum",
+            "java.math.BigInteger", "java.math.BigDecimal", "java.math.MathContext", "java.math.RoundingMode",
+            "java.util.HashMap", "java.util.Collections$EmptyMap", "java.util.Collections$UnmodifiableMap",
+            "java.util.Collections$SingletonMap");
+
+    private final String sourceId;
+
+    @SuppressFBWarnings("OBJECT_DESERIALIZATION")
+    ImageInputStream(final InputStream in, final String sourceId) throws IOException {
+      super(in);
+      this.sourceId = sourceId;
+      enableResolveObject(true);
+    }
+
+    String getSourceId() {
+      return sourceId;
+    }
+
+    /**
+     * Only the classes a program is made of can be deserialized: zel classes and JDK value classes.
+     */
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      String name = desc.getName();
+      int dims = 0;
+      while (name.charAt(dims) == '[') {
+        dims++;
+      }
+      if (dims > 0) {
+        // array class name, [I, [Ljava.lang.String; ...
+        name = name.charAt(dims) == 'L' ? name.substring(dims + 1, name.length() - 1) : null;
+      }
+      if (name != null && !name.startsWith("org.spf4j.zel.") && !ALLOWED_CLASSES.contains(name)) {
+        throw new InvalidClassException(desc.getName(), "not allowed in a program image");
+      }
+      return super.resolveClass(desc);
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException {
+      throw new InvalidClassException(Arrays.toString(interfaces), "proxies not allowed in a program image");
+    }
+
+    @Override
+    protected Object resolveObject(final Object obj) throws IOException {
+      if (obj instanceof BuiltinRef) {
+        String name = ((BuiltinRef) obj).name;
+        Object result = BUILTINS.get(name);
+        if (result == null && !BUILTINS.containsKey(name)) {
+          throw new InvalidObjectException("Unknown builtin " + name);
+        }
+        return result;
+      }
+      return obj;
+    }
+
+  }
+
+}
@@ -0,0 +1,756 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import com.google.common.annotations.Beta;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spf4j.zel.instr.ABS;
+import org.spf4j.zel.instr.AND;
+import org.spf4j.zel.instr.ArithmeticInstruction;
+import org.spf4j.zel.instr.ARR;
+import org.spf4j.zel.instr.CALL;
+import org.spf4j.zel.instr.DEC;
+import org.spf4j.zel.instr.DEREF;
+import org.spf4j.zel.instr.DEREFX;
+import org.spf4j.zel.instr.DUP;
+import org.spf4j.zel.instr.EQ;
+import org.spf4j.zel.instr.FJMP;
+import org.spf4j.zel.instr.GE;
+import org.spf4j.zel.instr.GT;
+import org.spf4j.zel.instr.HALT;
+import org.spf4j.zel.instr.INC;
+import org.spf4j.zel.instr.Instruction;
+import org.spf4j.zel.instr.JMP;
+import org.spf4j.zel.instr.LE;
+import org.spf4j.zel.instr.LODAXF;
+import org.spf4j.zel.instr.LODXF;
+import org.spf4j.zel.instr.LT;
+import org.spf4j.zel.instr.MOV;
+import org.spf4j.zel.instr.MOVXF;
+import org.spf4j.zel.instr.NEQ;
+import org.spf4j.zel.instr.NOP;
+import org.spf4j.zel.instr.NOT;
+import org.spf4j.zel.instr.OR;
+import org.spf4j.zel.instr.PUSH;
+import org.spf4j.zel.instr.SYNC;
+import org.spf4j.zel.instr.THROW;
+import org.spf4j.zel.instr.XOR;
+import org.spf4j.zel.vm.ParsingContext.Location;
+
+/**
+ * Translates SYNC programs into JVM byte code.
+ *
+ * The program stack is statically resolved: every stack slot and every local memory slot used by the program
+ * becomes a JVM local variable, assignments to local variables become direct stores, operators are direct calls
+ * to the operator implementations, and jumps are JVM branches. Local memory is written back at the end of the
+ * execution.
+ *
+ * Programs that contain instructions that need the interpreter (async calls, channels, sleep,
+ * references, ...), or whose stack layout cannot be statically determined, are not compiled, and will continue
+ * to be interpreted.
+ *
+ * @author Zoltan Farkas
+ */
+@Beta
+@ParametersAreNonnullByDefault
+@SuppressFBWarnings("FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY")
+public final class ProgramCompiler implements Function<Program, Program> {
+
+  public static final Function<Program, Program> INSTANCE = new ProgramCompiler();
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProgramCompiler.class);
+
+  /**
+   * Abstract stack slot kind for a value, a non negative kind is a lvalue of the local memory slot with that address.
+   */
+  private static final int VALUE = -1;
+
+  /**
+   * Abstract stack slot kind of a value that is never used.
+   */
+  private static final int DEAD = -2;
+
+  private static final int[] EMPTY_STACK = new int[0];
+
+  private static final AtomicInteger CLASS_IDX = new AtomicInteger();
+
+  private static final String OBJECT = "java/lang/Object";
+  private static final String OBJECT_DESC = "Ljava/lang/Object;";
+  private static final String OBJECT_ARR_DESC = "[Ljava/lang/Object;";
+  private static final String BOOLEAN = "java/lang/Boolean";
+  private static final String SUPPORT = CompiledProgramSupport.class.getName().replace('.', '/');
+  private static final String CONTEXT = ExecutionContext.class.getName().replace('.', '/');
+  private static final String CONTEXT_DESC = 'L' + CONTEXT + ';';
+  private static final String ZEXCEPTION = ZExecutionException.class.getName().replace('.', '/');
+  private static final String ZEXCEPTION_DESC = 'L' + ZEXCEPTION + ';';
+  private static final String ARITHMETIC = ArithmeticInstruction.class.getName().replace('.', '/');
+  private static final String JAVA_CALL_SITE = JavaCallSite.class.getName().replace('.', '/');
+  private static final String BINARY_OP_DESC = '(' + OBJECT_DESC + OBJECT_DESC + ")Ljava/lang/Boolean;";
+
+  private static final Map<Class<? extends Instruction>, String> BINARY_HELPERS = new IdentityHashMap<>(12);
+
+  static {
+    BINARY_HELPERS.put(LT.class, "lt");
+    BINARY_HELPERS.put(LE.class, "le");
+    BINARY_HELPERS.put(GT.class, "gt");
+    BINARY_HELPERS.put(GE.class, "ge");
+    BINARY_HELPERS.put(EQ.class, "eq");
+    BINARY_HELPERS.put(NEQ.class, "neq");
+    BINARY_HELPERS.put(AND.class, "and");
+    BINARY_HELPERS.put(OR.class, "or");
+    BINARY_HELPERS.put(XOR.class, "xor");
+  }
+
+  private ProgramCompiler() { }
+
+  /**
+   * @param input the program to compile.
+   * @return a COMPILED program equivalent to input, or input if it cannot be compiled.
+   */
+  @Override
+  public Program apply(final Program input) {
+    if (input.getExecType() != Program.ExecutionType.SYNC || analyze(input.getInstructions()) == null) {
+      return input;
+    }
+    return new Program(input.getName(), input.getGlobalSymbolTable(),
+            input.getGlobalMem(), input.getLocalSymbolTable(),
+            input.getInstructions(), input.getDebug(), input.getSource(),
+            input.getType(), Program.ExecutionType.COMPILED,
+            input.hasDeterministicFunctions());
+  }
+
+  /**
+   * Translate the program to byte code.
+   * @param program the program to translate.
+   * @return the compiled program or null if the program cannot be compiled.
+   */
+  @Nullable
+  @SuppressFBWarnings("DP_CREATE_CLASSLOADER_INSIDE_DO_PRIVILEGED")
+  static CompiledProgram compile(final Program program) {
+    if (program.getExecType() == Program.ExecutionType.ASYNC) {
+      return null;
+    }
+    Instruction[] instructions = program.getInstructions();
+    int[][] states = analyze(instructions);
+    if (states == null) {
+      return null;
+    }
+    String className = "org.spf4j.zel.vm.jit.ZelProgram" + CLASS_IDX.getAndIncrement();
+    List<Object> constants = new ArrayList<>();
+    byte[] byteCode;
+    try {
+      byteCode = new Generator(className.replace('.', '/'), program, states, constants).generate();
+    } catch (RuntimeException ex) {
+      // programs that exceed the JVM method size limits stay interpreted.
+      LOG.warn("Cannot translate {} to byte code, will be interpreted", program.getName(), ex);
+      return null;
+    }
+    Class<?> clasz = new ProgramClassLoader().define(className, byteCode);
+    try {
+      return (CompiledProgram) clasz.getConstructor(Object[].class).newInstance((Object) constants.toArray());
+    } catch (ReflectiveOperationException ex) {
+      throw new IllegalStateException("Cannot instantiate compiled " + program, ex);
+    }
+  }
+
+  /**
+   * Abstract interpretation of the program stack.
+   *
+   * Statements leave their value on the stack, so in loops the interpreter stack grows with every iteration.
+   * When stack layouts of different depths merge, they are aligned at the top (this is what the instructions see),
+   * slots that differ are marked dead, and the slots below the smaller depth are dropped.
+   * Instructions accessing dead or dropped slots make the program not compilable.
+   *
+   * @return the stack layout at the entry of every instruction, null for unreachable instructions,
+   * or null if the program cannot be compiled.
+   */
+  @Nullable
+  @SuppressFBWarnings("PZLA_PREFER_ZERO_LENGTH_ARRAYS")
+  static int[][] analyze(final Instruction[] instructions) {
+    final int n = instructions.length;
+    if (n == 0) {
+      return null;
+    }
+    int[][] states = new int[n][];
+    ArrayDeque<Integer> todo = new ArrayDeque<>();
+    states[0] = EMPTY_STACK;
+    todo.add(0);
+    while (!todo.isEmpty()) {
+      final int i = todo.pop();
+      final Instruction instr = instructions[i];
+      final int[] out = transfer(instr, states[i]);
+      if (out == null || !merge(states, next(instr, i), out, todo) || !merge(states, jump(instr, i), out, todo)) {
+        return null;
+      }
+    }
+    return states;
+  }
+
+  /**
+   * @return the stack layout after the execution of instr, or null if instr cannot be compiled.
+   */
+  @Nullable
+  @SuppressFBWarnings("PZLA_PREFER_ZERO_LENGTH_ARRAYS")
+  @SuppressWarnings("checkstyle:CyclomaticComplexity")
+  private static int[] transfer(final Instruction instr, final int[] in) {
+    final int d = in.length;
+    final Class<? extends Instruction> clasz = instr.getClass();
+    if (clasz == PUSH.class || clasz == LODXF.class) {
+      return push(in, VALUE);
+    } else if (clasz == LODAXF.class) {
+      Address addr = (Address) instr.getParameters()[0];
+      if (addr.getScope() != Address.Scope.LOCAL) {
+        return null;
+      }
+      return push(in, addr.getAddress());
+    } else if (clasz == MOV.class) {
+      if (d < 2 || in[d - 1] != VALUE || in[d - 2] < 0) {
+        return null;
+      }
+      return push(Arrays.copyOf(in, d - 2), VALUE);
+    } else if (clasz == MOVXF.class) {
+      return areValues(in, 1) ? in : null;
+    } else if (clasz == INC.class || clasz == DEC.class) {
+      if (d < 1 || in[d - 1] == DEAD) {
+        return null;
+      }
+      return in[d - 1] == VALUE ? in : Arrays.copyOf(in, d - 1);
+    } else if (instr instanceof ArithmeticInstruction || BINARY_HELPERS.containsKey(clasz) || clasz == DEREF.class) {
+      return areValues(in, 2) ? Arrays.copyOf(in, d - 1) : null;
+    } else if (clasz == NOT.class || clasz == ABS.class || clasz == DEREFX.class || clasz == THROW.class) {
+      return areValues(in, 1) ? in : null;
+    } else if (clasz == DUP.class) {
+      return areValues(in, 1) ? push(in, VALUE) : null;
+    } else if (clasz == CALL.class) {
+      int nrVals = (Integer) instr.getParameters()[0] + 1;
+      return areValues(in, nrVals) ? push(Arrays.copyOf(in, d - nrVals), VALUE) : null;
+    } else if (clasz == ARR.class) {
+      int nrVals = (Integer) instr.getParameters()[0];
+      return areValues(in, nrVals) ? push(Arrays.copyOf(in, d - nrVals), VALUE) : null;
+    } else if (clasz == FJMP.class) {
+      return areValues(in, 1) ? Arrays.copyOf(in, d - 1) : null;
+    } else if (clasz == JMP.class || clasz == NOP.class || clasz == SYNC.class) {
+      return in;
+    } else if (clasz == HALT.class) {
+      return d > 0 && in[d - 1] != VALUE ? null : in;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * @return the address of the instruction executed after instr, when not jumping, -1 if none.
+   */
+  private static int next(final Instruction instr, final int i) {
+    final Class<? extends Instruction> clasz = instr.getClass();
+    if (clasz == JMP.class) {
+      return i + (Integer) instr.getParameters()[0];
+    } else if (clasz == HALT.class || clasz == THROW.class) {
+      return -1;
+    } else {
+      return i + 1;
+    }
+  }
+
+  /**
+   * @return the conditional jump address of instr, -1 if none.
+   */
+  private static int jump(final Instruction instr, final int i) {
+    if (instr.getClass() == FJMP.class) {
+      return i + (Integer) instr.getParameters()[0];
+    } else {
+      return -1;
+    }
+  }
+
+  private static boolean merge(final int[][] states, final int target, final int[] stack,
+          final Collection<Integer> todo) {
+    if (target < 0) {
+      return true;
+    }
+    if (target >= states.length) {
+      return false;
+    }
+    int[] existing = states[target];
+    if (existing == null) {
+      states[target] = stack;
+      todo.add(target);
+    } else {
+      int depth = Math.min(existing.length, stack.length);
+      int[] merged = new int[depth];
+      for (int k = 0, eo = existing.length - depth, so = stack.length - depth; k < depth; k++) {
+        int kind = existing[eo + k];
+        merged[k] = kind == stack[so + k] ? kind : DEAD;
+      }
+      if (!Arrays.equals(existing, merged)) {
+        states[target] = merged;
+        todo.add(target);
+      }
+    }
+    return true;
+  }
+
+  private static int[] push(final int[] stack, final int kind) {
+    int[] result = Arrays.copyOf(stack, stack.length + 1);
+    result[stack.length] = kind;
+    return result;
+  }
+
+  private static boolean areValues(final int[] stack, final int nr) {
+    final int d = stack.length;
+    if (d < nr) {
+      return false;
+    }
+    for (int i = d - nr; i < d; i++) {
+      if (stack[i] != VALUE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Generator {
+
+    private static final int THIS = 0;
+    private static final int CONTEXT_VAR = 1;
+    private static final int MEM = 2;
+    private static final int CONSTANTS = 3;
+    private static final int LOCALS_BASE = 4;
+
+    private final String className;
+    private final Program program;
+    private final Instruction[] instructions;
+    private final int[][] states;
+    private final List<Object> constants;
+    private final Map<Object, Integer> constantIdx;
+    private final int stackBase;
+    private MethodVisitor mv;
+
+    Generator(final String className, final Program program, final int[][] states, final List<Object> constants) {
+      this.className = className;
+      this.program = program;
+      this.instructions = program.getInstructions();
+      this.states = states;
+      this.constants = constants;
+      this.constantIdx = new IdentityHashMap<>();
+      this.stackBase = LOCALS_BASE + program.getLocalMemSize();
+    }
+
+    byte[] generate() {
+      ClassWriter cw = new FrameClassWriter();
+      cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, OBJECT,
+              new String[] {CompiledProgram.class.getName().replace('.', '/')});
+      cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "constants", OBJECT_ARR_DESC, null, null).visitEnd();
+      mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", '(' + OBJECT_ARR_DESC + ")V", null, null);
+      mv.visitCode();
+      mv.visitVarInsn(Opcodes.ALOAD, THIS);
+      mv.visitMethodInsn(Opcodes.INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+      mv.visitVarInsn(Opcodes.ALOAD, THIS);
+      mv.visitVarInsn(Opcodes.ALOAD, 1);
+      mv.visitFieldInsn(Opcodes.PUTFIELD, className, "constants", OBJECT_ARR_DESC);
+      mv.visitInsn(Opcodes.RETURN);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+      mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "execute", '(' + CONTEXT_DESC + ')' + OBJECT_DESC, null,
+              new String[] {"java/util/concurrent/ExecutionException", "java/lang/InterruptedException"});
+      mv.visitCode();
+      generateExecute();
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+      cw.visitEnd();
+      return cw.toByteArray();
+    }
+
+    private void generateExecute() {
+      final int n = instructions.length;
+      Label[] labels = new Label[n + 1];
+      for (int i = 0; i <= n; i++) {
+        labels[i] = new Label();
+      }
+      boolean[] readLocals = new boolean[program.getLocalMemSize()];
+      boolean[] writtenLocals = new boolean[readLocals.length];
+      for (int i = 0; i < n; i++) {
+        Instruction instr = instructions[i];
+        if (states[i] != null && (instr instanceof LODXF || instr instanceof LODAXF || instr instanceof MOVXF)) {
+          Address addr = (Address) instr.getParameters()[0];
+          if (addr.getScope() == Address.Scope.LOCAL) {
+            readLocals[addr.getAddress()] = true;
+            if (!(instr instanceof LODXF)) {
+              writtenLocals[addr.getAddress()] = true;
+            }
+          }
+        }
+      }
+      List<Label> handlers = new ArrayList<>();
+      List<Integer> handlerRows = new ArrayList<>();
+      registerExceptionHandlers(labels, handlers, handlerRows);
+      // load context, memory and used local memory.
+      mv.visitVarInsn(Opcodes.ALOAD, CONTEXT_VAR);
+      mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, CONTEXT, "getMem", "()" + OBJECT_ARR_DESC, false);
+      mv.visitVarInsn(Opcodes.ASTORE, MEM);
+      mv.visitVarInsn(Opcodes.ALOAD, THIS);
+      mv.visitFieldInsn(Opcodes.GETFIELD, className, "constants", OBJECT_ARR_DESC);
+      mv.visitVarInsn(Opcodes.ASTORE, CONSTANTS);
+      for (int i = 0; i < readLocals.length; i++) {
+        if (readLocals[i]) {
+          mv.visitVarInsn(Opcodes.ALOAD, MEM);
+          pushInt(i);
+          mv.visitInsn(Opcodes.AALOAD);
+          mv.visitVarInsn(Opcodes.ASTORE, LOCALS_BASE + i);
+        }
+      }
+      for (int i = 0; i < n; i++) {
+        mv.visitLabel(labels[i]);
+        int[] in = states[i];
+        if (in != null) {
+          generate(i, in, labels, writtenLocals);
+        }
+      }
+      mv.visitLabel(labels[n]);
+      for (int i = 0, l = handlers.size(); i < l; i++) {
+        mv.visitLabel(handlers.get(i));
+        mv.visitVarInsn(Opcodes.ALOAD, CONTEXT_VAR);
+        pushInt(handlerRows.get(i));
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "addZelFrame",
+                '(' + ZEXCEPTION_DESC + CONTEXT_DESC + "I)" + ZEXCEPTION_DESC, false);
+        mv.visitInsn(Opcodes.ATHROW);
+      }
+    }
+
+    /**
+     * Every range of consecutive instructions that belong to the same source row gets a exception handler that
+     * will add the zel frame to ZExecutionExceptions, the same way the interpreter does.
+     */
+    private void registerExceptionHandlers(final Label[] labels, final List<Label> handlers,
+            final List<Integer> handlerRows) {
+      final Location[] debug = program.getDebug();
+      int rangeStart = 0;
+      int rangeRow = getRow(debug, 0);
+      boolean hasCode = false;
+      for (int i = 0, n = instructions.length; i <= n; i++) {
+        int row = i < n ? getRow(debug, i) : Integer.MIN_VALUE;
+        if (row != rangeRow || i == n) {
+          if (hasCode) {
+            Label handler = new Label();
+            mv.visitTryCatchBlock(labels[rangeStart], labels[i], handler, ZEXCEPTION);
+            handlers.add(handler);
+            handlerRows.add(rangeRow);
+          }
+          rangeStart = i;
+          rangeRow = row;
+          hasCode = false;
+        }
+        if (i < n && states[i] != null) {
+          Instruction instr = instructions[i];
+          hasCode |= !(instr instanceof LODAXF || instr instanceof NOP || instr instanceof SYNC);
+        }
+      }
+    }
+
+    private static int getRow(final Location[] debug, final int i) {
+      if (i < debug.length && debug[i] != null) {
+        return debug[i].getRow();
+      } else {
+        return -1;
+      }
+    }
+
+    @SuppressWarnings("checkstyle:methodlength")
+    @SuppressFBWarnings("CC_CYCLOMATIC_COMPLEXITY")
+    private void generate(final int i, final int[] in, final Label[] labels, final boolean[] writtenLocals) {
+      final int d = in.length;
+      final Instruction instr = instructions[i];
+      final Class<? extends Instruction> clasz = instr.getClass();
+      final String helper = BINARY_HELPERS.get(clasz);
+      if (instr instanceof ArithmeticInstruction) {
+        // every site gets its own inline cache.
+        loadConstant(((ArithmeticInstruction) instr).forSite());
+        mv.visitTypeInsn(Opcodes.CHECKCAST, ARITHMETIC);
+        loadStack(d - 2);
+        loadStack(d - 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, ARITHMETIC, "apply",
+                '(' + OBJECT_DESC + OBJECT_DESC + ')' + OBJECT_DESC, false);
+        storeStack(d - 2);
+      } else if (helper != null) {
+        loadStack(d - 2);
+        loadStack(d - 1);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, helper, BINARY_OP_DESC, false);
+        storeStack(d - 2);
+      } else if (clasz == PUSH.class) {
+        loadConstant(instr.getParameters()[0]);
+        storeStack(d);
+      } else if (clasz == LODXF.class) {
+        Address addr = (Address) instr.getParameters()[0];
+        if (addr.getScope() == Address.Scope.LOCAL) {
+          mv.visitVarInsn(Opcodes.ALOAD, LOCALS_BASE + addr.getAddress());
+        } else {
+          mv.visitVarInsn(Opcodes.ALOAD, CONTEXT_VAR);
+          pushInt(addr.getAddress());
+          mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, CONTEXT, "globalPeek", "(I)" + OBJECT_DESC, false);
+        }
+        storeStack(d);
+      } else if (clasz == MOV.class) {
+        loadStack(d - 1);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitVarInsn(Opcodes.ASTORE, LOCALS_BASE + in[d - 2]);
+        storeStack(d - 2);
+      } else if (clasz == MOVXF.class) {
+        loadStack(d - 1);
+        mv.visitVarInsn(Opcodes.ASTORE, LOCALS_BASE + ((Address) instr.getParameters()[0]).getAddress());
+      } else if (clasz == INC.class || clasz == DEC.class) {
+        int lval = in[d - 1];
+        if (lval == VALUE) {
+          loadStack(d - 1);
+        } else {
+          mv.visitVarInsn(Opcodes.ALOAD, LOCALS_BASE + lval);
+        }
+        if (clasz == INC.class) {
+          mv.visitMethodInsn(Opcodes.INVOKESTATIC, INC.class.getName().replace('.', '/'), "increment",
+                  '(' + OBJECT_DESC + ")Ljava/lang/Number;", false);
+        } else {
+          mv.visitMethodInsn(Opcodes.INVOKESTATIC, DEC.class.getName().replace('.', '/'), "decrement",
+                  '(' + OBJECT_DESC + ")Ljava/lang/Number;", false);
+        }
+        if (lval == VALUE) {
+          storeStack(d - 1);
+        } else {
+          mv.visitVarInsn(Opcodes.ASTORE, LOCALS_BASE + lval);
+        }
+      } else if (clasz == DEREF.class) {
+        loadStack(d - 2);
+        loadStack(d - 1);
+        deref();
+        storeStack(d - 2);
+      } else if (clasz == DEREFX.class) {
+        loadStack(d - 1);
+        loadConstant(((DEREFX) instr).getRef());
+        deref();
+        storeStack(d - 1);
+      } else if (clasz == NOT.class) {
+        loadStack(d - 1);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "not", '(' + OBJECT_DESC + ")L" + BOOLEAN + ';', false);
+        storeStack(d - 1);
+      } else if (clasz == ABS.class) {
+        loadStack(d - 1);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, "java/lang/Number");
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, ABS.class.getName().replace('.', '/'), "abs",
+                "(Ljava/lang/Number;)Ljava/lang/Number;", false);
+        storeStack(d - 1);
+      } else if (clasz == DUP.class) {
+        loadStack(d - 1);
+        storeStack(d);
+      } else if (clasz == CALL.class) {
+        int nrParams = (Integer) instr.getParameters()[0];
+        int fIdx = d - nrParams - 1;
+        mv.visitVarInsn(Opcodes.ALOAD, CONTEXT_VAR);
+        // shares the inline cache with the interpreter.
+        loadConstant(((CALL) instr).getJavaCallSite());
+        mv.visitTypeInsn(Opcodes.CHECKCAST, JAVA_CALL_SITE);
+        loadStack(fIdx);
+        newArray(fIdx + 1, nrParams);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "call",
+                '(' + CONTEXT_DESC + 'L' + JAVA_CALL_SITE + ';' + OBJECT_DESC + OBJECT_ARR_DESC + ')' + OBJECT_DESC,
+                false);
+        storeStack(fIdx);
+      } else if (clasz == ARR.class) {
+        int nrVals = (Integer) instr.getParameters()[0];
+        newArray(d - nrVals, nrVals);
+        storeStack(d - nrVals);
+      } else if (clasz == FJMP.class) {
+        loadStack(d - 1);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, BOOLEAN);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, BOOLEAN, "booleanValue", "()Z", false);
+        int target = jump(instr, i);
+        int[] out = Arrays.copyOf(in, d - 1);
+        if (out.length == states[target].length) {
+          mv.visitJumpInsn(Opcodes.IFEQ, labels[target]);
+        } else {
+          Label notTaken = new Label();
+          mv.visitJumpInsn(Opcodes.IFNE, notTaken);
+          moveStack(out, states[target]);
+          mv.visitJumpInsn(Opcodes.GOTO, labels[target]);
+          mv.visitLabel(notTaken);
+        }
+      } else if (clasz == JMP.class) {
+        int target = next(instr, i);
+        moveStack(in, states[target]);
+        mv.visitJumpInsn(Opcodes.GOTO, labels[target]);
+        return;
+      } else if (clasz == THROW.class) {
+        loadStack(d - 1);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "exception", '(' + OBJECT_DESC + ')' + ZEXCEPTION_DESC,
+                false);
+        mv.visitInsn(Opcodes.ATHROW);
+        return;
+      } else if (clasz == HALT.class) {
+        for (int j = 0; j < writtenLocals.length; j++) {
+          if (writtenLocals[j]) {
+            mv.visitVarInsn(Opcodes.ALOAD, MEM);
+            pushInt(j);
+            mv.visitVarInsn(Opcodes.ALOAD, LOCALS_BASE + j);
+            mv.visitInsn(Opcodes.AASTORE);
+          }
+        }
+        if (d > 0) {
+          loadStack(d - 1);
+        } else {
+          mv.visitFieldInsn(Opcodes.GETSTATIC, CONTEXT, "VOID", OBJECT_DESC);
+        }
+        mv.visitInsn(Opcodes.ARETURN);
+        return;
+      } else if (clasz != LODAXF.class && clasz != NOP.class && clasz != SYNC.class) {
+        throw new IllegalStateException("Unsupported instruction " + instr);
+      }
+      moveStack(transfer(instr, in), states[i + 1]);
+    }
+
+    /**
+     * Move the live stack slots to the layout expected by the jump target.
+     */
+    private void moveStack(final int[] from, final int[] to) {
+      final int shift = from.length - to.length;
+      if (shift != 0) {
+        for (int k = 0; k < to.length; k++) {
+          if (to[k] == VALUE) {
+            loadStack(k + shift);
+            storeStack(k);
+          }
+        }
+      }
+    }
+
+    private void deref() {
+      mv.visitMethodInsn(Opcodes.INVOKESTATIC, DEREF.class.getName().replace('.', '/'), "deref",
+              '(' + OBJECT_DESC + OBJECT_DESC + ')' + OBJECT_DESC, false);
+    }
+
+    /**
+     * creates a Object[] from the stack slots [from, from + nr).
+     */
+    private void newArray(final int from, final int nr) {
+      if (nr == 0) {
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "org/spf4j/base/Arrays", "EMPTY_OBJ_ARRAY", OBJECT_ARR_DESC);
+        return;
+      }
+      pushInt(nr);
+      mv.visitTypeInsn(Opcodes.ANEWARRAY, OBJECT);
+      for (int j = 0; j < nr; j++) {
+        mv.visitInsn(Opcodes.DUP);
+        pushInt(j);
+        loadStack(from + j);
+        mv.visitInsn(Opcodes.AASTORE);
+      }
+    }
+
+    private void loadConstant(@Nullable final Object value) {
+      if (value == null) {
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        return;
+      }
+      Integer idx = constantIdx.get(value);
+      if (idx == null) {
+        idx = constants.size();
+        constants.add(value);
+        constantIdx.put(value, idx);
+      }
+      mv.visitVarInsn(Opcodes.ALOAD, CONSTANTS);
+      pushInt(idx);
+      mv.visitInsn(Opcodes.AALOAD);
+    }
+
+    private void loadStack(final int slot) {
+      mv.visitVarInsn(Opcodes.ALOAD, stackBase + slot);
+    }
+
+    private void storeStack(final int slot) {
+      mv.visitVarInsn(Opcodes.ASTORE, stackBase + slot);
+    }
+
+    private void pushInt(final int value) {
+      if (value >= -1 && value <= 5) {
+        mv.visitInsn(Opcodes.ICONST_0 + value);
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        mv.visitIntInsn(Opcodes.BIPUSH, value);
+      } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+        mv.visitIntInsn(Opcodes.SIPUSH, value);
+      } else {
+        mv.visitLdcInsn(value);
+      }
+    }
+
+  }
+
+  private static final class ProgramClassLoader extends ClassLoader {
+
+    ProgramClassLoader() {
+      super(ProgramCompiler.class.getClassLoader());
+    }
+
+    Class<?> define(final String name, final byte[] byteCode) {
+      return defineClass(name, byteCode, 0, byteCode.length);
+    }
+
+  }
+
+  /**
+   * Frame computation needs common super classes, all stack slots are used as Object.
+   */
+  private static final class FrameClassWriter extends ClassWriter {
+
+    FrameClassWriter() {
+      super(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+    }
+
+    @Override
+    protected String getCommonSuperClass(final String type1, final String type2) {
+      return OBJECT;
+    }
+  }
+
+}
@@ -0,0 +1,789 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.spf4j.zel.instr.ABS;
+import org.spf4j.zel.instr.AND;
+import org.spf4j.zel.instr.ARR;
+import org.spf4j.zel.instr.ArithmeticInstruction;
+import org.spf4j.zel.instr.CALL;
+import org.spf4j.zel.instr.EQ;
+import org.spf4j.zel.instr.FJMP;
+import org.spf4j.zel.instr.GE;
+import org.spf4j.zel.instr.GT;
+import org.spf4j.zel.instr.HALT;
+import org.spf4j.zel.instr.Instruction;
+import org.spf4j.zel.instr.JMP;
+import org.spf4j.zel.instr.LE;
+import org.spf4j.zel.instr.LODAX;
+import org.spf4j.zel.instr.LODAXF;
+import org.spf4j.zel.instr.LODX;
+import org.spf4j.zel.instr.LODXF;
+import org.spf4j.zel.instr.LT;
+import org.spf4j.zel.instr.MOV;
+import org.spf4j.zel.instr.MOVXF;
+import org.spf4j.zel.instr.NEQ;
+import org.spf4j.zel.instr.NOP;
+import org.spf4j.zel.instr.NOT;
+import org.spf4j.zel.instr.OR;
+import org.spf4j.zel.instr.PUSH;
+import org.spf4j.zel.instr.SYNC;
+import org.spf4j.zel.instr.THROW;
+import org.spf4j.zel.instr.XOR;
+import org.spf4j.zel.vm.ParsingContext.Location;
+
+/**
+ * Compile time optimizations of ZEL programs:
+ * <ul>
+ * <li>constant folding of operators, and of deterministic functions invoked with literal arguments.</li>
+ * <li>elimination of branches with literal conditions, jump threading and dead code removal.</li>
+ * <li>peephole fusion of local variable assignments (LODAXF ... MOV -&gt; MOVXF) and removal of redundant SYNCs.</li>
+ * <li>elimination of repeated deterministic function invocations with the same arguments within a basic block.</li>
+ * </ul>
+ * The functions defined by the program are optimized as well.
+ * Only builtin functions are folded or eliminated, and only if the program never assigns their global symbol;
+ * user defined functions (and other global values) can be redefined at run time, so calls to them are kept.
+ * <p>
+ * The optimizer is opt in, {@link Program#compile(String, String...)} applies it only when run with
+ * -Dspf4j.zel.optimize=true, it can also be applied explicitly to a compiled program via {@link #INSTANCE}.
+ * @author zoly
+ */
+public final class ProgramOptimizer implements Function<Program, Program> {
+
+  static final boolean ENABLED = Boolean.getBoolean("spf4j.zel.optimize");
+
+  public static final Function<Program, Program> INSTANCE = new ProgramOptimizer();
+
+  private static final int MAX_ROUNDS = 8;
+
+  /**
+   * the builtin functions, every program global memory starts with them.
+   */
+  private static final Object[] BUILTINS = Program.getBuiltins().getFirst();
+
+  private static final Map<Class<? extends Instruction>, BinaryOperator<Object>> BINARY_OPS =
+          new IdentityHashMap<>(12);
+
+  /**
+   * instructions that do not change local variables, and that do not invoke arbitrary code.
+   */
+  private static final Set<Class<? extends Instruction>> PURE =
+          Collections.newSetFromMap(new IdentityHashMap<>());
+
+  static {
+    BINARY_OPS.put(LT.class, CompiledProgramSupport::lt);
+    BINARY_OPS.put(LE.class, CompiledProgramSupport::le);
+    BINARY_OPS.put(GT.class, CompiledProgramSupport::gt);
+    BINARY_OPS.put(GE.class, CompiledProgramSupport::ge);
+    BINARY_OPS.put(EQ.class, CompiledProgramSupport::eq);
+    BINARY_OPS.put(NEQ.class, CompiledProgramSupport::neq);
+    BINARY_OPS.put(AND.class, CompiledProgramSupport::and);
+    BINARY_OPS.put(OR.class, CompiledProgramSupport::or);
+    BINARY_OPS.put(XOR.class, CompiledProgramSupport::xor);
+    PURE.addAll(BINARY_OPS.keySet());
+    PURE.add(PUSH.class);
+    PURE.add(LODXF.class);
+    PURE.add(NOT.class);
+    PURE.add(ABS.class);
+    PURE.add(SYNC.class);
+    PURE.add(MOV.class);
+  }
+
+  private ProgramOptimizer() { }
+
+  @Override
+  public Program apply(final Program input) {
+    if (input == null) {
+      throw new IllegalArgumentException("Input cannot be null for " + this);
+    }
+    Object[] globalMem = input.getGlobalMem().clone();
+    Set<Integer> assignedGlobals = new HashSet<>();
+    Set<Program> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    addAssignedGlobals(input, assignedGlobals, visited);
+    for (Object obj : globalMem) {
+      if (obj instanceof Program) {
+        addAssignedGlobals((Program) obj, assignedGlobals, visited);
+      }
+    }
+    Map<Program, Program> optimized = new IdentityHashMap<>();
+    for (int i = 0; i < globalMem.length; i++) {
+      Object obj = globalMem[i];
+      if (obj instanceof Program) {
+        globalMem[i] = new Optimization((Program) obj, globalMem, assignedGlobals, optimized).run();
+      }
+    }
+    return new Optimization(input, globalMem, assignedGlobals, optimized).run();
+  }
+
+  /**
+   * collect the global memory addresses the program (and the functions it defines) assign to.
+   */
+  private static void addAssignedGlobals(final Program program, final Set<Integer> assignedGlobals,
+          final Set<Program> visited) {
+    if (!visited.add(program)) {
+      return;
+    }
+    Map<String, Integer> globalSymbolTable = program.getGlobalSymbolTable();
+    for (Instruction instr : program.getInstructions()) {
+      Class<? extends Instruction> clasz = instr.getClass();
+      if (clasz == LODAXF.class) {
+        Address addr = (Address) instr.getParameters()[0];
+        if (addr.getScope() == Address.Scope.GLOBAL) {
+          assignedGlobals.add(addr.getAddress());
+        }
+      } else if (clasz == LODAX.class) {
+        // by name references in functions, conservatively assume the global symbol is assigned.
+        Integer idx = globalSymbolTable.get(((LODAX) instr).getSymbol());
+        if (idx != null) {
+          assignedGlobals.add(idx);
+        }
+      } else if (clasz == PUSH.class) {
+        Object obj = instr.getParameters()[0];
+        if (obj instanceof Program) {
+          addAssignedGlobals((Program) obj, assignedGlobals, visited);
+        }
+      }
+    }
+  }
+
+  private static boolean isConstant(final Object obj) {
+    return (obj instanceof Number && !(obj instanceof BigDecimal)) // BigDecimal ops depend on the MathContext.
+            || obj instanceof String || obj instanceof Boolean || obj instanceof Character;
+  }
+
+  @Nullable
+  private static Object constant(final Node node) {
+    if (node.instr.getClass() == PUSH.class) {
+      Object obj = node.instr.getParameters()[0];
+      if (isConstant(obj)) {
+        return obj;
+      }
+    }
+    return null;
+  }
+
+  private static final class Node {
+
+    private Instruction instr;
+    private final Location loc;
+    @Nullable
+    private Node target;
+    private boolean removed;
+    private boolean jumpTarget;
+    private int idx;
+    @Nullable
+    private Node forward;
+    @Nullable
+    private Node insertAfter;
+    @Nullable
+    private Address temp;
+
+    Node(final Instruction instr, final Location loc) {
+      this.instr = instr;
+      this.loc = loc;
+    }
+
+    boolean isJump() {
+      Class<? extends Instruction> clasz = instr.getClass();
+      return clasz == JMP.class || clasz == FJMP.class;
+    }
+
+    void remove() {
+      removed = true;
+    }
+
+    @Override
+    public String toString() {
+      return "Node{" + instr + ", target=" + (target == null ? "none" : target.idx) + '}';
+    }
+  }
+
+  private static final class Optimization {
+
+    private final Program program;
+    private final Object[] globalMem;
+    private final Set<Integer> assignedGlobals;
+    private final Map<Program, Program> optimized;
+    private Map<String, Integer> localSymbolTable;
+    private List<Node> nodes;
+    /**
+     * the next node becomes a jump target, after the removal of the nodes that precede it.
+     */
+    private boolean pendingTarget;
+
+    Optimization(final Program program, final Object[] globalMem, final Set<Integer> assignedGlobals,
+            final Map<Program, Program> optimized) {
+      this.program = program;
+      this.globalMem = globalMem;
+      this.assignedGlobals = assignedGlobals;
+      this.optimized = optimized;
+      this.localSymbolTable = program.getLocalSymbolTable();
+    }
+
+    Program run() {
+      Program result = optimized.get(program);
+      if (result != null) {
+        return result;
+      }
+      decode();
+      for (int i = 0; i < MAX_ROUNDS; i++) {
+        boolean changed = foldConstants();
+        compact();
+        changed |= threadJumps();
+        compact();
+        changed |= removeDeadCode();
+        compact();
+        if (!changed) {
+          break;
+        }
+      }
+      fuseAssignments();
+      compact();
+      eliminateCommonCalls();
+      compact();
+      result = encode();
+      optimized.put(program, result);
+      return result;
+    }
+
+    private void decode() {
+      Instruction[] code = program.getInstructions();
+      Location[] debug = program.getDebug();
+      nodes = new ArrayList<>(code.length);
+      for (int i = 0; i < code.length; i++) {
+        nodes.add(new Node(resolve(code[i]), debug != null && i < debug.length ? debug[i] : null));
+      }
+      for (int i = 0; i < code.length; i++) {
+        Node node = nodes.get(i);
+        if (node.isJump()) {
+          node.target = nodes.get(i + (Integer) node.instr.getParameters()[0]);
+        }
+      }
+      compact();
+    }
+
+    /**
+     * Functions are not processed by the RefOptimizer, resolve the references by name here,
+     * the same way LODX/LODAX do at runtime. Function definitions are optimized as well.
+     */
+    private Instruction resolve(final Instruction instr) {
+      Class<? extends Instruction> clasz = instr.getClass();
+      if (clasz == LODX.class) {
+        String symbol = ((LODX) instr).getSymbol();
+        Integer idx = localSymbolTable.get(symbol);
+        if (idx != null) {
+          return new LODXF(new Address(idx, Address.Scope.LOCAL));
+        }
+        idx = program.getGlobalSymbolTable().get(symbol);
+        if (idx != null) {
+          return new LODXF(new Address(idx, Address.Scope.GLOBAL));
+        }
+      } else if (clasz == LODAX.class) {
+        Integer idx = localSymbolTable.get(((LODAX) instr).getSymbol());
+        if (idx != null) {
+          return new LODAXF(new Address(idx, Address.Scope.LOCAL));
+        }
+      } else if (clasz == PUSH.class) {
+        Object obj = instr.getParameters()[0];
+        if (obj instanceof Program) {
+          return new PUSH(new Optimization((Program) obj, globalMem, assignedGlobals, optimized).run());
+        }
+      }
+      return instr;
+    }
+
+    private Program encode() {
+      int n = nodes.size();
+      Instruction[] code = new Instruction[n];
+      Location[] debug = new Location[n];
+      for (int i = 0; i < n; i++) {
+        Node node = nodes.get(i);
+        Class<? extends Instruction> clasz = node.instr.getClass();
+        if (clasz == JMP.class) {
+          code[i] = new JMP(node.target.idx - i);
+        } else if (clasz == FJMP.class) {
+          code[i] = new FJMP(node.target.idx - i);
+        } else {
+          code[i] = node.instr;
+        }
+        debug[i] = node.loc;
+      }
+      return new Program(program.getName(), program.getGlobalSymbolTable(), globalMem, localSymbolTable,
+              code, debug, program.getSource(), program.getType(), program.getExecType(),
+              program.hasDeterministicFunctions());
+    }
+
+    /**
+     * Drops the removed nodes, inserts the pending nodes, retargets the jumps to removed nodes to the next
+     * live node, and recomputes the jump targets.
+     */
+    private void compact() {
+      Node next = null;
+      for (int i = nodes.size() - 1; i >= 0; i--) {
+        Node node = nodes.get(i);
+        if (node.removed) {
+          node.forward = next;
+        } else {
+          next = node;
+        }
+      }
+      List<Node> live = new ArrayList<>(nodes.size());
+      for (Node node : nodes) {
+        if (!node.removed) {
+          node.idx = live.size();
+          node.jumpTarget = false;
+          live.add(node);
+          Node after = node.insertAfter;
+          if (after != null) {
+            after.idx = live.size();
+            live.add(after);
+            node.insertAfter = null;
+          }
+        }
+      }
+      for (Node node : live) {
+        Node target = node.target;
+        if (target != null) {
+          while (target.removed) {
+            target = target.forward;
+          }
+          node.target = target;
+          target.jumpTarget = true;
+        }
+      }
+      nodes = live;
+    }
+
+    /**
+     * Peephole constant folding: operators and deterministic functions with literal operands,
+     * and conditional jumps with literal conditions.
+     * @return true if anything was folded.
+     */
+    private boolean foldConstants() {
+      boolean changed = false;
+      List<Node> out = new ArrayList<>(nodes.size());
+      for (Node node : nodes) {
+        node.jumpTarget |= pendingTarget;
+        pendingTarget = false;
+        out.add(node);
+        changed |= fold(out);
+      }
+      return changed;
+    }
+
+    private boolean fold(final List<Node> out) {
+      final int last = out.size() - 1;
+      final Node node = out.get(last);
+      final Instruction instr = node.instr;
+      final Class<? extends Instruction> clasz = instr.getClass();
+      if (node.jumpTarget) {
+        return false;
+      }
+      if (instr instanceof ArithmeticInstruction || BINARY_OPS.containsKey(clasz)) {
+        if (last < 2 || out.get(last - 1).jumpTarget) {
+          return false;
+        }
+        Object a = constant(out.get(last - 2));
+        Object b = constant(out.get(last - 1));
+        if (a == null || b == null) {
+          return false;
+        }
+        Object result;
+        try {
+          if (instr instanceof ArithmeticInstruction) {
+            result = ((ArithmeticInstruction) instr).apply(a, b);
+          } else {
+            result = BINARY_OPS.get(clasz).apply(a, b);
+          }
+        } catch (RuntimeException ex) {
+          return false; // will fail at runtime.
+        }
+        return replace(out, 2, result);
+      } else if (clasz == NOT.class || clasz == ABS.class) {
+        if (last < 1) {
+          return false;
+        }
+        Object a = constant(out.get(last - 1));
+        if (a == null) {
+          return false;
+        }
+        Object result;
+        try {
+          result = clasz == NOT.class ? CompiledProgramSupport.not(a) : ABS.abs((Number) a);
+        } catch (RuntimeException ex) {
+          return false;
+        }
+        return replace(out, 1, result);
+      } else if (clasz == CALL.class) {
+        int nrParams = (Integer) instr.getParameters()[0];
+        if (last < nrParams + 1) {
+          return false;
+        }
+        Object function = function(out.get(last - nrParams - 1));
+        if (!(function instanceof DeterministicMethod)) {
+          return false;
+        }
+        Object[] params = new Object[nrParams];
+        for (int i = 0; i < nrParams; i++) {
+          Node pn = out.get(last - nrParams + i);
+          params[i] = constant(pn);
+          if (params[i] == null || pn.jumpTarget) {
+            return false;
+          }
+        }
+        Object result;
+        try {
+          result = ((DeterministicMethod) function).invoke(null, params);
+        } catch (RuntimeException ex) {
+          return false;
+        }
+        return replace(out, nrParams + 1, result);
+      } else if (clasz == FJMP.class) {
+        if (last < 1) {
+          return false;
+        }
+        Object cond = constant(out.get(last - 1));
+        if (!(cond instanceof Boolean)) {
+          return false;
+        }
+        removeTail(out, 1, node);
+        if ((Boolean) cond) {
+          node.remove();
+          out.remove(last - 1);
+          pendingTarget = node.jumpTarget;
+        } else {
+          node.instr = new JMP(0); // relative address is computed at encoding.
+        }
+        return true;
+      }
+      return false;
+    }
+
+    private static boolean replace(final List<Node> out, final int nrOperands, final Object result) {
+      if (!isConstant(result)) {
+        return false;
+      }
+      int last = out.size() - 1;
+      Node node = out.get(last);
+      node.instr = new PUSH(result);
+      removeTail(out, nrOperands, node);
+      return true;
+    }
+
+    /**
+     * remove the nrNodes nodes that precede the last node from out,
+     * the jumps to them will end up at successor.
+     */
+    private static void removeTail(final List<Node> out, final int nrNodes, final Node successor) {
+      int last = out.size() - 1;
+      for (int i = 0; i < nrNodes; i++) {
+        Node removed = out.remove(last - 1 - i);
+        removed.remove();
+        successor.jumpTarget |= removed.jumpTarget;
+      }
+    }
+
+    /**
+     * @return the function invoked by a CALL, if it is known at compile time: a literal, or a builtin function
+     * the program never assigns.
+     */
+    @Nullable
+    private Object function(final Node node) {
+      Instruction instr = node.instr;
+      Class<? extends Instruction> clasz = instr.getClass();
+      if (clasz == PUSH.class) {
+        return instr.getParameters()[0];
+      } else if (clasz == LODXF.class) {
+        Address addr = (Address) instr.getParameters()[0];
+        if (addr.getScope() == Address.Scope.GLOBAL && isUnassignedBuiltin(addr.getAddress())) {
+          return globalMem[addr.getAddress()];
+        }
+      }
+      return null;
+    }
+
+    private boolean isUnassignedBuiltin(final int idx) {
+      if (idx >= BUILTINS.length || idx >= globalMem.length) {
+        return false;
+      }
+      Object value = globalMem[idx];
+      return value == BUILTINS[idx] && !assignedGlobals.contains(idx);
+    }
+
+    /**
+     * Jumps to jumps go directly to the final destination, jumps to HALT become HALT, jumps to the next
+     * instruction are removed, SYNC before HALT and after instructions that never produce futures,
+     * and NOPs are removed.
+     * @return true if anything changed.
+     */
+    private boolean threadJumps() {
+      boolean changed = false;
+      final int n = nodes.size();
+      for (int i = 0; i < n; i++) {
+        Node node = nodes.get(i);
+        Node target = node.target;
+        if (target != null) {
+          int hops = 0;
+          while (target != node && hops++ < n && target.instr.getClass() == JMP.class) {
+            target = target.target;
+          }
+          if (target != node.target) {
+            node.target = target;
+            changed = true;
+          }
+          if (node.instr.getClass() == JMP.class) {
+            if (target.instr.getClass() == HALT.class) {
+              node.instr = HALT.INSTANCE;
+              node.target = null;
+              changed = true;
+            } else if (i + 1 < n && target == nodes.get(i + 1)) {
+              node.remove();
+              changed = true;
+            }
+          }
+        } else if (i + 1 < n) {
+          Class<? extends Instruction> clasz = node.instr.getClass();
+          if (clasz == NOP.class) {
+            node.remove();
+            changed = true;
+          } else if (clasz == SYNC.class
+                  && ((i > 0 && !node.jumpTarget && neverFuture(nodes.get(i - 1).instr))
+                  || nodes.get(i + 1).instr.getClass() == HALT.class)) {
+            node.remove();
+            changed = true;
+          }
+        }
+      }
+      return changed;
+    }
+
+    private static boolean neverFuture(final Instruction instr) {
+      Class<? extends Instruction> clasz = instr.getClass();
+      return clasz == PUSH.class || clasz == NOT.class || clasz == ABS.class
+              || instr instanceof ArithmeticInstruction || BINARY_OPS.containsKey(clasz);
+    }
+
+    /**
+     * Removes the instructions that cannot be reached from the program start.
+     * @return true if anything was removed.
+     */
+    private boolean removeDeadCode() {
+      final int n = nodes.size();
+      boolean[] reachable = new boolean[n];
+      ArrayDeque<Node> todo = new ArrayDeque<>();
+      reachable[0] = true;
+      todo.add(nodes.get(0));
+      while (!todo.isEmpty()) {
+        Node node = todo.poll();
+        Class<? extends Instruction> clasz = node.instr.getClass();
+        Node target = node.target;
+        if (target != null && !reachable[target.idx]) {
+          reachable[target.idx] = true;
+          todo.add(target);
+        }
+        int next = node.idx + 1;
+        if (next < n && !reachable[next] && clasz != JMP.class && clasz != HALT.class && clasz != THROW.class) {
+          reachable[next] = true;
+          todo.add(nodes.get(next));
+        }
+      }
+      boolean changed = false;
+      for (int i = 0; i < n - 1; i++) { // the final HALT always stays.
+        if (!reachable[i]) {
+          nodes.get(i).remove();
+          changed = true;
+        }
+      }
+      return changed;
+    }
+
+    /**
+     * LODAXF(LOCAL a) ... MOV -&gt; ... MOVXF(a), when the code in between is straight line code
+     * with a known stack effect.
+     */
+    private void fuseAssignments() {
+      for (int i = 0, n = nodes.size(); i < n; i++) {
+        Node node = nodes.get(i);
+        if (node.instr.getClass() == LODAXF.class) {
+          Address addr = (Address) node.instr.getParameters()[0];
+          if (addr.getScope() == Address.Scope.LOCAL) {
+            int mov = findAssignment(i);
+            if (mov > 0) {
+              node.remove();
+              nodes.get(mov).instr = new MOVXF(addr);
+            }
+          }
+        }
+      }
+    }
+
+    private int findAssignment(final int lvalue) {
+      int depth = 0; // the number of values above the lvalue.
+      for (int i = lvalue + 1, n = nodes.size(); i < n; i++) {
+        Node node = nodes.get(i);
+        if (node.jumpTarget) {
+          return -1;
+        }
+        Instruction instr = node.instr;
+        Class<? extends Instruction> clasz = instr.getClass();
+        if (clasz == MOV.class && depth == 1) {
+          return i;
+        }
+        int pops;
+        if (clasz == PUSH.class || clasz == LODXF.class || clasz == LODAXF.class) {
+          pops = 0;
+        } else if (clasz == MOVXF.class || clasz == NOT.class || clasz == ABS.class || clasz == SYNC.class) {
+          pops = 1;
+        } else if (clasz == MOV.class || instr instanceof ArithmeticInstruction || BINARY_OPS.containsKey(clasz)) {
+          pops = 2;
+        } else if (clasz == CALL.class) {
+          pops = (Integer) instr.getParameters()[0] + 1;
+        } else if (clasz == ARR.class) {
+          pops = (Integer) instr.getParameters()[0];
+        } else {
+          return -1;
+        }
+        if (pops > depth) {
+          return -1;
+        }
+        depth += 1 - pops;
+      }
+      return -1;
+    }
+
+    /**
+     * Repeated invocations of deterministic functions with the same literal or local variable arguments
+     * within a basic block are replaced with a read of a temporary local variable that holds the result of
+     * the first invocation.
+     */
+    private void eliminateCommonCalls() {
+      Map<List<Object>, Node> available = new HashMap<>();
+      for (int i = 0, n = nodes.size(); i < n; i++) {
+        Node node = nodes.get(i);
+        if (node.jumpTarget) {
+          available.clear();
+        }
+        Instruction instr = node.instr;
+        Class<? extends Instruction> clasz = instr.getClass();
+        if (clasz == CALL.class) {
+          List<Object> key = callKey(i);
+          if (key == null) {
+            available.clear();
+            continue;
+          }
+          Node first = available.get(key);
+          if (first == null) {
+            available.put(key, node);
+          } else {
+            Address temp = first.temp;
+            if (temp == null) {
+              temp = allocateTemp();
+              first.temp = temp;
+              first.insertAfter = new Node(new MOVXF(temp), first.loc);
+            }
+            for (int j = i - key.size(); j < i; j++) {
+              nodes.get(j).remove();
+            }
+            node.instr = new LODXF(temp);
+          }
+        } else if (clasz == LODAXF.class || clasz == MOVXF.class) {
+          Object addr = instr.getParameters()[0];
+          available.keySet().removeIf((k) -> k.contains(addr));
+        } else if (!PURE.contains(clasz) && !(instr instanceof ArithmeticInstruction)) {
+          available.clear();
+        }
+      }
+    }
+
+    /**
+     * @return function + arguments, if the CALL at index i invokes a deterministic function with literal
+     * or local variable arguments, null otherwise.
+     */
+    @Nullable
+    private List<Object> callKey(final int i) {
+      int nrParams = (Integer) nodes.get(i).instr.getParameters()[0];
+      int start = i - nrParams - 1;
+      if (start < 0 || nodes.get(i).jumpTarget) {
+        return null;
+      }
+      Object function = function(nodes.get(start));
+      if (!(function instanceof DeterministicMethod
+              || (function instanceof Program && ((Program) function).getType() == Program.Type.DETERMINISTIC))) {
+        return null;
+      }
+      List<Object> key = new ArrayList<>(nrParams + 1);
+      key.add(function);
+      for (int j = start + 1; j < i; j++) {
+        Node node = nodes.get(j);
+        if (node.jumpTarget) {
+          return null;
+        }
+        Instruction instr = node.instr;
+        Object param = instr.getParameters().length == 1 ? instr.getParameters()[0] : null;
+        if (instr.getClass() == PUSH.class && isConstant(param)) {
+          key.add(param);
+        } else if (instr.getClass() == LODXF.class && ((Address) param).getScope() == Address.Scope.LOCAL) {
+          key.add(param);
+        } else {
+          return null;
+        }
+      }
+      return key;
+    }
+
+    @SuppressFBWarnings("STT_TOSTRING_STORED_IN_FIELD")
+    private Address allocateTemp() {
+      if (localSymbolTable == program.getLocalSymbolTable()) {
+        localSymbolTable = new HashMap<>(localSymbolTable);
+      }
+      int idx = localSymbolTable.size();
+      String name = "#cse" + idx;
+      localSymbolTable.put(name, idx);
+      return new Address(idx, Address.Scope.LOCAL);
+    }
+  }
+
+}
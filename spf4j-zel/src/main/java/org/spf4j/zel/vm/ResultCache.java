@@ -31,6 +31,7 @@
  */
 package org.spf4j.zel.vm;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -54,4 +55,30 @@ public interface ResultCache {
     Object getResult(Program program, @Nonnull List<Object> params, Callable<Object> compute)
             throws ExecutionException;
 
+    /**
+     * Memorize a result for the arguments params[0 .. nrParams - 1], the params array can be reused by the caller.
+     */
+    default void putPermanentResult(final Program program, @Nonnull final Object[] params, final int nrParams,
+            @Nullable final Object result) {
+        putPermanentResult(program, Arrays.asList(Arrays.copyOf(params, nrParams)), result);
+    }
+
+    /**
+     * Memorize a result for the arguments params[0 .. nrParams - 1], the params array can be reused by the caller.
+     */
+    default void putTransientResult(final Program program, @Nonnull final Object[] params, final int nrParams,
+            @Nullable final Object result) {
+        putTransientResult(program, Arrays.asList(Arrays.copyOf(params, nrParams)), result);
+    }
+
+    /**
+     * Get the result for the arguments params[0 .. nrParams - 1], computing and memorizing it if needed.
+     * The params array is not retained, implementations can use it for lookups without copying it.
+     */
+    @Nullable
+    default Object getResult(final Program program, @Nonnull final Object[] params, final int nrParams,
+            final Callable<Object> compute) throws ExecutionException {
+        return getResult(program, Arrays.asList(Arrays.copyOf(params, nrParams)), compute);
+    }
+
 }
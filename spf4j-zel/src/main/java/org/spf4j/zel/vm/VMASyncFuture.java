@@ -44,6 +44,8 @@ import org.spf4j.base.Either;
 public class VMASyncFuture<T> implements VMFuture<T> {
     private volatile Either<T, ? extends ExecutionException> resultStore;
 
+    private final WakeUpList wakeUpList = new WakeUpList();
+
     @Override
     public final boolean cancel(final boolean mayInterruptIfRunning) {
         throw new UnsupportedOperationException();
@@ -90,6 +92,11 @@ public class VMASyncFuture<T> implements VMFuture<T> {
         resultStore = Either.right(result);
     }
 
+    @Override
+    public final WakeUpList getWakeUpList() {
+        return wakeUpList;
+    }
+
     @Override
     public final String toString() {
         return "VMASyncFuture{" + "resultStore=" + resultStore + '}';
@@ -32,36 +32,38 @@
 package org.spf4j.zel.vm;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import javax.annotation.Nullable;
-import org.spf4j.base.Pair;
 
 /**
+ * Executes ZEL programs asynchronously.
+ *
+ * A suspended program (waiting for a VMFuture) is captured as a continuation (the program's ExecutionContext
+ * holds its state) in the lock free wake up list of every future it waits for. The first completed future resumes
+ * the continuation, all the continuations waiting for a future are resumed in one batch.
+ * When running on a ForkJoinPool, continuations resumed from a pool worker are forked into the worker's queue
+ * and are available for stealing by the other workers, the resumptions from other threads are submitted
+ * to the pool as a single task.
  *
  * @author zoly
  */
-@SuppressFBWarnings("NOS_NON_OWNED_SYNCHRONIZATION")
+@SuppressFBWarnings({"NOS_NON_OWNED_SYNCHRONIZATION", "HES_EXECUTOR_NEVER_SHUTDOWN"})
 public final class VMExecutor {
 
   private final Executor exec;
 
-  /**
-   * Map from Future -> Suspendables suspended at this futures and their futures.
-   */
-  private final ConcurrentMap<VMFuture<Object>, List<Pair<Suspendable<Object>, VMFuture<Object>>>> futToSuspMap
-          = new ConcurrentHashMap<>();
-
+  @Nullable
+  private final ForkJoinPool pool;
 
   public static class Lazy {
 
@@ -144,6 +146,7 @@ public final class VMExecutor {
 
   public VMExecutor(final Executor exec) {
     this.exec = exec;
+    this.pool = exec instanceof ForkJoinPool ? (ForkJoinPool) exec : null;
   }
 
   public <T> Future<T> submitNonSuspendable(final Callable<T> callable) {
@@ -154,7 +157,7 @@ public final class VMExecutor {
 
   public <T> Future<T> submit(final Suspendable<T> callable) {
     final VMFuture<T> resultFuture = new VMSyncFuture<>();
-    submit(callable, resultFuture);
+    schedule(new Continuation(this, (Suspendable<Object>) callable, (VMFuture<Object>) resultFuture));
     return resultFuture;
   }
 
@@ -167,85 +170,171 @@ public final class VMExecutor {
    */
   public <T> Future<T> submitInternal(final Suspendable<T> callable) {
     final VMFuture<T> resultFuture = new VMASyncFuture<>();
-    submit(callable, resultFuture);
+    schedule(new Continuation(this, (Suspendable<Object>) callable, (VMFuture<Object>) resultFuture));
     return resultFuture;
   }
 
-  @Nullable
-  public List<Pair<Suspendable<Object>, VMFuture<Object>>> resumeSuspendables(final VMFuture<Object> future) {
-    List<Pair<Suspendable<Object>, VMFuture<Object>>> suspended = futToSuspMap.remove(future);
-    if (suspended != null) {
-      for (Pair<Suspendable<Object>, VMFuture<Object>> susp : suspended) {
-        submit(susp.getFirst(), susp.getSecond());
-      }
+  /**
+   * Resume all continuations suspended waiting for a future. Must be invoked after the future is done.
+   * @return true if there were continuations waiting for the future.
+   */
+  public boolean resumeSuspendables(final VMFuture<Object> future) {
+    WakeUpList.Node nodes = future.getWakeUpList().close();
+    if (nodes == null) {
+      return false;
     }
-    return suspended;
+    if (pool != null && nodes.getNext() != null && !isPoolWorker()) {
+      exec.execute(new Resumption(this, nodes));
+    } else {
+      resume(nodes);
+    }
+    return true;
   }
 
-  private void addSuspendable(final VMFuture<Object> futureSuspendedFor,
-          final Suspendable<Object> suspendedCallable, final VMFuture<Object> suspendedCallableFuture) {
-
-    List<Pair<Suspendable<Object>, VMFuture<Object>>> suspended
-            = futToSuspMap.get(futureSuspendedFor);
-    if (suspended == null) {
-      suspended = new LinkedList<>();
-      List<Pair<Suspendable<Object>, VMFuture<Object>>> old
-              = futToSuspMap.putIfAbsent(futureSuspendedFor, suspended);
-      if (old != null) {
-        suspended = old;
+  private void resume(@Nullable final WakeUpList.Node nodes) {
+    for (WakeUpList.Node node = nodes; node != null; node = node.getNext()) {
+      Continuation continuation = node.getContinuation();
+      if (continuation.claim()) {
+        schedule(continuation);
       }
     }
-    do {
-      List<Pair<Suspendable<Object>, VMFuture<Object>>> newList
-              = new LinkedList<>(suspended);
-      newList.add(Pair.of(suspendedCallable, suspendedCallableFuture));
-      if (futToSuspMap.replace(futureSuspendedFor, suspended, newList)) {
-        break;
-      } else {
-        suspended = futToSuspMap.get(futureSuspendedFor);
-        if (suspended == null) {
-          suspended = new LinkedList<>();
-          List<Pair<Suspendable<Object>, VMFuture<Object>>> old
-                  = futToSuspMap.putIfAbsent(futureSuspendedFor, suspended);
-          if (old != null) {
-            suspended = old;
-          }
+  }
+
+  private void suspend(final Continuation continuation, final List<VMFuture<Object>> suspendedAt) {
+    for (VMFuture<Object> fut : suspendedAt) {
+      if (!fut.getWakeUpList().add(continuation)) {
+        if (continuation.claim()) {
+          schedule(continuation);
         }
+        return;
+      }
+      if (fut.isDone()) {
+        resumeSuspendables(fut);
       }
-    } while (true);
-    if (futureSuspendedFor.isDone()) {
-      resumeSuspendables(futureSuspendedFor);
     }
   }
 
-  private <T> void submit(final Suspendable<T> callable, final VMFuture<T> future) {
-    exec.execute(new Runnable() {
+  private boolean isPoolWorker() {
+    Thread thread = Thread.currentThread();
+    return thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == pool;
+  }
 
-      @Override
-      public void run() {
-        try {
-          T result = callable.call();
-          future.setResult(result);
-          resumeSuspendables((VMFuture<Object>) future);
-        } catch (SuspendedException ex) {
-          for (VMFuture<Object> fut : callable.getSuspendedAt()) {
-            addSuspendable(fut,
-                    (Suspendable<Object>) callable, (VMFuture<Object>) future);
-          }
-        } catch (ExecutionException e) {
-          future.setExceptionResult(e);
-          resumeSuspendables((VMFuture<Object>) future);
-        } catch (RuntimeException | InterruptedException e) {
-          future.setExceptionResult(new ExecutionException(e));
-          resumeSuspendables((VMFuture<Object>) future);
-        }
-      }
-    });
+  private void schedule(final Continuation continuation) {
+    if (pool != null && isPoolWorker()) {
+      continuation.fork();
+    } else {
+      exec.execute(continuation);
+    }
   }
 
   @Override
   public String toString() {
-    return "VMExecutor{" + "exec=" + exec + ", futToSuspMap=" + futToSuspMap + '}';
+    return "VMExecutor{" + "exec=" + exec + '}';
+  }
+
+  /**
+   * A program (suspendable) run attempt. When the program suspends, a new continuation is registered with
+   * the futures the program waits for, and it is scheduled by the first thread that claims it.
+   */
+  @SuppressFBWarnings("SE_BAD_FIELD")
+  static final class Continuation extends ForkJoinTask<Void> implements Runnable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final AtomicIntegerFieldUpdater<Continuation> CLAIMED =
+            AtomicIntegerFieldUpdater.newUpdater(Continuation.class, "claimed");
+
+    private final VMExecutor executor;
+
+    private final Suspendable<Object> callable;
+
+    private final VMFuture<Object> future;
+
+    private volatile int claimed;
+
+    Continuation(final VMExecutor executor, final Suspendable<Object> callable, final VMFuture<Object> future) {
+      this.executor = executor;
+      this.callable = callable;
+      this.future = future;
+    }
+
+    boolean claim() {
+      return claimed == 0 && CLAIMED.compareAndSet(this, 0, 1);
+    }
+
+    @Override
+    public Void getRawResult() {
+      return null;
+    }
+
+    @Override
+    protected void setRawResult(final Void value) {
+      // no result.
+    }
+
+    @Override
+    protected boolean exec() {
+      run();
+      return true;
+    }
+
+    @Override
+    public void run() {
+      try {
+        Object result = callable.call();
+        future.setResult(result);
+        executor.resumeSuspendables(future);
+      } catch (SuspendedException ex) {
+        executor.suspend(new Continuation(executor, callable, future), callable.getSuspendedAt());
+      } catch (ExecutionException e) {
+        future.setExceptionResult(e);
+        executor.resumeSuspendables(future);
+      } catch (RuntimeException | InterruptedException e) {
+        future.setExceptionResult(new ExecutionException(e));
+        executor.resumeSuspendables(future);
+      }
+    }
+
+  }
+
+  /**
+   * Batch of continuations resumed from outside the pool, forked into the queue of the worker running the batch.
+   */
+  @SuppressFBWarnings("SE_BAD_FIELD")
+  private static final class Resumption extends ForkJoinTask<Void> implements Runnable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final VMExecutor executor;
+
+    private final WakeUpList.Node nodes;
+
+    Resumption(final VMExecutor executor, final WakeUpList.Node nodes) {
+      this.executor = executor;
+      this.nodes = nodes;
+    }
+
+    @Override
+    public Void getRawResult() {
+      return null;
+    }
+
+    @Override
+    protected void setRawResult(final Void value) {
+      // no result.
+    }
+
+    @Override
+    protected boolean exec() {
+      run();
+      return true;
+    }
+
+    @Override
+    public void run() {
+      executor.resume(nodes);
+    }
+
   }
 
 }
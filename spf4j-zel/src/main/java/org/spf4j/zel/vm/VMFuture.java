@@ -49,5 +49,10 @@ public interface VMFuture<T> extends Future<T> {
 
     void setExceptionResult(ExecutionException result);
 
+    /**
+     * @return the list of continuations suspended waiting for this future, closed when this future is done.
+     */
+    WakeUpList getWakeUpList();
+
 
 }
@@ -49,6 +49,8 @@ import static org.spf4j.concurrent.FutureBean.processResult;
 public class VMSyncFuture<T> implements VMFuture<T> {
     private volatile Either<T, ? extends ExecutionException> resultStore;
 
+    private final WakeUpList wakeUpList = new WakeUpList();
+
     @Override
     public final boolean cancel(final boolean mayInterruptIfRunning) {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -118,6 +120,11 @@ public class VMSyncFuture<T> implements VMFuture<T> {
         this.notifyAll();
     }
 
+    @Override
+    public final WakeUpList getWakeUpList() {
+        return wakeUpList;
+    }
+
     @Override
     public final String toString() {
         return "VMSyncFuture{" + "resultStore=" + resultStore + '}';
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Lock free list of the continuations suspended waiting for a future (Treiber stack).
+ * Once closed (when the future is done), no more continuations can be added, so a continuation is either
+ * resumed by the thread that closes the list, or by the thread trying to add it.
+ *
+ * @author zoly
+ */
+@ThreadSafe
+public final class WakeUpList {
+
+  private static final Node CLOSED = new Node(null, null);
+
+  private static final AtomicReferenceFieldUpdater<WakeUpList, Node> HEAD =
+          AtomicReferenceFieldUpdater.newUpdater(WakeUpList.class, Node.class, "head");
+
+  private volatile Node head;
+
+  /**
+   * @return false if the list is closed, and the continuation was not added.
+   */
+  boolean add(final VMExecutor.Continuation continuation) {
+    Node h;
+    Node node = null;
+    do {
+      h = head;
+      if (h == CLOSED) {
+        return false;
+      }
+      if (node == null) {
+        node = new Node(continuation, h);
+      } else {
+        node.next = h;
+      }
+    } while (!HEAD.compareAndSet(this, h, node));
+    return true;
+  }
+
+  /**
+   * Close this list.
+   * @return the continuations added to this list, null if none or if the list was already closed.
+   */
+  @Nullable
+  Node close() {
+    Node h = HEAD.getAndSet(this, CLOSED);
+    return h == CLOSED ? null : h;
+  }
+
+
+  @Override
+  public String toString() {
+    Node h = head;
+    return "WakeUpList{" + (h == CLOSED ? "closed" : h == null ? "empty" : "waiting") + '}';
+  }
+
+  static final class Node {
+
+    private final VMExecutor.Continuation continuation;
+
+    private Node next;
+
+    Node(@Nullable final VMExecutor.Continuation continuation, @Nullable final Node next) {
+      this.continuation = continuation;
+      this.next = next;
+    }
+
+    VMExecutor.Continuation getContinuation() {
+      return continuation;
+    }
+
+    @Nullable
+    Node getNext() {
+      return next;
+    }
+
+  }
+
+}
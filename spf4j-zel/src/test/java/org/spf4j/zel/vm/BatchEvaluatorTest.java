@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.tsdb2.TimeSeries;
+import org.spf4j.tsdb2.avro.ColumnDef;
+import org.spf4j.tsdb2.avro.TableDef;
+
+/**
+ * @author zoly
+ */
+public final class BatchEvaluatorTest {
+
+  @Test
+  public void testColumns() throws CompileException, ExecutionException, InterruptedException {
+    BatchEvaluator eval = new BatchEvaluator(Program.compile("errors / total", "errors", "total"));
+    double[] result = new double[3];
+    eval.evaluate(new Object[] {new double[] {1, 2, 0}, new double[] {10, 4, 5}}, result);
+    Assert.assertArrayEquals(new double[] {0.1, 0.5, 0}, result, 0.0000001);
+    long[] lresult = new long[3];
+    eval.evaluate(new Object[] {new long[] {10, 20, 30}, new Object[] {10, 2, 3L}}, lresult);
+    Assert.assertArrayEquals(new long[] {1, 10, 10}, lresult);
+    Object[] oresult = new Object[3];
+    eval.evaluate(new Object[] {new long[] {10, 20, 30}, new double[] {10, 2, 3}}, oresult);
+    Assert.assertArrayEquals(new Object[] {1d, 10d, 10d}, oresult);
+  }
+
+  @Test
+  public void testLocalVariablesDoNotLeakAcrossRows() throws CompileException, ExecutionException,
+          InterruptedException {
+    BatchEvaluator eval = new BatchEvaluator(Program.compile("if a > 0 { x = a }; x", "a"));
+    Object[] result = new Object[3];
+    eval.evaluate(new Object[] {new Object[] {1, -1, 3}}, result);
+    Assert.assertArrayEquals(new Object[] {1, null, 3}, result);
+  }
+
+  @Test
+  public void testConstant() throws CompileException, ExecutionException, InterruptedException {
+    BatchEvaluator eval = new BatchEvaluator(ProgramOptimizer.INSTANCE.apply(Program.compile("2 * 3", "a")));
+    long[] result = new long[4];
+    eval.evaluate(new Object[] {new long[0]}, result);
+    Assert.assertArrayEquals(new long[] {6, 6, 6, 6}, result);
+  }
+
+  @Test
+  public void testParallel() throws CompileException, ExecutionException, InterruptedException {
+    BatchEvaluator eval = new BatchEvaluator(Program.compile(
+            "func det fib (x) {fib(x - 1) + fib(x - 2)}; fib(0) = 0; fib(1) = 1; fib(a % 30) + b", "a", "b"));
+    int nrRows = 50000;
+    Object[] a = new Object[nrRows];
+    double[] b = new double[nrRows];
+    for (int i = 0; i < nrRows; i++) {
+      a[i] = i;
+      b[i] = i * 0.5;
+    }
+    double[] result = new double[nrRows];
+    eval.evaluate(new Object[] {a, b}, result);
+    double[] presult = new double[nrRows];
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      eval.evaluate(new Object[] {a, b}, presult, pool);
+    } finally {
+      pool.shutdown();
+    }
+    Assert.assertArrayEquals(result, presult, 0);
+    Assert.assertEquals(514229 + 29 * 0.5, result[29], 0);
+  }
+
+  @Test
+  public void testError() throws CompileException, InterruptedException {
+    BatchEvaluator eval = new BatchEvaluator(Program.compile("a / b", "a", "b"));
+    try {
+      eval.evaluate(new Object[] {new long[] {1, 2}, new long[] {1, 0}}, new long[2]);
+      Assert.fail();
+    } catch (ExecutionException ex) {
+      Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("row 1"));
+    }
+  }
+
+  @Test
+  @SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+  public void testTimeSeries() throws CompileException, ExecutionException, InterruptedException {
+    TableDef tableDef = TableDef.newBuilder()
+          .setName("requests")
+          .setDescription("requests")
+          .setSampleTime(1000)
+          .setColumns(Arrays.asList(
+                  ColumnDef.newBuilder().setName("errors").setDescription("errors").setUnitOfMeasurement("count")
+                          .build(),
+                  ColumnDef.newBuilder().setName("total").setDescription("total").setUnitOfMeasurement("count")
+                          .build()))
+          .build();
+    TimeSeries series = new TimeSeries(new long[] {1000, 2000},
+            new long[][] {new long[] {1, 100}, new long[] {5, 10}});
+    double[] errorRate = BatchEvaluator.forTable("errors / (total * 1.0)", tableDef).evaluate(series);
+    Assert.assertArrayEquals(new double[] {0.01, 0.5}, errorRate, 0.0000001);
+  }
+
+}
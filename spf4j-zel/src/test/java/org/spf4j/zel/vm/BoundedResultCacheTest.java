@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.math.BigInteger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Zoltan Farkas
+ */
+public final class BoundedResultCacheTest {
+
+  @Test
+  public void testMemoization() throws CompileException, ExecutionException {
+    Program p = Program.compile("x", "x");
+    BoundedResultCache cache = new BoundedResultCache();
+    AtomicInteger computations = new AtomicInteger();
+    Object[] args = {1, "a", null};
+    for (int i = 0; i < 3; i++) {
+      Assert.assertNull(cache.getResult(p, args, 3, () -> {
+        computations.incrementAndGet();
+        return null;
+      }));
+    }
+    Assert.assertEquals(1, computations.get());
+    args[0] = 2;
+    Assert.assertEquals("b", cache.getResult(p, args, 2, () -> "b"));
+    Assert.assertEquals("b", cache.getResult(p, new Object[] {2, "a", "ignored"}, 2, () -> "c"));
+    BoundedResultCache.Stats stats = cache.getStats(p);
+    Assert.assertEquals(3, stats.getHits());
+    Assert.assertEquals(2, stats.getMisses());
+    Assert.assertEquals(2, stats.getNrEntries());
+    Assert.assertTrue(cache.getWeight() > 0);
+    cache.clear();
+    Assert.assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  public void testBounded() throws CompileException, ExecutionException {
+    Program p = Program.compile("x", "x");
+    BoundedResultCache cache = new BoundedResultCache(100, Long.MAX_VALUE);
+    cache.putPermanentResult(p, new Object[] {-1}, 1, "permanent");
+    for (int i = 0; i < 1000; i++) {
+      final int val = i;
+      Assert.assertEquals(val, cache.getResult(p, new Object[] {val}, 1, () -> val));
+    }
+    BoundedResultCache.Stats stats = cache.getStats(p);
+    Assert.assertEquals(101, stats.getNrEntries());
+    Assert.assertEquals(1, stats.getNrPermanentEntries());
+    Assert.assertEquals(900, stats.getEvictions());
+    Assert.assertEquals("permanent", cache.getResult(p, new Object[] {-1}, 1, () -> "computed"));
+    Assert.assertEquals(999, cache.getResult(p, new Object[] {999}, 1, () -> -1));
+  }
+
+  @Test
+  public void testDisabledOnLowHitRate() throws CompileException, ExecutionException {
+    Program p = Program.compile("x", "x");
+    BoundedResultCache cache = new BoundedResultCache();
+    cache.putPermanentResult(p, new Object[] {-1}, 1, "permanent");
+    int i = 0;
+    while (!cache.getStats(p).isDisabled()) {
+      final int val = i++;
+      cache.getResult(p, new Object[] {val}, 1, () -> val);
+      Assert.assertTrue(i < 100000);
+    }
+    BoundedResultCache.Stats stats = cache.getStats(p);
+    Assert.assertEquals(1, stats.getNrEntries());
+    Assert.assertEquals("permanent", cache.getResult(p, new Object[] {-1}, 1, () -> "computed"));
+    Assert.assertEquals("computed", cache.getResult(p, new Object[] {0}, 1, () -> "computed"));
+    Assert.assertTrue(BoundedResultCache.getDisabledFunctions() > 0);
+  }
+
+  @Test
+  public void testRecursiveFunction() throws CompileException, ExecutionException, InterruptedException {
+    Program p = Program.compile("func det fib (x) {fib(x-1) + fib(x-2)}; fib(0) = 0; fib(1) = 1; fib(x)", "x");
+    BoundedResultCache cache = new BoundedResultCache();
+    Assert.assertEquals(102334155, p.execute(VMExecutor.Lazy.DEFAULT, ProcessIOStreams.DEFAULT, cache, 40).getFirst());
+    long weight = cache.getWeight();
+    Assert.assertTrue(weight > 0);
+    Object result = p.execute(VMExecutor.Lazy.DEFAULT, ProcessIOStreams.DEFAULT, cache, 1000).getFirst();
+    Assert.assertEquals(new BigInteger("4346655768693745643568852767504062580256466051737178040248172908953655"
+            + "541794905189040387984007925516929592259308032263477520968962323987332247116164299644090653"
+            + "3187938298969649928516003704476137795166849228875"), result);
+    Assert.assertTrue(cache.getWeight() > weight);
+    Assert.assertTrue(BoundedResultCache.getHits() > 0);
+  }
+
+  @Test
+  @SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+  public void testNoCacheWithoutDeterministicFunctions()
+          throws CompileException, ExecutionException, InterruptedException {
+    Program p = Program.compile("a + 1", "a");
+    Assert.assertFalse(p.hasDeterministicFunctions());
+    int nrLive = BoundedResultCache.getNrLiveCaches();
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(i + 1, p.execute(i));
+    }
+    Assert.assertTrue(BoundedResultCache.getNrLiveCaches() <= nrLive);
+  }
+
+  @Test
+  @SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+  public void testCacheSharedByExecutions() throws CompileException, ExecutionException, InterruptedException {
+    Program p = Program.compile("func det fib (x) {fib(x-1) + fib(x-2)}; fib(0) = 0; fib(1) = 1; fib(x)", "x");
+    Assert.assertEquals(102334155, p.execute(40));
+    BoundedResultCache cache = (BoundedResultCache) p.getResultCache();
+    long weight = cache.getWeight();
+    int nrLive = BoundedResultCache.getNrLiveCaches();
+    long hits = BoundedResultCache.getHits();
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(102334155, p.execute(40));
+    }
+    Assert.assertSame(cache, p.getResultCache());
+    Assert.assertEquals(weight, cache.getWeight());
+    Assert.assertTrue(BoundedResultCache.getNrLiveCaches() <= nrLive);
+    Assert.assertTrue(BoundedResultCache.getHits() >= hits + 100);
+  }
+
+}
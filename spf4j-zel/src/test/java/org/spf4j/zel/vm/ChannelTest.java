@@ -33,10 +33,19 @@ package org.spf4j.zel.vm;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.junit.Assert;
 import org.junit.Test;
+import org.spf4j.base.Either;
 
 /**
  *
@@ -55,4 +64,130 @@ public final class ChannelTest {
     Assert.assertEquals(4950, result.intValue());
 
   }
+
+  @Test
+  @SuppressFBWarnings("HES_LOCAL_EXECUTOR_SERVICE")
+  public void testMultipleProducersConsumers()
+          throws InterruptedException, ExecutionException, TimeoutException {
+    final int nrThreads = 4;
+    final int nrValues = 20000;
+    ExecutorService es = Executors.newFixedThreadPool(nrThreads * 2);
+    try {
+      Channel ch = new Channel(new VMExecutor(es));
+      List<Future<Long>> producers = new ArrayList<>(nrThreads);
+      List<Future<Long>> consumers = new ArrayList<>(nrThreads);
+      for (int i = 0; i < nrThreads; i++) {
+        consumers.add(es.submit(() -> consume(ch)));
+        producers.add(es.submit(() -> {
+          long sum = 0;
+          for (int j = 0; j < nrValues; j++) {
+            ch.write(j);
+            sum += j;
+          }
+          return sum;
+        }));
+      }
+      long produced = 0;
+      for (Future<Long> producer : producers) {
+        produced += producer.get(30, TimeUnit.SECONDS);
+      }
+      ch.close();
+      long consumed = 0;
+      for (Future<Long> consumer : consumers) {
+        consumed += consumer.get(30, TimeUnit.SECONDS);
+      }
+      Assert.assertEquals(produced, consumed);
+      Assert.assertEquals(Channel.EOF, ch.read());
+    } finally {
+      es.shutdown();
+    }
+  }
+
+  @Test
+  @SuppressFBWarnings("HES_LOCAL_EXECUTOR_SERVICE")
+  public void testConcurrentClose() throws InterruptedException, ExecutionException, TimeoutException {
+    final int nrThreads = 4;
+    final int nrValues = 100000;
+    ExecutorService es = Executors.newFixedThreadPool(nrThreads * 2);
+    try {
+      Channel ch = new Channel(new VMExecutor(es));
+      List<Future<Long>> producers = new ArrayList<>(nrThreads);
+      List<Future<Long>> consumers = new ArrayList<>(nrThreads);
+      for (int i = 0; i < nrThreads; i++) {
+        final boolean closer = i == 0;
+        consumers.add(es.submit(() -> consume(ch)));
+        producers.add(es.submit(() -> {
+          long sum = 0;
+          for (int j = 0; j < nrValues; j++) {
+            if (closer && j == nrValues / 2) {
+              ch.close();
+            }
+            try {
+              ch.write(j);
+            } catch (IllegalStateException ex) {
+              return sum;
+            }
+            sum += j;
+          }
+          return sum;
+        }));
+      }
+      long produced = 0;
+      for (Future<Long> producer : producers) {
+        produced += producer.get(30, TimeUnit.SECONDS);
+      }
+      long consumed = 0;
+      for (Future<Long> consumer : consumers) {
+        consumed += consumer.get(30, TimeUnit.SECONDS);
+      }
+      // every accepted write is read, none lands after EOF.
+      Assert.assertEquals(produced, consumed);
+      Assert.assertEquals(Channel.EOF, ch.read());
+    } finally {
+      es.shutdown();
+    }
+  }
+
+  @Test
+  public void testReadWriteAfterClose() {
+    Channel ch = new Channel(VMExecutor.Lazy.DEFAULT);
+    Object reader = ch.read();
+    ch.write(null);
+    Assert.assertNull(((VMFuture<Object>) reader).getResultStore().getLeft());
+    Object reader2 = ch.read();
+    ch.write(1);
+    ch.write(2);
+    Assert.assertEquals(1, ((VMFuture<Object>) reader2).getResultStore().getLeft());
+    Assert.assertEquals(2, ch.read());
+    Object reader3 = ch.read();
+    ch.write(Channel.EOF);
+    Assert.assertEquals(Channel.EOF, ((VMFuture<Object>) reader3).getResultStore().getLeft());
+    Assert.assertEquals(Channel.EOF, ch.read());
+    try {
+      ch.write(3);
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+  }
+
+  @SuppressFBWarnings("MDM_THREAD_YIELD")
+  private static long consume(final Channel ch) {
+    long sum = 0;
+    while (true) {
+      Object obj = ch.read();
+      if (obj instanceof VMFuture) {
+        Either<Object, ? extends ExecutionException> result;
+        while ((result = ((VMFuture<Object>) obj).getResultStore()) == null) {
+          Thread.yield();
+        }
+        obj = result.getLeft();
+      }
+      if (obj == Channel.EOF) {
+        return sum;
+      }
+      sum += (Integer) obj;
+    }
+  }
+
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.text.Segment;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.zel.instr.CALL;
+import org.spf4j.zel.instr.Instruction;
+
+/**
+ * @author Zoltan Farkas
+ */
+public final class JavaCallSiteTest {
+
+  private static JavaCallSite getCallSite(final Program prog) {
+    for (Instruction instr : prog.getCode()) {
+      if (instr instanceof CALL) {
+        return ((CALL) instr).getJavaCallSite();
+      }
+    }
+    throw new IllegalArgumentException("No CALL in " + prog.toAssemblyString());
+  }
+
+  @Test
+  @SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+  public void testPolymorphicSite() throws CompileException, ExecutionException, InterruptedException {
+    Program p = Program.compile("x.toString()", "x");
+    JavaCallSite site = getCallSite(p);
+    Assert.assertEquals("1", p.execute(1));
+    Assert.assertEquals("1", p.execute(1));
+    Assert.assertEquals(1, site.getNrEntries());
+    Assert.assertEquals("a", p.execute("a"));
+    Assert.assertEquals("sb", p.execute(new StringBuilder("sb")));
+    Assert.assertEquals(3, site.getNrEntries());
+    Assert.assertEquals("1", p.execute(1));
+    Assert.assertEquals(3, site.getNrEntries());
+    for (Object obj : new Object[] {1L, 1.0, 'c', Boolean.TRUE}) {
+      Assert.assertEquals(obj.toString(), p.execute(obj));
+    }
+    Assert.assertEquals(-1, site.getNrEntries());
+    Assert.assertEquals("b", p.execute("b"));
+  }
+
+  @Test
+  public void testStaticAndVarargs() throws CompileException, ExecutionException, InterruptedException {
+    Program p = Program.compile("s.format(\"%s-%s\", a, b)", "s", "a", "b");
+    Assert.assertEquals("1-x", p.execute(String.class, 1, "x"));
+    Assert.assertEquals("2-y", p.execute(String.class, 2, "y"));
+    Assert.assertEquals(1, getCallSite(p).getNrEntries());
+    p = Program.compile("m.max(a, b)", "m", "a", "b");
+    Assert.assertEquals(3, p.execute(Math.class, 1, 3));
+    Assert.assertEquals(3L, p.execute(Math.class, 1L, 3L));
+    Assert.assertEquals(2, getCallSite(p).getNrEntries());
+    p = Program.compile("b.append(a); b.setLength(1); b.toString()", "b", "a");
+    Assert.assertEquals("x", p.execute(new StringBuilder("x"), 1));
+  }
+
+  @Test
+  public void testExceptionWrapping() throws CompileException, ExecutionException, InterruptedException {
+    // method handle path.
+    Program p = Program.compile("x.substring(y)", "x", "y");
+    Assert.assertEquals("c", p.execute("abc", 2));
+    assertInvocationTargetCause(p, StringIndexOutOfBoundsException.class, "abc", 5);
+    Assert.assertEquals(1, getCallSite(p).getNrEntries());
+    // reflection path of a megamorphic site.
+    p = Program.compile("x.subSequence(0, y)", "x", "y");
+    for (CharSequence cs : new CharSequence[] {"abc", new StringBuilder("abc"), new StringBuffer("abc"),
+      new Segment(new char[] {'a', 'b', 'c'}, 0, 3), new Chars("abc")}) {
+      Assert.assertEquals("a", p.execute(cs, 1).toString());
+    }
+    Assert.assertEquals(-1, getCallSite(p).getNrEntries());
+    assertInvocationTargetCause(p, StringIndexOutOfBoundsException.class, "abc", 5);
+  }
+
+  @SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+  private static void assertInvocationTargetCause(final Program p, final Class<? extends Throwable> expected,
+          final Object... args) throws InterruptedException {
+    try {
+      p.execute(args);
+      Assert.fail();
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      Assert.assertEquals(UncheckedExecutionException.class, cause.getClass());
+      Assert.assertEquals(InvocationTargetException.class, cause.getCause().getClass());
+      Assert.assertEquals(expected, cause.getCause().getCause().getClass());
+    }
+  }
+
+  public static final class Chars implements CharSequence {
+
+    private final String str;
+
+    public Chars(final String str) {
+      this.str = str;
+    }
+
+    @Override
+    public int length() {
+      return str.length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+      return str.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+      return str.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+      return str;
+    }
+  }
+
+  @Test(expected = ZExecutionException.class)
+  public void testMissingMethod() throws CompileException, ExecutionException, InterruptedException {
+    Program.compile("x.noSuchMethod()", "x").execute("a");
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Zoltan Farkas
+ */
+public final class ProgramCacheTest {
+
+  @Test
+  public void testMemoryCache() throws CompileException, ExecutionException, InterruptedException {
+    ProgramCache cache = new ProgramCache(2);
+    Program p = cache.get("a + b", "a", "b");
+    Assert.assertSame(p, cache.get("a + b", "a", "b"));
+    Assert.assertNotSame(p, cache.get("a + b", "b", "a"));
+    Assert.assertEquals(3, p.execute(1, 2));
+    List<Program> programs = cache.getAll(Arrays.asList("a + b", "a * b", "a - b", "a / b"), "a", "b");
+    Assert.assertEquals(4, programs.size());
+    Assert.assertEquals(12, programs.get(1).execute(3, 4));
+    Assert.assertEquals(-1, programs.get(2).execute(3, 4));
+    Assert.assertTrue(cache.size() <= 2);
+  }
+
+  @Test
+  public void testImageCache()
+          throws CompileException, ExecutionException, InterruptedException, IOException, ClassNotFoundException {
+    Path dir = Files.createTempDirectory("zelImages");
+    String channel = Resources.toString(Resources.getResource(ChannelTest.class, "channel.zel"),
+            Charsets.US_ASCII);
+    String fib = "func det fib (x) {fib(x-1) + fib(x-2)}; fib(0) = 0; fib(1) = 1; sqrt(4) + fib(x)";
+    ProgramCache cache = new ProgramCache(100, dir);
+    Program channelProg = cache.get(channel);
+    Program fibProg = cache.get(fib, "x");
+    Assert.assertEquals(4950, channelProg.execute());
+    Assert.assertEquals(2.0 + 102334155, ((Number) fibProg.execute(40)).doubleValue(), 0.001);
+    Assert.assertEquals(2, countImages(dir));
+    try (DirectoryStream<Path> images = Files.newDirectoryStream(dir, "*.zelp")) {
+      int nrFib = 0;
+      int nrChannel = 0;
+      for (Path image : images) {
+        try (InputStream is = Files.newInputStream(image)) {
+          if (ProgramCache.readImage(is, new ProgramCache.Key(fib, new String[] {"x"})) != null) {
+            nrFib++;
+          }
+        }
+        try (InputStream is = Files.newInputStream(image)) {
+          if (ProgramCache.readImage(is, new ProgramCache.Key(channel, new String[] {})) != null) {
+            nrChannel++;
+          }
+        }
+      }
+      Assert.assertEquals(1, nrFib);
+      Assert.assertEquals(1, nrChannel);
+    }
+
+    ProgramCache cache2 = new ProgramCache(100, dir);
+    Program channelProg2 = cache2.get(channel);
+    Assert.assertNotSame(channelProg, channelProg2);
+    Assert.assertNotEquals(channelProg, channelProg2);
+    Assert.assertEquals(4950, channelProg2.execute());
+    Program fibProg2 = cache2.get(fib, "x");
+    Assert.assertEquals(2.0 + 102334155, ((Number) fibProg2.execute(40)).doubleValue(), 0.001);
+  }
+
+  @Test
+  public void testCorruptImage() throws CompileException, ExecutionException, InterruptedException, IOException {
+    Path dir = Files.createTempDirectory("zelImages");
+    ProgramCache cache = new ProgramCache(100, dir);
+    Assert.assertEquals(7, cache.get("a + 2 * b", "a", "b").execute(1, 3));
+    try (DirectoryStream<Path> images = Files.newDirectoryStream(dir)) {
+      for (Path image : images) {
+        Files.write(image, "garbage".getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    ProgramCache cache2 = new ProgramCache(100, dir);
+    Assert.assertEquals(7, cache2.get("a + 2 * b", "a", "b").execute(1, 3));
+    ProgramCache cache3 = new ProgramCache(100, dir);
+    Assert.assertEquals(7, cache3.get("a + 2 * b", "a", "b").execute(1, 3));
+  }
+
+  @Test
+  public void testImageClassAllowList() throws IOException, ClassNotFoundException {
+    Object[] allowed = new Object[] {"a", 1, new BigDecimal("1.5"), new int[] {1}, new Object[][] {{1L}}};
+    Assert.assertArrayEquals(allowed, (Object[]) readImageObject(allowed));
+    for (Object obj : new Object[] {UUID.randomUUID(), new UUID[0], new ArrayList<>(Collections.singletonList("a"))}) {
+      try {
+        readImageObject(obj);
+        Assert.fail("Must not deserialize " + obj);
+      } catch (InvalidClassException ex) {
+        // expected
+      }
+    }
+  }
+
+  private static Object readImageObject(final Object obj) throws IOException, ClassNotFoundException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+      oos.writeObject(obj);
+    }
+    try (ObjectInputStream ois = new ProgramCache.ImageInputStream(new ByteArrayInputStream(bos.toByteArray()),
+            "test")) {
+      return ois.readObject();
+    }
+  }
+
+  private static int countImages(final Path dir) throws IOException {
+    try (DirectoryStream<Path> images = Files.newDirectoryStream(dir, "*.zelp")) {
+      return Iterables.size(images);
+    }
+  }
+
+}
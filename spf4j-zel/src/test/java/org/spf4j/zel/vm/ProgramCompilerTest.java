@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import java.math.BigInteger;
+import java.util.concurrent.ExecutionException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Zoltan Farkas
+ */
+public final class ProgramCompilerTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProgramCompilerTest.class);
+
+  private static Program compileAndCheck(final String expression, final String... varNames)
+          throws CompileException {
+    Program prog = Program.compile(expression, Program.ExecutionType.COMPILED, varNames);
+    LOG.debug("Program = {}", prog.toAssemblyString());
+    Assert.assertEquals(Program.ExecutionType.COMPILED, prog.getExecType());
+    Assert.assertNotNull(prog.getCompiled());
+    return prog;
+  }
+
+  private static void assertSameResult(final String expression, final String[] varNames, final Object... args)
+          throws CompileException, ExecutionException, InterruptedException {
+    Object expected = Program.compile(expression, varNames).execute(args.clone());
+    Object actual = compileAndCheck(expression, varNames).execute(args.clone());
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testArithmetic() throws CompileException, ExecutionException, InterruptedException {
+    assertSameResult("(1l+3l-2)/2*1", new String[0]);
+    assertSameResult("a-b+1+c.length() - d.toString().substring(0, 1).length()",
+            new String[] {"a", "b", "c", "d"}, 3, 2, " ", "bla");
+    assertSameResult("|a - 5| * 2.5 + a % 3 + a ** 2", new String[] {"a"}, 3);
+    assertSameResult(Long.MAX_VALUE + " + 1", new String[0]);
+    assertSameResult("a = a + 1", new String[] {"a"}, 1);
+  }
+
+  @Test
+  public void testConditionsAndLoops() throws CompileException, ExecutionException, InterruptedException {
+    assertSameResult("x >= 0 ? \"positive\" : \"negative\" ", new String[] {"x"}, -1);
+    assertSameResult("if x >= 0 { \"positive\" } else { \"negative\" } ", new String[] {"x"}, 1);
+    assertSameResult("x = 0; for i = 0; i < 100; i++ { x = x + i }; x", new String[0]);
+    assertSameResult("x == 1 && y != 2 || !(x < y) ", new String[] {"x", "y"}, 1, 3);
+    Program p = compileAndCheck("x = 0; for i = 0; i < n; i++ { x = x + i }; x", "n");
+    Assert.assertEquals(4950, ((Number) p.execute(100)).intValue());
+    Assert.assertEquals(45, ((Number) p.execute(10)).intValue());
+  }
+
+  @Test
+  public void testFunctions() throws CompileException, ExecutionException, InterruptedException {
+    Program p = compileAndCheck("f = func sync (x) { x * 2 }; f(3) + max(1, 5) + sqrt(4)");
+    Assert.assertEquals(13, ((Number) p.execute()).intValue());
+    p = compileAndCheck("x = array(2); x.length + |-1|");
+    Assert.assertEquals(3, ((Number) p.execute()).intValue());
+    Program fib = compileAndCheck("func det sync fib (x) { x <= 1 ? x : fib(x-1) + fib(x-2) }; fib(x)", "x");
+    Assert.assertEquals(BigInteger.valueOf(102334155L), new BigInteger(fib.execute(40).toString()));
+  }
+
+  @Test
+  public void testFallbackToInterpreter() throws CompileException, ExecutionException, InterruptedException {
+    Program p = Program.compile("f1 = func {sleep 10; 1}; f2 = func {sleep 10; 2}; f1() + f2()",
+            Program.ExecutionType.COMPILED);
+    Assert.assertEquals(Program.ExecutionType.ASYNC, p.getExecType());
+    Assert.assertEquals(3, ((Number) p.execute()).intValue());
+    p = Program.compile("x[0] <-> x[1]; x[1]", Program.ExecutionType.COMPILED, "x");
+    Assert.assertEquals(Program.ExecutionType.SYNC, p.getExecType());
+    Assert.assertEquals(1, p.execute(new Object[] {new Integer[] {1, 2}}));
+  }
+
+  @Test(expected = ZExecutionException.class)
+  public void testException() throws CompileException, ExecutionException, InterruptedException {
+    Program p = compileAndCheck("a = 1;\n b = 2;\n throw a + b");
+    try {
+      p.execute();
+    } catch (ZExecutionException ex) {
+      Assert.assertEquals(3, ex.getPayload());
+      Assert.assertFalse(ex.getZelframes().isEmpty());
+      throw ex;
+    }
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2001-2017, Zoltan Farkas All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Additionally licensed with:
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.zel.vm;
+
+import java.util.concurrent.ExecutionException;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Zoltan Farkas
+ */
+public final class ProgramOptimizerTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProgramOptimizerTest.class);
+
+  private static Program compile(final String expression, final String... varNames) throws CompileException {
+    return ProgramOptimizer.INSTANCE.apply(Program.compile(expression, varNames));
+  }
+
+  private static String compileToAssembly(final String expression, final String... varNames)
+          throws CompileException {
+    String asm = compile(expression, varNames).toAssemblyString();
+    LOG.debug("Program = {}", asm);
+    return asm;
+  }
+
+  private static int count(final String str, final String what) {
+    int result = 0;
+    int idx = str.indexOf(what);
+    while (idx >= 0) {
+      result++;
+      idx = str.indexOf(what, idx + what.length());
+    }
+    return result;
+  }
+
+  @Test
+  public void testConstantFolding() throws CompileException, ExecutionException, InterruptedException {
+    String asm = compileToAssembly("sqrt(16) + 2 * 3 - min(1, 2) + |-2|");
+    Assert.assertTrue(asm, asm.contains("PUSH(11.0)"));
+    Assert.assertFalse(asm, asm.contains("CALL"));
+    Assert.assertEquals(11.0, compile("sqrt(16) + 2 * 3 - min(1, 2) + |-2|").execute());
+    Assert.assertEquals(Boolean.TRUE, compile("1 < 2 && !(3 == 4)").execute());
+    Assert.assertEquals(Long.MAX_VALUE + 1.0,
+            ((Number) compile(Long.MAX_VALUE + " + 1").execute()).doubleValue(), 0.0001);
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void testFoldingErrorsAtRuntime() throws CompileException, ExecutionException, InterruptedException {
+    Program p = compile("1 / 0");
+    Assert.assertTrue(p.toAssemblyString().contains("DIV"));
+    p.execute();
+  }
+
+  @Test
+  public void testDeadBranches() throws CompileException, ExecutionException, InterruptedException {
+    String asm = compileToAssembly("if 1 > 2 { out(\"no\") } else { b = max(3, 4) }; b");
+    Assert.assertFalse(asm, asm.contains("JMP"));
+    Assert.assertFalse(asm, asm.contains("out"));
+    Assert.assertEquals(4, compile("if 1 > 2 { out(\"no\") } else { b = max(3, 4) }; b").execute());
+    Assert.assertEquals("positive", compile("1 >= 0 ? \"positive\" : \"negative\"").execute());
+  }
+
+  @Test
+  public void testAssignmentFusion() throws CompileException, ExecutionException, InterruptedException {
+    String asm = compileToAssembly("x = a + 1; y = x * 2; z = y; y + z", "a");
+    Assert.assertFalse(asm, asm.contains("LODAXF"));
+    Assert.assertEquals(3, count(asm, "MOVXF"));
+    Assert.assertEquals(8, compile("x = a + 1; y = x * 2; z = y; y + z", "a").execute(1));
+    Program loop = compile("x = 0; for i = 0; i < n; i++ { x = x + i }; x", "n");
+    Assert.assertEquals(4950, ((Number) loop.execute(100)).intValue());
+  }
+
+  @Test
+  public void testCommonCalls() throws CompileException, ExecutionException, InterruptedException {
+    String asm = compileToAssembly("sqrt(a) * sqrt(a) + sqrt(b)", "a", "b");
+    Assert.assertEquals(2, count(asm, "CALL"));
+    Assert.assertEquals(13.0, compile("sqrt(a) * sqrt(a) + sqrt(b)", "a", "b").execute(4, 81));
+    // assignment in between invalidates the first call.
+    asm = compileToAssembly("x = sqrt(a); a = 16; x + sqrt(a)", "a");
+    Assert.assertEquals(2, count(asm, "CALL"));
+    Assert.assertEquals(6.0, compile("x = sqrt(a); a = 16; x + sqrt(a)", "a").execute(4));
+  }
+
+  @Test
+  public void testNotOptimizedByDefault() throws CompileException {
+    Assume.assumeFalse(ProgramOptimizer.ENABLED);
+    Assert.assertTrue(Program.compile("sqrt(16)").toAssemblyString().contains("CALL"));
+  }
+
+  @Test
+  public void testRedefinedFunctions() throws CompileException, ExecutionException, InterruptedException {
+    // builtins that are assigned are not folded.
+    String prog = "func redefine(z) { sqrt = min }; x = sqrt(16); redefine(0); x + sqrt(9, 2)";
+    Assert.assertEquals(6.0, ((Number) Program.compile(prog).execute()).doubleValue(), 0.0001);
+    String asm = compileToAssembly(prog);
+    Assert.assertEquals(3, count(asm, "CALL"));
+    Assert.assertEquals(6.0, ((Number) compile(prog).execute()).doubleValue(), 0.0001);
+    // user defined functions can be redefined at runtime, calls to them are not eliminated.
+    prog = "func det f(x) { x * 2 }; func g(x) { x + 1 }; func redefine(z) { f = g };"
+            + " y = f(a); redefine(0); y + f(a)";
+    Assert.assertEquals(4, ((Number) Program.compile(prog, "a").execute(1)).intValue());
+    Assert.assertEquals(4, ((Number) compile(prog, "a").execute(1)).intValue());
+  }
+
+  @Test
+  public void testFunctions() throws CompileException, ExecutionException, InterruptedException {
+    Program p = compile("func f(x) { x * (2 + 3) + sqrt(x) * sqrt(x) }; f(a) + f(a)", "a");
+    Assert.assertEquals(48.0, p.execute(4));
+    p = compile("func det fib(n) { if n <= 1 { n } else { fib(n-1) + fib(n-2) } }; fib(a)", "a");
+    Assert.assertEquals(55, ((Number) p.execute(10)).intValue());
+  }
+
+}
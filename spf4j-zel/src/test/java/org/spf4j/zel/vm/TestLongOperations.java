@@ -31,11 +31,17 @@
  */
 package org.spf4j.zel.vm;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.math.BigInteger;
 import java.util.concurrent.ExecutionException;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spf4j.zel.instr.ADD_LL;
+import org.spf4j.zel.instr.ARITH;
+import org.spf4j.zel.instr.Instruction;
 
 /**
  *
@@ -53,4 +59,38 @@ public final class TestLongOperations {
     Assert.assertEquals(1, result.intValue());
   }
 
+  @Test
+  @SuppressFBWarnings("CE_CLASS_ENVY")
+  public void testOverflow() throws CompileException, ExecutionException, InterruptedException {
+    Program prog = Program.compile("a - b", "a", "b");
+    Assert.assertEquals(BigInteger.valueOf(Long.MIN_VALUE).subtract(BigInteger.ONE), prog.execute(Long.MIN_VALUE, 1L));
+    Assert.assertEquals(BigInteger.ONE.shiftLeft(63), prog.execute(0L, Long.MIN_VALUE));
+    Assert.assertEquals(Long.MIN_VALUE, prog.execute(-1L, Long.MAX_VALUE));
+    prog = Program.compile("a + b", "a", "b");
+    Assert.assertEquals(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE), prog.execute(Long.MAX_VALUE, 1L));
+    Assert.assertEquals(-1L, prog.execute(Long.MAX_VALUE, Long.MIN_VALUE));
+  }
+
+  @Test
+  @SuppressFBWarnings("PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS")
+  public void testSpecialization() throws CompileException, ExecutionException, InterruptedException {
+    // instructions are rewritten by the interpreter only.
+    Assume.assumeTrue(Program.JIT_THRESHOLD < 0 || Program.JIT_THRESHOLD > 3);
+    Program prog = Program.compile("s = a; for i = 0; i < n; i++ { s = s + b }; s", "a", "b", "n");
+    Assert.assertEquals(1000L, prog.execute(0L, 1L, 1000));
+    String asm = prog.toAssemblyString();
+    LOG.debug("Specialized program: {}", asm);
+    Assert.assertTrue(asm, asm.contains("ADD_LL"));
+    // the rewrites are not visible in the (shared, serializable) program instructions.
+    for (Instruction instr : prog.getInstructions()) {
+      Assert.assertFalse(instr instanceof ADD_LL || instr instanceof ARITH);
+    }
+    // type guard fails, site reverts to a generic, non specializing instruction.
+    Assert.assertEquals(10.5, prog.execute(0.5, 1.0, 10));
+    Assert.assertEquals(1000L, prog.execute(0L, 1L, 1000));
+    asm = prog.toAssemblyString();
+    Assert.assertFalse(asm, asm.contains("ADD_LL"));
+    Assert.assertTrue(asm, asm.contains("ARITH(Add)"));
+  }
+
 }